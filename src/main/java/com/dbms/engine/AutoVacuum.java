@@ -0,0 +1,103 @@
+package com.dbms.engine;
+
+import com.dbms.model.Table;
+import com.dbms.storage.DATFileManager;
+import com.dbms.storage.FileFormat;
+import com.dbms.util.TransactionManager;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动整理 - 后台定期检查各表数据页中可回收空间（空闲空间 + 未回收的已删除记录）的比例，超过阈值时整理数据文件（VACUUM）
+ * 检查和整理在 lock 上同步执行，与SQL语句互斥，结束时与语句一样写回修改；有活动事务时跳过（回滚需要已删除的记录）
+ * 检查间隔（秒）通过系统属性 dbms.autoVacuumInterval 配置，默认 60，小于等于0时关闭
+ * 触发比例通过系统属性 dbms.autoVacuumRatio 配置，默认 0.3
+ */
+public class AutoVacuum {
+    
+    public static final String INTERVAL_PROPERTY = "dbms.autoVacuumInterval";
+    public static final String RATIO_PROPERTY = "dbms.autoVacuumRatio";
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+    private static final double DEFAULT_RATIO = 0.3;
+    
+    // 数据页少于该数量的表不整理
+    private static final int MIN_PAGES = 8;
+    
+    private final DDLExecutor ddlExecutor;
+    private final TransactionManager transactionManager;
+    private final Object lock;
+    private final double ratio;
+    private ScheduledExecutorService scheduler;
+    
+    public AutoVacuum(DDLExecutor ddlExecutor, TransactionManager transactionManager, Object lock) {
+        this.ddlExecutor = ddlExecutor;
+        this.transactionManager = transactionManager;
+        this.lock = lock;
+        String ratioValue = System.getProperty(RATIO_PROPERTY);
+        this.ratio = ratioValue == null ? DEFAULT_RATIO : Double.parseDouble(ratioValue);
+    }
+    
+    /**
+     * 启动后台检查线程（守护线程，不阻止程序退出）
+     */
+    public synchronized void start() {
+        int interval = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+        if (interval <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dbms-autovacuum");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, interval, interval, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 停止后台检查线程
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+    
+    /**
+     * 检查所有表，整理可回收空间比例超过阈值的表
+     * @return 缩减的总页数
+     */
+    public int runOnce() {
+        synchronized (lock) {
+            if (transactionManager.hasActiveTransaction()) {
+                return 0;
+            }
+            int reclaimed = 0;
+            for (String tableName : ddlExecutor.getTableNames()) {
+                try {
+                    Table table = ddlExecutor.getTable(tableName);
+                    String tableDataFile = DATFileManager.getTableDataFilePath(ddlExecutor.getDatFilePath(), tableName);
+                    if (ddlExecutor.getTableDataSize(tableName) < (long) (MIN_PAGES + 1) * FileFormat.PAGE_SIZE ||
+                        DATFileManager.getReclaimableRatio(tableDataFile, table) < ratio) {
+                        continue;
+                    }
+                    int pages = ddlExecutor.vacuumTable(tableName);
+                    System.out.println("AutoVacuum: 表 " + tableName + " 整理完成，缩减 " + pages + " 页");
+                    reclaimed += pages;
+                } catch (Exception e) {
+                    System.err.println("AutoVacuum: 整理表 " + tableName + " 失败: " + e.getMessage());
+                }
+            }
+            // 整理不经过 SQLExecutor.execute，重映射后的索引等修改在这里写回（否则要等到下一条语句）
+            try {
+                ddlExecutor.flushChanges();
+            } catch (Exception e) {
+                System.err.println("AutoVacuum: 写回修改失败: " + e.getMessage());
+            }
+            return reclaimed;
+        }
+    }
+}
+
@@ -1,15 +1,32 @@
 package com.dbms.engine;
 
+import com.dbms.model.ColumnDictionary;
 import com.dbms.model.Database;
 import com.dbms.model.Field;
 import com.dbms.model.FieldType;
+import com.dbms.model.Index;
+import com.dbms.model.Record;
 import com.dbms.model.Table;
+import com.dbms.storage.BTreeFile;
+import com.dbms.storage.BloomFile;
+import com.dbms.storage.BufferPool;
+import com.dbms.storage.ColumnStore;
+import com.dbms.storage.DATFileManager;
 import com.dbms.storage.DBFFileManager;
+import com.dbms.storage.FileFormat;
+import com.dbms.storage.IndexFile;
 import com.dbms.util.DBMSException;
 import com.dbms.util.Validator;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * DDL执行器 - 处理数据定义语言（CREATE, ALTER, DROP等）
@@ -24,12 +41,139 @@ public class DDLExecutor {
         this.database = database;
         this.dbFilePath = dbFilePath;
         this.datFilePath = datFilePath;
+        attachIndexFiles();
+    }
+    
+    /**
+     * 为所有索引绑定索引文件（索引项在第一次使用时加载）；没有索引文件（旧版本数据库）或文件损坏时扫描数据文件重建
+     * 旧版本数据库中有主键的表还没有主键索引，此时建立并保存表结构
+     */
+    private void attachIndexFiles() {
+        for (String tableName : database.getTableNames()) {
+            Table table = database.getTable(tableName);
+            String tableDataFile = DATFileManager.getTableDataFilePath(datFilePath, tableName);
+            try {
+                List<Record> records = null;
+                for (Index index : table.getIndexes().values()) {
+                    String indexFile = IndexFile.pathFor(tableDataFile, index.getIndexName());
+                    if (index.isOrdered() ? BTreeFile.open(index, indexFile)
+                        : index.isBloom() ? BloomFile.open(index, indexFile) : IndexFile.open(index, indexFile)) {
+                        continue;
+                    }
+                    if (records == null) {
+                        File dataFile = new File(tableDataFile);
+                        records = dataFile.exists() && dataFile.length() > 0
+                            ? DATFileManager.readAllRecords(tableDataFile, table)
+                            : new ArrayList<>();
+                    }
+                    writeIndexFile(table, index, records, indexFile);
+                }
+                if (syncPrimaryKeyIndex(table)) {
+                    DBFFileManager.updateTableInFile(dbFilePath, table);
+                }
+            } catch (IOException e) {
+                throw new DBMSException("Failed to open indexes of table " + tableName + ": " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * 使主键索引与表的主键列一致：有主键而没有主键索引，或主键列改变时，由表中的记录建立新的主键索引
+     * （没有主键时去掉主键索引）；返回表结构是否有改动（调用方负责保存）
+     */
+    private boolean syncPrimaryKeyIndex(Table table) throws IOException {
+        List<String> keyColumns = new ArrayList<>();
+        for (Field field : table.getKeyFields()) {
+            keyColumns.add(field.getName().toLowerCase());
+        }
+        Index existing = table.getIndex(Index.PRIMARY_KEY_NAME);
+        if (existing != null) {
+            List<String> indexColumns = new ArrayList<>();
+            for (String column : existing.getColumnNames()) {
+                indexColumns.add(column.toLowerCase());
+            }
+            if (indexColumns.equals(keyColumns)) {
+                return false;
+            }
+            table.removeIndex(Index.PRIMARY_KEY_NAME);
+        }
+        if (keyColumns.isEmpty()) {
+            return existing != null;
+        }
+        
+        List<String> columns = new ArrayList<>();
+        for (Field field : table.getKeyFields()) {
+            columns.add(field.getName());
+        }
+        Index index = new Index(Index.PRIMARY_KEY_NAME, table.getName(), columns, true);
+        String tableDataFile = DATFileManager.getTableDataFilePath(datFilePath, table.getName());
+        File dataFile = new File(tableDataFile);
+        List<Record> records = dataFile.exists() && dataFile.length() > 0
+            ? DATFileManager.readAllRecords(tableDataFile, table)
+            : new ArrayList<>();
+        writeIndexFile(table, index, records, IndexFile.pathFor(tableDataFile, index.getIndexName()));
+        table.addIndex(index);
+        return true;
+    }
+    
+    /**
+     * 建立唯一索引前检查表中已有的记录：遇到第一个重复的键即失败，不写索引文件（含NULL的键不检查）
+     */
+    private void ensureNoDuplicateKeys(Table table, Index index, List<Record> records) {
+        Set<Object> keys = new HashSet<>();
+        for (Record record : records) {
+            Object key = index.getKey(table, record);
+            if (!Index.containsNull(key) && !keys.add(key)) {
+                throw new DBMSException("Cannot create unique index " + index.getIndexName() + ": duplicate key " + key);
+            }
+        }
+    }
+    
+    /**
+     * 由表中的记录建立索引项并写入新的索引文件（哈希索引的索引项同时留在内存中）
+     */
+    private void writeIndexFile(Table table, Index index, List<Record> records,
+                                String indexFile) throws IOException {
+        List<Object> keys = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        List<Object[]> included = new ArrayList<>();
+        for (Record record : records) {
+            Object value = index.getKey(table, record);
+            if (value != null) {
+                // recordId 即记录在文件中的位置
+                keys.add(value);
+                positions.add(record.getRecordId());
+                included.add(index.getIncludedValues(table, record));
+            }
+        }
+        if (index.isOrdered()) {
+            BTreeFile.create(index, indexFile, keys, positions, included);
+            return;
+        }
+        if (index.isBloom()) {
+            BloomFile.create(index, indexFile, keys, positions);
+            return;
+        }
+        index.setStorage(null, true);
+        index.setIndexMap(index.newIndexMap(keys.size()));
+        index.setIncludedValueMap(new HashMap<>());
+        for (int i = 0; i < keys.size(); i++) {
+            index.addIndexEntry(keys.get(i), positions.get(i), included.get(i));
+        }
+        IndexFile.create(index, indexFile);
     }
     
     /**
      * 创建表
      */
     public void createTable(String tableName, java.util.List<Field> fields) {
+        createTable(tableName, fields, Collections.emptyMap());
+    }
+    
+    /**
+     * 创建表（带表选项，如 storage = row / columnar）
+     */
+    public void createTable(String tableName, List<Field> fields, Map<String, String> options) {
         if (!Validator.isValidTableName(tableName)) {
             throw new DBMSException("Invalid table name: " + tableName);
         }
@@ -46,11 +190,48 @@ public class DDLExecutor {
             table.addField(field);
         }
         
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getValue().toLowerCase();
+            if (Table.OPTION_STORAGE.equalsIgnoreCase(option.getKey())) {
+                if (!value.equals(Table.STORAGE_ROW) && !value.equals(Table.STORAGE_COLUMNAR)) {
+                    throw new DBMSException("Invalid storage type: " + option.getValue());
+                }
+            } else if (Table.OPTION_COMPRESSION.equalsIgnoreCase(option.getKey())) {
+                if (!value.equals(Table.COMPRESSION_NONE) && !value.equals(Table.COMPRESSION_DEFLATE)) {
+                    throw new DBMSException("Invalid compression: " + option.getValue());
+                }
+            } else if (Table.OPTION_DICTIONARY.equalsIgnoreCase(option.getKey())) {
+                // 字典保存在各字段上，不作为表选项保存
+                for (String columnName : option.getValue().split(",")) {
+                    Field field = table.getFieldByName(columnName.trim());
+                    if (field == null) {
+                        throw new DBMSException("Column " + columnName.trim() + " does not exist");
+                    }
+                    if (field.getType() != FieldType.CHAR && field.getType() != FieldType.VARCHAR) {
+                        throw new DBMSException("Dictionary encoding is only supported for CHAR/VARCHAR columns: " + field.getName());
+                    }
+                    field.setDictionary(new ColumnDictionary());
+                }
+                continue;
+            } else {
+                throw new DBMSException("Unknown table option: " + option.getKey());
+            }
+            table.setOption(option.getKey(), value);
+        }
+        if (table.isColumnar() && table.isCompressed()) {
+            throw new DBMSException("Page compression is only supported for row storage");
+        }
+        if (table.isColumnar() && table.hasDictionaries()) {
+            throw new DBMSException("Dictionary encoding is only supported for row storage");
+        }
+        
         database.addTable(table);
         
         try {
-            // 保存到文件
-            DBFFileManager.createDatabaseFile(dbFilePath, database);
+            // 主键索引（新表没有记录，建立空索引）
+            syncPrimaryKeyIndex(table);
+            // 保存到文件（只追加新表）
+            DBFFileManager.addTableToFile(dbFilePath, table);
             // 为每个表创建独立的数据文件
             String tableDataFile = com.dbms.storage.DATFileManager.getTableDataFilePath(datFilePath, tableName);
             File datFile = new File(tableDataFile);
@@ -73,6 +254,16 @@ public class DDLExecutor {
         // 删除表的数据文件
         String tableDataFile = com.dbms.storage.DATFileManager.getTableDataFilePath(datFilePath, tableName);
         File dataFile = new File(tableDataFile);
+        try {
+            // 列存表的列文件
+            for (File columnFile : ColumnStore.getColumnFiles(tableDataFile)) {
+                columnFile.delete();
+            }
+        } catch (IOException e) {
+            throw new DBMSException("Failed to drop table: " + e.getMessage(), e);
+        }
+        DATFileManager.invalidate(tableDataFile);
+        IndexFile.deleteFiles(tableDataFile);
         if (dataFile.exists()) {
             boolean deleted = dataFile.delete();
             if (!deleted) {
@@ -85,7 +276,7 @@ public class DDLExecutor {
         
         try {
             // 更新数据库文件
-            DBFFileManager.createDatabaseFile(dbFilePath, database);
+            DBFFileManager.removeTableFromFile(dbFilePath, tableName);
         } catch (IOException e) {
             throw new DBMSException("Failed to drop table: " + e.getMessage(), e);
         }
@@ -113,7 +304,7 @@ public class DDLExecutor {
         database.addTable(table);
         
         try {
-            DBFFileManager.createDatabaseFile(dbFilePath, database);
+            DBFFileManager.renameTableInFile(dbFilePath, oldName, table);
         } catch (IOException e) {
             throw new DBMSException("Failed to rename table: " + e.getMessage(), e);
         }
@@ -137,8 +328,12 @@ public class DDLExecutor {
         }
         
         table.addField(field);
+        // 已有记录不含新字段，读取时按NULL处理
+        table.setSchemaVersion(table.getSchemaVersion() + 1);
         
         try {
+            // 新字段是主键列时主键索引随之改变
+            syncPrimaryKeyIndex(table);
             DBFFileManager.updateTableInFile(dbFilePath, table);
         } catch (IOException e) {
             throw new DBMSException("Failed to add column: " + e.getMessage(), e);
@@ -173,6 +368,7 @@ public class DDLExecutor {
         }
         
         table.removeField(columnName);
+        table.setSchemaVersion(table.getSchemaVersion() + 1);
         
         try {
             DBFFileManager.updateTableInFile(dbFilePath, table);
@@ -204,6 +400,9 @@ public class DDLExecutor {
         }
         
         field.setName(newName);
+        for (Index index : table.getIndexes().values()) {
+            index.renameColumn(oldName, newName);
+        }
         
         try {
             DBFFileManager.updateTableInFile(dbFilePath, table);
@@ -269,6 +468,10 @@ public class DDLExecutor {
         
         field.setType(newType);
         field.setLength(targetLength);
+        if (newType != FieldType.CHAR && newType != FieldType.VARCHAR) {
+            field.setDictionary(null); // 只有空表才能改为其他类型
+        }
+        table.setSchemaVersion(table.getSchemaVersion() + 1);
         
         try {
             DBFFileManager.updateTableInFile(dbFilePath, table);
@@ -277,6 +480,50 @@ public class DDLExecutor {
         }
     }
     
+    /**
+     * 整理表的数据文件（VACUUM）：去掉已删除的记录和页内空洞，并把内存中的索引重映射到新位置
+     * 布隆过滤器索引按整理后的数据文件重建（去掉已删除的取值，页级过滤器对应新的页）
+     * @return 缩减的页数
+     */
+    public int vacuumTable(String tableName) {
+        Table table = database.getTable(tableName);
+        if (table == null) {
+            throw new DBMSException("Table " + tableName + " does not exist");
+        }
+        
+        String tableDataFile = DATFileManager.getTableDataFilePath(datFilePath, tableName);
+        try {
+            long oldSize = getTableDataSize(tableName);
+            Map<Long, Long> remap = DATFileManager.vacuum(tableDataFile, table);
+            List<Record> records = null;
+            for (Index index : table.getIndexes().values()) {
+                if (!index.isBloom()) {
+                    index.remapPositions(remap);
+                    continue;
+                }
+                if (records == null) {
+                    records = DATFileManager.readAllRecords(tableDataFile, table);
+                }
+                writeIndexFile(table, index, records, IndexFile.pathFor(tableDataFile, index.getIndexName()));
+            }
+            return (int) ((oldSize - getTableDataSize(tableName)) / FileFormat.PAGE_SIZE);
+        } catch (IOException e) {
+            throw new DBMSException("Failed to vacuum table: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 表数据占用的字节数（列存表包括各列文件）
+     */
+    public long getTableDataSize(String tableName) throws IOException {
+        String tableDataFile = DATFileManager.getTableDataFilePath(datFilePath, tableName);
+        long size = new File(tableDataFile).length();
+        for (File columnFile : ColumnStore.getColumnFiles(tableDataFile)) {
+            size += columnFile.length();
+        }
+        return size;
+    }
+    
     /**
      * 获取表结构
      */
@@ -284,6 +531,13 @@ public class DDLExecutor {
         return database.getTable(tableName);
     }
     
+    /**
+     * 数据文件基础路径（各表数据文件由此推导）
+     */
+    public String getDatFilePath() {
+        return datFilePath;
+    }
+    
     /**
      * 获取所有表名
      */
@@ -291,6 +545,47 @@ public class DDLExecutor {
         return database.getTableNames();
     }
     
+    /**
+     * 把新增了取值的列字典写入 .dbf 文件（每条语句结束、写回数据页之前调用）
+     */
+    public void saveDictionaries() {
+        for (String tableName : database.getTableNames()) {
+            Table table = database.getTable(tableName);
+            List<ColumnDictionary> dirty = new ArrayList<>();
+            for (Field field : table.getFields()) {
+                if (field.getDictionary() != null && field.getDictionary().isDirty()) {
+                    dirty.add(field.getDictionary());
+                }
+            }
+            if (dirty.isEmpty()) {
+                continue;
+            }
+            try {
+                DBFFileManager.updateTableInFile(dbFilePath, table);
+            } catch (IOException e) {
+                throw new DBMSException("Failed to save column dictionaries: " + e.getMessage(), e);
+            }
+            for (ColumnDictionary dictionary : dirty) {
+                dictionary.setDirty(false);
+            }
+        }
+    }
+    
+    /**
+     * 把新增的字典取值、缓冲池中的脏页、空闲空间映射、列存表、索引和区域映射的修改写回磁盘
+     * 每条语句结束时由 SQLExecutor 调用；语句之外修改了文件的操作（如后台自动整理）结束时也要调用
+     */
+    public void flushChanges() throws IOException {
+        saveDictionaries();
+        BufferPool.getInstance().flushAll();
+        DATFileManager.flushFreeSpaceMaps();
+        ColumnStore.flushAll();
+        IndexFile.flushAll();
+        BTreeFile.flushAll();
+        BloomFile.flushAll();
+        DATFileManager.flushZoneMaps();
+    }
+    
     /**
     * 判断表是否已有数据（文件存在且长度>0）
     */
@@ -304,14 +599,38 @@ public class DDLExecutor {
      * 创建索引
      */
     public void createIndex(String indexName, String tableName, String columnName, boolean unique) {
+        createIndex(indexName, tableName, columnName, unique, Index.TYPE_HASH);
+    }
+    
+    /**
+     * 创建索引（指定索引类型：HASH 或 BTREE）
+     */
+    public void createIndex(String indexName, String tableName, String columnName, boolean unique, String type) {
+        createIndex(indexName, tableName, Collections.singletonList(columnName), unique, type,
+                    Collections.emptyList());
+    }
+    
+    /**
+     * 创建索引（可以有多个索引列；指定索引类型和包含列，包含列的值随索引项存放，只涉及索引列和包含列的查询不必读取记录）
+     */
+    public void createIndex(String indexName, String tableName, List<String> columnNames, boolean unique,
+                            String type, List<String> includeColumns) {
         Table table = database.getTable(tableName);
         if (table == null) {
             throw new DBMSException("Table " + tableName + " does not exist");
         }
         
-        // 检查字段是否存在
-        if (table.getFieldByName(columnName) == null) {
-            throw new DBMSException("Column " + columnName + " does not exist in table " + tableName);
+        // 检查字段是否存在（索引列不能重复）
+        List<String> columns = new ArrayList<>();
+        for (String columnName : columnNames) {
+            Field field = table.getFieldByName(columnName);
+            if (field == null) {
+                throw new DBMSException("Column " + columnName + " does not exist in table " + tableName);
+            }
+            if (columns.contains(field.getName())) {
+                throw new DBMSException("Duplicate column in index " + indexName + ": " + columnName);
+            }
+            columns.add(field.getName());
         }
         
         // 检查索引是否已存在
@@ -319,28 +638,67 @@ public class DDLExecutor {
             throw new DBMSException("Index " + indexName + " already exists");
         }
         
+        String indexType = type.toUpperCase();
+        if (!indexType.equals(Index.TYPE_HASH) && !indexType.equals(Index.TYPE_BTREE) &&
+            !indexType.equals(Index.TYPE_BITMAP) && !indexType.equals(Index.TYPE_OFFHEAP) &&
+            !indexType.equals(Index.TYPE_BLOOM) && !indexType.equals(Index.TYPE_NGRAM)) {
+            throw new DBMSException("Unsupported index type: " + type);
+        }
+        // 位图索引：单列，不唯一，没有包含列
+        if (indexType.equals(Index.TYPE_BITMAP) &&
+            (columns.size() > 1 || unique || !includeColumns.isEmpty())) {
+            throw new DBMSException("Bitmap index " + indexName + " must be a non-unique index on a single column without INCLUDE");
+        }
+        // 布隆过滤器索引：同位图索引
+        if (indexType.equals(Index.TYPE_BLOOM) &&
+            (columns.size() > 1 || unique || !includeColumns.isEmpty())) {
+            throw new DBMSException("Bloom filter index " + indexName + " must be a non-unique index on a single column without INCLUDE");
+        }
+        // N-gram 索引：同位图索引，且只能建在字符串列上
+        if (indexType.equals(Index.TYPE_NGRAM)) {
+            if (columns.size() > 1 || unique || !includeColumns.isEmpty()) {
+                throw new DBMSException("N-gram index " + indexName + " must be a non-unique index on a single column without INCLUDE");
+            }
+            FieldType columnType = table.getFieldByName(columns.get(0)).getType();
+            if (columnType == FieldType.INT || columnType == FieldType.FLOAT || columnType == FieldType.DOUBLE) {
+                throw new DBMSException("N-gram index " + indexName + " must be on a string column");
+            }
+        }
+        // 堆外哈希索引：单列，没有包含列（包含列的值在堆内）
+        if (indexType.equals(Index.TYPE_OFFHEAP) && (columns.size() > 1 || !includeColumns.isEmpty())) {
+            throw new DBMSException("Off-heap index " + indexName + " must be on a single column without INCLUDE");
+        }
+        
+        // 检查包含列：必须存在，且不能是索引列或重复
+        List<String> includes = new ArrayList<>();
+        for (String include : includeColumns) {
+            Field field = table.getFieldByName(include);
+            if (field == null) {
+                throw new DBMSException("Column " + include + " does not exist in table " + tableName);
+            }
+            if (columns.contains(field.getName()) || includes.contains(field.getName())) {
+                throw new DBMSException("Duplicate column in index " + indexName + ": " + include);
+            }
+            includes.add(field.getName());
+        }
+        
         // 创建索引对象
-        com.dbms.model.Index index = new com.dbms.model.Index(indexName, tableName, columnName, unique);
+        Index index = new Index(indexName, tableName, columns, unique);
+        index.setType(indexType);
+        index.setIncludeColumns(includes);
         
-        // 构建索引：读取所有记录，建立索引映射
+        // 构建索引：读取所有记录，建立索引项并写入索引文件
+        String tableDataFile = DATFileManager.getTableDataFilePath(datFilePath, tableName);
         try {
-            String tableDataFile = com.dbms.storage.DATFileManager.getTableDataFilePath(datFilePath, tableName);
             java.io.File dataFile = new java.io.File(tableDataFile);
-            if (dataFile.exists() && dataFile.length() > 0) {
-                java.util.List<com.dbms.model.Record> records = 
-                    com.dbms.storage.DATFileManager.readAllRecords(tableDataFile, table);
-                java.util.List<Long> positions = getRecordPositions(tableDataFile, table);
-                
-                // 确保positions和records大小一致
-                int minSize = Math.min(records.size(), positions.size());
-                for (int i = 0; i < minSize; i++) {
-                    com.dbms.model.Record record = records.get(i);
-                    Object value = record.getValue(table, columnName);
-                    if (value != null) {
-                        index.addIndexEntry(value, positions.get(i));
-                    }
-                }
+            List<Record> records = dataFile.exists() && dataFile.length() > 0
+                ? DATFileManager.readAllRecords(tableDataFile, table)
+                : new ArrayList<>();
+            if (unique) {
+                ensureNoDuplicateKeys(table, index, records);
             }
+            writeIndexFile(table, index, records, IndexFile.pathFor(tableDataFile, indexName));
+            System.out.println(index.getStatistics());
         } catch (java.io.IOException e) {
             throw new DBMSException("Failed to build index: " + e.getMessage(), e);
         }
@@ -356,31 +714,5 @@ public class DDLExecutor {
         }
     }
     
-    /**
-     * 获取记录位置列表（用于构建索引）
-     */
-    private java.util.List<Long> getRecordPositions(String filePath, Table table) throws java.io.IOException {
-        java.util.List<Long> positions = new java.util.ArrayList<>();
-        java.io.File file = new java.io.File(filePath);
-        if (!file.exists() || file.length() == 0) {
-            return positions;
-        }
-        
-        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(filePath, "r")) {
-            long fileLength = raf.length();
-            while (raf.getFilePointer() < fileLength) {
-                try {
-                    long position = raf.getFilePointer();
-                    com.dbms.model.Record record = com.dbms.storage.DATFileManager.readRecord(raf, table);
-                    if (!record.isDeleted()) {
-                        positions.add(position);
-                    }
-                } catch (java.io.EOFException e) {
-                    break;
-                }
-            }
-        }
-        return positions;
-    }
 }
 
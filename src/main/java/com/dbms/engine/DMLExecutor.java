@@ -6,13 +6,17 @@ import com.dbms.model.Record;
 import com.dbms.model.Table;
 import com.dbms.storage.DATFileManager;
 import com.dbms.util.DBMSException;
+import com.dbms.util.Transaction;
 import com.dbms.util.TypeConverter;
 import com.dbms.util.Validator;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * DML执行器 - 处理数据操纵语言（INSERT, UPDATE, DELETE）
@@ -65,12 +69,57 @@ public class DMLExecutor {
         }
     }
 
+    /**
+     * 检查唯一索引（包括主键索引）：每个键只查找一次索引，不扫描记录
+     * records 为同一条语句要写入的所有记录，positions 为它们原来的位置（新插入的记录为null）；
+     * 这些记录按新值参与比较：彼此之间不能重复，也不能与语句没有改动的记录重复，它们原来的索引项不算冲突
+     * （如 UPDATE t SET u = u + 1 不会因为逐条更新时的中间状态而失败）；在写入任何记录之前检查，失败时表不变
+     */
+    private void ensureUniqueIndexes(Table table, List<Record> records, List<Long> positions) {
+        Set<Long> replaced = new HashSet<>();
+        for (Long position : positions) {
+            if (position != null) {
+                replaced.add(position);
+            }
+        }
+        for (Index idx : table.getIndexes().values()) {
+            if (!idx.isUnique()) {
+                continue;
+            }
+            Set<Object> keys = new HashSet<>();
+            for (Record record : records) {
+                Object key = idx.getKey(table, record);
+                if (Index.containsNull(key)) {
+                    continue;
+                }
+                boolean duplicate = !keys.add(key);
+                if (!duplicate) {
+                    for (Long position : idx.find(key)) {
+                        if (!replaced.contains(position)) {
+                            duplicate = true;
+                            break;
+                        }
+                    }
+                }
+                if (duplicate) {
+                    if (Index.PRIMARY_KEY_NAME.equals(idx.getIndexName())) {
+                        throw new DBMSException("Duplicate primary key detected: " +
+                            (key instanceof List ? key : Collections.singletonList(key)));
+                    }
+                    throw new DBMSException("Duplicate key in unique index " + idx.getIndexName() + ": " + key);
+                }
+            }
+        }
+    }
+    
     /**
      * 检查主键唯一（excludePosition 用于 UPDATE 时跳过自身）
+     * 有主键索引时已由 ensureUniqueIndexes 检查；没有时（如主键索引还未建立）在页上扫描
+     * 主键列上有布隆过滤器索引时：取值一定不在表中则不必扫描，否则只扫描可能含该取值的页
      */
     private void ensurePrimaryKeyUnique(Table table, Record record, Long excludePosition) {
         List<Field> pkFields = getPrimaryKeyFields(table);
-        if (pkFields == null || pkFields.isEmpty()) {
+        if (pkFields == null || pkFields.isEmpty() || table.getIndex(Index.PRIMARY_KEY_NAME) != null) {
             return;
         }
 
@@ -80,30 +129,50 @@ public class DMLExecutor {
             pkValues.add(record.getValue(table, f.getName()));
         }
 
+        // 主键列在记录中的下标
+        int[] pkColumns = new int[pkFields.size()];
+        boolean[] scanColumns = new boolean[table.getFieldCount()];
+        for (int k = 0; k < pkFields.size(); k++) {
+            pkColumns[k] = table.getFields().indexOf(pkFields.get(k));
+            scanColumns[pkColumns[k]] = true;
+        }
+
+        List<Index> filters = new ArrayList<>();
+        List<Object> filterValues = new ArrayList<>();
+        for (int k = 0; k < pkFields.size(); k++) {
+            Index bloom = table.getBloomFilter(pkFields.get(k).getName());
+            Object value = Index.toKeyValue(pkFields.get(k).getType(), pkValues.get(k));
+            if (bloom != null && value != null) {
+                if (!bloom.mightContain(value)) {
+                    return;
+                }
+                filters.add(bloom);
+                filterValues.add(value);
+            }
+        }
+        DATFileManager.PageFilter pages = filters.isEmpty() ? null : pageNo -> {
+            for (int i = 0; i < filters.size(); i++) {
+                if (!filters.get(i).mightContain(filterValues.get(i), pageNo)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+        
+        // 直接在页上按列比较主键，不为每条记录创建 Record（列存表只读主键列）
         String tableDataFile = getTableDataFilePath(table.getName());
         try {
-            List<Record> records = DATFileManager.readAllRecords(tableDataFile, table);
-            List<Long> positions = getRecordPositions(tableDataFile, table);
-            int n = Math.min(records.size(), positions.size());
-            for (int i = 0; i < n; i++) {
-                Long pos = positions.get(i);
-                if (excludePosition != null && Objects.equals(pos, excludePosition)) {
-                    continue; // 跳过自身（UPDATE 场景）
+            DATFileManager.scanRecords(tableDataFile, table, scanColumns, pages, (pos, codec) -> {
+                if (excludePosition != null && pos == excludePosition) {
+                    return; // 跳过自身（UPDATE 场景）
                 }
-                Record r = records.get(i);
-                boolean same = true;
-                for (int k = 0; k < pkFields.size(); k++) {
-                    Field f = pkFields.get(k);
-                    Object rv = r.getValue(table, f.getName());
-                    if (!Objects.equals(rv, pkValues.get(k))) {
-                        same = false;
-                        break;
+                for (int k = 0; k < pkColumns.length; k++) {
+                    if (!codec.valueEquals(pkColumns[k], pkValues.get(k))) {
+                        return;
                     }
                 }
-                if (same) {
-                    throw new DBMSException("Duplicate primary key detected: " + pkValues);
-                }
-            }
+                throw new DBMSException("Duplicate primary key detected: " + pkValues);
+            });
         } catch (IOException e) {
             throw new DBMSException("Failed to check primary key uniqueness: " + e.getMessage(), e);
         }
@@ -117,10 +186,7 @@ public class DMLExecutor {
             return;
         }
         for (Index idx : table.getIndexes().values()) {
-            Object v = record.getValue(table, idx.getColumnName());
-            if (v != null) {
-                idx.addIndexEntry(v, position);
-            }
+            idx.addRecord(table, record, position);
         }
     }
     
@@ -132,30 +198,19 @@ public class DMLExecutor {
             return;
         }
         for (Index idx : table.getIndexes().values()) {
-            Object v = record.getValue(table, idx.getColumnName());
-            if (v != null) {
-                idx.removeIndexEntry(v, position);
-            }
+            idx.removeRecord(table, record, position);
         }
     }
     
     /**
-     * 索引维护：更新（先删旧值，再加新值）
+     * 索引维护：更新（索引列或包含列变了时先删旧索引项，再加新索引项）
      */
     private void updateIndexesOnUpdate(Table table, Record oldRecord, Record newRecord, long position) {
         if (table.getIndexes() == null || table.getIndexes().isEmpty()) {
             return;
         }
         for (Index idx : table.getIndexes().values()) {
-            String col = idx.getColumnName();
-            Object oldV = oldRecord.getValue(table, col);
-            Object newV = newRecord.getValue(table, col);
-            if (oldV != null) {
-                idx.removeIndexEntry(oldV, position);
-            }
-            if (newV != null) {
-                idx.addIndexEntry(newV, position);
-            }
+            idx.updateRecord(table, oldRecord, newRecord, position);
         }
     }
     
@@ -330,6 +385,7 @@ public class DMLExecutor {
         List<Field> pkFields = getPrimaryKeyFields(table);
         ensurePrimaryKeyNonNull(record, table, pkFields);
         ensurePrimaryKeyUnique(table, record, null);
+        ensureUniqueIndexes(table, Collections.singletonList(record), Collections.singletonList(null));
         
         // 写入文件
         try {
@@ -401,6 +457,7 @@ public class DMLExecutor {
         
         // 验证记录
         Validator.validateRecord(record, table);
+        ensureUniqueIndexes(table, Collections.singletonList(record), Collections.singletonList(null));
         
         // 写入文件
         try {
@@ -437,18 +494,7 @@ public class DMLExecutor {
         try {
             String tableDataFile = getTableDataFilePath(tableName);
             List<Record> records = DATFileManager.readAllRecords(tableDataFile, table);
-            List<Long> positions = getRecordPositions(tableDataFile, table);
-            
-            // 确保 positions 和 records 大小一致
-            if (records.size() != positions.size()) {
-                // 如果大小不一致，重新获取位置（可能文件状态发生了变化）
-                positions = getRecordPositions(tableDataFile, table);
-                // 如果仍然不一致，记录警告
-                if (records.size() != positions.size()) {
-                    System.err.println("Warning: Records size (" + records.size() + 
-                        ") != Positions size (" + positions.size() + ")");
-                }
-            }
+            List<Long> positions = getRecordPositions(records);
             
             int deletedCount = 0;
             // positions 和 records 现在应该一一对应（都只包含未删除的记录）
@@ -474,6 +520,10 @@ public class DMLExecutor {
                             ));
                         }
                         DATFileManager.deleteRecord(tableDataFile, position);
+                        if (transactionManager == null || !transactionManager.hasActiveTransaction()) {
+                            // 不在事务中可以立即回收空间；事务中的删除在提交时回收（回滚需要原记录）
+                            DATFileManager.reclaimRecord(tableDataFile, position);
+                        }
                         deletedCount++;
                     } else {
                         // 这种情况不应该发生，但如果发生了，记录警告
@@ -506,21 +556,19 @@ public class DMLExecutor {
         try {
             String tableDataFile = getTableDataFilePath(tableName);
             List<Record> records = DATFileManager.readAllRecords(tableDataFile, table);
-            List<Long> positions = getRecordPositions(tableDataFile, table);
+            List<Long> positions = getRecordPositions(records);
             
-            // 确保 positions 列表大小与 records 列表一致
-            if (positions.size() != records.size()) {
-                // 重新计算位置
-                positions = getRecordPositions(tableDataFile, table);
-            }
-            
-            int updatedCount = 0;
+            // 先计算所有要更新的记录的新值并检查，再统一写回（唯一性按整条语句的结果检查）
+            List<Integer> matched = new ArrayList<>();
+            List<Record> oldRecords = new ArrayList<>();
+            List<Record> newRecords = new ArrayList<>();
+            List<Long> oldPositions = new ArrayList<>();
+            List<Field> pkFields = getPrimaryKeyFields(table);
             for (int i = 0; i < records.size(); i++) {
                 Record record = records.get(i);
                 if (!record.isDeleted() && (condition == null || condition.matches(record, table))) {
                     // 记录旧值（用于索引维护和可选的事务日志）
                     Record oldRecordCopy = shallowCopyRecord(record);
-                    List<Field> pkFields = getPrimaryKeyFields(table);
                     
                     // 更新字段值
                     for (int j = 0; j < columnNames.size(); j++) {
@@ -646,36 +694,46 @@ public class DMLExecutor {
                         record.setValue(fieldIndex, value);
                     }
 
-                    // 主键非空 & 唯一性（基于更新后的记录，排除自身位置）
+                    // 主键非空
                     ensurePrimaryKeyNonNull(record, table, pkFields);
-                    long selfPos = i < positions.size() ? positions.get(i) : -1;
-                    ensurePrimaryKeyUnique(table, record, selfPos >= 0 ? selfPos : null);
 
                     // 验证记录
                     Validator.validateRecord(record, table);
                     
-                    // 写回文件（确保索引有效）
-                    if (i < positions.size()) {
-                        long position = positions.get(i);
-                        DATFileManager.writeRecordAt(tableDataFile, position, record, table);
-                        // 维护索引：按旧值/新值更新
-                        updateIndexesOnUpdate(table, oldRecordCopy == null ? record : oldRecordCopy, record, position);
-                        // 写日志（在写回成功之后记录新值）
-                        if (transactionManager != null && transactionManager.hasActiveTransaction() && oldRecordCopy != null) {
+                    matched.add(i);
+                    oldRecords.add(oldRecordCopy);
+                    newRecords.add(record);
+                    oldPositions.add(i < positions.size() ? positions.get(i) : null);
+                }
+            }
+            ensureUniqueIndexes(table, newRecords, oldPositions);
+            
+            int updatedCount = 0;
+            for (int k = 0; k < matched.size(); k++) {
+                int i = matched.get(k);
+                Record record = newRecords.get(k);
+                Record oldRecordCopy = oldRecords.get(k);
+                // 主键唯一性（没有主键索引时逐条检查，排除自身位置）
+                long selfPos = i < positions.size() ? positions.get(i) : -1;
+                ensurePrimaryKeyUnique(table, record, selfPos >= 0 ? selfPos : null);
+                
+                // 写回文件（确保索引有效）
+                if (i < positions.size()) {
+                    long position = positions.get(i);
+                    long newPos = DATFileManager.updateRecord(tableDataFile, position, record, table);
+                    if (newPos != position) {
+                        // 原页放不下，记录被移到其他页：按删除旧位置 + 插入新位置维护索引和日志
+                        updateIndexesOnDelete(table, oldRecordCopy == null ? record : oldRecordCopy, position);
+                        updateIndexesOnInsert(table, record, newPos);
+                        if (transactionManager != null && transactionManager.hasActiveTransaction()) {
                             transactionManager.recordOperation(new com.dbms.util.Transaction.TransactionOperation(
-                                com.dbms.util.Transaction.TransactionOperation.OperationType.UPDATE,
+                                Transaction.TransactionOperation.OperationType.DELETE,
                                 tableName,
                                 tableDataFile,
-                                oldRecordCopy,
-                                shallowCopyRecord(record),
+                                null,
+                                null,
                                 position
                             ));
-                        }
-                    } else {
-                        // 如果位置列表不匹配，追加记录
-                        long newPos = DATFileManager.appendRecord(tableDataFile, record, table);
-                        // 追加写入时，回滚时按INSERT处理（逻辑删除）
-                        if (transactionManager != null && transactionManager.hasActiveTransaction()) {
                             transactionManager.recordOperation(new com.dbms.util.Transaction.TransactionOperation(
                                 com.dbms.util.Transaction.TransactionOperation.OperationType.INSERT,
                                 tableName,
@@ -684,10 +742,41 @@ public class DMLExecutor {
                                 shallowCopyRecord(record),
                                 newPos
                             ));
+                        } else {
+                            DATFileManager.reclaimRecord(tableDataFile, position);
                         }
+                        updatedCount++;
+                        continue;
+                    }
+                    // 维护索引：按旧值/新值更新
+                    updateIndexesOnUpdate(table, oldRecordCopy == null ? record : oldRecordCopy, record, position);
+                    // 写日志（在写回成功之后记录新值）
+                    if (transactionManager != null && transactionManager.hasActiveTransaction() && oldRecordCopy != null) {
+                        transactionManager.recordOperation(new Transaction.TransactionOperation(
+                            Transaction.TransactionOperation.OperationType.UPDATE,
+                            tableName,
+                            tableDataFile,
+                            oldRecordCopy,
+                            shallowCopyRecord(record),
+                            position
+                        ));
+                    }
+                } else {
+                    // 如果位置列表不匹配，追加记录
+                    long newPos = DATFileManager.appendRecord(tableDataFile, record, table);
+                    // 追加写入时，回滚时按INSERT处理（逻辑删除）
+                    if (transactionManager != null && transactionManager.hasActiveTransaction()) {
+                        transactionManager.recordOperation(new Transaction.TransactionOperation(
+                            Transaction.TransactionOperation.OperationType.INSERT,
+                            tableName,
+                            tableDataFile,
+                            null,
+                            shallowCopyRecord(record),
+                            newPos
+                        ));
                     }
-                    updatedCount++;
                 }
+                updatedCount++;
             }
             
             return updatedCount;
@@ -697,40 +786,28 @@ public class DMLExecutor {
     }
     
     /**
-     * 获取所有记录位置（用于更新和删除）
-     * 只返回未删除记录的位置，与 readAllRecords 保持一致
+     * 获取记录位置列表（用于更新和删除）
+     * readAllRecords 返回的记录已带有位置（recordId），不需要再扫描一遍文件
      */
-    private List<Long> getRecordPositions(String filePath, Table table) throws IOException {
-        List<Long> positions = new ArrayList<>();
-        
-        // 如果文件不存在，返回空列表
-        java.io.File file = new java.io.File(filePath);
-        if (!file.exists() || file.length() == 0) {
-            return positions;
+    private List<Long> getRecordPositions(List<Record> records) {
+        List<Long> positions = new ArrayList<>(records.size());
+        for (Record record : records) {
+            positions.add(record.getRecordId());
         }
+        return positions;
+    }
+    
+    /**
+     * LIKE 模式和编译后的正则（不可变，多个线程共用同一条件时不会读到不配对的模式和正则）
+     */
+    private static class LikePattern {
+        final String source;
+        final Pattern regex;
         
-        // 使用与 readAllRecords 相同的方式读取记录，确保逻辑一致
-        // 对于 VARCHAR 等变长字段，不能简单地使用固定大小跳过
-        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(filePath, "r");
-        long fileLength = raf.length();
-        
-        while (raf.getFilePointer() < fileLength) {
-            try {
-                long position = raf.getFilePointer();
-                // 使用 readRecord 方法读取记录（与 readAllRecords 保持一致）
-                // 这样可以正确处理变长字段（VARCHAR）
-                com.dbms.model.Record record = com.dbms.storage.DATFileManager.readRecord(raf, table);
-                // 只记录未删除的记录位置
-                if (!record.isDeleted()) {
-                    positions.add(position);
-                }
-            } catch (java.io.EOFException e) {
-                break;
-            }
+        LikePattern(String source) {
+            this.source = source;
+            this.regex = Pattern.compile(source.replace("%", ".*").replace("_", "."));
         }
-        
-        raf.close();
-        return positions;
     }
     
     /**
@@ -743,6 +820,7 @@ public class DMLExecutor {
         public Object minValue;  // BETWEEN 的最小值
         public Object maxValue;  // BETWEEN 的最大值
         public com.dbms.parser.SQLParser.SelectStatement subquery;  // 子查询（用于IN子句）
+        private LikePattern likePattern;  // 最近一次 LIKE 匹配编译的正则
         
         public QueryCondition(String columnName, String operator, Object value) {
             this.columnName = columnName;
@@ -830,8 +908,7 @@ public class DMLExecutor {
                     return compare(recordValue, value) >= 0;
                 case "LIKE":
                     if (recordValue instanceof String && value instanceof String) {
-                        String pattern = ((String) value).replace("%", ".*").replace("_", ".");
-                        return ((String) recordValue).matches(pattern);
+                        return matchesLike((String) recordValue, (String) value);
                     }
                     return false;
                 default:
@@ -839,6 +916,18 @@ public class DMLExecutor {
             }
         }
         
+        /**
+         * LIKE 匹配：% 和 _ 换成 .* 和 . 后按正则完整匹配；同一模式编译一次，逐行匹配时复用
+         */
+        public boolean matchesLike(String value, String pattern) {
+            LikePattern cached = likePattern;
+            if (cached == null || !cached.source.equals(pattern)) {
+                cached = new LikePattern(pattern);
+                likePattern = cached;
+            }
+            return cached.regex.matcher(value).matches();
+        }
+        
         /**
          * 比较两个值（支持数字类型转换）
          */
@@ -1,16 +1,25 @@
 package com.dbms.engine;
 
+import com.dbms.model.ColumnDictionary;
 import com.dbms.model.Field;
+import com.dbms.model.FieldType;
 import com.dbms.model.Index;
+import com.dbms.model.PositionSet;
+import com.dbms.model.PostingList;
+import com.dbms.model.RecordBitmap;
 import com.dbms.model.Record;
 import com.dbms.model.Table;
 import com.dbms.parser.SQLParser;
 import com.dbms.storage.DATFileManager;
+import com.dbms.storage.RecordCodec;
+import com.dbms.storage.ZoneMap;
 import com.dbms.util.DBMSException;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.stream.Collectors;
 
 /**
@@ -20,12 +29,35 @@ public class QueryExecutor {
     
     private DDLExecutor ddlExecutor;
     private String baseDatFilePath;  // 基础数据文件路径（用于生成表特定的路径）
+    private List<String> plan;  // EXPLAIN 时记录执行计划的各步，否则为null
     
     public QueryExecutor(DDLExecutor ddlExecutor, String baseDatFilePath) {
         this.ddlExecutor = ddlExecutor;
         this.baseDatFilePath = baseDatFilePath;
     }
     
+    /**
+     * 开始记录执行计划（EXPLAIN），之后执行的查询把访问路径、读取和跳过的页数等记入计划
+     */
+    public void beginExplain() {
+        plan = new ArrayList<>();
+    }
+    
+    /**
+     * 结束记录，返回记录下的执行计划
+     */
+    public List<String> endExplain() {
+        List<String> result = plan;
+        plan = null;
+        return result == null ? new ArrayList<>() : result;
+    }
+    
+    private void explain(String step) {
+        if (plan != null) {
+            plan.add(step);
+        }
+    }
+    
     /**
      * 获取表的数据文件路径
      */
@@ -113,12 +145,51 @@ public class QueryExecutor {
             String tableDataFile = getTableDataFilePath(tableName);
             System.out.println("SELECT: 从文件读取数据: " + tableDataFile);
             
-            // 优先尝试使用索引获取记录（仅支持单表等值查询）
-            List<Record> allRecords = tryReadUsingIndex(table, whereCondition, tableDataFile);
+            // 查询引用到的列（含子查询时为null）
+            boolean[] referencedColumns = getReferencedColumns(table, selectedColumns,
+                whereCondition, groupByColumns, orderByColumns, subqueryColumns);
+            
+            // 优先尝试使用索引获取记录（等值条件，或 B+树索引上的范围条件）
+            IndexScan indexScan = tryReadUsingIndex(table, whereCondition, tableDataFile, referencedColumns);
+            List<Record> allRecords = indexScan != null ? indexScan.records : null;
+            // 不按索引读取时，用区域映射跳过取值范围不可能满足 WHERE 的页（列存表为块）
+            ZoneFilter zones = allRecords == null ? zoneFilter(table, whereCondition, tableDataFile) : null;
             if (allRecords == null) {
-                allRecords = DATFileManager.readAllRecords(tableDataFile, table);
+                // 有布隆过滤器的列上的等值条件：取值一定不在表中时不读取数据文件，否则只读可能含该取值的页
+                allRecords = tryReadUsingBloomFilters(table, whereCondition, tableDataFile, zones);
+            }
+            if (allRecords == null) {
+                // 字典编码列的等值条件：扫描时只比较取值编号
+                allRecords = tryReadUsingDictionary(table, whereCondition, tableDataFile, zones);
+            }
+            QueryResult scanAggregate = null;
+            if (allRecords == null && hasAggregate) {
+                // 不分组的聚合：扫描时在编解码器上累加，不创建 Record
+                scanAggregate = tryAggregateUsingScan(table, selectedColumns, groupByColumns, whereCondition,
+                    tableDataFile, zones);
+            }
+            CodecPredicate predicate = allRecords == null && scanAggregate == null && !table.isColumnar()
+                ? CodecPredicate.compile(table, whereCondition) : null;
+            if (predicate != null) {
+                // 数值列与常量的比较：在编解码器上按列判断，只解码满足条件的记录
+                allRecords = DATFileManager.readMatchingRecords(tableDataFile, table, zones, predicate);
+                explain("Seq scan on " + table.getName() + " filtering encoded records");
+            }
+            if (allRecords == null && scanAggregate == null) {
+                // 列存表只读取查询引用到的列
+                boolean[] columns = table.isColumnar() ? referencedColumns : null;
+                allRecords = DATFileManager.readAllRecords(tableDataFile, table, columns, zones);
+                explain("Seq scan on " + table.getName() + (table.isColumnar() ? " (columnar)" : ""));
+            }
+            if (zones != null) {
+                System.out.println("SELECT: 区域映射跳过 " + zones.skipped + "/" + zones.checked + " " + zones.unit);
+                explain("Zone map: skipped " + zones.skipped + " of " + zones.checked + " " + zones.unit);
+            }
+            if (scanAggregate != null) {
+                return scanAggregate;
             }
             System.out.println("SELECT: 读取到 " + allRecords.size() + " 条记录");
+            explain("Rows read: " + allRecords.size());
             
             // 过滤记录
             List<Record> filteredRecords = new ArrayList<>();
@@ -191,7 +262,10 @@ public class QueryExecutor {
             // 排序
             System.out.println("准备排序 - orderByColumns: " + 
                 (orderByColumns == null ? "null" : (orderByColumns.isEmpty() ? "empty" : orderByColumns.size() + " items")));
-            if (orderByColumns != null && !orderByColumns.isEmpty()) {
+            if (orderByColumns != null && !orderByColumns.isEmpty() &&
+                isInIndexOrder(indexScan, orderByColumns, selectedColumns)) {
+                System.out.println("跳过排序 - 记录已按B+树索引的顺序读取");
+            } else if (orderByColumns != null && !orderByColumns.isEmpty()) {
                 System.out.println("调用sortResultData...");
                 sortResultData(resultData, selectedColumns, orderByColumns, table);
             } else {
@@ -234,6 +308,7 @@ public class QueryExecutor {
                 String tableDataFile = getTableDataFilePath(tableName);
                 List<Record> records = DATFileManager.readAllRecords(tableDataFile, table);
                 tableRecords.add(records);
+                explain("Seq scan on " + tableName + " for join: " + records.size() + " row(s)");
             } catch (IOException e) {
                 throw new DBMSException("Failed to read table " + tableName + ": " + e.getMessage(), e);
             }
@@ -374,19 +449,21 @@ public class QueryExecutor {
             Table table2 = tables.get(1);
             List<Record> records1 = tableRecords.get(0);
             List<Record> records2 = tableRecords.get(1);
+            List<JoinKeyMatcher> matchers = new ArrayList<>();
+            if (joinConditions != null) {
+                for (JoinCondition jc : joinConditions) {
+                    matchers.add(new JoinKeyMatcher(table1, jc.leftColumn, table2, jc.rightColumn));
+                }
+            }
             
             for (Record r1 : records1) {
                 for (Record r2 : records2) {
                     // 检查连接条件
                     boolean joinMatch = true;
-                    if (joinConditions != null && !joinConditions.isEmpty()) {
-                        for (JoinCondition jc : joinConditions) {
-                            Object v1 = r1.getValue(table1, jc.leftColumn);
-                            Object v2 = r2.getValue(table2, jc.rightColumn);
-                            if (v1 == null || v2 == null || !v1.equals(v2)) {
-                                joinMatch = false;
-                                break;
-                            }
+                    for (JoinKeyMatcher matcher : matchers) {
+                        if (!matcher.matches(r1, r2)) {
+                            joinMatch = false;
+                            break;
                         }
                     }
                     
@@ -419,12 +496,16 @@ public class QueryExecutor {
             List<Record> records2 = tableRecords.get(1);
             
             // 找到前两个表的连接条件
-            List<JoinCondition> firstJoinConditions = new ArrayList<>();
+            List<JoinKeyMatcher> firstMatchers = new ArrayList<>();
             if (joinConditions != null) {
                 for (JoinCondition jc : joinConditions) {
                     if ((jc.leftTable.equals(table1.getName()) || jc.rightTable.equals(table1.getName())) &&
                         (jc.leftTable.equals(table2.getName()) || jc.rightTable.equals(table2.getName()))) {
-                        firstJoinConditions.add(jc);
+                        if (jc.leftTable.equals(table1.getName())) {
+                            firstMatchers.add(new JoinKeyMatcher(table1, jc.leftColumn, table2, jc.rightColumn));
+                        } else {
+                            firstMatchers.add(new JoinKeyMatcher(table1, jc.rightColumn, table2, jc.leftColumn));
+                        }
                     }
                 }
             }
@@ -433,20 +514,10 @@ public class QueryExecutor {
             for (Record r1 : records1) {
                 for (Record r2 : records2) {
                     boolean joinMatch = true;
-                    if (!firstJoinConditions.isEmpty()) {
-                        for (JoinCondition jc : firstJoinConditions) {
-                            Object v1, v2;
-                            if (jc.leftTable.equals(table1.getName())) {
-                                v1 = r1.getValue(table1, jc.leftColumn);
-                                v2 = r2.getValue(table2, jc.rightColumn);
-                            } else {
-                                v1 = r1.getValue(table1, jc.rightColumn);
-                                v2 = r2.getValue(table2, jc.leftColumn);
-                            }
-                            if (v1 == null || v2 == null || !v1.equals(v2)) {
-                                joinMatch = false;
-                                break;
-                            }
+                    for (JoinKeyMatcher matcher : firstMatchers) {
+                        if (!matcher.matches(r1, r2)) {
+                            joinMatch = false;
+                            break;
                         }
                     }
                     
@@ -671,58 +742,924 @@ public class QueryExecutor {
     }
     
     /**
-     * 尝试使用索引获取记录（仅支持单表、单一等值条件）
-     * 返回 null 表示无法使用索引，调用方应退回全表扫描
+     * 通过索引读取的记录
+     */
+    private static class IndexScan {
+        final List<Record> records;
+        final String orderColumn;  // 记录已按该列升序排列（B+树索引），否则为null
+        
+        IndexScan(List<Record> records, String orderColumn) {
+            this.records = records;
+            this.orderColumn = orderColumn;
+        }
+    }
+    
+    /**
+     * 尝试使用索引获取记录（单表；WHERE 为单个条件或 AND 连接的条件，按其中一个索引读取，
+     * 其他每一列都有等值条件的哈希索引取倒排表的交集，跳过不在交集中的位置）
+     * 位图索引按整个 WHERE 条件树（含 OR）求位图的交集、并集，N-gram 索引同样求出 LIKE 条件的候选位置，
+     * 两者的交集比所选索引读出的位置少时按这些位置读取，否则用于跳过位置
+     * 索引列从第一列起连续有等值条件的列数越多越好，B+树索引在其后的一列上还可以使用 <、>、<=、>=、BETWEEN
+     * 和 LIKE '前缀%'（同一列上的多个范围条件合并为一个区间）；哈希索引要求每个索引列都有等值条件
+     * 查询引用到的列都在索引中（索引列和包含列）时直接由索引项构造记录，不读取数据文件
+     * 返回的记录仍需由调用方按完整的 WHERE 条件过滤；返回 null 表示无法使用索引，调用方应退回全表扫描
      */
-    private List<Record> tryReadUsingIndex(Table table, SQLParser.WhereCondition whereCondition, String tableDataFile) {
+    private IndexScan tryReadUsingIndex(Table table, SQLParser.WhereCondition whereCondition, String tableDataFile,
+                                        boolean[] referencedColumns) {
         try {
-            if (whereCondition == null || !whereCondition.isLeaf || whereCondition.condition == null) {
+            List<DMLExecutor.QueryCondition> conditions = new ArrayList<>();
+            collectAndConditions(whereCondition, conditions);
+            
+            // 按条件的顺序考察以条件列为第一列的索引，匹配程度相同时取先找到的
+            IndexMatch best = null;
+            for (DMLExecutor.QueryCondition cond : conditions) {
+                for (Index candidate : table.getIndexes().values()) {
+                    if (candidate.isBitmap() || candidate.isBloom() || candidate.isNgram() ||
+                        !candidate.getColumnName().equalsIgnoreCase(stripTablePrefix(cond.columnName))) {
+                        continue;
+                    }
+                    IndexMatch match = matchIndex(table, candidate, conditions);
+                    if (match != null && (best == null || match.isBetterThan(best))) {
+                        best = match;
+                    }
+                }
+            }
+            RecordBitmap bitmap = evaluateBitmaps(table, whereCondition);
+            PositionSet ngrams = evaluateNgrams(table, whereCondition);
+            if (best == null && bitmap == null && ngrams == null) {
                 return null;
             }
+            PositionSet candidates = ngrams == null ? bitmap : bitmap == null ? ngrams : PostingList.intersect(bitmap, ngrams);
+            List<Index.Entry> entries = best == null ? null : best.findEntries();
+            List<Record> records = new ArrayList<>();
+            if (entries == null || (candidates != null && candidates.size() < entries.size())) {
+                // 按位图和 N-gram 索引得到的位置（即记录在数据文件中的顺序）读取
+                explain((ngrams == null ? "Bitmap" : bitmap == null ? "N-gram" : "Bitmap and n-gram") +
+                    " index scan on " + table.getName() + ": " + candidates.size() + " position(s)");
+                for (PrimitiveIterator.OfLong it = candidates.iterator(); it.hasNext(); ) {
+                    readRecordAt(tableDataFile, table, it.nextLong(), records);
+                }
+                return new IndexScan(records, null);
+            }
+            Index idx = best.index;
+            
+            boolean covering = coversColumns(table, idx, referencedColumns);
+            PositionSet filter = covering || entries.size() <= 1 ? null : intersectHashIndexes(table, idx, conditions);
+            if (candidates != null && !covering) {
+                filter = filter == null ? candidates : PostingList.intersect(filter, candidates);
+            }
+            explain((covering ? "Index only scan" : "Index scan") + " using " + idx.getIndexName() + " (" +
+                idx.getType() + ") on " + table.getName() + ": " + entries.size() + " entr" +
+                (entries.size() == 1 ? "y" : "ies") + (filter != null ? ", filtered by other indexes" : ""));
+            for (Index.Entry entry : entries) {
+                long pos = entry.position;
+                if (covering && entry.included.length == idx.getIncludeColumns().size()) {
+                    records.add(recordFromEntry(table, idx, entry));
+                    continue;
+                }
+                if (filter == null || filter.contains(pos)) {
+                    readRecordAt(tableDataFile, table, pos, records);
+                }
+            }
+            return new IndexScan(records, best.orderColumn());
+        } catch (Exception e) {
+            // 任何异常都回退全表扫描
+            System.err.println("tryReadUsingIndex fallback to full scan: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 读取索引项指向的记录（已删除的跳过）
+     */
+    private static void readRecordAt(String tableDataFile, Table table, long pos, List<Record> records) {
+        try {
+            Record r = DATFileManager.readRecordAt(tableDataFile, pos, table);
+            if (r != null && !r.isDeleted()) {
+                records.add(r);
+            }
+        } catch (IOException e) {
+            // 单条读取失败时忽略该条
+            System.err.println("Index read failed at position " + pos + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 用位图索引计算 WHERE 条件树：列上有位图索引的单个条件得到满足它的记录位置，AND 求交集，OR 求并集
+     * AND 的一边不能计算时只用另一边（得到的是满足条件的记录的超集，读出后仍按 WHERE 过滤）；
+     * OR 的任一边不能计算时整体不能计算；返回null表示不能使用位图索引
+     */
+    private static RecordBitmap evaluateBitmaps(Table table, SQLParser.WhereCondition whereCondition) {
+        if (whereCondition == null) {
+            return null;
+        }
+        if (whereCondition.isLeaf) {
             DMLExecutor.QueryCondition cond = whereCondition.condition;
-            if (!"=".equals(cond.operator)) {
-                return null;
+            return cond == null || cond.subquery != null || cond.columnName == null ? null : bitmapFor(table, cond);
+        }
+        RecordBitmap left = evaluateBitmaps(table, whereCondition.left);
+        RecordBitmap right = evaluateBitmaps(table, whereCondition.right);
+        if (whereCondition.logicOp == SQLParser.WhereCondition.LogicOp.AND) {
+            return left == null ? right : right == null ? left : RecordBitmap.and(left, right);
+        }
+        return left == null || right == null ? null : RecordBitmap.or(left, right);
+    }
+    
+    /**
+     * 满足单个条件的记录位置：等值条件为该取值的位图，!=、<、>、BETWEEN、LIKE '前缀%' 为符合条件的各取值的位图的并集
+     * （NULL 不在位图索引中，也不满足这些条件）；列上没有位图索引或条件不适用时返回null
+     */
+    private static RecordBitmap bitmapFor(Table table, DMLExecutor.QueryCondition cond) {
+        String column = stripTablePrefix(cond.columnName);
+        Index idx = null;
+        for (Index candidate : table.getIndexes().values()) {
+            if (candidate.isBitmap() && candidate.getColumnName().equalsIgnoreCase(column)) {
+                idx = candidate;
+                break;
+            }
+        }
+        if (idx == null) {
+            return null;
+        }
+        Map<Object, PositionSet> bitmaps = idx.getIndexMap();
+        RecordBitmap result = new RecordBitmap();
+        switch (cond.operator) {
+            case "=":
+            case "!=":
+            case "<>": {
+                if (!isComparableKey(table, column, cond.value)) {
+                    return null;
+                }
+                Object value = Index.toKeyValue(table.getFieldByName(column).getType(), cond.value);
+                if (cond.operator.equals("=")) {
+                    PositionSet positions = bitmaps.get(value);
+                    return positions == null ? result : (RecordBitmap) positions;
+                }
+                for (Map.Entry<Object, PositionSet> entry : bitmaps.entrySet()) {
+                    if (Index.compareKeys(entry.getKey(), value) != 0) {
+                        result = RecordBitmap.or(result, (RecordBitmap) entry.getValue());
+                    }
+                }
+                return result;
             }
-            // 排除“列=列”的情况（value 是 table.column 的字符串）
-            if (cond.value instanceof String) {
-                String v = (String) cond.value;
-                if (v.contains(".") && !v.startsWith("'") && !v.endsWith("'")) {
+            default: {
+                KeyRange range = new KeyRange();
+                range.add(table, column, cond);
+                if (!range.bounded) {
                     return null;
                 }
+                if (range.empty) {
+                    return result;
+                }
+                for (Map.Entry<Object, PositionSet> entry : bitmaps.entrySet()) {
+                    if (Index.inRange(entry.getKey(), range.low, range.lowInclusive, range.high, range.highInclusive)) {
+                        result = RecordBitmap.or(result, (RecordBitmap) entry.getValue());
+                    }
+                }
+                return result;
             }
-            // 解析列名（去除表前缀）
-            String colName = cond.columnName;
-            if (colName.contains(".")) {
-                String[] parts = colName.split("\\.", 2);
-                colName = parts[1];
+        }
+    }
+    
+    /**
+     * 用 N-gram 索引计算 WHERE 条件树：列上有 N-gram 索引的 LIKE 条件得到可能满足它的记录位置，
+     * AND 和 OR 的处理同位图索引；返回null表示不能使用 N-gram 索引
+     */
+    private static PositionSet evaluateNgrams(Table table, SQLParser.WhereCondition whereCondition) {
+        if (whereCondition == null) {
+            return null;
+        }
+        if (whereCondition.isLeaf) {
+            DMLExecutor.QueryCondition cond = whereCondition.condition;
+            return cond == null || cond.subquery != null || cond.columnName == null ? null : ngramCandidates(table, cond);
+        }
+        PositionSet left = evaluateNgrams(table, whereCondition.left);
+        PositionSet right = evaluateNgrams(table, whereCondition.right);
+        if (whereCondition.logicOp == SQLParser.WhereCondition.LogicOp.AND) {
+            return left == null ? right : right == null ? left : PostingList.intersect(left, right);
+        }
+        return left == null || right == null ? null : PostingList.union(left, right);
+    }
+    
+    /**
+     * LIKE 条件的候选位置：模式中通配符之间每段不短于三个字符的文字都必须出现在取值中，取各段候选位置的交集
+     * 没有这样的段、模式含正则特殊字符（LIKE 按正则匹配，这些字符不是文字）或列上没有 N-gram 索引时返回null
+     */
+    private static PositionSet ngramCandidates(Table table, DMLExecutor.QueryCondition cond) {
+        String column = stripTablePrefix(cond.columnName);
+        if (!"LIKE".equals(cond.operator) || !isComparableKey(table, column, cond.value)) {
+            return null;
+        }
+        Index idx = null;
+        for (Index candidate : table.getIndexes().values()) {
+            if (candidate.isNgram() && candidate.getColumnName().equalsIgnoreCase(column)) {
+                idx = candidate;
+                break;
             }
-            Index idx = table.getIndexByColumn(colName);
-            if (idx == null) {
+        }
+        if (idx == null) {
+            return null;
+        }
+        String pattern = (String) cond.value;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (".[]()*+?^$\\{}|".indexOf(pattern.charAt(i)) >= 0) {
                 return null;
             }
-            List<Long> positions = idx.find(cond.value);
-            if (positions == null || positions.isEmpty()) {
-                return new ArrayList<>(); // 索引命中为空
+        }
+        PositionSet result = null;
+        for (String literal : pattern.split("[%_]")) {
+            PositionSet positions = idx.findContaining(literal);
+            if (positions != null) {
+                result = result == null ? positions : PostingList.intersect(result, positions);
             }
-            List<Record> records = new ArrayList<>();
-            for (Long pos : positions) {
-                if (pos == null) continue;
-                try {
-                    Record r = DATFileManager.readRecordAt(tableDataFile, pos, table);
-                    if (r != null && !r.isDeleted()) {
-                        records.add(r);
+        }
+        return result;
+    }
+    
+    /**
+     * 索引与 WHERE 条件的匹配：前几个索引列的等值条件值，以及紧接其后的一列上的区间（可以没有）
+     */
+    private static class IndexMatch {
+        final Index index;
+        final List<Object> prefix;
+        final KeyRange range;
+        
+        IndexMatch(Index index, List<Object> prefix, KeyRange range) {
+            this.index = index;
+            this.prefix = prefix;
+            this.range = range;
+        }
+        
+        boolean isBetterThan(IndexMatch other) {
+            if (prefix.size() != other.prefix.size()) {
+                return prefix.size() > other.prefix.size();
+            }
+            return range != null && other.range == null;
+        }
+        
+        List<Index.Entry> findEntries() {
+            if (range != null && range.empty) {
+                return new ArrayList<>();
+            }
+            if (!index.isComposite()) {
+                return range == null ? index.findEntries(prefix.get(0), true, prefix.get(0), true)
+                    : index.findEntries(range.low, range.lowInclusive, range.high, range.highInclusive);
+            }
+            // 多列索引：边界为等值前缀加上区间端点，区间一端不限时只用前缀限定
+            if (range == null) {
+                return index.findEntries(prefix, true, prefix, true);
+            }
+            return index.findEntries(bound(range.low), range.low == null || range.lowInclusive,
+                                     bound(range.high), range.high == null || range.highInclusive);
+        }
+        
+        /**
+         * 每个索引列都有等值条件时的完整键
+         */
+        Object key() {
+            return index.isComposite() ? prefix : prefix.get(0);
+        }
+        
+        private Object bound(Object value) {
+            if (value == null && prefix.isEmpty()) {
+                return null;
+            }
+            List<Object> key = new ArrayList<>(prefix);
+            if (value != null) {
+                key.add(value);
+            }
+            return key;
+        }
+        
+        /**
+         * 读出的索引项已按其排序的列：B+树索引中除最后一列外都有等值条件时，记录按最后一列（再按位置）排列
+         */
+        String orderColumn() {
+            List<String> columns = index.getColumnNames();
+            return index.isOrdered() && prefix.size() >= columns.size() - 1 ? columns.get(columns.size() - 1) : null;
+        }
+    }
+    
+    /**
+     * 除已选用的索引外，每一列都有等值条件的哈希索引的倒排表的交集（没有这样的索引时为null）
+     * 已选用的索引读出的位置不在交集中时一定不满足 WHERE 条件，不必读取记录
+     */
+    private static PositionSet intersectHashIndexes(Table table, Index chosen, List<DMLExecutor.QueryCondition> conditions) {
+        PositionSet result = null;
+        for (Index candidate : table.getIndexes().values()) {
+            if (candidate == chosen || candidate.isOrdered() || candidate.isBitmap() || candidate.isBloom() ||
+                candidate.isNgram()) {
+                continue;
+            }
+            IndexMatch match = matchIndex(table, candidate, conditions);
+            if (match != null) {
+                PositionSet positions = candidate.findPostings(match.key());
+                result = result == null ? positions : PostingList.intersect(result, positions);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 索引能否用于这些条件：哈希索引要求每个索引列都有等值条件，B+树索引要求第一列有等值或范围条件
+     */
+    private static IndexMatch matchIndex(Table table, Index idx, List<DMLExecutor.QueryCondition> conditions) {
+        List<String> columns = idx.getColumnNames();
+        List<Object> prefix = new ArrayList<>();
+        for (String column : columns) {
+            Object value = null;
+            for (DMLExecutor.QueryCondition cond : conditions) {
+                if ("=".equals(cond.operator) && stripTablePrefix(cond.columnName).equalsIgnoreCase(column) &&
+                    isComparableKey(table, column, cond.value)) {
+                    // 哈希索引按 equals 查找，条件值先统一为列类型对应的键类型
+                    value = Index.toKeyValue(table.getFieldByName(column).getType(), cond.value);
+                    break;
+                }
+            }
+            if (value == null) {
+                break;
+            }
+            prefix.add(value);
+        }
+        if (!idx.isOrdered()) {
+            return prefix.size() == columns.size() ? new IndexMatch(idx, prefix, null) : null;
+        }
+        KeyRange range = null;
+        if (prefix.size() < columns.size()) {
+            String column = columns.get(prefix.size());
+            range = new KeyRange();
+            for (DMLExecutor.QueryCondition cond : conditions) {
+                if (stripTablePrefix(cond.columnName).equalsIgnoreCase(column)) {
+                    range.add(table, column, cond);
+                }
+            }
+            if (!range.bounded) {
+                range = null;
+            }
+        }
+        return prefix.isEmpty() && range == null ? null : new IndexMatch(idx, prefix, range);
+    }
+    
+    /**
+     * 查询引用到的列是否都能从索引项中取得（引用列未知时为false）
+     */
+    private static boolean coversColumns(Table table, Index idx, boolean[] referencedColumns) {
+        if (referencedColumns == null) {
+            return false;
+        }
+        for (int i = 0; i < referencedColumns.length; i++) {
+            if (referencedColumns[i] && !idx.covers(table.getFieldByIndex(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 由索引项构造记录：只填索引列和包含列，其余列为null（查询不会引用）
+     */
+    private static Record recordFromEntry(Table table, Index idx, Index.Entry entry) {
+        Record record = new Record(table.getFieldCount());
+        record.setRecordId(entry.position);
+        List<String> columns = idx.getColumnNames();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = idx.isComposite() ? ((List<?>) entry.key).get(i) : entry.key;
+            record.setValue(table.getFields().indexOf(table.getFieldByName(columns.get(i))), value);
+        }
+        List<String> includeColumns = idx.getIncludeColumns();
+        for (int i = 0; i < includeColumns.size(); i++) {
+            record.setValue(table.getFields().indexOf(table.getFieldByName(includeColumns.get(i))), entry.included[i]);
+        }
+        return record;
+    }
+    
+    /**
+     * 收集 AND 连接的各个单一条件（OR 分支中的条件不能单独用于缩小范围，跳过）
+     */
+    private void collectAndConditions(SQLParser.WhereCondition whereCondition, List<DMLExecutor.QueryCondition> conditions) {
+        if (whereCondition == null) {
+            return;
+        }
+        if (whereCondition.isLeaf) {
+            DMLExecutor.QueryCondition cond = whereCondition.condition;
+            if (cond != null && cond.subquery == null && cond.columnName != null) {
+                conditions.add(cond);
+            }
+        } else if (whereCondition.logicOp == SQLParser.WhereCondition.LogicOp.AND) {
+            collectAndConditions(whereCondition.left, conditions);
+            collectAndConditions(whereCondition.right, conditions);
+        }
+    }
+    
+    private static String stripTablePrefix(String colName) {
+        return colName.contains(".") ? colName.split("\\.", 2)[1] : colName;
+    }
+    
+    /**
+     * 条件值是否为常量（排除“列=列”的情况：value 是 table.column 的字符串）
+     */
+    private static boolean isConstant(Object value) {
+        if (value instanceof String) {
+            String v = (String) value;
+            return !(v.contains(".") && !v.startsWith("'") && !v.endsWith("'"));
+        }
+        return value != null;
+    }
+    
+    /**
+     * 条件值能否与索引中的键按同样的规则比较（数值列配数值，字符串列配字符串）
+     */
+    private static boolean isComparableKey(Table table, String column, Object value) {
+        Field field = table.getFieldByName(column);
+        if (field == null || !isConstant(value)) {
+            return false;
+        }
+        switch (field.getType()) {
+            case INT:
+            case FLOAT:
+            case DOUBLE:
+                return value instanceof Number;
+            default:
+                return value instanceof String;
+        }
+    }
+    
+    /**
+     * 由一列上的若干条件合并出的键区间（low/high 为null表示不限）
+     */
+    private static class KeyRange {
+        Object low;
+        boolean lowInclusive;
+        Object high;
+        boolean highInclusive;
+        boolean bounded;  // 至少有一个条件限定了区间
+        boolean empty;    // 区间为空
+        
+        void add(Table table, String column, DMLExecutor.QueryCondition cond) {
+            switch (cond.operator) {
+                case ">":
+                case ">=":
+                    if (isComparableKey(table, column, cond.value)) {
+                        raiseLow(cond.value, cond.operator.equals(">="));
+                    }
+                    break;
+                case "<":
+                case "<=":
+                    if (isComparableKey(table, column, cond.value)) {
+                        lowerHigh(cond.value, cond.operator.equals("<="));
+                    }
+                    break;
+                case "BETWEEN":
+                    if (isComparableKey(table, column, cond.minValue) && isComparableKey(table, column, cond.maxValue)) {
+                        raiseLow(cond.minValue, true);
+                        lowerHigh(cond.maxValue, true);
+                    }
+                    break;
+                case "LIKE":
+                    if (isComparableKey(table, column, cond.value)) {
+                        addLikePrefix((String) cond.value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (low != null && high != null) {
+                int c = Index.compareKeys(low, high);
+                empty = c > 0 || (c == 0 && !(lowInclusive && highInclusive));
+            }
+        }
+        
+        /**
+         * LIKE 模式中通配符之前的前缀：[前缀, 前缀末字符加一)；前缀含正则特殊字符时不使用
+         */
+        private void addLikePrefix(String pattern) {
+            int end = 0;
+            while (end < pattern.length() && pattern.charAt(end) != '%' && pattern.charAt(end) != '_') {
+                if (".[]()*+?^$\\{}|".indexOf(pattern.charAt(end)) >= 0) {
+                    return;
+                }
+                end++;
+            }
+            if (end == 0) {
+                return;
+            }
+            String prefix = pattern.substring(0, end);
+            if (end == pattern.length()) {
+                raiseLow(prefix, true);
+                lowerHigh(prefix, true);
+                return;
+            }
+            raiseLow(prefix, true);
+            char last = prefix.charAt(end - 1);
+            if (last != Character.MAX_VALUE) {
+                lowerHigh(prefix.substring(0, end - 1) + (char) (last + 1), false);
+            }
+        }
+        
+        private void raiseLow(Object value, boolean inclusive) {
+            bounded = true;
+            int c = low == null ? 1 : Index.compareKeys(value, low);
+            if (c > 0 || (c == 0 && !inclusive)) {
+                low = value;
+                lowInclusive = inclusive;
+            }
+        }
+        
+        private void lowerHigh(Object value, boolean inclusive) {
+            bounded = true;
+            int c = high == null ? -1 : Index.compareKeys(value, high);
+            if (c < 0 || (c == 0 && !inclusive)) {
+                high = value;
+                highInclusive = inclusive;
+            }
+        }
+    }
+    
+    /**
+     * ORDER BY 是否正好是 B+树索引列的升序（且该列在选择列中），此时按索引读取的记录无需再排序
+     * （索引中同一个键的记录按位置排列，与全表扫描后稳定排序的结果相同）
+     */
+    private boolean isInIndexOrder(IndexScan indexScan, List<SQLParser.OrderByItem> orderByColumns,
+                                   List<String> selectedColumns) {
+        if (indexScan == null || indexScan.orderColumn == null || orderByColumns.size() != 1) {
+            return false;
+        }
+        SQLParser.OrderByItem item = orderByColumns.get(0);
+        if (!item.ascending || !stripTablePrefix(item.columnName).equalsIgnoreCase(indexScan.orderColumn)) {
+            return false;
+        }
+        for (String colName : selectedColumns) {
+            if (stripTablePrefix(colName).equalsIgnoreCase(indexScan.orderColumn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 按区域映射跳过页（列存表为块）的过滤条件，记录判断过和跳过的页数（用于 EXPLAIN）
+     */
+    private class ZoneFilter implements DATFileManager.PageFilter {
+        final Table table;
+        final ZoneMap zoneMap;
+        final SQLParser.WhereCondition whereCondition;
+        final String unit;
+        int checked;
+        int skipped;
+        
+        ZoneFilter(Table table, ZoneMap zoneMap, SQLParser.WhereCondition whereCondition) {
+            this.table = table;
+            this.zoneMap = zoneMap;
+            this.whereCondition = whereCondition;
+            this.unit = table.isColumnar() ? "block(s)" : "page(s)";
+        }
+        
+        @Override
+        public boolean mightMatch(int pageNo) {
+            checked++;
+            ZoneMap.Zone zone = zoneMap.getZone(pageNo);
+            if (zone != null && zoneMightMatch(zone, whereCondition)) {
+                return true;
+            }
+            skipped++; // 没有区域的页没有记录
+            return false;
+        }
+        
+        /**
+         * 按一页各列的取值范围判断 WHERE 条件是否可能满足：AND/OR 逐层组合，无法判断的条件视为可能满足
+         */
+        private boolean zoneMightMatch(ZoneMap.Zone zone, SQLParser.WhereCondition where) {
+            if (!where.isLeaf) {
+                boolean left = zoneMightMatch(zone, where.left);
+                if (where.logicOp == SQLParser.WhereCondition.LogicOp.AND) {
+                    return left && zoneMightMatch(zone, where.right);
+                }
+                return left || zoneMightMatch(zone, where.right);
+            }
+            DMLExecutor.QueryCondition cond = where.condition;
+            if (cond == null || cond.subquery != null || cond.columnName == null) {
+                return true;
+            }
+            String column = stripTablePrefix(cond.columnName);
+            Field field = table.getFieldByName(column);
+            int col = field == null ? -1 : table.getFields().indexOf(field);
+            if (col < 0 || zone.getNullCount(col) < 0) {
+                return true;
+            }
+            Object min = zone.getMin(col);
+            Object max = zone.getMax(col);
+            switch (cond.operator) {
+                case "=":
+                    if (cond.value == null) {
+                        return zone.getNullCount(col) > 0; // col = NULL 只匹配NULL
+                    }
+                    if (!isComparableKey(table, column, cond.value)) {
+                        return true;
+                    }
+                    return min != null && compareValues(min, cond.value) <= 0 &&
+                        (max == null || compareValues(max, cond.value) >= 0);
+                case "!=":
+                case "<>":
+                    if (!isComparableKey(table, column, cond.value)) {
+                        return true;
+                    }
+                    // NULL 不满足；非NULL值都等于该常量时也不满足
+                    return min != null && !(max != null && compareValues(min, max) == 0 &&
+                        compareValues(min, cond.value) == 0);
+                default:
+                    KeyRange range = new KeyRange();
+                    range.add(table, column, cond);
+                    if (!range.bounded) {
+                        return true;
+                    }
+                    if (range.empty || min == null) {
+                        return false; // 范围条件和 LIKE 都不匹配NULL
                     }
-                } catch (IOException e) {
-                    // 单条读取失败时忽略该条
-                    System.err.println("Index read failed at position " + pos + ": " + e.getMessage());
+                    if (range.low != null && max != null) {
+                        int c = compareValues(max, range.low);
+                        if (c < 0 || (c == 0 && !range.lowInclusive)) {
+                            return false;
+                        }
+                    }
+                    if (range.high != null) {
+                        int c = compareValues(min, range.high);
+                        if (c > 0 || (c == 0 && !range.highInclusive)) {
+                            return false;
+                        }
+                    }
+                    return true;
+            }
+        }
+    }
+    
+    /**
+     * 可以直接在编解码器上求值的 WHERE 条件：数值列与数值常量的比较（=、!=、<>、<、>、<=、>=、BETWEEN）及其 AND/OR 组合
+     * 结果与 matchesWhereCondition 相同（NULL 不满足任何比较），扫描时按列读取原始值，不需要把记录解码为 Record
+     */
+    private static class CodecPredicate implements DATFileManager.RecordFilter {
+        final CodecPredicate left;
+        final CodecPredicate right;
+        final boolean and;
+        final int col;
+        final String operator;
+        final double value;
+        final double maxValue;
+        
+        private CodecPredicate(CodecPredicate left, CodecPredicate right, boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+            this.col = -1;
+            this.operator = null;
+            this.value = 0;
+            this.maxValue = 0;
+        }
+        
+        private CodecPredicate(int col, String operator, double value, double maxValue) {
+            this.left = null;
+            this.right = null;
+            this.and = false;
+            this.col = col;
+            this.operator = operator;
+            this.value = value;
+            this.maxValue = maxValue;
+        }
+        
+        /**
+         * 编译 WHERE 条件；为null或含有不能在编解码器上求值的条件时返回null
+         */
+        static CodecPredicate compile(Table table, SQLParser.WhereCondition where) {
+            if (where == null) {
+                return null;
+            }
+            if (!where.isLeaf) {
+                CodecPredicate left = compile(table, where.left);
+                CodecPredicate right = left == null ? null : compile(table, where.right);
+                return right == null ? null :
+                    new CodecPredicate(left, right, where.logicOp == SQLParser.WhereCondition.LogicOp.AND);
+            }
+            DMLExecutor.QueryCondition cond = where.condition;
+            if (cond == null || cond.subquery != null || cond.columnName == null) {
+                return null;
+            }
+            Field field = table.getFieldByName(stripTablePrefix(cond.columnName));
+            if (field == null || !isNumeric(field)) {
+                return null;
+            }
+            int col = table.getFields().indexOf(field);
+            switch (cond.operator) {
+                case "=":
+                case "!=":
+                case "<>":
+                case "<":
+                case ">":
+                case "<=":
+                case ">=":
+                    if (!(cond.value instanceof Number)) {
+                        return null;
+                    }
+                    return new CodecPredicate(col, cond.operator, ((Number) cond.value).doubleValue(), 0);
+                case "BETWEEN":
+                    if (!(cond.minValue instanceof Number) || !(cond.maxValue instanceof Number)) {
+                        return null;
+                    }
+                    return new CodecPredicate(col, cond.operator, ((Number) cond.minValue).doubleValue(),
+                        ((Number) cond.maxValue).doubleValue());
+                default:
+                    return null;
+            }
+        }
+        
+        @Override
+        public boolean accept(RecordCodec codec) {
+            if (left != null) {
+                boolean result = left.accept(codec);
+                return and ? result && right.accept(codec) : result || right.accept(codec);
+            }
+            if (codec.isNull(col)) {
+                return false;
+            }
+            double v = codec.getDouble(col);
+            int c = Double.compare(v, value);
+            switch (operator) {
+                case "=":
+                    return c == 0;
+                case "!=":
+                case "<>":
+                    return c != 0;
+                case "<":
+                    return c < 0;
+                case ">":
+                    return c > 0;
+                case "<=":
+                    return c <= 0;
+                case ">=":
+                    return c >= 0;
+                default:
+                    return c >= 0 && Double.compare(v, maxValue) <= 0; // BETWEEN
+            }
+        }
+    }
+    
+    private static boolean isNumeric(Field field) {
+        switch (field.getType()) {
+            case INT:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * WHERE 中有可以按区域映射判断的条件时，返回跳过不可能匹配的页（列存表为块）的过滤条件，否则返回null
+     */
+    private ZoneFilter zoneFilter(Table table, SQLParser.WhereCondition whereCondition, String tableDataFile)
+            throws IOException {
+        if (!hasZoneCondition(table, whereCondition)) {
+            return null;
+        }
+        boolean[] columns = new boolean[table.getFieldCount()];
+        markWhereColumns(table, columns, whereCondition);
+        ZoneMap zoneMap = DATFileManager.getZoneMap(tableDataFile, table, columns);
+        return zoneMap == null ? null : new ZoneFilter(table, zoneMap, whereCondition);
+    }
+    
+    /**
+     * WHERE 中是否有本表的列与常量比较的条件（=、!=、<、>、<=、>=、BETWEEN、LIKE）
+     */
+    private boolean hasZoneCondition(Table table, SQLParser.WhereCondition whereCondition) {
+        if (whereCondition == null) {
+            return false;
+        }
+        if (!whereCondition.isLeaf) {
+            return hasZoneCondition(table, whereCondition.left) || hasZoneCondition(table, whereCondition.right);
+        }
+        DMLExecutor.QueryCondition cond = whereCondition.condition;
+        if (cond == null || cond.subquery != null || cond.columnName == null) {
+            return false;
+        }
+        String column = stripTablePrefix(cond.columnName);
+        switch (cond.operator) {
+            case "=":
+                return table.getFieldByName(column) != null &&
+                    (cond.value == null || isComparableKey(table, column, cond.value));
+            case "!=":
+            case "<>":
+                return isComparableKey(table, column, cond.value);
+            default:
+                KeyRange range = new KeyRange();
+                range.add(table, column, cond);
+                return range.bounded;
+        }
+    }
+    
+    /**
+     * 布隆过滤器索引列上的等值条件（单个条件或 AND 连接的条件）：任一取值被表级过滤器判为一定不在表中时直接返回空结果；
+     * 否则（行存表）只读取各取值都可能在其中、且区域映射判为可能匹配（zones 不为null时）的页，返回的记录仍需由调用方按 WHERE 过滤
+     * 没有这样的条件，或列存表上取值可能存在时返回null
+     */
+    private List<Record> tryReadUsingBloomFilters(Table table, SQLParser.WhereCondition whereCondition,
+                                                  String tableDataFile, ZoneFilter zones) throws IOException {
+        List<DMLExecutor.QueryCondition> conditions = new ArrayList<>();
+        collectAndConditions(whereCondition, conditions);
+        List<Index> filters = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (DMLExecutor.QueryCondition cond : conditions) {
+            String column = stripTablePrefix(cond.columnName);
+            Index bloom = "=".equals(cond.operator) ? table.getBloomFilter(column) : null;
+            if (bloom == null || !isComparableKey(table, column, cond.value)) {
+                continue;
+            }
+            Object value = Index.toKeyValue(table.getFieldByName(column).getType(), cond.value);
+            if (!bloom.mightContain(value)) {
+                System.out.println("SELECT: 布隆过滤器 " + bloom.getIndexName() + " 判定 " + value + " 不在表中，不读取数据文件");
+                explain("Bloom filter " + bloom.getIndexName() + ": " + value + " is not in " + table.getName() +
+                    ", data file not read");
+                return new ArrayList<>();
+            }
+            filters.add(bloom);
+            values.add(value);
+        }
+        if (filters.isEmpty() || table.isColumnar()) {
+            return null;
+        }
+        int[] skipped = {0};
+        List<Record> records = DATFileManager.readMatchingRecords(tableDataFile, table, pageNo -> {
+            if (zones != null && !zones.mightMatch(pageNo)) {
+                return false;
+            }
+            for (int i = 0; i < filters.size(); i++) {
+                if (!filters.get(i).mightContain(values.get(i), pageNo)) {
+                    skipped[0]++;
+                    return false;
                 }
             }
-            return records;
-        } catch (Exception e) {
-            // 任何异常都回退全表扫描
-            System.err.println("tryReadUsingIndex fallback to full scan: " + e.getMessage());
+            return true;
+        }, null);
+        explain("Seq scan on " + table.getName() + " using bloom filter(s): skipped " + skipped[0] + " page(s)");
+        return records;
+    }
+    
+    /**
+     * 字典编码列的等值条件（单个条件或 AND 连接的条件之一）：把常量换成字典编号，扫描时只比较编号，
+     * 只解码编号相同的记录（其余条件仍由调用方检查）；取值不在字典中且字典从未满过时直接返回空结果
+     * zones 不为null时跳过区域映射判为不可能匹配的页；不适用时返回null
+     */
+    private List<Record> tryReadUsingDictionary(Table table, SQLParser.WhereCondition whereCondition,
+                                                String tableDataFile, ZoneFilter zones) throws IOException {
+        DMLExecutor.QueryCondition cond = findDictionaryEquality(table, whereCondition);
+        if (cond == null) {
             return null;
         }
+        String colName = cond.columnName.contains(".") ? cond.columnName.split("\\.", 2)[1] : cond.columnName;
+        Field field = table.getFieldByName(colName);
+        int col = table.getFields().indexOf(field);
+        ColumnDictionary dictionary = field.getDictionary();
+        String value = (String) cond.value;
+        int code = dictionary.getCode(value);
+        if (code < 0 && dictionary.size() < ColumnDictionary.MAX_SIZE) {
+            explain("Dictionary lookup on " + colName + ": '" + value + "' is not in the dictionary, data file not read");
+            return new ArrayList<>(); // 字典未满过，所有取值都按编号存放
+        }
+        explain("Seq scan on " + table.getName() + " comparing dictionary codes of " + colName);
+        return DATFileManager.readMatchingRecords(tableDataFile, table, zones, codec -> {
+            int recordCode = codec.getCode(col);
+            if (code >= 0) {
+                return recordCode == code;
+            }
+            // 取值不在字典中：只可能与按原样存放的取值相等
+            return recordCode < 0 && !codec.isNull(col) && value.equals(codec.getString(col));
+        });
+    }
+    
+    /**
+     * 在 WHERE 条件中查找字典编码列与字符串常量的等值条件（只沿 AND 查找）
+     */
+    private DMLExecutor.QueryCondition findDictionaryEquality(Table table, SQLParser.WhereCondition whereCondition) {
+        if (whereCondition == null) {
+            return null;
+        }
+        if (!whereCondition.isLeaf) {
+            if (whereCondition.logicOp != SQLParser.WhereCondition.LogicOp.AND) {
+                return null;
+            }
+            DMLExecutor.QueryCondition cond = findDictionaryEquality(table, whereCondition.left);
+            return cond != null ? cond : findDictionaryEquality(table, whereCondition.right);
+        }
+        DMLExecutor.QueryCondition cond = whereCondition.condition;
+        if (cond == null || !"=".equals(cond.operator) || cond.subquery != null || !(cond.value instanceof String)) {
+            return null;
+        }
+        // 排除“列=列”的情况
+        String v = (String) cond.value;
+        if (v.contains(".") && !v.startsWith("'") && !v.endsWith("'")) {
+            return null;
+        }
+        String colName = cond.columnName.contains(".") ? cond.columnName.split("\\.", 2)[1] : cond.columnName;
+        Field field = table.getFieldByName(colName);
+        return field != null && field.getDictionary() != null ? cond : null;
     }
     
     /**
@@ -798,6 +1735,12 @@ public class QueryExecutor {
             return condition.operator.equals("IN") ? found : !found;
         }
         
+        // BETWEEN（包含边界值）
+        if (condition.operator.equals("BETWEEN")) {
+            return rowValue != null && condition.minValue != null && condition.maxValue != null &&
+                compareValues(rowValue, condition.minValue) >= 0 && compareValues(rowValue, condition.maxValue) <= 0;
+        }
+        
         // 处理条件值可能是另一个表的列的情况（table.column格式）
         Object actualConditionValue = conditionValue;
         if (conditionValue instanceof String) {
@@ -837,8 +1780,7 @@ public class QueryExecutor {
                 return compareValues(rowValue, actualConditionValue) >= 0;
             case "LIKE":
                 if (rowValue instanceof String && actualConditionValue instanceof String) {
-                    String pattern = ((String) actualConditionValue).replace("%", ".*").replace("_", ".");
-                    return ((String) rowValue).matches(pattern);
+                    return condition.matchesLike((String) rowValue, (String) actualConditionValue);
                 }
                 return false;
             default:
@@ -995,38 +1937,129 @@ public class QueryExecutor {
         return a.toString().compareTo(b.toString());
     }
     
+    /**
+     * 不分组且只选择聚合函数的查询（行存表，WHERE 为空或可以在编解码器上求值）：扫描时在编解码器上按列累加，不创建 Record
+     * SUM/AVG/MAX/MIN 的参数须为数值列；结果与 executeAggregateQuery 相同，不适用时返回null
+     */
+    private QueryResult tryAggregateUsingScan(Table table, List<String> selectedColumns, List<String> groupByColumns,
+                                              SQLParser.WhereCondition whereCondition, String tableDataFile,
+                                              ZoneFilter zones) throws IOException {
+        if (table.isColumnar() || (groupByColumns != null && !groupByColumns.isEmpty())) {
+            return null;
+        }
+        CodecPredicate predicate = CodecPredicate.compile(table, whereCondition);
+        if (whereCondition != null && predicate == null) {
+            return null;
+        }
+        int n = selectedColumns.size();
+        int[] cols = new int[n];  // 聚合参数列的下标，COUNT 为-1
+        for (int i = 0; i < n; i++) {
+            String upperColName = selectedColumns.get(i).toUpperCase();
+            if (upperColName.startsWith("COUNT(")) {
+                cols[i] = -1;
+                continue;
+            }
+            if (!upperColName.startsWith("SUM(") && !upperColName.startsWith("AVG(") &&
+                !upperColName.startsWith("MAX(") && !upperColName.startsWith("MIN(")) {
+                return null;
+            }
+            Field field = table.getFieldByName(stripTablePrefix(extractFunctionParam(selectedColumns.get(i))));
+            if (field == null || !isNumeric(field)) {
+                return null;
+            }
+            cols[i] = table.getFields().indexOf(field);
+        }
+        
+        long[] rowCount = {0};
+        long[] counts = new long[n];
+        double[] sums = new double[n];
+        double[] maxs = new double[n];
+        double[] mins = new double[n];
+        DATFileManager.scanRecords(tableDataFile, table, null, zones, (position, codec) -> {
+            if (predicate != null && !predicate.accept(codec)) {
+                return;
+            }
+            rowCount[0]++;
+            for (int i = 0; i < n; i++) {
+                if (cols[i] < 0 || codec.isNull(cols[i])) {
+                    continue;
+                }
+                double v = codec.getDouble(cols[i]);
+                sums[i] += v;
+                if (counts[i] == 0 || Double.compare(v, maxs[i]) > 0) {
+                    maxs[i] = v;
+                }
+                if (counts[i] == 0 || Double.compare(v, mins[i]) < 0) {
+                    mins[i] = v;
+                }
+                counts[i]++;
+            }
+        });
+        explain("Seq scan on " + table.getName() + " computing aggregates on encoded records: " + rowCount[0] +
+            " row(s) matched");
+        
+        List<Object> row = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String upperColName = selectedColumns.get(i).toUpperCase();
+            boolean isInt = cols[i] >= 0 && table.getFieldByIndex(cols[i]).getType() == FieldType.INT;
+            if (upperColName.startsWith("COUNT(")) {
+                row.add(rowCount[0]);
+            } else if (upperColName.startsWith("SUM(")) {
+                row.add(sums[i]);
+            } else if (upperColName.startsWith("AVG(")) {
+                row.add(counts[i] > 0 ? sums[i] / counts[i] : 0.0);
+            } else if (counts[i] == 0) {
+                row.add(null);
+            } else {
+                double v = upperColName.startsWith("MAX(") ? maxs[i] : mins[i];
+                row.add(isInt ? (Object) (int) v : (Object) v);
+            }
+        }
+        List<List<Object>> resultData = new ArrayList<>();
+        resultData.add(row);
+        return new QueryResult(selectedColumns, resultData);
+    }
+    
     /**
      * 执行聚合查询（单表）
      */
     private QueryResult executeAggregateQuery(Table table, List<Record> records, 
                                             List<String> columnNames, List<String> groupByColumns) {
         // 如果没有GROUP BY，整个结果集作为一个分组
-        java.util.Map<String, List<Record>> groups;
+        Map<List<Object>, List<Record>> groups;
         if (groupByColumns == null || groupByColumns.isEmpty()) {
             groups = new java.util.HashMap<>();
-            groups.put("", records);  // 使用空字符串作为键
+            groups.put(new ArrayList<>(), records);  // 使用空列表作为键
         } else {
-            // 按GROUP BY列分组
+            // 按GROUP BY列分组：字典编码列用取值编号作为键，不比较字符串
+            int[] groupIndexes = new int[groupByColumns.size()];
+            for (int i = 0; i < groupIndexes.length; i++) {
+                String actualColName = groupByColumns.get(i);
+                if (actualColName.contains(".")) {
+                    String[] parts = actualColName.split("\\.", 2);
+                    actualColName = parts[1];
+                }
+                Field field = table.getFieldByName(actualColName);
+                if (field == null) {
+                    throw new DBMSException("Column " + groupByColumns.get(i) + " does not exist");
+                }
+                groupIndexes[i] = table.getFields().indexOf(field);
+            }
             groups = new java.util.HashMap<>();
             for (Record record : records) {
-                StringBuilder keyBuilder = new StringBuilder();
-                for (String groupCol : groupByColumns) {
-                    String actualColName = groupCol;
-                    if (groupCol.contains(".")) {
-                        String[] parts = groupCol.split("\\.", 2);
-                        actualColName = parts[1];
-                    }
-                    Object value = record.getValue(table, actualColName);
-                    keyBuilder.append(value != null ? value.toString() : "NULL").append("|");
+                List<Object> key = new ArrayList<>(groupIndexes.length);
+                for (int index : groupIndexes) {
+                    int code = record.getCode(index);
+                    // 编号（Integer）与按原样存放的取值（String）不会相等，同一取值总是同一种存放方式
+                    key.add(code >= 0 ? (Object) code : record.getValue(index));
                 }
-                String key = keyBuilder.toString();
                 groups.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
             }
         }
         
         // 对每个分组计算聚合函数
         List<List<Object>> resultData = new ArrayList<>();
-        for (java.util.Map.Entry<String, List<Record>> entry : groups.entrySet()) {
+        for (Map.Entry<List<Object>, List<Record>> entry : groups.entrySet()) {
             List<Record> groupRecords = entry.getValue();
             List<Object> row = new ArrayList<>();
             
@@ -1106,6 +2139,80 @@ public class QueryExecutor {
         return new QueryResult(columnNames, resultData);
     }
     
+    /**
+     * 单表查询引用到的列（选择列、聚合函数参数、WHERE、GROUP BY、ORDER BY），下标同字段顺序
+     * 含子查询时无法确定，返回null（读取全部列）
+     */
+    private boolean[] getReferencedColumns(Table table, List<String> selectedColumns,
+                                           SQLParser.WhereCondition whereCondition,
+                                           List<String> groupByColumns,
+                                           List<SQLParser.OrderByItem> orderByColumns,
+                                           List<SQLParser.SelectStatement> subqueryColumns) {
+        for (SQLParser.SelectStatement subquery : subqueryColumns) {
+            if (subquery != null) {
+                return null;
+            }
+        }
+        boolean[] columns = new boolean[table.getFieldCount()];
+        for (String colName : selectedColumns) {
+            markReferencedColumn(table, columns, colName.contains("(") ? extractFunctionParam(colName) : colName);
+        }
+        if (!markWhereColumns(table, columns, whereCondition)) {
+            return null;
+        }
+        if (groupByColumns != null) {
+            for (String colName : groupByColumns) {
+                markReferencedColumn(table, columns, colName);
+            }
+        }
+        if (orderByColumns != null) {
+            for (SQLParser.OrderByItem item : orderByColumns) {
+                markReferencedColumn(table, columns, item.columnName);
+                if (item.columnName.contains("(")) {
+                    markReferencedColumn(table, columns, extractFunctionParam(item.columnName));
+                }
+            }
+        }
+        return columns;
+    }
+    
+    /**
+     * 标记WHERE条件中的列（比较值为字符串时也可能是列引用，一并标记）；含子查询时返回false
+     */
+    private boolean markWhereColumns(Table table, boolean[] columns, SQLParser.WhereCondition whereCondition) {
+        if (whereCondition == null) {
+            return true;
+        }
+        if (!whereCondition.isLeaf) {
+            return markWhereColumns(table, columns, whereCondition.left) &&
+                markWhereColumns(table, columns, whereCondition.right);
+        }
+        DMLExecutor.QueryCondition condition = whereCondition.condition;
+        if (condition == null || condition.subquery != null) {
+            return condition != null;
+        }
+        markReferencedColumn(table, columns, condition.columnName);
+        if (condition.value instanceof String) {
+            markReferencedColumn(table, columns, (String) condition.value);
+        }
+        return true;
+    }
+    
+    private void markReferencedColumn(Table table, boolean[] columns, String colName) {
+        if (colName == null) {
+            return;
+        }
+        String actualColName = colName.trim();
+        if (actualColName.contains(".")) {
+            actualColName = actualColName.split("\\.", 2)[1];
+        }
+        for (int i = 0; i < table.getFieldCount(); i++) {
+            if (table.getFieldByIndex(i).getName().equalsIgnoreCase(actualColName)) {
+                columns[i] = true;
+            }
+        }
+    }
+    
     /**
      * 从聚合函数中提取参数（如 COUNT(*) -> *, SUM(age) -> age）
      */
@@ -1282,6 +2389,48 @@ public class QueryExecutor {
         }
     }
     
+    /**
+     * 连接键比较：两列都是字典编码列时，预先把左表字典的编号映射为右表字典的编号，比较时只比较编号
+     * 没有编号的取值（字典已满时按原样存放）按值比较
+     */
+    private static class JoinKeyMatcher {
+        private final Table leftTable;
+        private final String leftColumn;
+        private final Table rightTable;
+        private final String rightColumn;
+        private int leftIndex = -1;
+        private int rightIndex = -1;
+        private int[] codeMapping;  // 左表编号 -> 右表编号（null 表示不按编号比较）
+        
+        JoinKeyMatcher(Table leftTable, String leftColumn, Table rightTable, String rightColumn) {
+            this.leftTable = leftTable;
+            this.leftColumn = leftColumn;
+            this.rightTable = rightTable;
+            this.rightColumn = rightColumn;
+            Field leftField = leftTable.getFieldByName(leftColumn);
+            Field rightField = rightTable.getFieldByName(rightColumn);
+            if (leftField != null && rightField != null &&
+                leftField.getDictionary() != null && rightField.getDictionary() != null) {
+                leftIndex = leftTable.getFields().indexOf(leftField);
+                rightIndex = rightTable.getFields().indexOf(rightField);
+                codeMapping = leftField.getDictionary().mapTo(rightField.getDictionary());
+            }
+        }
+        
+        boolean matches(Record left, Record right) {
+            if (codeMapping != null) {
+                int leftCode = left.getCode(leftIndex);
+                int rightCode = right.getCode(rightIndex);
+                if (leftCode >= 0 && rightCode >= 0 && leftCode < codeMapping.length) {
+                    return codeMapping[leftCode] == rightCode;
+                }
+            }
+            Object v1 = left.getValue(leftTable, leftColumn);
+            Object v2 = right.getValue(rightTable, rightColumn);
+            return v1 != null && v2 != null && v1.equals(v2);
+        }
+    }
+    
     /**
      * 对单表查询结果进行排序
      */
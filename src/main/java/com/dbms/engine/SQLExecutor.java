@@ -9,6 +9,10 @@ import com.dbms.util.TransactionManager;
 import com.dbms.util.UserManager;
 import com.dbms.engine.QueryExecutor.QueryResult;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * SQL执行器 - 连接SQL解析器和执行引擎
  */
@@ -20,6 +24,7 @@ public class SQLExecutor {
     private SQLParser parser;
     private UserManager userManager;
     private TransactionManager transactionManager;
+    private AutoVacuum autoVacuum;
     
     public SQLExecutor(DDLExecutor ddlExecutor, DMLExecutor dmlExecutor, QueryExecutor queryExecutor) {
         this.ddlExecutor = ddlExecutor;
@@ -30,6 +35,9 @@ public class SQLExecutor {
         this.transactionManager = new TransactionManager(ddlExecutor);
         // 让DML执行器在执行时能写事务日志
         this.dmlExecutor.setTransactionManager(this.transactionManager);
+        // 后台自动整理与语句执行互斥（同步在本执行器上）
+        this.autoVacuum = new AutoVacuum(ddlExecutor, transactionManager, this);
+        this.autoVacuum.start();
     }
     
     public UserManager getUserManager() {
@@ -40,6 +48,13 @@ public class SQLExecutor {
         return transactionManager;
     }
     
+    /**
+     * 停止后台自动整理（切换数据库、丢弃本执行器前调用）
+     */
+    public void close() {
+        autoVacuum.stop();
+    }
+    
     /**
      * 检查当前用户是否有指定权限
      * @param permission 需要的权限
@@ -64,65 +79,76 @@ public class SQLExecutor {
     /**
      * 执行SQL语句
      */
-    public Object execute(String sql) {
+    public synchronized Object execute(String sql) {
         try {
-            SQLStatement stmt = parser.parse(sql);
-            
-            switch (stmt.type) {
-                case CREATE_TABLE:
-                    return executeCreateTable((CreateTableStatement) stmt);
-                case CREATE_INDEX:
-                    return executeCreateIndex((CreateIndexStatement) stmt);
-                case CREATE_USER:
-                    return executeCreateUser((CreateUserStatement) stmt);
-                case ALTER_TABLE:
-                    return executeAlterTable((AlterTableStatement) stmt);
-                case DROP_TABLE:
-                    return executeDropTable((DropTableStatement) stmt);
-                case DROP_USER:
-                    return executeDropUser((DropUserStatement) stmt);
-                case RENAME_TABLE:
-                    return executeRenameTable((RenameTableStatement) stmt);
-                case INSERT:
-                    return executeInsert((InsertStatement) stmt);
-                case UPDATE:
-                    return executeUpdate((UpdateStatement) stmt);
-                case DELETE:
-                    return executeDelete((DeleteStatement) stmt);
-                case SELECT:
-                    return executeSelect((SelectStatement) stmt);
-                case GRANT:
-                    return executeGrant((GrantStatement) stmt);
-                case REVOKE:
-                    return executeRevoke((RevokeStatement) stmt);
-                case BEGIN:
-                    return executeBegin((BeginStatement) stmt);
-                case COMMIT:
-                    return executeCommit((CommitStatement) stmt);
-                case ROLLBACK:
-                    return executeRollback((RollbackStatement) stmt);
-                default:
-                    throw new SQLException("Unsupported statement type: " + stmt.type);
-            }
+            Object result = executeStatement(parser.parse(sql));
+            // 每条语句结束后把修改写回磁盘
+            ddlExecutor.flushChanges();
+            return result;
         } catch (Exception e) {
             throw new SQLException("SQL execution error: " + e.getMessage(), e);
         }
     }
     
+    private Object executeStatement(SQLStatement stmt) {
+        switch (stmt.type) {
+            case CREATE_TABLE:
+                return executeCreateTable((CreateTableStatement) stmt);
+            case CREATE_INDEX:
+                return executeCreateIndex((CreateIndexStatement) stmt);
+            case CREATE_USER:
+                return executeCreateUser((CreateUserStatement) stmt);
+            case ALTER_TABLE:
+                return executeAlterTable((AlterTableStatement) stmt);
+            case DROP_TABLE:
+                return executeDropTable((DropTableStatement) stmt);
+            case DROP_USER:
+                return executeDropUser((DropUserStatement) stmt);
+            case RENAME_TABLE:
+                return executeRenameTable((RenameTableStatement) stmt);
+            case INSERT:
+                return executeInsert((InsertStatement) stmt);
+            case UPDATE:
+                return executeUpdate((UpdateStatement) stmt);
+            case DELETE:
+                return executeDelete((DeleteStatement) stmt);
+            case SELECT:
+                return executeSelect((SelectStatement) stmt);
+            case GRANT:
+                return executeGrant((GrantStatement) stmt);
+            case REVOKE:
+                return executeRevoke((RevokeStatement) stmt);
+            case BEGIN:
+                return executeBegin((BeginStatement) stmt);
+            case COMMIT:
+                return executeCommit((CommitStatement) stmt);
+            case ROLLBACK:
+                return executeRollback((RollbackStatement) stmt);
+            case VACUUM:
+                return executeVacuum((VacuumStatement) stmt);
+            case EXPLAIN:
+                return executeExplain((ExplainStatement) stmt);
+            default:
+                throw new SQLException("Unsupported statement type: " + stmt.type);
+        }
+    }
+    
     private String executeCreateTable(CreateTableStatement stmt) {
         checkPermission("CREATE_TABLE", false);
         java.util.List<Field> fields = new java.util.ArrayList<>();
         for (FieldDefinition fieldDef : stmt.fields) {
             fields.add(fieldDef.toField());
         }
-        ddlExecutor.createTable(stmt.tableName, fields);
+        ddlExecutor.createTable(stmt.tableName, fields, stmt.options);
         return "Table '" + stmt.tableName + "' created successfully";
     }
     
     private String executeCreateIndex(CreateIndexStatement stmt) {
         checkPermission("CREATE_INDEX", false);
-        ddlExecutor.createIndex(stmt.indexName, stmt.tableName, stmt.columnName, stmt.unique);
-        return "Index '" + stmt.indexName + "' created successfully on " + stmt.tableName + "(" + stmt.columnName + ")";
+        ddlExecutor.createIndex(stmt.indexName, stmt.tableName, stmt.columnNames, stmt.unique, stmt.indexType,
+                                stmt.includeColumns);
+        return "Index '" + stmt.indexName + "' created successfully on " + stmt.tableName +
+               "(" + String.join(", ", stmt.columnNames) + ")";
     }
     
     private String executeCreateUser(CreateUserStatement stmt) {
@@ -248,6 +274,26 @@ public class SQLExecutor {
         return result;
     }
     
+    /**
+     * 执行查询并记录执行计划（访问路径、读取和跳过的页数），返回计划而不是查询结果
+     */
+    private QueryResult executeExplain(ExplainStatement stmt) {
+        queryExecutor.beginExplain();
+        List<String> plan;
+        QueryResult result;
+        try {
+            result = executeSelect(stmt.select);
+        } finally {
+            plan = queryExecutor.endExplain();
+        }
+        List<List<Object>> rows = new ArrayList<>();
+        for (String step : plan) {
+            rows.add(Collections.singletonList(step));
+        }
+        rows.add(Collections.singletonList("Rows returned: " + result.getRowCount()));
+        return new QueryResult(Collections.singletonList("QUERY PLAN"), rows);
+    }
+    
     private String executeGrant(GrantStatement stmt) {
         checkPermission("GRANT", true); // 允许未登录用户执行（用于初始化）
         
@@ -266,6 +312,23 @@ public class SQLExecutor {
         return "Permissions revoked from " + stmt.username + " successfully";
     }
     
+    private String executeVacuum(VacuumStatement stmt) {
+        checkPermission("ALTER_TABLE", false);
+        // 回滚依赖已删除记录的原位置，事务中不能整理
+        if (transactionManager.hasActiveTransaction()) {
+            throw new SQLException("VACUUM cannot run inside a transaction");
+        }
+        if (stmt.tableName != null) {
+            int pages = ddlExecutor.vacuumTable(stmt.tableName);
+            return "Table '" + stmt.tableName + "' vacuumed, " + pages + " page(s) reclaimed";
+        }
+        int pages = 0;
+        for (String tableName : ddlExecutor.getTableNames()) {
+            pages += ddlExecutor.vacuumTable(tableName);
+        }
+        return "Database vacuumed, " + pages + " page(s) reclaimed";
+    }
+    
     private String executeBegin(BeginStatement stmt) {
         transactionManager.beginTransaction();
         return "Transaction started";
@@ -0,0 +1,125 @@
+package com.dbms.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 布隆过滤器 - 判断一个键是否可能在集合中：返回false时一定不在，返回true时可能在（有一定的误判率）
+ * 位数组用 long 存放；k 个位置由键的 64 位哈希值的高低两半按 h1 + i*h2 算出（双重哈希）
+ * 键的哈希值只由键的值决定（不用 hashCode），写入文件后重新打开仍然一致；只能添加，不能删除
+ */
+public class BloomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    // 按预计键数构造时每个键的位数和哈希函数个数（误判率约 1%）
+    private static final int BITS_PER_KEY = 10;
+    private static final int DEFAULT_HASHES = 7;
+    
+    private final long[] words;
+    private final int hashCount;
+    private int count;  // 已添加的键数（含重复添加）
+    
+    public BloomFilter(int bitCount, int hashCount) {
+        this(new long[Math.max(1, (bitCount + 63) / 64)], hashCount, 0);
+    }
+    
+    /**
+     * 由已有的位数组构造（从文件读取时使用）
+     */
+    public BloomFilter(long[] words, int hashCount, int count) {
+        this.words = words;
+        this.hashCount = hashCount;
+        this.count = count;
+    }
+    
+    /**
+     * 按预计的键数构造（误判率约 1%）
+     */
+    public static BloomFilter forKeys(int expectedKeys) {
+        return new BloomFilter((int) Math.min(Integer.MAX_VALUE - 63, (long) Math.max(64, expectedKeys) * BITS_PER_KEY),
+            DEFAULT_HASHES);
+    }
+    
+    public void add(long hash) {
+        long bitCount = (long) words.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        count++;
+    }
+    
+    public boolean mightContain(long hash) {
+        long bitCount = (long) words.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 键的 64 位哈希值：数值按整数值或 double 的位模式，字符串按字符，多列键按各列依次混合
+     */
+    public static long hash(Object key) {
+        if (key instanceof Integer || key instanceof Long) {
+            return mix(((Number) key).longValue());
+        }
+        if (key instanceof Double) {
+            return mix(Double.doubleToLongBits((Double) key) ^ 0x5bd1e9955bd1e995L);
+        }
+        if (key instanceof List) {
+            long h = 0x9e3779b97f4a7c15L;
+            for (Object element : (List<?>) key) {
+                h = mix(h * 31 + (element == null ? 0 : hash(element)));
+            }
+            return h;
+        }
+        // 字符串（及其他类型的字符串形式）：FNV-1a
+        String s = String.valueOf(key);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+    
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+    
+    public long[] getWords() {
+        return words;
+    }
+    
+    public int getHashCount() {
+        return hashCount;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * 按预计键数构造时能容纳的键数（超过后误判率上升）
+     */
+    public int getCapacity() {
+        return (int) ((long) words.length * 64 / BITS_PER_KEY);
+    }
+    
+    public long memoryUsage() {
+        return 32 + 16 + 8L * words.length;
+    }
+}
+
@@ -0,0 +1,93 @@
+package com.dbms.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列字典（字典编码）- 低基数的 CHAR/VARCHAR 列把每个不同的取值在表结构中存一份，记录中只存取值的编号
+ * 字典只增不减，编号一经分配不再改变；取值数达到 MAX_SIZE 后新的取值不再编号，按原样存放在记录中
+ * 因此同一个取值要么总是按编号存放，要么总是按原样存放，同一字典内编号相等即取值相等
+ */
+public class ColumnDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    // 字典最多容纳的取值数
+    public static final int MAX_SIZE = 65536;
+    
+    private final List<String> values = new ArrayList<>();       // 编号 -> 取值
+    private final Map<String, Integer> codes = new HashMap<>();  // 取值 -> 编号
+    private transient boolean dirty;                             // 有新取值尚未写入 .dbf 文件
+    
+    /**
+     * 取值的编号，不在字典中时返回-1
+     */
+    public synchronized int getCode(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+    
+    /**
+     * 取值的编号，不在字典中时分配新编号；字典已满时返回-1
+     */
+    public synchronized int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (values.size() >= MAX_SIZE) {
+            return -1;
+        }
+        addValue(value);
+        dirty = true;
+        return values.size() - 1;
+    }
+    
+    /**
+     * 编号对应的取值
+     */
+    public synchronized String getValue(int code) {
+        return values.get(code);
+    }
+    
+    /**
+     * 按编号顺序添加取值（从 .dbf 文件加载时使用）
+     */
+    public synchronized void addValue(String value) {
+        codes.put(value, values.size());
+        values.add(value);
+    }
+    
+    /**
+     * 所有取值（下标即编号）
+     */
+    public synchronized List<String> getValues() {
+        return new ArrayList<>(values);
+    }
+    
+    public synchronized int size() {
+        return values.size();
+    }
+    
+    /**
+     * 把本字典的编号映射为另一个字典中相同取值的编号（另一个字典中没有的为-1），用于按编号比较两列的值
+     */
+    public synchronized int[] mapTo(ColumnDictionary other) {
+        int[] mapping = new int[values.size()];
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = other == this ? i : other.getCode(values.get(i));
+        }
+        return mapping;
+    }
+    
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+    
+    public synchronized void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+}
+
@@ -14,6 +14,7 @@ public class Field implements Serializable {
     private boolean isKey;         // 是否为主键
     private boolean nullable;      // 是否允许为NULL
     private String defaultValue;   // 默认值（预留）
+    private ColumnDictionary dictionary; // 字典编码的列字典（null 表示不使用字典编码）
     
     public Field() {
     }
@@ -76,20 +77,28 @@ public class Field implements Serializable {
         this.defaultValue = defaultValue;
     }
     
+    public ColumnDictionary getDictionary() {
+        return dictionary;
+    }
+    
+    public void setDictionary(ColumnDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+    
     /**
-     * 获取字段的实际存储大小（字节）
+     * 获取字段的存储大小上限（字节，按紧凑编码估算）
      */
     public int getStorageSize() {
         if (type == FieldType.VARCHAR) {
-            return length + 4; // 变长字段：4字节长度前缀 + 数据
+            return length + 2; // 变长字段：varint长度前缀 + 数据
         } else if (type == FieldType.INT) {
-            return 4;
+            return 5; // zigzag varint，最多5字节
         } else if (type == FieldType.FLOAT || type == FieldType.DOUBLE) {
             return 8;
         } else if (type == FieldType.DATE) {
-            return 8;
+            return 11; // 长度(1) + yyyy-MM-dd
         } else {
-            return length; // CHAR类型
+            return length + 1; // CHAR类型：长度(1) + 数据，不补齐
         }
     }
     
@@ -1,21 +1,63 @@
 package com.dbms.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * 索引定义类
+ * 哈希索引（HASH）：索引项（indexMap）保存在单独的索引文件中（见 Storage），打开数据库时不读取，第一次访问索引项时才加载
+ * B+树索引（BTREE）：索引项只在磁盘上的 B+树中（见 Tree），按键有序，支持范围查找
+ * 位图索引（BITMAP）：同哈希索引，但每个取值的记录位置为压缩位图（见 RecordBitmap），用于低基数的列
+ * 堆外哈希索引（OFFHEAP）：同哈希索引，但索引项在堆外内存中（见 OffHeapHashMap），用于大表上的单列索引
+ * 布隆过滤器索引（BLOOM）：只记录列上有哪些取值（表级和页级的布隆过滤器，见 Filter），不能用于查找记录，
+ * 用于判断等值条件的取值一定不在表中或某一页中，从而不读取数据文件或跳过这些页
+ * N-gram 索引（NGRAM）：同哈希索引，但键为字符串列的取值中每 NGRAM_LENGTH 个连续字符（三元组），
+ * 用于 LIKE '%子串%' 这样的模式：含有子串的取值一定含有子串的所有三元组，各三元组的倒排表的交集即候选记录
+ * 包含列（INCLUDE）：索引项中另存这些列的值，只引用索引列和包含列的查询不需要读取数据文件
+ * 多列索引：键为各索引列值的列表，逐列比较；查询可以使用索引列的任意前缀（最左前缀）
+ * 主键索引（PRIMARY）：有主键的表自动维护的唯一哈希索引，插入和更新时用它检查主键唯一
  */
 public class Index implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // 索引类型
+    public static final String TYPE_HASH = "HASH";
+    public static final String TYPE_BTREE = "BTREE";
+    public static final String TYPE_BITMAP = "BITMAP";
+    public static final String TYPE_OFFHEAP = "OFFHEAP";
+    public static final String TYPE_BLOOM = "BLOOM";
+    public static final String TYPE_NGRAM = "NGRAM";
+    
+    // N-gram 索引的 n
+    public static final int NGRAM_LENGTH = 3;
+    
+    // 主键索引的索引名（PRIMARY 是关键字，不会与用户建的索引重名）
+    public static final String PRIMARY_KEY_NAME = "PRIMARY";
+    
+    // 没有包含列时索引项中的包含列值
+    public static final Object[] NO_VALUES = new Object[0];
+    
     private String indexName;      // 索引名
     private String tableName;      // 表名
-    private String columnName;     // 字段名
+    private List<String> columnNames = new ArrayList<>();  // 索引列（多列索引按列的顺序）
     private boolean unique;        // 是否唯一索引
-    private Map<Object, List<Long>> indexMap;  // 索引映射：值 -> 记录位置列表
+    private String type = TYPE_HASH;  // 索引类型
+    private List<String> includeColumns = new ArrayList<>();  // 包含列
+    private Map<Object, PositionSet> indexMap;  // 索引映射：值 -> 记录位置（倒排表或位图）
+    private Map<Long, Object[]> includedValues = new HashMap<>();  // 哈希索引的包含列值：记录位置 -> 值
+    private transient Storage storage;         // 索引文件（null 表示只在内存中）
+    private transient boolean loaded = true;   // 索引项是否已从索引文件加载
+    private transient Tree tree;               // B+树索引的索引文件
+    private transient Filter filter;           // 布隆过滤器索引的过滤器文件
     
     public Index() {
         this.indexMap = new HashMap<>();
@@ -25,7 +67,15 @@ public class Index implements Serializable {
         this();
         this.indexName = indexName;
         this.tableName = tableName;
-        this.columnName = columnName;
+        this.columnNames.add(columnName);
+        this.unique = unique;
+    }
+    
+    public Index(String indexName, String tableName, List<String> columnNames, boolean unique) {
+        this();
+        this.indexName = indexName;
+        this.tableName = tableName;
+        this.columnNames.addAll(columnNames);
         this.unique = unique;
     }
     
@@ -46,12 +96,39 @@ public class Index implements Serializable {
         this.tableName = tableName;
     }
     
+    /**
+     * 索引的第一列（单列索引即索引列）
+     */
     public String getColumnName() {
-        return columnName;
+        return columnNames.get(0);
     }
     
     public void setColumnName(String columnName) {
-        this.columnName = columnName;
+        this.columnNames = new ArrayList<>();
+        this.columnNames.add(columnName);
+    }
+    
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+    
+    public void setColumnNames(List<String> columnNames) {
+        this.columnNames = columnNames;
+    }
+    
+    /**
+     * 列改名后更新索引列和包含列中的列名
+     */
+    public void renameColumn(String oldName, String newName) {
+        columnNames.replaceAll(column -> column.equalsIgnoreCase(oldName) ? newName : column);
+        includeColumns.replaceAll(column -> column.equalsIgnoreCase(oldName) ? newName : column);
+    }
+    
+    /**
+     * 是否为多列索引（键为各列值的列表）
+     */
+    public boolean isComposite() {
+        return columnNames.size() > 1;
     }
     
     public boolean isUnique() {
@@ -62,31 +139,428 @@ public class Index implements Serializable {
         this.unique = unique;
     }
     
-    public Map<Object, List<Long>> getIndexMap() {
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * 是否为位图索引（每个取值一个压缩位图，WHERE 中的 AND/OR 可以直接按位图求交集、并集）
+     */
+    public boolean isBitmap() {
+        return TYPE_BITMAP.equals(type);
+    }
+    
+    /**
+     * 一个键的记录位置集合：位图索引为压缩位图，哈希索引为倒排表
+     */
+    public PositionSet newPositionSet() {
+        return isBitmap() ? new RecordBitmap() : new PostingList();
+    }
+    
+    /**
+     * 是否为堆外哈希索引（键和位置在直接缓冲区中，不占用 Java 堆）
+     */
+    public boolean isOffHeap() {
+        return TYPE_OFFHEAP.equals(type);
+    }
+    
+    /**
+     * 是否为布隆过滤器索引（只能判断取值可能存在或一定不存在，不能用于查找记录）
+     */
+    public boolean isBloom() {
+        return TYPE_BLOOM.equals(type);
+    }
+    
+    /**
+     * 是否为 N-gram 索引（键为取值中的三元组，只用于缩小 LIKE 的候选记录）
+     */
+    public boolean isNgram() {
+        return TYPE_NGRAM.equals(type);
+    }
+    
+    /**
+     * 新的索引映射：堆外哈希索引为堆外哈希表，其他为 HashMap；expectedKeys 为预计的键数
+     */
+    public Map<Object, PositionSet> newIndexMap(int expectedKeys) {
+        if (isOffHeap()) {
+            return new OffHeapHashMap(expectedKeys);
+        }
+        return new HashMap<>(Math.max(16, expectedKeys * 4 / 3 + 1));
+    }
+    
+    /**
+     * 是否为有序索引（可用于范围查找和按序读取）
+     */
+    public boolean isOrdered() {
+        return TYPE_BTREE.equals(type);
+    }
+    
+    public List<String> getIncludeColumns() {
+        return includeColumns;
+    }
+    
+    public void setIncludeColumns(List<String> includeColumns) {
+        this.includeColumns = includeColumns;
+    }
+    
+    /**
+     * 列是否可以直接从索引项中取得（索引列或包含列）
+     */
+    public boolean covers(String column) {
+        for (String indexColumn : columnNames) {
+            if (indexColumn.equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        for (String include : includeColumns) {
+            if (include.equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public Map<Long, Object[]> getIncludedValueMap() {
+        ensureLoaded();
+        return includedValues;
+    }
+    
+    public void setIncludedValueMap(Map<Long, Object[]> includedValues) {
+        this.includedValues = includedValues;
+    }
+    
+    public Tree getTree() {
+        return tree;
+    }
+    
+    public void setTree(Tree tree) {
+        this.tree = tree;
+    }
+    
+    public Filter getFilter() {
+        return filter;
+    }
+    
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+    }
+    
+    /**
+     * 取值是否可能在表中（布隆过滤器判为一定不在时返回false；不是布隆过滤器索引时总是返回true）
+     */
+    public boolean mightContain(Object value) {
+        return filter == null || filter.mightContain(value);
+    }
+    
+    /**
+     * 取值是否可能在某一数据页中
+     */
+    public boolean mightContain(Object value, int pageNo) {
+        return filter == null || filter.mightContain(value, pageNo);
+    }
+    
+    public Map<Object, PositionSet> getIndexMap() {
+        ensureLoaded();
         return indexMap;
     }
     
-    public void setIndexMap(Map<Object, List<Long>> indexMap) {
+    public void setIndexMap(Map<Object, PositionSet> indexMap) {
         this.indexMap = indexMap;
     }
     
+    public Storage getStorage() {
+        return storage;
+    }
+    
+    /**
+     * 绑定索引文件；loaded 为false时第一次访问索引项前从文件加载
+     */
+    public void setStorage(Storage storage, boolean loaded) {
+        this.storage = storage;
+        this.loaded = loaded;
+    }
+    
+    /**
+     * 哈希索引的索引项是否已加载到内存
+     */
+    public boolean isLoaded() {
+        return tree == null && filter == null && loaded;
+    }
+    
+    /**
+     * 估算索引项占用的内存（字节）：哈希表中的键和倒排表，以及包含列的值；堆外哈希索引为直接缓冲区的大小；
+     * B+树索引的索引项在磁盘上，哈希索引还未加载时也不占内存，都为0；布隆过滤器索引为过滤器的大小
+     */
+    public long memoryUsage() {
+        if (filter != null) {
+            return filter.memoryUsage();
+        }
+        if (!isLoaded()) {
+            return 0;
+        }
+        if (indexMap instanceof OffHeapHashMap) {
+            return ((OffHeapHashMap) indexMap).memoryUsage();
+        }
+        long bytes = 0;
+        for (Map.Entry<Object, PositionSet> entry : indexMap.entrySet()) {
+            bytes += 40 + estimateSize(entry.getKey()) + entry.getValue().memoryUsage();  // 哈希表的项和槽位
+        }
+        for (Object[] values : includedValues.values()) {
+            bytes += 40 + 16 + 16 + 4L * values.length;  // 哈希表的项、装箱的位置和数组
+            for (Object value : values) {
+                bytes += estimateSize(value);
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * 索引的大小信息（键数、索引项数、估算的内存），哈希索引还未加载时只显示未加载
+     */
+    public String getStatistics() {
+        if (tree != null) {
+            return String.format("Index %s: BTREE (entries on disk)", indexName);
+        }
+        if (filter != null) {
+            return String.format("Index %s: BLOOM (%s)", indexName, filter);
+        }
+        if (!loaded) {
+            return String.format("Index %s: %s (not loaded)", indexName, type);
+        }
+        long entries = 0;
+        for (PositionSet positions : indexMap.values()) {
+            entries += positions.size();
+        }
+        return String.format("Index %s: %s, keys=%d, entries=%d, memory=%.1fKB",
+            indexName, type, indexMap.size(), entries, memoryUsage() / 1024.0);
+    }
+    
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return 40 + ((String) value).length();
+        }
+        if (value instanceof List) {
+            long bytes = 40 + 4L * ((List<?>) value).size();
+            for (Object element : (List<?>) value) {
+                bytes += estimateSize(element);
+            }
+            return bytes;
+        }
+        return value == null ? 0 : 16;
+    }
+    
+    private void ensureLoaded() {
+        if (!loaded) {
+            loaded = true;
+            storage.load(this);
+        }
+    }
+    
     /**
      * 添加索引项
      */
     public void addIndexEntry(Object value, Long position) {
-        indexMap.computeIfAbsent(value, k -> new java.util.ArrayList<>()).add(position);
+        addIndexEntry(value, position, NO_VALUES);
+    }
+    
+    /**
+     * 添加索引项（带包含列的值，顺序同 includeColumns）
+     */
+    public void addIndexEntry(Object value, Long position, Object[] included) {
+        if (tree != null) {
+            tree.insert(value, position, included);
+            return;
+        }
+        if (filter != null) {
+            filter.add(value, position);
+            return;
+        }
+        if (isNgram()) {
+            for (String gram : ngramsOf(value.toString())) {
+                addPosting(gram, position, NO_VALUES);
+            }
+            return;
+        }
+        addPosting(value, position, included);
+    }
+    
+    private void addPosting(Object value, Long position, Object[] included) {
+        ensureLoaded();
+        indexMap.computeIfAbsent(value, k -> newPositionSet()).add(position);
+        if (included.length > 0) {
+            includedValues.put(position, included);
+        }
+        if (storage != null) {
+            storage.logInsert(value, position, included);
+        }
+    }
+    
+    /**
+     * 记录中包含列的值
+     */
+    public Object[] getIncludedValues(Table table, Record record) {
+        if (includeColumns.isEmpty()) {
+            return NO_VALUES;
+        }
+        Object[] values = new Object[includeColumns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getColumnValue(table, record, includeColumns.get(i));
+        }
+        return values;
+    }
+    
+    /**
+     * 记录的索引键：单列索引为该列的值，多列索引为各列值的列表；第一列为NULL时返回null
+     */
+    public Object getKey(Table table, Record record) {
+        Object first = getColumnValue(table, record, columnNames.get(0));
+        if (first == null || columnNames.size() == 1) {
+            return first;
+        }
+        List<Object> key = new ArrayList<>(columnNames.size());
+        key.add(first);
+        for (int i = 1; i < columnNames.size(); i++) {
+            key.add(getColumnValue(table, record, columnNames.get(i)));
+        }
+        return key;
+    }
+    
+    private static Object getColumnValue(Table table, Record record, String column) {
+        Object value = record.getValue(table, column);
+        return toKeyValue(table.getFieldByName(column).getType(), value);
+    }
+    
+    /**
+     * 把数值统一为列类型对应的键类型（INT 为 Integer，FLOAT/DOUBLE 为 Double），与从数据文件读出的值一致，
+     * 哈希索引中按 equals 查找时才不会因为 1 和 1.0 这样的类型差别查不到；INT 列上不能无损转换的值保持原样
+     */
+    public static Object toKeyValue(FieldType type, Object value) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        double d = ((Number) value).doubleValue();
+        if (type == FieldType.INT && !(value instanceof Integer) && d == Math.rint(d) &&
+            d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE) {
+            return ((Number) value).intValue();
+        }
+        if ((type == FieldType.FLOAT || type == FieldType.DOUBLE) && !(value instanceof Double)) {
+            return d;
+        }
+        return value;
+    }
+    
+    /**
+     * 为插入的记录添加索引项（第一列为NULL的记录不进索引）
+     */
+    public void addRecord(Table table, Record record, long position) {
+        Object value = getKey(table, record);
+        if (value != null) {
+            addIndexEntry(value, position, getIncludedValues(table, record));
+        }
+    }
+    
+    /**
+     * 删除记录的索引项
+     */
+    public void removeRecord(Table table, Record record, long position) {
+        Object value = getKey(table, record);
+        if (value != null) {
+            removeIndexEntry(value, position);
+        }
+    }
+    
+    /**
+     * 记录原地更新：索引列和包含列都没变时不改动索引
+     */
+    public void updateRecord(Table table, Record oldRecord, Record newRecord, long position) {
+        Object oldValue = getKey(table, oldRecord);
+        Object newValue = getKey(table, newRecord);
+        if (Objects.equals(oldValue, newValue) &&
+            Arrays.equals(getIncludedValues(table, oldRecord), getIncludedValues(table, newRecord))) {
+            return;
+        }
+        removeRecord(table, oldRecord, position);
+        addRecord(table, newRecord, position);
     }
     
     /**
      * 删除索引项
      */
     public void removeIndexEntry(Object value, Long position) {
-        List<Long> positions = indexMap.get(value);
-        if (positions != null) {
-            positions.remove(position);
+        if (tree != null) {
+            tree.delete(value, position);
+            return;
+        }
+        if (filter != null) {
+            return; // 布隆过滤器不能删除，VACUUM 时重建
+        }
+        if (isNgram()) {
+            for (String gram : ngramsOf(value.toString())) {
+                removePosting(gram, position);
+            }
+            return;
+        }
+        removePosting(value, position);
+    }
+    
+    private void removePosting(Object value, Long position) {
+        ensureLoaded();
+        PositionSet positions = indexMap.get(value);
+        if (positions != null && positions.remove(position)) {
             if (positions.isEmpty()) {
                 indexMap.remove(value);
             }
+            includedValues.remove(position);
+            if (storage != null) {
+                storage.logDelete(value, position);
+            }
+        }
+    }
+    
+    /**
+     * 按 旧位置 -> 新位置 的映射更新所有索引项（数据文件整理后调用），映射中没有的位置被移除
+     */
+    public void remapPositions(Map<Long, Long> remap) {
+        if (tree != null) {
+            tree.remap(remap);
+            return;
+        }
+        if (filter != null) {
+            return; // 布隆过滤器按页记录取值，不能按位置重映射，由调用方从数据文件重建
+        }
+        ensureLoaded();
+        Iterator<Map.Entry<Object, PositionSet>> it = indexMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, PositionSet> entry = it.next();
+            PositionSet remapped = newPositionSet();
+            for (Long position : entry.getValue()) {
+                Long newPosition = remap.get(position);
+                if (newPosition != null) {
+                    remapped.add(newPosition);
+                }
+            }
+            if (remapped.isEmpty()) {
+                it.remove();
+            } else {
+                entry.setValue(remapped);
+            }
+        }
+        if (!includedValues.isEmpty()) {
+            Map<Long, Object[]> remappedValues = new HashMap<>();
+            for (Map.Entry<Long, Object[]> entry : includedValues.entrySet()) {
+                Long newPosition = remap.get(entry.getKey());
+                if (newPosition != null) {
+                    remappedValues.put(newPosition, entry.getValue());
+                }
+            }
+            includedValues = remappedValues;
+        }
+        if (storage != null) {
+            storage.rewrite(this);
         }
     }
     
@@ -94,13 +568,231 @@ public class Index implements Serializable {
      * 查找索引项
      */
     public List<Long> find(Object value) {
-        return indexMap.getOrDefault(value, new java.util.ArrayList<>());
+        if (tree != null) {
+            return positionsOf(tree.range(value, true, value, true));
+        }
+        return findPostings(value).toList();
+    }
+    
+    /**
+     * 查找索引项，返回位置的集合（升序）；哈希索引和位图索引直接返回索引中的集合，调用方不能修改
+     */
+    public PositionSet findPostings(Object value) {
+        if (tree != null) {
+            PostingList positions = new PostingList();
+            for (Entry entry : tree.range(value, true, value, true)) {
+                positions.add(entry.position);
+            }
+            return positions;
+        }
+        ensureLoaded();
+        PositionSet positions = indexMap.get(value);
+        return positions == null ? newPositionSet() : positions;
+    }
+    
+    /**
+     * N-gram 索引中可能含有子串 s 的记录位置（s 的各三元组的倒排表的交集，从最短的开始）；s 短于 NGRAM_LENGTH 时返回null
+     */
+    public PositionSet findContaining(String s) {
+        Set<String> grams = ngramsOf(s);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        ensureLoaded();
+        List<PositionSet> lists = new ArrayList<>();
+        for (String gram : grams) {
+            PositionSet positions = indexMap.get(gram);
+            if (positions == null) {
+                return newPositionSet();
+            }
+            lists.add(positions);
+        }
+        lists.sort(Comparator.comparingInt(PositionSet::size));
+        PositionSet result = lists.get(0);
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result = PostingList.intersect(result, lists.get(i));
+        }
+        return result;
+    }
+    
+    /**
+     * 字符串中所有不同的三元组（按出现的顺序），短于 NGRAM_LENGTH 的字符串没有
+     */
+    public static Set<String> ngramsOf(String s) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + NGRAM_LENGTH <= s.length(); i++) {
+            grams.add(s.substring(i, i + NGRAM_LENGTH));
+        }
+        return grams;
+    }
+    
+    /**
+     * 范围查找：low/high 为null表示不限；B+树索引按键的顺序返回，哈希索引逐个比较所有键（无序）
+     * 多列索引的边界可以只含前几列的值（前缀），此时只按这几列比较
+     */
+    public List<Long> findRange(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        return positionsOf(findEntries(low, lowInclusive, high, highInclusive));
+    }
+    
+    /**
+     * 范围查找，返回完整的索引项（含包含列的值）
+     */
+    public List<Entry> findEntries(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (tree != null) {
+            return tree.range(low, lowInclusive, high, highInclusive);
+        }
+        ensureLoaded();
+        List<Entry> entries = new ArrayList<>();
+        if (low != null && high != null && lowInclusive && highInclusive && compareKeys(low, high) == 0 && isFullKey(low)) {
+            // 等值查找
+            for (Long position : indexMap.getOrDefault(low, newPositionSet())) {
+                entries.add(new Entry(low, position, includedValues.getOrDefault(position, NO_VALUES)));
+            }
+            return entries;
+        }
+        for (Map.Entry<Object, PositionSet> entry : indexMap.entrySet()) {
+            if (inRange(entry.getKey(), low, lowInclusive, high, highInclusive)) {
+                for (Long position : entry.getValue()) {
+                    entries.add(new Entry(entry.getKey(), position, includedValues.getOrDefault(position, NO_VALUES)));
+                }
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * 键是否含全部索引列的值（多列索引的前缀边界不能直接在哈希表中查找）
+     */
+    private boolean isFullKey(Object key) {
+        return !(key instanceof List) || ((List<?>) key).size() == columnNames.size();
+    }
+    
+    /**
+     * 键是否含NULL：NULL 与任何值都不相等，含NULL的键不受唯一索引约束
+     */
+    public static boolean containsNull(Object key) {
+        return key == null || (key instanceof List && ((List<?>) key).contains(null));
+    }
+    
+    private static List<Long> positionsOf(List<Entry> entries) {
+        List<Long> positions = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            positions.add(entry.position);
+        }
+        return positions;
+    }
+    
+    /**
+     * 键是否在范围内
+     */
+    public static boolean inRange(Object key, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (low != null) {
+            int c = compareKeys(key, low);
+            if (c < 0 || (c == 0 && !lowInclusive)) {
+                return false;
+            }
+        }
+        if (high != null) {
+            int c = compareKeys(key, high);
+            if (c > 0 || (c == 0 && !highInclusive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 键的顺序：数值按数值比较（INT 与 DOUBLE 可比），字符串按字典序，数值排在字符串前
+     * 多列键逐列比较，NULL 排在非NULL之后；两个键长度不同时只比较共同的前几列
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compareKeys(Object a, Object b) {
+        if (a instanceof List && b instanceof List) {
+            List<?> keyA = (List<?>) a;
+            List<?> keyB = (List<?>) b;
+            for (int i = 0; i < Math.min(keyA.size(), keyB.size()); i++) {
+                Object x = keyA.get(i);
+                Object y = keyB.get(i);
+                int c = x == null ? (y == null ? 0 : 1) : (y == null ? -1 : compareKeys(x, y));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            if ((a instanceof Integer || a instanceof Long) && (b instanceof Integer || b instanceof Long)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Number != b instanceof Number) {
+            return a instanceof Number ? -1 : 1;
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+    
+    /**
+     * 索引项的持久化（由存储层实现）：加载全部索引项、记录单个索引项的增删、整体重写
+     */
+    public interface Storage {
+        void load(Index index);
+        
+        void logInsert(Object value, long position, Object[] included);
+        
+        void logDelete(Object value, long position);
+        
+        void rewrite(Index index);
+    }
+    
+    /**
+     * B+树索引的存储（由存储层实现）：索引项为 (键, 位置)，按键再按位置排序
+     */
+    public interface Tree {
+        void insert(Object value, long position, Object[] included);
+        
+        void delete(Object value, long position);
+        
+        List<Entry> range(Object low, boolean lowInclusive, Object high, boolean highInclusive);
+        
+        void remap(Map<Long, Long> remap);
+    }
+    
+    /**
+     * 布隆过滤器索引的存储（由存储层实现）：表级和页级（按记录位置所在的数据页）的过滤器，只能添加
+     */
+    public interface Filter {
+        void add(Object value, long position);
+        
+        boolean mightContain(Object value);
+        
+        boolean mightContain(Object value, int pageNo);
+        
+        long memoryUsage();
+    }
+    
+    /**
+     * 索引项：键、记录位置和包含列的值
+     */
+    public static class Entry {
+        public final Object key;
+        public final long position;
+        public final Object[] included;
+        
+        public Entry(Object key, long position, Object[] included) {
+            this.key = key;
+            this.position = position;
+            this.included = included;
+        }
     }
     
     @Override
     public String toString() {
         return String.format("Index: %s ON %s(%s) %s", 
-            indexName, tableName, columnName, unique ? "UNIQUE" : "");
+            indexName, tableName, String.join(", ", columnNames), unique ? "UNIQUE" : "");
     }
 }
 
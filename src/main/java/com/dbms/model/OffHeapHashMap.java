@@ -0,0 +1,817 @@
+package com.dbms.model;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 堆外哈希表 - 堆外哈希索引（OFFHEAP）的索引项：键 -> 记录位置，键和位置都放在堆外内存（直接缓冲区）中，
+ * 不产生装箱的键和位置对象，大表的索引不占用 Java 堆，也不增加 GC 的负担
+ * 开放定址（线性探测），槽位 32 字节：键(8) + 哈希值(4) + 状态(4) + 位置数(4) + 其余位置的链表头(4) + 第一个位置(8)
+ * 键按第一个键的类型特化：INT 存整数值，DOUBLE 存位模式，字符串存在键区中的地址（Latin-1 或 UTF-16 字节）；
+ * 类型与之不同的键（如 INT 列上的小数）放在堆内的哈希表中
+ * 一个键的第一个位置直接存在槽位中（唯一索引不需要链表），其余位置在节点区中成链表（节点 12 字节：位置(8) + 下一节点(4)）
+ * 扩容是渐进的：已用槽位（含删除标记）超过 3/4 时分配新表，之后每插入一个新键把旧表中的 MIGRATE_STEP 个槽位搬到新表，
+ * 搬完前查找两个表都查；直接缓冲区按段分配，不再使用后由 GC 回收
+ * 作为 Map 使用时 get 返回键的位置集合的视图，对视图的增删直接修改堆外的数据
+ */
+public class OffHeapHashMap extends AbstractMap<Object, PositionSet> {
+    
+    // 槽位布局
+    private static final int SLOT_SIZE = 32;
+    private static final int KEY = 0;
+    private static final int HASH = 8;
+    private static final int STATE = 12;
+    private static final int COUNT = 16;
+    private static final int HEAD = 20;
+    private static final int FIRST = 24;
+    
+    // 槽位状态（新分配的直接缓冲区全为0，即空槽位）
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int DELETED = 2;
+    
+    // 每段的槽位数、节点数和键区字节数
+    private static final int SLOT_SEGMENT_SHIFT = 15;
+    private static final int NODE_SEGMENT_SHIFT = 16;
+    private static final int NODE_SIZE = 12;
+    private static final int KEY_SEGMENT_SIZE = 1 << 20;
+    
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    
+    // 扩容期间每插入一个新键搬移的旧表槽位数
+    private static final int MIGRATE_STEP = 64;
+    
+    // 没有下一节点
+    private static final int NONE = -1;
+    
+    // 键的类型
+    private static final int KIND_NONE = 0;
+    private static final int KIND_INT = 1;
+    private static final int KIND_DOUBLE = 2;
+    private static final int KIND_STRING = 3;
+    
+    private int kind = KIND_NONE;
+    private SlotTable table;
+    private SlotTable oldTable;   // 扩容时尚未搬完的旧表（null 表示不在扩容）
+    private int migrated;         // 旧表中已搬移的槽位数
+    
+    private ByteBuffer[] nodeSegments = new ByteBuffer[0];
+    private int nodeCount;
+    private int freeNode = NONE;
+    
+    private final Map<Object, PositionSet> overflow = new HashMap<>();  // 类型不同的键
+    
+    public OffHeapHashMap() {
+        this(0);
+    }
+    
+    /**
+     * expectedKeys：预计的键数，按它分配槽位，加载索引文件时不需要扩容
+     */
+    public OffHeapHashMap(int expectedKeys) {
+        table = new SlotTable(capacityFor(expectedKeys));
+    }
+    
+    @Override
+    public int size() {
+        return table.used + (oldTable == null ? 0 : oldTable.used) + overflow.size();
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        Probe probe = probe(key, false);
+        if (probe == null) {
+            return overflow.containsKey(key);
+        }
+        return locate(probe);
+    }
+    
+    @Override
+    public PositionSet get(Object key) {
+        Probe probe = probe(key, false);
+        if (probe == null) {
+            return overflow.get(key);
+        }
+        return locate(probe) ? new Positions(key, probe) : null;
+    }
+    
+    /**
+     * 键不存在时插入 mappingFunction 给出的位置，返回键的位置集合的视图
+     */
+    @Override
+    public PositionSet computeIfAbsent(Object key, Function<? super Object, ? extends PositionSet> mappingFunction) {
+        Probe probe = probe(key, true);
+        if (probe == null) {
+            return overflow.computeIfAbsent(key, mappingFunction);
+        }
+        if (!locate(probe)) {
+            PositionSet positions = mappingFunction.apply(key);
+            if (positions == null) {
+                return null;
+            }
+            insertKey(probe);
+            for (PrimitiveIterator.OfLong it = positions.iterator(); it.hasNext(); ) {
+                addPosition(probe, it.nextLong());
+            }
+        }
+        return new Positions(key, probe);
+    }
+    
+    /**
+     * 用给定的位置替换键原有的位置（复制到堆外），返回原有位置的副本
+     */
+    @Override
+    public PositionSet put(Object key, PositionSet positions) {
+        Probe probe = probe(key, true);
+        if (probe == null) {
+            return overflow.put(key, positions);
+        }
+        PositionSet previous = null;
+        if (locate(probe)) {
+            previous = copyOf(probe);
+            clearPositions(probe);
+        } else {
+            insertKey(probe);
+        }
+        for (PrimitiveIterator.OfLong it = positions.iterator(); it.hasNext(); ) {
+            addPosition(probe, it.nextLong());
+        }
+        return previous;
+    }
+    
+    @Override
+    public PositionSet remove(Object key) {
+        Probe probe = probe(key, false);
+        if (probe == null) {
+            return overflow.remove(key);
+        }
+        if (!locate(probe)) {
+            return null;
+        }
+        PositionSet previous = copyOf(probe);
+        removeSlot(probe.table, probe.slot);
+        return previous;
+    }
+    
+    @Override
+    public void clear() {
+        table = new SlotTable(MIN_CAPACITY);
+        oldTable = null;
+        migrated = 0;
+        nodeSegments = new ByteBuffer[0];
+        nodeCount = 0;
+        freeNode = NONE;
+        overflow.clear();
+    }
+    
+    @Override
+    public Set<Map.Entry<Object, PositionSet>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, PositionSet>>() {
+            @Override
+            public int size() {
+                return OffHeapHashMap.this.size();
+            }
+            
+            @Override
+            public Iterator<Map.Entry<Object, PositionSet>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+    
+    /**
+     * 占用的内存（字节）：直接缓冲区的大小，加上堆内哈希表中的键和位置
+     */
+    public long memoryUsage() {
+        long bytes = table.bytes() + (oldTable == null ? 0 : oldTable.bytes());
+        for (ByteBuffer segment : nodeSegments) {
+            bytes += segment.capacity();
+        }
+        for (PositionSet positions : overflow.values()) {
+            bytes += 56 + positions.memoryUsage();
+        }
+        return bytes;
+    }
+    
+    // ---- 键的编码和查找 ----
+    
+    /**
+     * 键的编码（数值位模式或字符串字节）、哈希值，以及查找到的槽位
+     */
+    private static class Probe {
+        long bits;
+        byte[] bytes;
+        int hash;
+        SlotTable table;
+        int slot;
+    }
+    
+    /**
+     * 编码键；键的类型与表的类型不同时返回null（放在堆内）。create 为true且表中还没有键时按这个键确定类型
+     */
+    private Probe probe(Object key, boolean create) {
+        int keyKind = key instanceof Integer ? KIND_INT : key instanceof Double ? KIND_DOUBLE
+            : key instanceof String ? KIND_STRING : KIND_NONE;
+        if (kind == KIND_NONE && create && keyKind != KIND_NONE) {
+            kind = keyKind;
+        }
+        if (keyKind == KIND_NONE || keyKind != kind) {
+            return null;
+        }
+        Probe probe = new Probe();
+        if (kind == KIND_INT) {
+            probe.bits = (Integer) key;
+            probe.hash = mix(probe.bits);
+        } else if (kind == KIND_DOUBLE) {
+            probe.bits = Double.doubleToLongBits((Double) key);  // 与 Double.equals 一致
+            probe.hash = mix(probe.bits);
+        } else {
+            probe.bytes = encode((String) key);
+            probe.hash = mix(Arrays.hashCode(probe.bytes));
+        }
+        return probe;
+    }
+    
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+    
+    /**
+     * 字符串的字节：字符都不超过 0xFF 时每字符1字节，否则每字符2字节；第一个字节标明编码，字节相同即字符串相同
+     */
+    private static byte[] encode(String value) {
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++) {
+            latin1 = value.charAt(i) <= 0xFF;
+        }
+        if (latin1) {
+            byte[] bytes = new byte[value.length() + 1];
+            for (int i = 0; i < value.length(); i++) {
+                bytes[i + 1] = (byte) value.charAt(i);
+            }
+            return bytes;
+        }
+        byte[] bytes = new byte[value.length() * 2 + 1];
+        bytes[0] = 1;
+        for (int i = 0; i < value.length(); i++) {
+            bytes[2 * i + 1] = (byte) (value.charAt(i) >>> 8);
+            bytes[2 * i + 2] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+    
+    private static String decode(byte[] bytes) {
+        if (bytes[0] == 0) {
+            char[] chars = new char[bytes.length - 1];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (bytes[i + 1] & 0xFF);
+            }
+            return new String(chars);
+        }
+        char[] chars = new char[(bytes.length - 1) / 2];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (((bytes[2 * i + 1] & 0xFF) << 8) | (bytes[2 * i + 2] & 0xFF));
+        }
+        return new String(chars);
+    }
+    
+    private Object keyAt(SlotTable t, int slot) {
+        long bits = t.getLong(slot, KEY);
+        if (kind == KIND_INT) {
+            return (int) bits;
+        }
+        if (kind == KIND_DOUBLE) {
+            return Double.longBitsToDouble(bits);
+        }
+        return decode(t.keyBytes(bits));
+    }
+    
+    /**
+     * 查找键所在的槽位（先查新表，再查未搬完的旧表），找到时记在 probe 中
+     */
+    private boolean locate(Probe probe) {
+        if (find(table, probe)) {
+            return true;
+        }
+        return oldTable != null && find(oldTable, probe);
+    }
+    
+    private boolean find(SlotTable t, Probe probe) {
+        for (int slot = probe.hash & t.mask; ; slot = (slot + 1) & t.mask) {
+            int state = t.getInt(slot, STATE);
+            if (state == EMPTY) {
+                return false;
+            }
+            if (state == USED && t.getInt(slot, HASH) == probe.hash &&
+                (probe.bytes == null ? t.getLong(slot, KEY) == probe.bits : t.keyEquals(t.getLong(slot, KEY), probe.bytes))) {
+                probe.table = t;
+                probe.slot = slot;
+                return true;
+            }
+        }
+    }
+    
+    // ---- 键的插入、删除和渐进扩容 ----
+    
+    /**
+     * 在新表中插入键（还没有位置），必要时开始扩容或搬移旧表中的槽位
+     */
+    private void insertKey(Probe probe) {
+        if (oldTable != null && (long) (table.used + table.deleted + oldTable.used + 1) * 4 > (long) table.capacity * 3) {
+            rehashAll();  // 扩容未完成时新表已不够（期间插入了很多新键），一次搬完并按全部键数重新分配
+        } else if (oldTable == null && (long) (table.used + table.deleted + 1) * 4 > (long) table.capacity * 3) {
+            oldTable = table;
+            table = new SlotTable(capacityFor(oldTable.used + 1));
+            migrated = 0;
+        }
+        int slot = freeSlot(table, probe.hash);
+        if (probe.bytes == null) {
+            table.putLong(slot, KEY, probe.bits);
+        } else {
+            table.putLong(slot, KEY, table.appendKey(probe.bytes));
+        }
+        table.putInt(slot, HASH, probe.hash);
+        table.putInt(slot, COUNT, 0);
+        table.putInt(slot, HEAD, NONE);
+        table.putInt(slot, STATE, USED);
+        table.used++;
+        migrate(MIGRATE_STEP);
+        probe.table = table;
+        probe.slot = slot;
+    }
+    
+    /**
+     * 探测序列上第一个空槽位或删除标记
+     */
+    private static int freeSlot(SlotTable t, int hash) {
+        for (int slot = hash & t.mask; ; slot = (slot + 1) & t.mask) {
+            int state = t.getInt(slot, STATE);
+            if (state == EMPTY) {
+                return slot;
+            }
+            if (state == DELETED) {
+                t.deleted--;
+                return slot;
+            }
+        }
+    }
+    
+    /**
+     * 把旧表中接下来的 steps 个槽位搬到新表，全部搬完后丢弃旧表
+     */
+    private void migrate(int steps) {
+        if (oldTable == null) {
+            return;
+        }
+        int end = (int) Math.min(oldTable.capacity, (long) migrated + steps);
+        for (; migrated < end; migrated++) {
+            if (oldTable.getInt(migrated, STATE) == USED) {
+                moveSlot(oldTable, migrated, table);
+            }
+        }
+        if (migrated == oldTable.capacity) {
+            oldTable = null;
+        }
+    }
+    
+    /**
+     * 把新旧两个表中的键全部搬到按键数重新分配的表中
+     */
+    private void rehashAll() {
+        SlotTable target = new SlotTable(capacityFor(table.used + oldTable.used + 1));
+        for (SlotTable source : new SlotTable[] {table, oldTable}) {
+            for (int slot = 0; slot < source.capacity; slot++) {
+                if (source.getInt(slot, STATE) == USED) {
+                    moveSlot(source, slot, target);
+                }
+            }
+        }
+        table = target;
+        oldTable = null;
+    }
+    
+    /**
+     * 把槽位搬到另一个表（字符串键复制到目标表的键区），原槽位标为删除，旧表中的探测序列不会断开
+     */
+    private void moveSlot(SlotTable from, int slot, SlotTable to) {
+        int hash = from.getInt(slot, HASH);
+        int target = freeSlot(to, hash);
+        long key = from.getLong(slot, KEY);
+        to.putLong(target, KEY, kind == KIND_STRING ? to.appendKey(from.keyBytes(key)) : key);
+        to.putInt(target, HASH, hash);
+        to.putInt(target, COUNT, from.getInt(slot, COUNT));
+        to.putInt(target, HEAD, from.getInt(slot, HEAD));
+        to.putLong(target, FIRST, from.getLong(slot, FIRST));
+        to.putInt(target, STATE, USED);
+        to.used++;
+        from.putInt(slot, STATE, DELETED);
+        from.used--;
+        from.deleted++;
+    }
+    
+    /**
+     * 删除键：释放位置链表的节点，槽位标为删除
+     */
+    private void removeSlot(SlotTable t, int slot) {
+        freeChain(t.getInt(slot, HEAD));
+        t.putInt(slot, STATE, DELETED);
+        t.used--;
+        t.deleted++;
+    }
+    
+    private static int capacityFor(int keys) {
+        long capacity = MIN_CAPACITY;
+        while (capacity < (long) keys * 2 && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return (int) capacity;
+    }
+    
+    // ---- 一个键的位置 ----
+    
+    private boolean addPosition(Probe probe, long position) {
+        if (!locate(probe)) {
+            insertKey(probe);
+        }
+        SlotTable t = probe.table;
+        int slot = probe.slot;
+        int count = t.getInt(slot, COUNT);
+        if (count == 0) {
+            t.putLong(slot, FIRST, position);
+        } else {
+            if (containsPosition(t, slot, position)) {
+                return false;
+            }
+            t.putInt(slot, HEAD, allocateNode(position, t.getInt(slot, HEAD)));
+        }
+        t.putInt(slot, COUNT, count + 1);
+        return true;
+    }
+    
+    /**
+     * 删除一个位置（键的位置删完后仍保留键，由调用方删除）
+     */
+    private boolean removePosition(Probe probe, long position) {
+        if (!locate(probe)) {
+            return false;
+        }
+        SlotTable t = probe.table;
+        int slot = probe.slot;
+        int count = t.getInt(slot, COUNT);
+        if (count == 0) {
+            return false;
+        }
+        int head = t.getInt(slot, HEAD);
+        if (t.getLong(slot, FIRST) == position) {
+            if (head != NONE) {
+                // 链表的第一个节点移到槽位中
+                t.putLong(slot, FIRST, nodePosition(head));
+                t.putInt(slot, HEAD, nodeNext(head));
+                releaseNode(head);
+            }
+            t.putInt(slot, COUNT, count - 1);
+            return true;
+        }
+        int previous = NONE;
+        for (int node = head; node != NONE; previous = node, node = nodeNext(node)) {
+            if (nodePosition(node) == position) {
+                if (previous == NONE) {
+                    t.putInt(slot, HEAD, nodeNext(node));
+                } else {
+                    setNodeNext(previous, nodeNext(node));
+                }
+                releaseNode(node);
+                t.putInt(slot, COUNT, count - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean containsPosition(SlotTable t, int slot, long position) {
+        if (t.getInt(slot, COUNT) == 0) {
+            return false;
+        }
+        if (t.getLong(slot, FIRST) == position) {
+            return true;
+        }
+        for (int node = t.getInt(slot, HEAD); node != NONE; node = nodeNext(node)) {
+            if (nodePosition(node) == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void clearPositions(Probe probe) {
+        freeChain(probe.table.getInt(probe.slot, HEAD));
+        probe.table.putInt(probe.slot, HEAD, NONE);
+        probe.table.putInt(probe.slot, COUNT, 0);
+    }
+    
+    /**
+     * 键的所有位置（升序）
+     */
+    private long[] positionsAt(SlotTable t, int slot) {
+        long[] positions = new long[t.getInt(slot, COUNT)];
+        if (positions.length == 0) {
+            return positions;
+        }
+        positions[0] = t.getLong(slot, FIRST);
+        int n = 1;
+        for (int node = t.getInt(slot, HEAD); node != NONE; node = nodeNext(node)) {
+            positions[n++] = nodePosition(node);
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+    
+    private PositionSet copyOf(Probe probe) {
+        PostingList copy = new PostingList();
+        for (long position : positionsAt(probe.table, probe.slot)) {
+            copy.append(position);
+        }
+        return copy;
+    }
+    
+    // ---- 节点区 ----
+    
+    private int allocateNode(long position, int next) {
+        int node = freeNode;
+        if (node != NONE) {
+            freeNode = nodeNext(node);
+        } else {
+            node = nodeCount++;
+            if ((node >>> NODE_SEGMENT_SHIFT) == nodeSegments.length) {
+                nodeSegments = Arrays.copyOf(nodeSegments, nodeSegments.length + 1);
+                nodeSegments[nodeSegments.length - 1] = ByteBuffer.allocateDirect(NODE_SIZE << NODE_SEGMENT_SHIFT);
+            }
+        }
+        nodeSegment(node).putLong(nodeOffset(node), position);
+        setNodeNext(node, next);
+        return node;
+    }
+    
+    private void releaseNode(int node) {
+        setNodeNext(node, freeNode);
+        freeNode = node;
+    }
+    
+    private void freeChain(int node) {
+        while (node != NONE) {
+            int next = nodeNext(node);
+            releaseNode(node);
+            node = next;
+        }
+    }
+    
+    private long nodePosition(int node) {
+        return nodeSegment(node).getLong(nodeOffset(node));
+    }
+    
+    private int nodeNext(int node) {
+        return nodeSegment(node).getInt(nodeOffset(node) + 8);
+    }
+    
+    private void setNodeNext(int node, int next) {
+        nodeSegment(node).putInt(nodeOffset(node) + 8, next);
+    }
+    
+    private ByteBuffer nodeSegment(int node) {
+        return nodeSegments[node >>> NODE_SEGMENT_SHIFT];
+    }
+    
+    private static int nodeOffset(int node) {
+        return (node & ((1 << NODE_SEGMENT_SHIFT) - 1)) * NODE_SIZE;
+    }
+    
+    /**
+     * 槽位表：按段分配的直接缓冲区，字符串键的字节在这个表自己的键区中（表被丢弃时一起回收）
+     */
+    private static class SlotTable {
+        final int capacity;
+        final int mask;
+        final ByteBuffer[] segments;
+        ByteBuffer[] keySegments = new ByteBuffer[0];
+        int keyOffset;     // 最后一个键区段中已用的字节数
+        int used;          // 键数
+        int deleted;       // 删除标记数
+        
+        SlotTable(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            int perSegment = Math.min(capacity, 1 << SLOT_SEGMENT_SHIFT);
+            segments = new ByteBuffer[capacity / perSegment];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = ByteBuffer.allocateDirect(perSegment * SLOT_SIZE);
+            }
+        }
+        
+        long getLong(int slot, int field) {
+            return segments[slot >>> SLOT_SEGMENT_SHIFT].getLong(offset(slot) + field);
+        }
+        
+        int getInt(int slot, int field) {
+            return segments[slot >>> SLOT_SEGMENT_SHIFT].getInt(offset(slot) + field);
+        }
+        
+        void putLong(int slot, int field, long value) {
+            segments[slot >>> SLOT_SEGMENT_SHIFT].putLong(offset(slot) + field, value);
+        }
+        
+        void putInt(int slot, int field, int value) {
+            segments[slot >>> SLOT_SEGMENT_SHIFT].putInt(offset(slot) + field, value);
+        }
+        
+        private static int offset(int slot) {
+            return (slot & ((1 << SLOT_SEGMENT_SHIFT) - 1)) * SLOT_SIZE;
+        }
+        
+        /**
+         * 在键区末尾存入字符串键（长度(4) + 字节），返回地址：段号(高32位) + 段内偏移
+         */
+        long appendKey(byte[] bytes) {
+            int size = 4 + bytes.length;
+            if (keySegments.length == 0 || keyOffset + size > keySegments[keySegments.length - 1].capacity()) {
+                keySegments = Arrays.copyOf(keySegments, keySegments.length + 1);
+                keySegments[keySegments.length - 1] = ByteBuffer.allocateDirect(Math.max(KEY_SEGMENT_SIZE, size));
+                keyOffset = 0;
+            }
+            ByteBuffer segment = keySegments[keySegments.length - 1];
+            long address = ((long) (keySegments.length - 1) << 32) | keyOffset;
+            segment.putInt(keyOffset, bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                segment.put(keyOffset + 4 + i, bytes[i]);
+            }
+            keyOffset += size;
+            return address;
+        }
+        
+        byte[] keyBytes(long address) {
+            ByteBuffer segment = keySegments[(int) (address >>> 32)];
+            int offset = (int) address;
+            byte[] bytes = new byte[segment.getInt(offset)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = segment.get(offset + 4 + i);
+            }
+            return bytes;
+        }
+        
+        boolean keyEquals(long address, byte[] bytes) {
+            ByteBuffer segment = keySegments[(int) (address >>> 32)];
+            int offset = (int) address;
+            if (segment.getInt(offset) != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (segment.get(offset + 4 + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        long bytes() {
+            long bytes = (long) capacity * SLOT_SIZE;
+            for (ByteBuffer segment : keySegments) {
+                bytes += segment.capacity();
+            }
+            return bytes;
+        }
+    }
+    
+    /**
+     * 一个键的位置集合的视图：每次操作重新查找键的槽位（扩容时槽位会搬移），遍历时按升序
+     */
+    private class Positions implements PositionSet {
+        private final Object key;
+        private final Probe probe;
+        
+        Positions(Object key, Probe probe) {
+            this.key = key;
+            this.probe = probe;
+        }
+        
+        @Override
+        public boolean add(long position) {
+            return addPosition(probe, position);
+        }
+        
+        @Override
+        public boolean remove(long position) {
+            return removePosition(probe, position);
+        }
+        
+        @Override
+        public boolean contains(long position) {
+            return locate(probe) && containsPosition(probe.table, probe.slot, position);
+        }
+        
+        @Override
+        public int size() {
+            return locate(probe) ? probe.table.getInt(probe.slot, COUNT) : 0;
+        }
+        
+        @Override
+        public long memoryUsage() {
+            return (long) NODE_SIZE * Math.max(0, size() - 1);
+        }
+        
+        @Override
+        public long[] toArray() {
+            return locate(probe) ? positionsAt(probe.table, probe.slot) : new long[0];
+        }
+        
+        @Override
+        public PrimitiveIterator.OfLong iterator() {
+            return Arrays.stream(toArray()).iterator();
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + Arrays.toString(toArray());
+        }
+    }
+    
+    /**
+     * 依次遍历新表、旧表中未搬移的槽位和堆内的键；遍历期间只能删除当前键或替换它的位置（不插入新键，槽位不会搬移）
+     */
+    private class EntryIterator implements Iterator<Map.Entry<Object, PositionSet>> {
+        private final Iterator<Map.Entry<Object, PositionSet>> overflowIterator = overflow.entrySet().iterator();
+        private SlotTable current = table;
+        private int slot = -1;
+        private SlotTable nextTable;
+        private int nextSlot = -1;
+        private boolean inOverflow;
+        
+        EntryIterator() {
+            advance();
+        }
+        
+        private void advance() {
+            nextTable = current;
+            nextSlot = slot;
+            while (nextTable != null) {
+                for (nextSlot++; nextSlot < nextTable.capacity; nextSlot++) {
+                    if (nextTable.getInt(nextSlot, STATE) == USED) {
+                        return;
+                    }
+                }
+                nextTable = nextTable == table ? oldTable : null;
+                nextSlot = -1;
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return nextTable != null || overflowIterator.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<Object, PositionSet> next() {
+            if (nextTable == null) {
+                inOverflow = true;
+                return overflowIterator.next();
+            }
+            current = nextTable;
+            slot = nextSlot;
+            Object key = keyAt(current, slot);
+            Probe probe = probe(key, false);
+            Map.Entry<Object, PositionSet> entry = new AbstractMap.SimpleEntry<Object, PositionSet>(key, new Positions(key, probe)) {
+                @Override
+                public PositionSet setValue(PositionSet value) {
+                    return put(getKey(), value);
+                }
+            };
+            advance();
+            return entry;
+        }
+        
+        @Override
+        public void remove() {
+            if (inOverflow) {
+                overflowIterator.remove();
+                return;
+            }
+            if (slot < 0 || current.getInt(slot, STATE) != USED) {
+                throw new IllegalStateException();
+            }
+            removeSlot(current, slot);
+        }
+    }
+}
+
@@ -0,0 +1,69 @@
+package com.dbms.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * 记录位置的集合（索引中一个键对应的所有记录位置），按位置升序遍历
+ * 哈希索引用倒排表（PostingList），位图索引用压缩位图（RecordBitmap）
+ */
+public interface PositionSet extends Iterable<Long> {
+    
+    /**
+     * 添加位置，已存在时返回false
+     */
+    boolean add(long position);
+    
+    /**
+     * 删除位置，不存在时返回false
+     */
+    boolean remove(long position);
+    
+    boolean contains(long position);
+    
+    int size();
+    
+    /**
+     * 估算占用的内存（字节）
+     */
+    long memoryUsage();
+    
+    @Override
+    PrimitiveIterator.OfLong iterator();
+    
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * 在末尾追加比已有位置都大的位置（由有序数据构造时使用）
+     */
+    default void append(long position) {
+        add(position);
+    }
+    
+    /**
+     * 所有位置（升序）
+     */
+    default long[] toArray() {
+        long[] result = new long[size()];
+        int n = 0;
+        for (PrimitiveIterator.OfLong it = iterator(); it.hasNext(); ) {
+            result[n++] = it.nextLong();
+        }
+        return result;
+    }
+    
+    /**
+     * 所有位置（升序，装箱后的列表）
+     */
+    default List<Long> toList() {
+        List<Long> list = new ArrayList<>(size());
+        for (PrimitiveIterator.OfLong it = iterator(); it.hasNext(); ) {
+            list.add(it.nextLong());
+        }
+        return list;
+    }
+}
+
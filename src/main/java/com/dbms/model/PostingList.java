@@ -0,0 +1,303 @@
+package com.dbms.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 倒排表 - 哈希索引中一个键对应的记录位置集合，位置用基本类型 long 升序存放，不装箱
+ * 位置数不超过 BLOCK_SIZE 时是一个有序数组；超过后分成若干有序块（块间递增），先按各块的第一个位置二分定位块，
+ * 再在块内二分，插入和删除只移动一个块内的元素；块满时对半拆分，块空时去掉
+ * 按升序遍历即按记录在数据文件中的顺序读取；两个位置集合按归并求并集和交集
+ */
+public class PostingList implements PositionSet, Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    // 每块最多的位置数
+    static final int BLOCK_SIZE = 256;
+    
+    private long[] values = new long[1];  // 只有一块时的位置（blocks 为null）
+    private long[][] blocks;              // 分块后的各块
+    private int[] counts;                 // 分块后各块中的位置数
+    private int blockCount;
+    private int size;
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean add(long position) {
+        if (blocks == null) {
+            int i = Arrays.binarySearch(values, 0, size, position);
+            if (i >= 0) {
+                return false;
+            }
+            if (size == BLOCK_SIZE) {
+                split();
+                return add(position);
+            }
+            values = insertAt(values, size, -i - 1, position);
+            size++;
+            return true;
+        }
+        int b = findBlock(position);
+        int i = Arrays.binarySearch(blocks[b], 0, counts[b], position);
+        if (i >= 0) {
+            return false;
+        }
+        if (counts[b] == BLOCK_SIZE) {
+            splitBlock(b);
+            return add(position);
+        }
+        blocks[b] = insertAt(blocks[b], counts[b], -i - 1, position);
+        counts[b]++;
+        size++;
+        return true;
+    }
+    
+    @Override
+    public boolean remove(long position) {
+        if (blocks == null) {
+            int i = Arrays.binarySearch(values, 0, size, position);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            return true;
+        }
+        int b = findBlock(position);
+        int i = Arrays.binarySearch(blocks[b], 0, counts[b], position);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(blocks[b], i + 1, blocks[b], i, counts[b] - i - 1);
+        counts[b]--;
+        size--;
+        if (counts[b] == 0) {
+            System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+            System.arraycopy(counts, b + 1, counts, b, blockCount - b - 1);
+            blocks[--blockCount] = null;
+        }
+        if (size <= BLOCK_SIZE / 2) {
+            values = toArray();  // 位置变少后合并回一个数组
+            blocks = null;
+            counts = null;
+            blockCount = 0;
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean contains(long position) {
+        if (blocks == null) {
+            return Arrays.binarySearch(values, 0, size, position) >= 0;
+        }
+        int b = findBlock(position);
+        return Arrays.binarySearch(blocks[b], 0, counts[b], position) >= 0;
+    }
+    
+    @Override
+    public long[] toArray() {
+        if (blocks == null) {
+            return Arrays.copyOf(values, size);
+        }
+        long[] result = new long[size];
+        int n = 0;
+        for (int b = 0; b < blockCount; b++) {
+            System.arraycopy(blocks[b], 0, result, n, counts[b]);
+            n += counts[b];
+        }
+        return result;
+    }
+    
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int block;
+            private int offset;
+            private int returned;
+            
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+            
+            @Override
+            public long nextLong() {
+                if (returned >= size) {
+                    throw new NoSuchElementException();
+                }
+                returned++;
+                if (blocks == null) {
+                    return values[offset++];
+                }
+                if (offset == counts[block]) {
+                    block++;
+                    offset = 0;
+                }
+                return blocks[block][offset++];
+            }
+        };
+    }
+    
+    /**
+     * 两个位置集合的并集（按归并，结果仍有序）
+     */
+    public static PostingList union(PositionSet a, PositionSet b) {
+        long[] x = a.toArray();
+        long[] y = b.toArray();
+        PostingList result = new PostingList();
+        int i = 0;
+        int j = 0;
+        while (i < x.length || j < y.length) {
+            if (j == y.length || (i < x.length && x[i] < y[j])) {
+                result.append(x[i++]);
+            } else if (i == x.length || y[j] < x[i]) {
+                result.append(y[j++]);
+            } else {
+                result.append(x[i++]);
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 两个位置集合的交集：大小相差悬殊时用较小的一个逐个在较大的一个中查找，否则按归并
+     */
+    public static PostingList intersect(PositionSet a, PositionSet b) {
+        PositionSet small = a.size() <= b.size() ? a : b;
+        PositionSet large = small == a ? b : a;
+        PostingList result = new PostingList();
+        if ((long) small.size() * 16 < large.size()) {
+            for (PrimitiveIterator.OfLong it = small.iterator(); it.hasNext(); ) {
+                long position = it.nextLong();
+                if (large.contains(position)) {
+                    result.append(position);
+                }
+            }
+            return result;
+        }
+        long[] x = small.toArray();
+        long[] y = large.toArray();
+        int i = 0;
+        int j = 0;
+        while (i < x.length && j < y.length) {
+            if (x[i] < y[j]) {
+                i++;
+            } else if (y[j] < x[i]) {
+                j++;
+            } else {
+                result.append(x[i++]);
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 估算占用的内存（字节）：对象头和数组头按 16 字节、引用按 4 字节计
+     */
+    @Override
+    public long memoryUsage() {
+        long bytes = 32;
+        if (blocks == null) {
+            return bytes + 16 + 8L * values.length;
+        }
+        bytes += 16 + 4L * blocks.length + 16 + 4L * counts.length;
+        for (int b = 0; b < blockCount; b++) {
+            bytes += 16 + 8L * blocks[b].length;
+        }
+        return bytes;
+    }
+    
+    @Override
+    public void append(long position) {
+        if (blocks == null && size < BLOCK_SIZE) {
+            values = insertAt(values, size, size, position);
+            size++;
+            return;
+        }
+        if (blocks == null) {
+            split();
+        }
+        int b = blockCount - 1;
+        if (counts[b] == BLOCK_SIZE) {
+            // 最后一块满时直接开始新块，不拆分（按序构造时各块都是满的）
+            b = addBlock(blockCount, new long[BLOCK_SIZE], 0);
+        }
+        blocks[b] = insertAt(blocks[b], counts[b], counts[b], position);
+        counts[b]++;
+        size++;
+    }
+    
+    /**
+     * 位置所在（或应插入）的块：第一个位置不大于它的最后一块
+     */
+    private int findBlock(long position) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks[mid][0] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * 单个数组满时转为分块
+     */
+    private void split() {
+        blocks = new long[4][];
+        counts = new int[4];
+        blocks[0] = values;
+        counts[0] = size;
+        blockCount = 1;
+        values = null;
+        splitBlock(0);
+    }
+    
+    /**
+     * 把满块对半拆成两块
+     */
+    private void splitBlock(int b) {
+        int half = counts[b] / 2;
+        long[] upper = Arrays.copyOfRange(blocks[b], half, BLOCK_SIZE);
+        counts[b] = half;
+        addBlock(b + 1, upper, BLOCK_SIZE - half);
+    }
+    
+    private int addBlock(int at, long[] block, int count) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+            counts = Arrays.copyOf(counts, blockCount * 2);
+        }
+        System.arraycopy(blocks, at, blocks, at + 1, blockCount - at);
+        System.arraycopy(counts, at, counts, at + 1, blockCount - at);
+        blocks[at] = block;
+        counts[at] = count;
+        blockCount++;
+        return at;
+    }
+    
+    /**
+     * 在有序数组的 index 处插入（容量不够时按 1.5 倍扩大，不超过 BLOCK_SIZE）
+     */
+    private static long[] insertAt(long[] array, int count, int index, long value) {
+        if (count == array.length) {
+            array = Arrays.copyOf(array, Math.min(BLOCK_SIZE, Math.max(count + 1, count + (count >> 1))));
+        }
+        System.arraycopy(array, index, array, index + 1, count - index);
+        array[index] = value;
+        return array;
+    }
+}
+
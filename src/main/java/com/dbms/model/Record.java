@@ -2,6 +2,7 @@ package com.dbms.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -12,7 +13,8 @@ public class Record implements Serializable {
     
     private List<Object> values;    // 字段值列表
     private boolean deleted;        // 是否已删除（用于逻辑删除）
-    private long recordId;           // 记录ID（预留）
+    private long recordId;           // 记录位置（页号+槽号，读取时填充；-1表示未知）
+    private transient int[] codes;   // 字典编码列的取值编号（读取时填充；-1表示没有编号）
     
     public Record() {
         this.values = new ArrayList<>();
@@ -34,6 +36,7 @@ public class Record implements Serializable {
     
     public void setValues(List<Object> values) {
         this.values = values;
+        this.codes = null;
     }
     
     public boolean isDeleted() {
@@ -60,6 +63,9 @@ public class Record implements Serializable {
             throw new IndexOutOfBoundsException("Field index out of bounds: " + index);
         }
         values.set(index, value);
+        if (codes != null) {
+            codes[index] = -1;
+        }
     }
     
     /**
@@ -72,6 +78,24 @@ public class Record implements Serializable {
         return values.get(index);
     }
     
+    /**
+     * 获取字典编码列的取值编号（没有编号时返回-1）
+     */
+    public int getCode(int index) {
+        return codes == null || index >= codes.length ? -1 : codes[index];
+    }
+    
+    /**
+     * 设置字典编码列的取值编号（读取记录时使用）
+     */
+    public void setCode(int index, int code) {
+        if (codes == null) {
+            codes = new int[values.size()];
+            Arrays.fill(codes, -1);
+        }
+        codes[index] = code;
+    }
+    
     /**
      * 根据字段名获取值（需要传入表结构）
      */
@@ -0,0 +1,388 @@
+package com.dbms.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 压缩位图 - 位图索引中一个取值对应的记录位置集合
+ * 记录位置的高位（页号）相同的位置放在同一个容器中，容器按页号有序；容器内只存低 16 位（槽号）：
+ * 位置不超过 ARRAY_LIMIT 个时为有序 char 数组（每个位置 2 字节），更多时为 65536 位的位图（8KB）
+ * 求交集、并集时按页号归并容器，容器之间按数组归并、逐个测试位或按 64 位的字做与/或
+ */
+public class RecordBitmap implements PositionSet, Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    // 容器内低位的位数（与记录位置中槽号的位数相同）
+    private static final int LOW_BITS = 16;
+    private static final int LOW_MASK = (1 << LOW_BITS) - 1;
+    
+    // 数组容器最多的位置数，超过时转为位图容器（两种容器在此处大小相同）
+    static final int ARRAY_LIMIT = 4096;
+    
+    private static final int BITMAP_WORDS = (1 << LOW_BITS) / 64;
+    
+    private int[] keys = new int[0];          // 各容器的高位（升序）
+    private Object[] containers = new Object[0];  // char[]（数组容器）或 long[]（位图容器）
+    private int[] cardinalities = new int[0];     // 各容器中的位置数
+    private int containerCount;
+    private int size;
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean add(long position) {
+        int key = (int) (position >>> LOW_BITS);
+        char low = (char) (position & LOW_MASK);
+        int c = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (c < 0) {
+            c = -c - 1;
+            insertContainer(c, key, new char[]{low}, 1);
+            size++;
+            return true;
+        }
+        if (containers[c] instanceof long[]) {
+            long[] bitmap = (long[]) containers[c];
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = (char[]) containers[c];
+            int n = cardinalities[c];
+            int i = Arrays.binarySearch(array, 0, n, low);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (n == ARRAY_LIMIT) {
+                long[] bitmap = toBitmap(array, n);
+                bitmap[low >>> 6] |= 1L << low;
+                containers[c] = bitmap;
+            } else {
+                if (n == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, n + (n >> 1) + 1));
+                    containers[c] = array;
+                }
+                System.arraycopy(array, i, array, i + 1, n - i);
+                array[i] = low;
+            }
+        }
+        cardinalities[c]++;
+        size++;
+        return true;
+    }
+    
+    @Override
+    public boolean remove(long position) {
+        int c = Arrays.binarySearch(keys, 0, containerCount, (int) (position >>> LOW_BITS));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) (position & LOW_MASK);
+        if (containers[c] instanceof long[]) {
+            long[] bitmap = (long[]) containers[c];
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~bit;
+            if (cardinalities[c] - 1 == ARRAY_LIMIT) {
+                containers[c] = toArray(bitmap, ARRAY_LIMIT);
+            }
+        } else {
+            char[] array = (char[]) containers[c];
+            int n = cardinalities[c];
+            int i = Arrays.binarySearch(array, 0, n, low);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(array, i + 1, array, i, n - i - 1);
+        }
+        size--;
+        if (--cardinalities[c] == 0) {
+            removeContainer(c);
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean contains(long position) {
+        int c = Arrays.binarySearch(keys, 0, containerCount, (int) (position >>> LOW_BITS));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) (position & LOW_MASK);
+        if (containers[c] instanceof long[]) {
+            return (((long[]) containers[c])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[c], 0, cardinalities[c], low) >= 0;
+    }
+    
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int container;
+            private int offset;   // 数组容器中的下标，或位图容器中的下一个位
+            private int returned;
+            
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+            
+            @Override
+            public long nextLong() {
+                if (returned >= size) {
+                    throw new NoSuchElementException();
+                }
+                while (true) {
+                    long high = (long) keys[container] << LOW_BITS;
+                    if (containers[container] instanceof char[]) {
+                        if (offset < cardinalities[container]) {
+                            returned++;
+                            return high | ((char[]) containers[container])[offset++];
+                        }
+                    } else {
+                        long[] bitmap = (long[]) containers[container];
+                        for (int w = offset >>> 6; w < BITMAP_WORDS && offset < (1 << LOW_BITS); w++) {
+                            long word = bitmap[w] & (-1L << (offset & 63));
+                            if (word != 0) {
+                                int low = (w << 6) + Long.numberOfTrailingZeros(word);
+                                offset = low + 1;
+                                returned++;
+                                return high | low;
+                            }
+                            offset = (w + 1) << 6;
+                        }
+                    }
+                    container++;
+                    offset = 0;
+                }
+            }
+        };
+    }
+    
+    /**
+     * 两个位图的交集
+     */
+    public static RecordBitmap and(RecordBitmap a, RecordBitmap b) {
+        RecordBitmap result = new RecordBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (b.keys[j] < a.keys[i]) {
+                j++;
+            } else {
+                Object container = andContainers(a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+                int cardinality = cardinality(container);
+                if (cardinality > 0) {
+                    result.insertContainer(result.containerCount, a.keys[i], container, cardinality);
+                    result.size += cardinality;
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 两个位图的并集
+     */
+    public static RecordBitmap or(RecordBitmap a, RecordBitmap b) {
+        RecordBitmap result = new RecordBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            int key;
+            Object container;
+            if (j == b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                key = a.keys[i];
+                container = copy(a.containers[i], a.cardinalities[i]);
+                i++;
+            } else if (i == a.containerCount || b.keys[j] < a.keys[i]) {
+                key = b.keys[j];
+                container = copy(b.containers[j], b.cardinalities[j]);
+                j++;
+            } else {
+                key = a.keys[i];
+                container = orContainers(a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+                i++;
+                j++;
+            }
+            int cardinality = cardinality(container);
+            result.insertContainer(result.containerCount, key, container, cardinality);
+            result.size += cardinality;
+        }
+        return result;
+    }
+    
+    /**
+     * 估算占用的内存（字节）：对象头和数组头按 16 字节、引用按 4 字节计
+     */
+    @Override
+    public long memoryUsage() {
+        long bytes = 40 + 16 + 4L * keys.length + 16 + 4L * containers.length + 16 + 4L * cardinalities.length;
+        for (int c = 0; c < containerCount; c++) {
+            bytes += 16 + (containers[c] instanceof long[] ? 8L * BITMAP_WORDS : 2L * ((char[]) containers[c]).length);
+        }
+        return bytes;
+    }
+    
+    private static Object andContainers(Object x, int nx, Object y, int ny) {
+        if (x instanceof long[] && y instanceof long[]) {
+            long[] a = (long[]) x;
+            long[] b = (long[]) y;
+            long[] bitmap = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bitmap[w] = a[w] & b[w];
+                cardinality += Long.bitCount(bitmap[w]);
+            }
+            return cardinality > ARRAY_LIMIT ? bitmap : toArray(bitmap, cardinality);
+        }
+        if (x instanceof long[] || y instanceof long[]) {
+            // 数组容器中的位置逐个测试位图
+            char[] array = (char[]) (x instanceof char[] ? x : y);
+            int n = x instanceof char[] ? nx : ny;
+            long[] bitmap = (long[]) (x instanceof long[] ? x : y);
+            char[] result = new char[n];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                char low = array[i];
+                if ((bitmap[low >>> 6] & (1L << low)) != 0) {
+                    result[k++] = low;
+                }
+            }
+            return Arrays.copyOf(result, k);
+        }
+        char[] a = (char[]) x;
+        char[] b = (char[]) y;
+        char[] result = new char[Math.min(nx, ny)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < nx && j < ny) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (b[j] < a[i]) {
+                j++;
+            } else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+    
+    private static Object orContainers(Object x, int nx, Object y, int ny) {
+        if (x instanceof char[] && y instanceof char[] && nx + ny <= ARRAY_LIMIT) {
+            char[] a = (char[]) x;
+            char[] b = (char[]) y;
+            char[] result = new char[nx + ny];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < nx || j < ny) {
+                if (j == ny || (i < nx && a[i] < b[j])) {
+                    result[k++] = a[i++];
+                } else if (i == nx || b[j] < a[i]) {
+                    result[k++] = b[j++];
+                } else {
+                    result[k++] = a[i++];
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, k);
+        }
+        long[] bitmap = x instanceof long[] ? ((long[]) x).clone() : toBitmap((char[]) x, nx);
+        if (y instanceof long[]) {
+            long[] other = (long[]) y;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bitmap[w] |= other[w];
+            }
+        } else {
+            char[] array = (char[]) y;
+            for (int i = 0; i < ny; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+        }
+        int cardinality = 0;
+        for (long word : bitmap) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality > ARRAY_LIMIT ? bitmap : toArray(bitmap, cardinality);
+    }
+    
+    /**
+     * 交集、并集结果中的容器：数组容器的长度即位置数
+     */
+    private static int cardinality(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int cardinality = 0;
+        for (long word : (long[]) container) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+    
+    private static Object copy(Object container, int cardinality) {
+        return container instanceof long[] ? ((long[]) container).clone()
+            : Arrays.copyOf((char[]) container, cardinality);
+    }
+    
+    private static long[] toBitmap(char[] array, int n) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < n; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+    
+    private static char[] toArray(long[] bitmap, int cardinality) {
+        char[] array = new char[cardinality];
+        int k = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bitmap[w];
+            while (word != 0) {
+                array[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+    
+    private void insertContainer(int at, int key, Object container, int cardinality) {
+        if (containerCount == keys.length) {
+            int capacity = Math.max(4, containerCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, at, keys, at + 1, containerCount - at);
+        System.arraycopy(containers, at, containers, at + 1, containerCount - at);
+        System.arraycopy(cardinalities, at, cardinalities, at + 1, containerCount - at);
+        keys[at] = key;
+        containers[at] = container;
+        cardinalities[at] = cardinality;
+        containerCount++;
+    }
+    
+    private void removeContainer(int c) {
+        System.arraycopy(keys, c + 1, keys, c, containerCount - c - 1);
+        System.arraycopy(containers, c + 1, containers, c, containerCount - c - 1);
+        System.arraycopy(cardinalities, c + 1, cardinalities, c, containerCount - c - 1);
+        containers[--containerCount] = null;
+    }
+}
+
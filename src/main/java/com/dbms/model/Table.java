@@ -2,6 +2,7 @@ package com.dbms.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,15 +12,32 @@ import java.util.Map;
 public class Table implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // 表选项：存储方式（row 行存 / columnar 列存）
+    public static final String OPTION_STORAGE = "storage";
+    public static final String STORAGE_ROW = "row";
+    public static final String STORAGE_COLUMNAR = "columnar";
+    
+    // 表选项：数据页压缩方式（none 不压缩 / deflate）
+    public static final String OPTION_COMPRESSION = "compression";
+    public static final String COMPRESSION_NONE = "none";
+    public static final String COMPRESSION_DEFLATE = "deflate";
+    
+    // 表选项：使用字典编码的列（逗号分隔的列名，只在建表时使用，字典保存在各字段上）
+    public static final String OPTION_DICTIONARY = "dictionary";
+    
     private String name;                    // 表名
     private List<Field> fields;             // 字段列表
     private Map<String, Index> indexes;     // 索引列表（索引名 -> 索引对象）
     private int recordCount;                 // 记录数量（预留）
     private long lastModified;               // 最后修改时间（预留）
+    private int schemaVersion;               // 表结构版本（增删改列时递增，写入每条记录的记录头）
+    private Map<String, String> options;     // 表选项（CREATE TABLE ... WITH (key = value, ...)）
+    private transient int averageRecordSize;  // 实际平均记录长度（扫描数据文件时统计，0表示尚无统计）
     
     public Table() {
         this.fields = new ArrayList<>();
         this.indexes = new java.util.HashMap<>();
+        this.options = new LinkedHashMap<>();
         this.recordCount = 0;
         this.lastModified = System.currentTimeMillis();
     }
@@ -79,7 +97,7 @@ public class Table implements Serializable {
     }
     
     /**
-     * 根据字段名获取索引
+     * 根据字段名获取索引（以该字段为第一个索引列的索引）
      */
     public Index getIndexByColumn(String columnName) {
         for (Index index : indexes.values()) {
@@ -90,6 +108,18 @@ public class Table implements Serializable {
         return null;
     }
     
+    /**
+     * 列上的布隆过滤器索引（没有时返回null）
+     */
+    public Index getBloomFilter(String columnName) {
+        for (Index index : indexes.values()) {
+            if (index.isBloom() && index.getColumnName().equalsIgnoreCase(columnName)) {
+                return index;
+            }
+        }
+        return null;
+    }
+    
     public int getRecordCount() {
         return recordCount;
     }
@@ -106,6 +136,59 @@ public class Table implements Serializable {
         this.lastModified = lastModified;
     }
     
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+    
+    public void setSchemaVersion(int schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+    
+    public Map<String, String> getOptions() {
+        return options;
+    }
+    
+    public void setOptions(Map<String, String> options) {
+        this.options = options;
+    }
+    
+    /**
+     * 获取表选项（选项名不区分大小写），未设置时返回null
+     */
+    public String getOption(String key) {
+        return options.get(key.toLowerCase());
+    }
+    
+    public void setOption(String key, String value) {
+        options.put(key.toLowerCase(), value);
+    }
+    
+    /**
+     * 是否按列存储
+     */
+    public boolean isColumnar() {
+        return STORAGE_COLUMNAR.equalsIgnoreCase(getOption(OPTION_STORAGE));
+    }
+    
+    /**
+     * 数据页是否压缩存放
+     */
+    public boolean isCompressed() {
+        return COMPRESSION_DEFLATE.equalsIgnoreCase(getOption(OPTION_COMPRESSION));
+    }
+    
+    /**
+     * 是否有字典编码的列
+     */
+    public boolean hasDictionaries() {
+        for (Field field : fields) {
+            if (field.getDictionary() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * 添加字段
      */
@@ -162,11 +245,23 @@ public class Table implements Serializable {
         return keys;
     }
     
+    public int getAverageRecordSize() {
+        return averageRecordSize;
+    }
+    
+    public void setAverageRecordSize(int averageRecordSize) {
+        this.averageRecordSize = averageRecordSize;
+    }
+    
     /**
-     * 计算每条记录的大小（字节）
+     * 每条记录的大小（字节）：有统计时返回实际平均长度，否则按字段定义估算上限
      */
     public int getRecordSize() {
-        int size = 4; // 记录头：4字节状态标志（预留）
+        if (averageRecordSize > 0) {
+            return averageRecordSize;
+        }
+        int size = 8; // 记录头：状态(1) + 编码格式(1) + 表结构版本(2) + 记录长度(4)
+        size += 1 + (fields.size() + 7) / 8; // 字段数 + NULL位图
         for (Field field : fields) {
             size += field.getStorageSize();
         }
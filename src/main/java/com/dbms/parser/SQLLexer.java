@@ -21,7 +21,12 @@ public class SQLLexer {
         "INDEX", "UNIQUE",  // CREATE INDEX
         "USER", "IDENTIFIED",  // CREATE USER
         "GRANT", "REVOKE",  // DCL
-        "BEGIN", "COMMIT", "ROLLBACK", "TRANSACTION"  // 事务
+        "BEGIN", "COMMIT", "ROLLBACK", "TRANSACTION",  // 事务
+        "VACUUM",  // 整理数据文件
+        "EXPLAIN",  // 查看查询的执行计划
+        "WITH",  // 表选项 CREATE TABLE ... WITH (...)
+        "USING",  // 索引类型 CREATE INDEX ... USING BTREE
+        "INCLUDE"  // 包含列 CREATE INDEX ... INCLUDE (...)
     };
     
     // Token类型
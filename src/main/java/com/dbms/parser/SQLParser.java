@@ -9,7 +9,9 @@ import com.dbms.parser.SQLLexer.TokenType;
 import com.dbms.util.SQLException;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * SQL语法分析器
@@ -23,7 +25,7 @@ public class SQLParser {
     public enum StatementType {
         CREATE_TABLE, CREATE_INDEX, ALTER_TABLE, DROP_TABLE, RENAME_TABLE,
         CREATE_USER, DROP_USER, GRANT, REVOKE,
-        BEGIN, COMMIT, ROLLBACK,
+        BEGIN, COMMIT, ROLLBACK, VACUUM, EXPLAIN,
         INSERT, UPDATE, DELETE, SELECT, UNKNOWN
     }
     
@@ -36,10 +38,12 @@ public class SQLParser {
     public static class CreateTableStatement extends SQLStatement {
         public String tableName;
         public List<FieldDefinition> fields;
+        public Map<String, String> options; // WITH (key = value, ...)
         
         public CreateTableStatement() {
             this.type = StatementType.CREATE_TABLE;
             this.fields = new ArrayList<>();
+            this.options = new LinkedHashMap<>();
         }
     }
     
@@ -229,7 +233,7 @@ public class SQLParser {
         
         switch (keyword) {
             case "CREATE":
-                // 检查下一个关键字是TABLE、INDEX、USER还是UNIQUE INDEX
+                // 检查下一个关键字是TABLE、INDEX、USER、UNIQUE INDEX还是BITMAP INDEX
                 if (peekKeyword("TABLE")) {
                     return parseCreateTable();
                 } else if (peekKeyword("UNIQUE")) {
@@ -242,6 +246,16 @@ public class SQLParser {
                     }
                 } else if (peekKeyword("INDEX")) {
                     return parseCreateIndex(false);
+                } else if (peekToken(TokenType.IDENTIFIER) && currentToken().value.equalsIgnoreCase("BITMAP") &&
+                           peekToken(1, TokenType.KEYWORD, "INDEX")) {
+                    // CREATE BITMAP INDEX（BITMAP 不是关键字，仍可用作表名、列名）
+                    consume(); // 消费 BITMAP
+                    CreateIndexStatement stmt = parseCreateIndex(false);
+                    if (!stmt.indexType.equals("HASH") && !stmt.indexType.equals("BITMAP")) {
+                        throw new SQLException("CREATE BITMAP INDEX cannot use index type " + stmt.indexType);
+                    }
+                    stmt.indexType = "BITMAP";
+                    return stmt;
                 } else if (peekKeyword("USER")) {
                     return parseCreateUser();
                 } else {
@@ -278,6 +292,10 @@ public class SQLParser {
                 return parseCommit();
             case "ROLLBACK":
                 return parseRollback();
+            case "VACUUM":
+                return parseVacuum();
+            case "EXPLAIN":
+                return parseExplain();
             default:
                 throw new SQLException("Unknown SQL keyword: " + keyword);
         }
@@ -304,6 +322,28 @@ public class SQLParser {
         }
         
         expectPunctuation(")");
+        
+        // 表选项：WITH (storage = columnar, ...)
+        if (peekKeyword("WITH")) {
+            consume();
+            expectPunctuation("(");
+            while (true) {
+                String key = expectIdentifier();
+                expectOperator("=");
+                Token value = currentToken();
+                if (value.type != TokenType.IDENTIFIER && value.type != TokenType.STRING && value.type != TokenType.NUMBER) {
+                    throw new SQLException("Invalid value for table option " + key + ": " + value);
+                }
+                consume();
+                stmt.options.put(key.toLowerCase(), value.value);
+                if (peekPunctuation(",")) {
+                    consume();
+                } else {
+                    break;
+                }
+            }
+            expectPunctuation(")");
+        }
         return stmt;
     }
     
@@ -482,9 +522,41 @@ public class SQLParser {
         stmt.indexName = expectIdentifier();
         expectKeyword("ON");
         stmt.tableName = expectIdentifier();
+        // 索引类型：ON t USING BTREE (col) 或 ON t (col) USING BTREE
+        if (peekKeyword("USING")) {
+            consume();
+            stmt.indexType = expectIdentifier().toUpperCase();
+        }
+        // 索引列：(col) 或多列索引 (col1, col2, ...)
         expectPunctuation("(");
-        stmt.columnName = expectIdentifier();
+        while (true) {
+            stmt.columnNames.add(expectIdentifier());
+            if (peekPunctuation(",")) {
+                consume();
+            } else {
+                break;
+            }
+        }
         expectPunctuation(")");
+        stmt.columnName = stmt.columnNames.get(0);
+        if (peekKeyword("USING")) {
+            consume();
+            stmt.indexType = expectIdentifier().toUpperCase();
+        }
+        // 包含列：INCLUDE (col1, col2, ...)
+        if (peekKeyword("INCLUDE")) {
+            consume();
+            expectPunctuation("(");
+            while (true) {
+                stmt.includeColumns.add(expectIdentifier());
+                if (peekPunctuation(",")) {
+                    consume();
+                } else {
+                    break;
+                }
+            }
+            expectPunctuation(")");
+        }
         
         return stmt;
     }
@@ -493,12 +565,16 @@ public class SQLParser {
     public static class CreateIndexStatement extends SQLStatement {
         public String indexName;
         public String tableName;
-        public String columnName;
+        public String columnName;  // 第一个索引列
+        public List<String> columnNames = new ArrayList<>();  // 全部索引列
         public boolean unique;
+        public String indexType;  // HASH（默认）、BTREE、BITMAP、OFFHEAP、BLOOM 或 NGRAM
+        public List<String> includeColumns = new ArrayList<>();  // 包含列
         
         public CreateIndexStatement() {
             this.type = StatementType.CREATE_INDEX;
             this.unique = false;
+            this.indexType = "HASH";
         }
     }
     
@@ -685,6 +761,30 @@ public class SQLParser {
         return stmt;
     }
     
+    /**
+     * 解析VACUUM语句：VACUUM（整理所有表）、VACUUM t 或 VACUUM TABLE t
+     */
+    private VacuumStatement parseVacuum() {
+        VacuumStatement stmt = new VacuumStatement();
+        if (peekKeyword("TABLE")) {
+            consume();
+            stmt.tableName = expectIdentifier();
+        } else if (peekToken(TokenType.IDENTIFIER)) {
+            stmt.tableName = expectIdentifier();
+        }
+        return stmt;
+    }
+    
+    /**
+     * 解析EXPLAIN语句：EXPLAIN SELECT ...
+     */
+    private ExplainStatement parseExplain() {
+        expectKeyword("SELECT");
+        ExplainStatement stmt = new ExplainStatement();
+        stmt.select = parseSelect();
+        return stmt;
+    }
+    
     // BEGIN语句
     public static class BeginStatement extends SQLStatement {
         public BeginStatement() {
@@ -706,6 +806,24 @@ public class SQLParser {
         }
     }
     
+    // VACUUM语句（tableName 为 null 表示所有表）
+    public static class VacuumStatement extends SQLStatement {
+        public String tableName;
+        
+        public VacuumStatement() {
+            this.type = StatementType.VACUUM;
+        }
+    }
+    
+    // EXPLAIN语句（执行查询，返回执行计划而不是查询结果）
+    public static class ExplainStatement extends SQLStatement {
+        public SelectStatement select;
+        
+        public ExplainStatement() {
+            this.type = StatementType.EXPLAIN;
+        }
+    }
+    
     /**
      * 解析RENAME TABLE语句
      */
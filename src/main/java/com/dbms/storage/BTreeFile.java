@@ -0,0 +1,683 @@
+package com.dbms.storage;
+
+import com.dbms.model.Index;
+import com.dbms.util.DBMSException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * B+树索引文件（CREATE INDEX ... USING BTREE，文件名同 .idx）- 按页组织，第0页为文件头
+ * 文件头：魔数(4) + 版本(4) + 根页号(4) + 总页数(4) + 树高(4) + 索引项数(8) + 一致标志(4) + 包含列数(4)
+ * 节点页：类型(1) + 项数(4) + 后继页号(4) + 前驱页号(4)；叶子节点之后为 (键 + 位置(8) + 包含列的值)*n，
+ * 内部节点之后为 最左子页号(4) + (键 + 位置(8) + 子页号(4))*n，分隔项是右子树中最小的索引项
+ * 索引项按 (键, 位置) 排序且不重复，同一个键的多条记录按位置区分；叶子节点前后链接，范围查找沿叶子链顺序读取
+ * 节点解码后缓存在内存中，修改过的节点在每条语句结束时写回：先把一致标志清零，节点全部写完后再置位，
+ * 打开时一致标志为0（写回中途中断）视为损坏，由数据文件重建
+ * 删除只从叶子中移除索引项，不合并节点；建索引和 VACUUM 时由有序输入批量装载，节点按填充率写满
+ */
+public class BTreeFile implements Index.Tree {
+    
+    // 文件格式版本，版本不符的文件视为损坏，由数据文件重建
+    private static final int VERSION = 1;
+    
+    // 文件头大小
+    private static final int HEADER_SIZE = 36;
+    
+    // 节点类型
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    
+    // 节点页头大小
+    private static final int NODE_HEADER_SIZE = 13;
+    
+    // 单个键（连同包含列的值）编码后的最大长度（保证一页至少放得下4个索引项，分裂后两半都放得下）
+    public static final int MAX_KEY_SIZE = (FileFormat.PAGE_SIZE - NODE_HEADER_SIZE - 4) / 4 - 12;
+    
+    // 批量装载时节点的填充率（百分比），留出的空间给之后的插入
+    private static final int BULK_FILL_PERCENT = 90;
+    
+    // 每个索引文件缓存的节点数
+    private static final int NODE_CACHE_SIZE = 256;
+    
+    // 已打开的 B+树（按绝对路径）
+    private static final Map<String, BTreeFile> files = new HashMap<>();
+    
+    private final String filePath;
+    private final Index index;
+    private int rootPage;
+    private int pageCount;
+    private int height;
+    private long entryCount;
+    private int includeCount;
+    private boolean headerDirty;
+    private boolean consistentOnDisk = true;
+    // 节点缓存（访问顺序，超出容量时写回并移除最久未用的节点）
+    private final LinkedHashMap<Integer, Node> cache = new LinkedHashMap<>(16, 0.75f, true);
+    
+    /**
+     * 解码后的节点；内部节点的 children 比 keys 多一个，叶子节点的 included 与 keys 一一对应
+     */
+    private static class Node {
+        final int pageNo;
+        final boolean leaf;
+        final List<Object> keys = new ArrayList<>();
+        final List<Long> positions = new ArrayList<>();
+        final List<Integer> children = new ArrayList<>();
+        final List<Object[]> included = new ArrayList<>();
+        int next;
+        int prev;
+        int size;
+        boolean dirty;
+        
+        Node(int pageNo, boolean leaf) {
+            this.pageNo = pageNo;
+            this.leaf = leaf;
+            this.size = NODE_HEADER_SIZE + (leaf ? 0 : 4);
+        }
+        
+        int entrySize(int i) {
+            return BTreeFile.entrySize(leaf, keys.get(i), leaf ? included.get(i) : Index.NO_VALUES);
+        }
+        
+        void recomputeSize() {
+            size = NODE_HEADER_SIZE + (leaf ? 0 : 4);
+            for (int i = 0; i < keys.size(); i++) {
+                size += entrySize(i);
+            }
+        }
+    }
+    
+    private static int entrySize(boolean leaf, Object key, Object[] included) {
+        if (!leaf) {
+            return IndexFile.keySize(key) + 12;
+        }
+        int size = IndexFile.keySize(key) + 8;
+        for (Object value : included) {
+            size += IndexFile.keySize(value);
+        }
+        return size;
+    }
+    
+    private BTreeFile(String filePath, Index index) {
+        this.filePath = filePath;
+        this.index = index;
+    }
+    
+    /**
+     * 为已有的 B+树文件绑定索引；文件不存在、格式不对或上次写回未完成时返回false，需要重建后调用 create
+     */
+    public static synchronized boolean open(Index index, String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.length() < FileFormat.PAGE_SIZE) {
+            return false;
+        }
+        BTreeFile tree = new BTreeFile(filePath, index);
+        if (!tree.readHeader() || (long) tree.pageCount * FileFormat.PAGE_SIZE > file.length() ||
+            tree.includeCount != index.getIncludeColumns().size()) {
+            FileChannelCache.close(filePath);
+            return false;
+        }
+        attach(tree);
+        return true;
+    }
+    
+    /**
+     * 由索引项批量装载新的 B+树文件并绑定索引（输入不必有序，included 为每个索引项包含列的值）
+     */
+    public static synchronized void create(Index index, String filePath, List<Object> keys, List<Long> positions,
+                                           List<Object[]> included) throws IOException {
+        close(filePath);
+        bulkLoad(filePath, keys, positions, included, index.getIncludeColumns().size());
+        BTreeFile tree = new BTreeFile(filePath, index);
+        tree.readHeader();
+        attach(tree);
+    }
+    
+    private static void attach(BTreeFile tree) {
+        files.put(new File(tree.filePath).getAbsolutePath(), tree);
+        tree.index.setTree(tree);
+    }
+    
+    /**
+     * 关闭 B+树文件（丢弃未写回的节点），文件被删除或替换前调用
+     */
+    public static synchronized void close(String filePath) {
+        BTreeFile tree = files.remove(new File(filePath).getAbsolutePath());
+        if (tree != null && tree.index.getTree() == tree) {
+            tree.index.setTree(null);
+        }
+        FileChannelCache.close(filePath);
+    }
+    
+    /**
+     * 把所有 B+树中修改过的节点和文件头写回
+     */
+    public static synchronized void flushAll() throws IOException {
+        for (BTreeFile tree : files.values()) {
+            tree.flush();
+        }
+    }
+    
+    @Override
+    public synchronized void insert(Object value, long position, Object[] included) {
+        if (entrySize(true, value, included) - 8 > MAX_KEY_SIZE) {
+            throw new DBMSException("Index key too long for B+Tree index " + index.getIndexName());
+        }
+        try {
+            List<Node> path = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            Node node = getNode(rootPage);
+            while (!node.leaf) {
+                int slot = childSlot(node, value, position);
+                path.add(node);
+                slots.add(slot);
+                node = getNode(node.children.get(slot));
+            }
+            int i = lowerBound(node, value, position);
+            if (i < node.keys.size() && compare(node.keys.get(i), node.positions.get(i), value, position) == 0) {
+                return; // 已有相同的索引项
+            }
+            node.keys.add(i, value);
+            node.positions.add(i, position);
+            node.included.add(i, included);
+            node.size += node.entrySize(i);
+            markDirty(node);
+            entryCount++;
+            headerDirty = true;
+            
+            // 节点放不下时分裂，分隔项插入父节点，必要时逐层向上分裂
+            while (node.size > FileFormat.PAGE_SIZE) {
+                Node right = split(node);
+                Object separatorKey;
+                long separatorPosition;
+                if (node.leaf) {
+                    separatorKey = right.keys.get(0);
+                    separatorPosition = right.positions.get(0);
+                } else {
+                    // 内部节点：右节点的第一个分隔项上移
+                    separatorKey = right.keys.remove(0);
+                    separatorPosition = right.positions.remove(0);
+                    right.recomputeSize();
+                }
+                if (path.isEmpty()) {
+                    Node root = newNode(false);
+                    root.children.add(node.pageNo);
+                    root.keys.add(separatorKey);
+                    root.positions.add(separatorPosition);
+                    root.children.add(right.pageNo);
+                    root.recomputeSize();
+                    rootPage = root.pageNo;
+                    height++;
+                    break;
+                }
+                Node parent = path.remove(path.size() - 1);
+                int slot = slots.remove(slots.size() - 1);
+                parent.keys.add(slot, separatorKey);
+                parent.positions.add(slot, separatorPosition);
+                parent.children.add(slot + 1, right.pageNo);
+                parent.size += parent.entrySize(slot);
+                markDirty(parent);
+                node = parent;
+            }
+            evict();
+        } catch (IOException e) {
+            throw new DBMSException("Failed to update index " + index.getIndexName() + ": " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized void delete(Object value, long position) {
+        try {
+            Node node = findLeaf(value, position);
+            int i = lowerBound(node, value, position);
+            if (i < node.keys.size() && compare(node.keys.get(i), node.positions.get(i), value, position) == 0) {
+                node.size -= node.entrySize(i);
+                node.keys.remove(i);
+                node.positions.remove(i);
+                node.included.remove(i);
+                markDirty(node);
+                entryCount--;
+                headerDirty = true;
+            }
+            evict();
+        } catch (IOException e) {
+            throw new DBMSException("Failed to update index " + index.getIndexName() + ": " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized List<Index.Entry> range(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        List<Index.Entry> result = new ArrayList<>();
+        try {
+            // 下界不含等于时从 (low, 最大位置) 之后开始
+            long lowPosition = lowInclusive ? Long.MIN_VALUE : Long.MAX_VALUE;
+            Node node = low == null ? leftmostLeaf() : findLeaf(low, lowPosition);
+            int i = low == null ? 0 : lowerBound(node, low, lowPosition);
+            while (node != null) {
+                for (; i < node.keys.size(); i++) {
+                    if (high != null) {
+                        int c = Index.compareKeys(node.keys.get(i), high);
+                        if (c > 0 || (c == 0 && !highInclusive)) {
+                            evict();
+                            return result;
+                        }
+                    }
+                    result.add(new Index.Entry(node.keys.get(i), node.positions.get(i), node.included.get(i)));
+                }
+                node = node.next == 0 ? null : getNode(node.next);
+                i = 0;
+            }
+            evict();
+            return result;
+        } catch (IOException e) {
+            throw new DBMSException("Failed to read index " + index.getIndexName() + ": " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized void remap(Map<Long, Long> remap) {
+        try {
+            // 读出全部索引项，替换位置后重新批量装载
+            List<Object> keys = new ArrayList<>();
+            List<Long> positions = new ArrayList<>();
+            List<Object[]> included = new ArrayList<>();
+            for (Node node = leftmostLeaf(); node != null; node = node.next == 0 ? null : getNode(node.next)) {
+                for (int i = 0; i < node.keys.size(); i++) {
+                    Long newPosition = remap.get(node.positions.get(i));
+                    if (newPosition != null) {
+                        keys.add(node.keys.get(i));
+                        positions.add(newPosition);
+                        included.add(node.included.get(i));
+                    }
+                }
+            }
+            cache.clear();
+            FileChannelCache.close(filePath);
+            bulkLoad(filePath, keys, positions, included, includeCount);
+            readHeader();
+            headerDirty = false;
+            consistentOnDisk = true;
+        } catch (IOException e) {
+            throw new DBMSException("Failed to rebuild index " + index.getIndexName() + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 索引项数
+     */
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+    
+    /**
+     * 树高（只有根叶子时为1）
+     */
+    public synchronized int getHeight() {
+        return height;
+    }
+    
+    private synchronized void flush() throws IOException {
+        for (Node node : cache.values()) {
+            if (node.dirty) {
+                writeNode(node);
+            }
+        }
+        if (headerDirty || !consistentOnDisk) {
+            writeHeader(true);
+        }
+    }
+    
+    /**
+     * 找到 (键, 位置) 所在（或应插入）的叶子节点
+     */
+    private Node findLeaf(Object value, long position) throws IOException {
+        Node node = getNode(rootPage);
+        while (!node.leaf) {
+            node = getNode(node.children.get(childSlot(node, value, position)));
+        }
+        return node;
+    }
+    
+    private Node leftmostLeaf() throws IOException {
+        Node node = getNode(rootPage);
+        while (!node.leaf) {
+            node = getNode(node.children.get(0));
+        }
+        return node;
+    }
+    
+    /**
+     * 内部节点中应进入的子节点下标：不大于 (键, 位置) 的分隔项个数
+     */
+    private static int childSlot(Node node, Object value, long position) {
+        int low = 0;
+        int high = node.keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(node.keys.get(mid), node.positions.get(mid), value, position) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * 叶子节点中第一个不小于 (键, 位置) 的索引项下标
+     */
+    private static int lowerBound(Node node, Object value, long position) {
+        int low = 0;
+        int high = node.keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(node.keys.get(mid), node.positions.get(mid), value, position) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private static int compare(Object key1, long position1, Object key2, long position2) {
+        int c = Index.compareKeys(key1, key2);
+        return c != 0 ? c : Long.compare(position1, position2);
+    }
+    
+    /**
+     * 把节点按字节数对半分裂，返回新的右节点（叶子节点同时维护前后链接）
+     */
+    private Node split(Node node) throws IOException {
+        int half = node.size / 2;
+        int mid = 0;
+        int size = NODE_HEADER_SIZE;
+        while (mid < node.keys.size() - 1 && size < half) {
+            size += node.entrySize(mid);
+            mid++;
+        }
+        mid = Math.max(1, mid);
+        Node right = newNode(node.leaf);
+        List<Object> keys = node.keys.subList(mid, node.keys.size());
+        List<Long> positions = node.positions.subList(mid, node.positions.size());
+        right.keys.addAll(keys);
+        right.positions.addAll(positions);
+        keys.clear();
+        positions.clear();
+        if (node.leaf) {
+            List<Object[]> included = node.included.subList(mid, node.included.size());
+            right.included.addAll(included);
+            included.clear();
+            right.next = node.next;
+            right.prev = node.pageNo;
+            if (node.next != 0) {
+                Node next = getNode(node.next);
+                next.prev = right.pageNo;
+                markDirty(next);
+            }
+            node.next = right.pageNo;
+        } else {
+            // 左节点保留 mid 个分隔项和 mid + 1 个子节点，右节点的第一个分隔项随后上移到父节点
+            List<Integer> children = node.children.subList(mid + 1, node.children.size());
+            right.children.addAll(children);
+            children.clear();
+        }
+        node.recomputeSize();
+        right.recomputeSize();
+        markDirty(node);
+        return right;
+    }
+    
+    private Node newNode(boolean leaf) {
+        Node node = new Node(pageCount++, leaf);
+        headerDirty = true;
+        markDirty(node);
+        return node;
+    }
+    
+    private void markDirty(Node node) {
+        node.dirty = true;
+        cache.put(node.pageNo, node);
+    }
+    
+    private Node getNode(int pageNo) throws IOException {
+        Node node = cache.get(pageNo);
+        if (node == null) {
+            if (pageNo <= 0 || pageNo >= pageCount) {
+                throw new IOException("Invalid index page " + pageNo + " in " + filePath);
+            }
+            ByteBuffer page = ByteBuffer.allocate(FileFormat.PAGE_SIZE);
+            FileChannelCache.readFully(filePath, page, (long) pageNo * FileFormat.PAGE_SIZE);
+            node = decode(pageNo, page, includeCount);
+            cache.put(pageNo, node);
+        }
+        return node;
+    }
+    
+    /**
+     * 缓存超出容量时写回并移除最久未用的节点（只在一次操作结束后调用，操作中持有的节点不会被移除）
+     */
+    private void evict() throws IOException {
+        Iterator<Node> it = cache.values().iterator();
+        while (cache.size() > NODE_CACHE_SIZE && it.hasNext()) {
+            Node node = it.next();
+            if (node.dirty) {
+                writeNode(node);
+            }
+            it.remove();
+        }
+    }
+    
+    private void writeNode(Node node) throws IOException {
+        if (consistentOnDisk) {
+            writeHeader(false);
+        }
+        FileChannelCache.writeFully(filePath, ByteBuffer.wrap(encode(node)), (long) node.pageNo * FileFormat.PAGE_SIZE);
+        node.dirty = false;
+    }
+    
+    private void writeHeader(boolean consistent) throws IOException {
+        FileChannelCache.writeFully(filePath, header(rootPage, pageCount, height, entryCount, consistent, includeCount), 0);
+        consistentOnDisk = consistent;
+        if (consistent) {
+            headerDirty = false;
+        }
+    }
+    
+    private static ByteBuffer header(int rootPage, int pageCount, int height, long entryCount, boolean consistent,
+                                     int includeCount) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(FileFormat.BTREE_MAGIC_NUMBER);
+        header.putInt(VERSION);
+        header.putInt(rootPage);
+        header.putInt(pageCount);
+        header.putInt(height);
+        header.putLong(entryCount);
+        header.putInt(consistent ? 1 : 0);
+        header.putInt(includeCount);
+        header.flip();
+        return header;
+    }
+    
+    private boolean readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        FileChannelCache.readFully(filePath, header, 0);
+        header.flip();
+        if (header.getInt() != FileFormat.BTREE_MAGIC_NUMBER || header.getInt() != VERSION) {
+            return false;
+        }
+        rootPage = header.getInt();
+        pageCount = header.getInt();
+        height = header.getInt();
+        entryCount = header.getLong();
+        boolean consistent = header.getInt() == 1;
+        includeCount = header.getInt();
+        return consistent && rootPage > 0 && rootPage < pageCount;
+    }
+    
+    private static byte[] encode(Node node) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(FileFormat.PAGE_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(node.leaf ? LEAF : INTERNAL);
+        out.writeInt(node.keys.size());
+        out.writeInt(node.next);
+        out.writeInt(node.prev);
+        if (!node.leaf) {
+            out.writeInt(node.children.get(0));
+        }
+        for (int i = 0; i < node.keys.size(); i++) {
+            IndexFile.writeKey(out, node.keys.get(i));
+            out.writeLong(node.positions.get(i));
+            if (node.leaf) {
+                for (Object value : node.included.get(i)) {
+                    IndexFile.writeKey(out, value);
+                }
+            } else {
+                out.writeInt(node.children.get(i + 1));
+            }
+        }
+        return Arrays.copyOf(bytes.toByteArray(), FileFormat.PAGE_SIZE);
+    }
+    
+    private static Node decode(int pageNo, ByteBuffer page, int includeCount) throws IOException {
+        page.position(0);
+        byte type = page.get();
+        if (type != LEAF && type != INTERNAL) {
+            throw new IOException("Corrupted index page " + pageNo);
+        }
+        Node node = new Node(pageNo, type == LEAF);
+        int count = page.getInt();
+        node.next = page.getInt();
+        node.prev = page.getInt();
+        if (!node.leaf) {
+            node.children.add(page.getInt());
+        }
+        for (int i = 0; i < count; i++) {
+            node.keys.add(IndexFile.readKey(page));
+            node.positions.add(page.getLong());
+            if (node.leaf) {
+                node.included.add(IndexFile.readValues(page, includeCount));
+            } else {
+                node.children.add(page.getInt());
+            }
+        }
+        node.recomputeSize();
+        return node;
+    }
+    
+    /**
+     * 批量装载：索引项排序后依次写满叶子节点，再由每层节点的第一个索引项逐层建立内部节点，
+     * 先写入临时文件，完成后替换原文件
+     */
+    private static void bulkLoad(String filePath, List<Object> keys, List<Long> positions,
+                                 List<Object[]> included, int includeCount) throws IOException {
+        List<Integer> order = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            if (entrySize(true, keys.get(i), included.get(i)) - 8 > MAX_KEY_SIZE) {
+                throw new DBMSException("Index key too long for B+Tree index: " + keys.get(i));
+            }
+            order.add(i);
+        }
+        order.sort((a, b) -> compare(keys.get(a), positions.get(a), keys.get(b), positions.get(b)));
+        int limit = FileFormat.PAGE_SIZE * BULK_FILL_PERCENT / 100;
+        
+        File tmp = new File(filePath + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int nextPage = 1;
+            // 当前层每个节点的页号和第一个索引项
+            List<Integer> levelPages = new ArrayList<>();
+            List<Object> levelKeys = new ArrayList<>();
+            List<Long> levelPositions = new ArrayList<>();
+            
+            Node leaf = new Node(nextPage++, true);
+            for (int i : order) {
+                Object key = keys.get(i);
+                int size = entrySize(true, key, included.get(i));
+                if (!leaf.keys.isEmpty() && leaf.size + size > limit) {
+                    Node next = new Node(nextPage++, true);
+                    leaf.next = next.pageNo;
+                    next.prev = leaf.pageNo;
+                    writeBulkNode(channel, leaf, levelPages, levelKeys, levelPositions);
+                    leaf = next;
+                }
+                leaf.keys.add(key);
+                leaf.positions.add(positions.get(i));
+                leaf.included.add(included.get(i));
+                leaf.size += size;
+            }
+            writeBulkNode(channel, leaf, levelPages, levelKeys, levelPositions);
+            
+            int height = 1;
+            while (levelPages.size() > 1) {
+                List<Integer> upperPages = new ArrayList<>();
+                List<Object> upperKeys = new ArrayList<>();
+                List<Long> upperPositions = new ArrayList<>();
+                Node node = new Node(nextPage++, false);
+                node.children.add(levelPages.get(0));
+                int first = 0;
+                for (int j = 1; j < levelPages.size(); j++) {
+                    Object key = levelKeys.get(j);
+                    if (node.size + entrySize(false, key, Index.NO_VALUES) > limit) {
+                        writeBulkNode(channel, node, upperPages, upperKeys, upperPositions);
+                        upperKeys.set(upperKeys.size() - 1, levelKeys.get(first));
+                        upperPositions.set(upperPositions.size() - 1, levelPositions.get(first));
+                        node = new Node(nextPage++, false);
+                        node.children.add(levelPages.get(j));
+                        first = j;
+                        continue;
+                    }
+                    node.keys.add(key);
+                    node.positions.add(levelPositions.get(j));
+                    node.children.add(levelPages.get(j));
+                    node.size += entrySize(false, key, Index.NO_VALUES);
+                }
+                writeBulkNode(channel, node, upperPages, upperKeys, upperPositions);
+                upperKeys.set(upperKeys.size() - 1, levelKeys.get(first));
+                upperPositions.set(upperPositions.size() - 1, levelPositions.get(first));
+                levelPages = upperPages;
+                levelKeys = upperKeys;
+                levelPositions = upperPositions;
+                height++;
+            }
+            
+            ByteBuffer page = ByteBuffer.allocate(FileFormat.PAGE_SIZE);
+            page.put(header(levelPages.get(0), nextPage, height, order.size(), true, includeCount));
+            page.flip();
+            channel.write(page, 0);
+            channel.force(false);
+        }
+        Files.move(tmp.toPath(), new File(filePath).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * 写出批量装载的节点，并记下它的页号和第一个索引项（内部节点的第一个索引项由调用方改为最左子节点的）
+     */
+    private static void writeBulkNode(FileChannel channel, Node node, List<Integer> pages,
+                                      List<Object> firstKeys, List<Long> firstPositions) throws IOException {
+        ByteBuffer page = ByteBuffer.wrap(encode(node));
+        long offset = (long) node.pageNo * FileFormat.PAGE_SIZE;
+        while (page.hasRemaining()) {
+            offset += channel.write(page, offset);
+        }
+        pages.add(node.pageNo);
+        firstKeys.add(node.keys.isEmpty() ? null : node.keys.get(0));
+        firstPositions.add(node.positions.isEmpty() ? null : node.positions.get(0));
+    }
+}
+
@@ -1,5 +1,6 @@
 package com.dbms.storage;
 
+import com.dbms.model.ColumnDictionary;
 import com.dbms.model.Field;
 import com.dbms.model.FieldType;
 import com.dbms.model.Index;
@@ -9,6 +10,7 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 二进制序列化工具类
@@ -121,6 +123,35 @@ public class BinarySerializer {
         }
         writeInt(dos, table.getRecordCount());
         writeLong(dos, table.getLastModified());
+        writeInt(dos, table.getSchemaVersion());
+        
+        // 写入表选项
+        writeInt(dos, table.getOptions().size());
+        for (Map.Entry<String, String> option : table.getOptions().entrySet()) {
+            writeString(dos, option.getKey());
+            writeString(dos, option.getValue());
+        }
+        
+        // 写入列字典：字段下标(4) + 取值数(4) + 各取值
+        List<Field> fields = table.getFields();
+        int dictionaryCount = 0;
+        for (Field field : fields) {
+            if (field.getDictionary() != null) {
+                dictionaryCount++;
+            }
+        }
+        writeInt(dos, dictionaryCount);
+        for (int i = 0; i < fields.size(); i++) {
+            ColumnDictionary dictionary = fields.get(i).getDictionary();
+            if (dictionary != null) {
+                List<String> values = dictionary.getValues();
+                writeInt(dos, i);
+                writeInt(dos, values.size());
+                for (String value : values) {
+                    writeString(dos, value);
+                }
+            }
+        }
         
         // 写入索引信息
         if (table.getIndexes() != null) {
@@ -134,9 +165,16 @@ public class BinarySerializer {
     }
     
     /**
-     * 读取表结构
+     * 读取表结构（当前文件版本）
      */
     public static Table readTable(DataInputStream dis) throws IOException {
+        return readTable(dis, FileFormat.FILE_VERSION);
+    }
+    
+    /**
+     * 读取表结构（按文件版本兼容旧格式）
+     */
+    public static Table readTable(DataInputStream dis, int version) throws IOException {
         Table table = new Table();
         table.setName(readString(dis));
         int fieldCount = readInt(dis);
@@ -147,12 +185,34 @@ public class BinarySerializer {
         table.setFields(fields);
         table.setRecordCount(readInt(dis));
         table.setLastModified(readLong(dis));
+        if (version >= 2) {
+            table.setSchemaVersion(readInt(dis));
+        }
+        if (version >= 3) {
+            int optionCount = readInt(dis);
+            for (int i = 0; i < optionCount; i++) {
+                String key = readString(dis);
+                table.setOption(key, readString(dis));
+            }
+        }
+        if (version >= 4) {
+            int dictionaryCount = readInt(dis);
+            for (int i = 0; i < dictionaryCount; i++) {
+                ColumnDictionary dictionary = new ColumnDictionary();
+                fields.get(readInt(dis)).setDictionary(dictionary);
+                int size = readInt(dis);
+                for (int j = 0; j < size; j++) {
+                    String value = readString(dis);
+                    dictionary.addValue(value == null ? "" : value); // 空串按长度0写入，读回为null
+                }
+            }
+        }
         
         // 读取索引信息（向后兼容：旧文件可能没有索引信息）
         try {
             int indexCount = readInt(dis);
             for (int i = 0; i < indexCount; i++) {
-                Index index = readIndex(dis);
+                Index index = readIndex(dis, version);
                 table.addIndex(index);
             }
         } catch (java.io.EOFException e) {
@@ -171,24 +231,52 @@ public class BinarySerializer {
         writeString(dos, index.getTableName());
         writeString(dos, index.getColumnName());
         dos.writeBoolean(index.isUnique());
-        // 注意：indexMap 不需要持久化，因为可以在需要时重新构建
+        writeString(dos, index.getType());
+        dos.writeInt(index.getIncludeColumns().size());
+        for (String column : index.getIncludeColumns()) {
+            writeString(dos, column);
+        }
+        // 第一个索引列已在前面写入
+        dos.writeInt(index.getColumnNames().size() - 1);
+        for (String column : index.getColumnNames().subList(1, index.getColumnNames().size())) {
+            writeString(dos, column);
+        }
+        // 注意：索引项保存在各索引自己的索引文件中
     }
     
     /**
-     * 读取索引信息
+     * 读取索引信息（按文件版本兼容旧格式）
      */
-    public static Index readIndex(DataInputStream dis) throws IOException {
+    public static Index readIndex(DataInputStream dis, int version) throws IOException {
         String indexName = readString(dis);
         String tableName = readString(dis);
         String columnName = readString(dis);
         boolean unique = dis.readBoolean();
-        return new Index(indexName, tableName, columnName, unique);
+        Index index = new Index(indexName, tableName, columnName, unique);
+        if (version >= 6) {
+            index.setType(readString(dis));
+        }
+        if (version >= 7) {
+            int includeCount = dis.readInt();
+            List<String> includeColumns = new ArrayList<>(includeCount);
+            for (int i = 0; i < includeCount; i++) {
+                includeColumns.add(readString(dis));
+            }
+            index.setIncludeColumns(includeColumns);
+        }
+        if (version >= 8) {
+            int extraCount = dis.readInt();
+            for (int i = 0; i < extraCount; i++) {
+                index.getColumnNames().add(readString(dis));
+            }
+        }
+        return index;
     }
     
     /**
      * 写入固定长度的字符串（用于CHAR类型）
      */
-    public static void writeFixedString(DataOutputStream dos, String str, int length) throws IOException {
+    public static void writeFixedString(DataOutput dos, String str, int length) throws IOException {
         byte[] bytes = new byte[length];
         if (str != null) {
             byte[] strBytes = str.getBytes(StandardCharsets.UTF_8);
@@ -201,7 +289,7 @@ public class BinarySerializer {
     /**
      * 读取固定长度的字符串
      */
-    public static String readFixedString(DataInputStream dis, int length) throws IOException {
+    public static String readFixedString(DataInput dis, int length) throws IOException {
         byte[] bytes = new byte[length];
         dis.readFully(bytes);
         // 找到第一个null字节的位置
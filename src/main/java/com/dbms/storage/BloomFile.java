@@ -0,0 +1,338 @@
+package com.dbms.storage;
+
+import com.dbms.model.BloomFilter;
+import com.dbms.model.Index;
+import com.dbms.util.DBMSException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 布隆过滤器索引文件（CREATE INDEX ... USING BLOOM，文件名同 .idx）- 一列上的表级过滤器和每个数据页的页级过滤器
+ * 表级过滤器一定不含某个取值时不必读取数据文件；否则只读取页级过滤器可能含该取值的页
+ * 表级过滤器可扩展：最后一段的键数达到容量后追加容量加倍的新段，任一段可能含有即可能含有
+ * 页级过滤器每页 PAGE_FILTER_BITS 位（数据页中没有非NULL取值时没有过滤器，该页一定不含任何取值）
+ * 文件头(32)：魔数(4) + 版本(4) + 表级段数(4) + 页级过滤器数(4) + 日志起始位置(8) + 有序段键数(8)
+ * 其后是各段：键数(4) + 哈希函数数(4) + 字数(4) + 位数组(8*n)，各页：页号(4) + 键数(4) + 位数组；
+ * 之后是增量日志，每条为 键的哈希值(8) + 页号(4)；日志比有序段大时整体重写
+ * 布隆过滤器不能删除，删除和更新记录后旧的取值仍会被判为可能存在，VACUUM 时由数据文件重建
+ */
+public class BloomFile implements Index.Filter {
+    
+    // 当前版本
+    private static final int VERSION = 1;
+    
+    // 文件头大小
+    private static final int HEADER_SIZE = 32;
+    
+    // 页级过滤器的位数和哈希函数个数
+    private static final int PAGE_FILTER_BITS = 2048;
+    private static final int PAGE_FILTER_HASHES = 3;
+    
+    // 日志项大小：键的哈希值(8) + 页号(4)
+    private static final int LOG_ENTRY_SIZE = 12;
+    
+    // 日志项数超过 max(有序段键数, 该值) 时重写
+    private static final int MIN_COMPACT_ENTRIES = 1024;
+    
+    // 已打开的布隆过滤器文件（按绝对路径）和有未写入修改的文件
+    private static final Map<String, BloomFile> files = new HashMap<>();
+    private static final Set<BloomFile> dirtyFiles = new LinkedHashSet<>();
+    
+    private final String filePath;
+    private final Index index;
+    private final List<BloomFilter> segments = new ArrayList<>();
+    private final Map<Integer, BloomFilter> pageFilters = new HashMap<>();
+    private boolean loaded;
+    private long runEntries;       // 有序段中的键数
+    private long logEntries;       // 日志中的项数（含尚未写入的）
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    
+    private BloomFile(String filePath, Index index) {
+        this.filePath = filePath;
+        this.index = index;
+    }
+    
+    /**
+     * 为已有的文件绑定索引（过滤器在第一次使用时加载）；文件不存在或文件头不对时返回false，需要重建后调用 create
+     */
+    public static synchronized boolean open(Index index, String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(header.array());
+        }
+        if (header.getInt(0) != FileFormat.BLOOM_MAGIC_NUMBER || header.getInt(4) != VERSION ||
+            header.getLong(16) < HEADER_SIZE || header.getLong(16) > file.length()) {
+            return false;
+        }
+        attach(new BloomFile(filePath, index));
+        return true;
+    }
+    
+    /**
+     * 由全部记录的键和位置建立过滤器（表级过滤器按键数分配），写入新文件并绑定
+     */
+    public static synchronized void create(Index index, String filePath, List<Object> keys, List<Long> positions)
+            throws IOException {
+        close(filePath);
+        BloomFile bloom = new BloomFile(filePath, index);
+        bloom.segments.add(BloomFilter.forKeys(keys.size()));
+        bloom.loaded = true;
+        for (int i = 0; i < keys.size(); i++) {
+            bloom.addHash(BloomFilter.hash(keys.get(i)), SlottedPage.pageOf(positions.get(i)));
+        }
+        bloom.writeRun();
+        attach(bloom);
+    }
+    
+    private static void attach(BloomFile bloom) {
+        files.put(new File(bloom.filePath).getAbsolutePath(), bloom);
+        bloom.index.setFilter(bloom);
+    }
+    
+    /**
+     * 关闭文件（删除表、恢复备份或重建前调用），未写入的修改丢弃
+     */
+    public static synchronized void close(String filePath) {
+        BloomFile bloom = files.remove(new File(filePath).getAbsolutePath());
+        if (bloom != null) {
+            dirtyFiles.remove(bloom);
+            if (bloom.index.getFilter() == bloom) {
+                bloom.index.setFilter(null);
+            }
+        }
+    }
+    
+    /**
+     * 把所有文件的新增项追加到日志（或重写）
+     */
+    public static synchronized void flushAll() throws IOException {
+        for (BloomFile bloom : dirtyFiles) {
+            bloom.flush();
+        }
+        dirtyFiles.clear();
+    }
+    
+    @Override
+    public void add(Object value, long position) {
+        synchronized (BloomFile.class) {
+            ensureLoaded();
+            long hash = BloomFilter.hash(value);
+            int pageNo = SlottedPage.pageOf(position);
+            addHash(hash, pageNo);
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeLong(hash);
+                out.writeInt(pageNo);
+            } catch (IOException e) {
+                throw new DBMSException("Failed to log bloom filter entry: " + e.getMessage(), e);
+            }
+            logEntries++;
+            dirtyFiles.add(this);
+        }
+    }
+    
+    @Override
+    public boolean mightContain(Object value) {
+        synchronized (BloomFile.class) {
+            ensureLoaded();
+            long hash = BloomFilter.hash(value);
+            for (BloomFilter segment : segments) {
+                if (segment.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    @Override
+    public boolean mightContain(Object value, int pageNo) {
+        synchronized (BloomFile.class) {
+            ensureLoaded();
+            BloomFilter filter = pageFilters.get(pageNo);
+            return filter != null && filter.mightContain(BloomFilter.hash(value));
+        }
+    }
+    
+    @Override
+    public long memoryUsage() {
+        synchronized (BloomFile.class) {
+            if (!loaded) {
+                return 0;
+            }
+            long bytes = 0;
+            for (BloomFilter segment : segments) {
+                bytes += segment.memoryUsage();
+            }
+            for (BloomFilter filter : pageFilters.values()) {
+                bytes += 40 + filter.memoryUsage();  // 哈希表的项和装箱的页号
+            }
+            return bytes;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        synchronized (BloomFile.class) {
+            if (!loaded) {
+                return "not loaded";
+            }
+            long keys = 0;
+            for (BloomFilter segment : segments) {
+                keys += segment.getCount();
+            }
+            return String.format("keys=%d, segments=%d, pages=%d", keys, segments.size(), pageFilters.size());
+        }
+    }
+    
+    /**
+     * 把键的哈希值加入表级过滤器（最后一段满时追加容量加倍的新段）和所在页的过滤器
+     */
+    private void addHash(long hash, int pageNo) {
+        BloomFilter last = segments.get(segments.size() - 1);
+        if (last.getCount() >= last.getCapacity()) {
+            last = BloomFilter.forKeys(last.getCapacity() * 2);
+            segments.add(last);
+        }
+        last.add(hash);
+        pageFilters.computeIfAbsent(pageNo, k -> new BloomFilter(PAGE_FILTER_BITS, PAGE_FILTER_HASHES)).add(hash);
+    }
+    
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        try {
+            load();
+        } catch (IOException | BufferUnderflowException e) {
+            throw new DBMSException("Failed to load bloom filter " + index.getIndexName() + ": " + e.getMessage(), e);
+        }
+        loaded = true;
+    }
+    
+    private void flush() throws IOException {
+        if (logEntries > Math.max(runEntries, MIN_COMPACT_ENTRIES)) {
+            writeRun();
+            return;
+        }
+        if (pending.size() > 0) {
+            Files.write(new File(filePath).toPath(), pending.toByteArray(), StandardOpenOption.APPEND);
+            pending.reset();
+        }
+    }
+    
+    /**
+     * 把内存中的全部过滤器写成新文件（先写临时文件再替换）
+     */
+    private void writeRun() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[HEADER_SIZE]);
+        long keys = 0;
+        for (BloomFilter segment : segments) {
+            writeFilter(out, segment);
+            keys += segment.getCount();
+        }
+        for (Map.Entry<Integer, BloomFilter> entry : pageFilters.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().getCount());
+            for (long word : entry.getValue().getWords()) {
+                out.writeLong(word);
+            }
+        }
+        byte[] data = bytes.toByteArray();
+        ByteBuffer.wrap(data)
+            .putInt(FileFormat.BLOOM_MAGIC_NUMBER)
+            .putInt(VERSION)
+            .putInt(segments.size())
+            .putInt(pageFilters.size())
+            .putLong(data.length)
+            .putLong(keys);
+        
+        File file = new File(filePath);
+        File tmp = new File(filePath + ".tmp");
+        Files.write(tmp.toPath(), data);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        runEntries = keys;
+        logEntries = 0;
+        pending.reset();
+    }
+    
+    private static void writeFilter(DataOutputStream out, BloomFilter filter) throws IOException {
+        out.writeInt(filter.getCount());
+        out.writeInt(filter.getHashCount());
+        out.writeInt(filter.getWords().length);
+        for (long word : filter.getWords()) {
+            out.writeLong(word);
+        }
+    }
+    
+    /**
+     * 读取过滤器并重放日志；末尾未写完的日志项被截掉
+     */
+    private void load() throws IOException {
+        File file = new File(filePath);
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buf.remaining() < HEADER_SIZE || buf.getInt(0) != FileFormat.BLOOM_MAGIC_NUMBER) {
+            throw new IOException("Corrupted bloom filter file " + filePath);
+        }
+        int segmentCount = buf.getInt(8);
+        int pageCount = buf.getInt(12);
+        long logStart = buf.getLong(16);
+        runEntries = buf.getLong(24);
+        buf.position(HEADER_SIZE);
+        segments.clear();
+        for (int i = 0; i < segmentCount; i++) {
+            int count = buf.getInt();
+            int hashCount = buf.getInt();
+            long[] words = new long[buf.getInt()];
+            buf.asLongBuffer().get(words);
+            buf.position(buf.position() + 8 * words.length);
+            segments.add(new BloomFilter(words, hashCount, count));
+        }
+        if (segments.isEmpty()) {
+            segments.add(BloomFilter.forKeys(0));
+        }
+        pageFilters.clear();
+        for (int i = 0; i < pageCount; i++) {
+            int pageNo = buf.getInt();
+            int count = buf.getInt();
+            long[] words = new long[(PAGE_FILTER_BITS + 63) / 64];
+            buf.asLongBuffer().get(words);
+            buf.position(buf.position() + 8 * words.length);
+            pageFilters.put(pageNo, new BloomFilter(words, PAGE_FILTER_HASHES, count));
+        }
+        
+        buf.position((int) logStart);
+        logEntries = 0;
+        while (buf.remaining() >= LOG_ENTRY_SIZE) {
+            addHash(buf.getLong(), buf.getInt());
+            logEntries++;
+        }
+        if (buf.hasRemaining()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(buf.position());
+            }
+        }
+    }
+}
+
@@ -0,0 +1,292 @@
+package com.dbms.storage;
+
+import com.dbms.util.DBMSException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓冲池 - 所有数据文件的页都经由这里读写
+ * 固定数量的页帧，按 (文件, 页号) 缓存；使用时钟（Clock）算法淘汰未被固定的页，脏页在淘汰或刷盘时写回
+ * 容量通过系统属性 dbms.bufferPoolPages 配置（页数），默认 1024 页（8MB）
+ */
+public class BufferPool {
+    
+    public static final String POOL_SIZE_PROPERTY = "dbms.bufferPoolPages";
+    private static final int DEFAULT_POOL_PAGES = 1024;
+    
+    private static final BufferPool INSTANCE = new BufferPool(
+        Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_PAGES));
+    
+    static {
+        // 进程退出时把脏页写回磁盘并关闭数据文件
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                INSTANCE.flushAll();
+            } catch (IOException e) {
+                System.err.println("BufferPool: 退出时刷盘失败: " + e.getMessage());
+            } finally {
+                FileChannelCache.closeAll();
+            }
+        }));
+    }
+    
+    /**
+     * 页帧
+     */
+    private static class Frame {
+        String filePath;
+        int pageNo;
+        SlottedPage page;
+        int pinCount;
+        boolean dirty;
+        boolean referenced;
+    }
+    
+    private final Frame[] frames;
+    private final Map<String, Frame> pageTable = new HashMap<>();
+    // 每个文件的页数（包含尚未写回磁盘的新页）
+    private final Map<String, Integer> pageCounts = new HashMap<>();
+    private int clockHand = 0;
+    
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    
+    private BufferPool(int capacity) {
+        this.frames = new Frame[Math.max(capacity, 8)];
+    }
+    
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * 固定一页：命中时直接返回缓存的页，否则从磁盘读入；用完后必须调用 unpinPage
+     */
+    public synchronized SlottedPage pinPage(String filePath, int pageNo) throws IOException {
+        filePath = normalize(filePath);
+        Frame frame = pageTable.get(pageKey(filePath, pageNo));
+        if (frame != null) {
+            hitCount++;
+        } else {
+            missCount++;
+            if (pageNo >= getPageCount(filePath)) {
+                throw new IOException("Page " + pageNo + " does not exist in " + filePath);
+            }
+            frame = allocateFrame(filePath, pageNo, readFromDisk(filePath, pageNo));
+        }
+        frame.pinCount++;
+        frame.referenced = true;
+        return frame.page;
+    }
+    
+    /**
+     * 在文件末尾新建一页并固定（页只在缓冲池中，刷盘时才写入文件）
+     */
+    public synchronized SlottedPage newPage(String filePath) throws IOException {
+        filePath = normalize(filePath);
+        int pageNo = getPageCount(filePath);
+        Frame frame = allocateFrame(filePath, pageNo, SlottedPage.create(pageNo));
+        pageCounts.put(filePath, pageNo + 1);
+        frame.dirty = true;
+        frame.pinCount++;
+        frame.referenced = true;
+        return frame.page;
+    }
+    
+    /**
+     * 取消固定；dirty 为 true 表示页已被修改
+     */
+    public synchronized void unpinPage(String filePath, int pageNo, boolean dirty) {
+        Frame frame = pageTable.get(pageKey(normalize(filePath), pageNo));
+        if (frame == null || frame.pinCount == 0) {
+            throw new DBMSException("Page " + pageNo + " of " + filePath + " is not pinned");
+        }
+        frame.pinCount--;
+        frame.dirty |= dirty;
+    }
+    
+    /**
+     * 文件的总页数（含第0页文件头页）
+     */
+    public synchronized int getPageCount(String filePath) {
+        filePath = normalize(filePath);
+        Integer count = pageCounts.get(filePath);
+        if (count == null) {
+            CompressedPageFile compressed = getCompressedFile(filePath);
+            count = compressed != null ? compressed.getPageCount() :
+                (int) (new File(filePath).length() / FileFormat.PAGE_SIZE);
+            pageCounts.put(filePath, count);
+        }
+        return count;
+    }
+    
+    /**
+     * 把某个文件的脏页写回磁盘
+     */
+    public synchronized void flushFile(String filePath) throws IOException {
+        filePath = normalize(filePath);
+        List<Frame> dirtyFrames = new ArrayList<>();
+        for (Frame frame : frames) {
+            if (frame != null && frame.dirty && frame.filePath.equals(filePath)) {
+                dirtyFrames.add(frame);
+            }
+        }
+        writeFrames(filePath, dirtyFrames);
+    }
+    
+    /**
+     * 把所有脏页写回磁盘
+     */
+    public synchronized void flushAll() throws IOException {
+        Map<String, List<Frame>> dirtyByFile = new HashMap<>();
+        for (Frame frame : frames) {
+            if (frame != null && frame.dirty) {
+                dirtyByFile.computeIfAbsent(frame.filePath, k -> new ArrayList<>()).add(frame);
+            }
+        }
+        for (Map.Entry<String, List<Frame>> entry : dirtyByFile.entrySet()) {
+            writeFrames(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * 丢弃某个文件的所有缓存页（不写回），用于删除表或文件被外部替换后
+     */
+    public synchronized void discardFile(String filePath) {
+        filePath = normalize(filePath);
+        for (int i = 0; i < frames.length; i++) {
+            Frame frame = frames[i];
+            if (frame != null && frame.filePath.equals(filePath)) {
+                pageTable.remove(pageKey(frame.filePath, frame.pageNo));
+                frames[i] = null;
+            }
+        }
+        pageCounts.remove(filePath);
+        CompressedPageFile.invalidate(filePath);
+    }
+    
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    public int getCapacity() {
+        return frames.length;
+    }
+    
+    /**
+     * 命中率统计信息
+     */
+    public synchronized String getStatistics() {
+        long total = hitCount + missCount;
+        double hitRatio = total == 0 ? 0.0 : hitCount * 100.0 / total;
+        return String.format("BufferPool: %d/%d pages cached, hits=%d, misses=%d, evictions=%d, hit ratio=%.1f%%",
+            pageTable.size(), frames.length, hitCount, missCount, evictionCount, hitRatio);
+    }
+    
+    /**
+     * 为页分配页帧：优先使用空闲帧，否则按时钟算法淘汰
+     */
+    private Frame allocateFrame(String filePath, int pageNo, SlottedPage page) throws IOException {
+        int index = findVictim();
+        Frame victim = frames[index];
+        if (victim != null) {
+            if (victim.dirty) {
+                writeFrames(victim.filePath, Collections.singletonList(victim));
+            }
+            pageTable.remove(pageKey(victim.filePath, victim.pageNo));
+            evictionCount++;
+        }
+        
+        Frame frame = new Frame();
+        frame.filePath = filePath;
+        frame.pageNo = pageNo;
+        frame.page = page;
+        frames[index] = frame;
+        pageTable.put(pageKey(filePath, pageNo), frame);
+        return frame;
+    }
+    
+    /**
+     * 时钟算法：跳过被固定的页，最近被访问过的页给一次机会
+     */
+    private int findVictim() {
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] == null) {
+                return i;
+            }
+        }
+        for (int step = 0; step < frames.length * 2; step++) {
+            int index = clockHand;
+            clockHand = (clockHand + 1) % frames.length;
+            Frame frame = frames[index];
+            if (frame.pinCount > 0) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            return index;
+        }
+        throw new DBMSException("Buffer pool exhausted: all " + frames.length + " pages are pinned");
+    }
+    
+    private SlottedPage readFromDisk(String filePath, int pageNo) throws IOException {
+        CompressedPageFile compressed = getCompressedFile(filePath);
+        if (compressed != null) {
+            return SlottedPage.wrap(pageNo, compressed.readPage(pageNo));
+        }
+        byte[] data = new byte[FileFormat.PAGE_SIZE];
+        FileChannelCache.readFully(filePath, ByteBuffer.wrap(data), (long) pageNo * FileFormat.PAGE_SIZE);
+        return SlottedPage.wrap(pageNo, data);
+    }
+    
+    private void writeFrames(String filePath, List<Frame> dirtyFrames) throws IOException {
+        CompressedPageFile compressed = getCompressedFile(filePath);
+        for (Frame frame : dirtyFrames) {
+            if (compressed != null) {
+                compressed.writePage(frame.pageNo, frame.page.getData());
+            } else {
+                FileChannelCache.writeFully(filePath, ByteBuffer.wrap(frame.page.getData()),
+                    (long) frame.pageNo * FileFormat.PAGE_SIZE);
+            }
+            frame.dirty = false;
+        }
+    }
+    
+    /**
+     * 页压缩的文件返回其页目录，普通文件返回null
+     */
+    private static CompressedPageFile getCompressedFile(String filePath) {
+        try {
+            return CompressedPageFile.get(filePath);
+        } catch (IOException e) {
+            throw new DBMSException("Failed to read data file header: " + e.getMessage(), e);
+        }
+    }
+    
+    private static String normalize(String filePath) {
+        return new File(filePath).getAbsolutePath();
+    }
+    
+    private static String pageKey(String filePath, int pageNo) {
+        return filePath + "#" + pageNo;
+    }
+}
+
@@ -0,0 +1,728 @@
+package com.dbms.storage;
+
+import com.dbms.model.Field;
+import com.dbms.model.FieldType;
+import com.dbms.model.Record;
+import com.dbms.model.Table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列存表（storage = columnar）- 每个字段一个列文件，查询只读取引用到的列
+ * 表的 .dat 文件是清单：魔数(4) + 版本(4) + 代号(4) + 预留(4) + 行数(8) + 预留(8) + 删除位图（每行1位）
+ * 列文件 <数据文件名>.g<代号>.c<字段序号>.col 由定长块组成，每块 BLOCK_ROWS 行：
+ * 块头（行数4 + NULL数4 + 最小值8 + 最大值8 + 预留8）+ NULL位图 + 定长值区；
+ * INT 存4字节，FLOAT/DOUBLE 存8字节，字符串类型存8字节偏移，内容（长度4 + UTF-8）追加在同名的 .str 文件中
+ * 记录位置即行号；删除只置删除位，更新为删除旧行 + 追加新行，VACUUM 写出新一代列文件后替换清单
+ * 末尾块和删除位图在内存中修改，flushAll 时写回（与缓冲池一样在每条语句结束后调用）
+ */
+public class ColumnStore {
+    
+    // 每块行数
+    public static final int BLOCK_ROWS = 1024;
+    
+    private static final int MANIFEST_HEADER_SIZE = 32;
+    private static final int BLOCK_HEADER_SIZE = 32;
+    private static final int NULL_BITMAP_SIZE = BLOCK_ROWS / 8;
+    private static final int VALUES_OFFSET = BLOCK_HEADER_SIZE + NULL_BITMAP_SIZE;
+    
+    // 字符串堆文件的写缓冲上限
+    private static final int HEAP_BUFFER_SIZE = 64 * 1024;
+    
+    // 已打开的列存表（按清单文件绝对路径）
+    private static final Map<String, Manifest> manifests = new HashMap<>();
+    
+    /**
+     * 数据文件是否为列存表的清单
+     */
+    public static synchronized boolean isColumnStore(String filePath) throws IOException {
+        if (manifests.containsKey(new File(filePath).getAbsolutePath())) {
+            return true;
+        }
+        File file = new File(filePath);
+        if (!file.exists() || file.length() < 4) {
+            return false;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        FileChannelCache.readFully(filePath, magic, 0);
+        return magic.getInt(0) == FileFormat.COLUMN_STORE_MAGIC_NUMBER;
+    }
+    
+    /**
+     * 追加一行
+     * @return 行号（作为记录位置）
+     */
+    public static synchronized long appendRecord(String filePath, Record record, Table table) throws IOException {
+        // 按行存的编码规则规范化字段值（类型转换、CHAR截断、记录长度检查）
+        RecordCodec codec = RecordCodec.forTable(table);
+        Record normalized = codec.decode(codec.encode(record));
+        Manifest manifest = open(filePath, true);
+        long row = manifest.rowCount;
+        for (int i = 0; i < table.getFieldCount(); i++) {
+            ColumnFile column = manifest.column(i, table.getFieldByIndex(i));
+            column.fillNulls(row);
+            column.append(normalized.getValue(i));
+        }
+        manifest.rowCount++;
+        manifest.markDirty(row);
+        return row;
+    }
+    
+    /**
+     * 更新：标记旧行删除后追加新行（列文件只追加）
+     * @return 新行号
+     */
+    public static synchronized long updateRecord(String filePath, long row, Record record, Table table) throws IOException {
+        setDeleted(filePath, row, true);
+        return appendRecord(filePath, record, table);
+    }
+    
+    /**
+     * 设置或清除行的删除位
+     */
+    public static synchronized void setDeleted(String filePath, long row, boolean deleted) throws IOException {
+        Manifest manifest = open(filePath, false);
+        if (manifest == null || row < 0 || row >= manifest.rowCount) {
+            throw new IOException("No record at position " + row);
+        }
+        manifest.deleted.set((int) row, deleted);
+        manifest.markDirty(row);
+    }
+    
+    /**
+     * 读取一行（已删除的行返回 deleted 标记为 true 的记录，行号越界时返回null）
+     */
+    public static synchronized Record readRecordAt(String filePath, long row, Table table) throws IOException {
+        Manifest manifest = open(filePath, false);
+        if (manifest == null || row < 0 || row >= manifest.rowCount) {
+            return null;
+        }
+        Record record = new Record(table.getFieldCount());
+        for (int i = 0; i < table.getFieldCount(); i++) {
+            ColumnFile column = manifest.column(i, table.getFieldByIndex(i));
+            if (row < column.rowCount) {
+                ByteBuffer block = column.readBlock((int) (row / BLOCK_ROWS));
+                record.setValue(i, column.getValue(block, (int) (row % BLOCK_ROWS)));
+            }
+        }
+        record.setDeleted(manifest.deleted.get((int) row));
+        record.setRecordId(row);
+        return record;
+    }
+    
+    /**
+     * 读取所有未删除的行，只填充 columns 中为 true 的列（columns 为null时读取全部列），其余列为NULL
+     */
+    public static synchronized List<Record> readRecords(String filePath, Table table, boolean[] columns) throws IOException {
+        return readRecords(filePath, table, columns, null);
+    }
+    
+    /**
+     * 读取 blocks 可能匹配的块中未删除的行（按块号判断，blocks 为null表示全部块），其余同上
+     */
+    public static synchronized List<Record> readRecords(String filePath, Table table, boolean[] columns,
+                                                        DATFileManager.PageFilter blocks) throws IOException {
+        List<Record> records = new ArrayList<>();
+        Manifest manifest = open(filePath, false);
+        if (manifest == null) {
+            return records;
+        }
+        int rowCount = (int) manifest.rowCount;
+        Record[] rows = new Record[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            if (blocks != null && row % BLOCK_ROWS == 0 && !blocks.mightMatch(row / BLOCK_ROWS)) {
+                row += BLOCK_ROWS - 1;
+                continue; // 整块不可能匹配，不读取
+            }
+            if (!manifest.deleted.get(row)) {
+                Record record = new Record(table.getFieldCount());
+                record.setRecordId(row);
+                rows[row] = record;
+                records.add(record);
+            }
+        }
+        for (int i = 0; i < table.getFieldCount(); i++) {
+            if (columns != null && (i >= columns.length || !columns[i])) {
+                continue;
+            }
+            ColumnFile column = manifest.column(i, table.getFieldByIndex(i));
+            int blockCount = column.blockCount();
+            for (int b = 0; b < blockCount; b++) {
+                int first = b * BLOCK_ROWS;
+                if (first >= rowCount) {
+                    break;
+                }
+                int live = 0;
+                int blockRows = (int) Math.min(BLOCK_ROWS, Math.min(column.rowCount, rowCount) - first);
+                for (int r = 0; r < blockRows; r++) {
+                    if (rows[first + r] != null) {
+                        live++;
+                    }
+                }
+                if (live == 0) {
+                    continue; // 整块都已删除，不读取
+                }
+                ByteBuffer block = column.readBlock(b);
+                Object[] values = column.getValues(block);
+                for (int r = 0; r < blockRows; r++) {
+                    if (rows[first + r] != null) {
+                        rows[first + r].setValue(i, values[r]);
+                    }
+                }
+            }
+        }
+        if (blocks == null) {
+            table.setRecordCount(records.size());
+        }
+        return records;
+    }
+    
+    /**
+     * 各块中 columns 指定的列的最小值、最大值和NULL个数（只读块头），其余列没有统计信息；表不存在时返回null
+     * 统计信息包括已删除的行，新增列之前的行按NULL计
+     */
+    public static synchronized ZoneMap readZones(String filePath, Table table, boolean[] columns) throws IOException {
+        Manifest manifest = open(filePath, false);
+        if (manifest == null) {
+            return null;
+        }
+        ZoneMap zones = ZoneMap.forBlocks(table);
+        int blockCount = (int) ((manifest.rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS);
+        for (int i = 0; i < table.getFieldCount(); i++) {
+            boolean known = columns == null || (i < columns.length && columns[i]);
+            ColumnFile column = known ? manifest.column(i, table.getFieldByIndex(i)) : null;
+            for (int b = 0; b < blockCount; b++) {
+                int blockRows = (int) Math.min(BLOCK_ROWS, manifest.rowCount - (long) b * BLOCK_ROWS);
+                if (column == null) {
+                    zones.setColumn(b, i, -1, null, null);
+                } else if (b >= column.blockCount()) {
+                    zones.setColumn(b, i, blockRows, null, null);
+                } else {
+                    ByteBuffer header = column.readHeader(b);
+                    int rows = header.getInt(0);
+                    int nulls = header.getInt(4) + Math.max(0, blockRows - rows);
+                    if (rows == header.getInt(4)) {
+                        zones.setColumn(b, i, nulls, null, null);
+                    } else if (column.type == FieldType.INT) {
+                        zones.setColumn(b, i, nulls, (int) header.getLong(8), (int) header.getLong(16));
+                    } else if (!column.isString()) {
+                        zones.setColumn(b, i, nulls, header.getDouble(8), header.getDouble(16));
+                    } else {
+                        zones.setColumn(b, i, nulls, column.readString(header.getLong(8)),
+                            column.readString(header.getLong(16)));
+                    }
+                }
+            }
+        }
+        return zones;
+    }
+    
+    /**
+     * 所有未删除行的行号
+     */
+    public static synchronized List<Long> readRecordPositions(String filePath) throws IOException {
+        List<Long> positions = new ArrayList<>();
+        Manifest manifest = open(filePath, false);
+        if (manifest != null) {
+            for (long row = 0; row < manifest.rowCount; row++) {
+                if (!manifest.deleted.get((int) row)) {
+                    positions.add(row);
+                }
+            }
+        }
+        return positions;
+    }
+    
+    /**
+     * 顺序扫描所有未删除的行（只读取 columns 指定的列）：逐行组装后编码，codec 绑定到编码结果
+     */
+    public static void scanRecords(String filePath, Table table, boolean[] columns,
+                                   DATFileManager.RecordVisitor visitor) throws IOException {
+        List<Record> records = readRecords(filePath, table, columns);
+        RecordCodec codec = RecordCodec.forTable(table);
+        for (Record record : records) {
+            visitor.visit(record.getRecordId(), codec.bind(codec.encode(record)));
+        }
+    }
+    
+    /**
+     * 已删除行占总行数的比例（VACUUM 可回收的部分）
+     */
+    public static synchronized double getReclaimableRatio(String filePath) throws IOException {
+        Manifest manifest = open(filePath, false);
+        if (manifest == null || manifest.rowCount == 0) {
+            return 0.0;
+        }
+        return (double) manifest.deleted.cardinality() / manifest.rowCount;
+    }
+    
+    /**
+     * 整理（VACUUM）：把未删除的行按原顺序写入新一代列文件，落盘后原子替换清单，再删除旧一代列文件
+     * @return 旧行号 -> 新行号
+     */
+    public static synchronized Map<Long, Long> vacuum(String filePath, Table table) throws IOException {
+        Map<Long, Long> remap = new HashMap<>();
+        Manifest manifest = open(filePath, false);
+        if (manifest == null) {
+            return remap;
+        }
+        List<Record> records = readRecords(filePath, table, null);
+        Manifest target = new Manifest(filePath, manifest.generation + 1);
+        target.deleteFiles(); // 上次整理失败留下的文件
+        try {
+            for (Record record : records) {
+                long row = target.rowCount;
+                for (int i = 0; i < table.getFieldCount(); i++) {
+                    target.column(i, table.getFieldByIndex(i)).append(record.getValue(i));
+                }
+                target.rowCount++;
+                remap.put(record.getRecordId(), row);
+            }
+            for (ColumnFile column : target.columns.values()) {
+                column.flush();
+                FileChannelCache.force(column.path);
+                if (column.isString()) {
+                    FileChannelCache.force(column.heapPath);
+                }
+            }
+        } catch (IOException e) {
+            target.deleteFiles();
+            throw e;
+        }
+        
+        File tmpFile = new File(filePath + ".vacuum");
+        Files.write(tmpFile.toPath(), target.toBytes(0));
+        invalidate(filePath);
+        try {
+            Files.move(tmpFile.toPath(), new File(filePath).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), new File(filePath).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        manifest.deleteFiles();
+        target.columns.clear();
+        table.setRecordCount(records.size());
+        return remap;
+    }
+    
+    /**
+     * 当前一代的所有列文件和字符串堆文件（备份、删除表时使用）
+     */
+    public static synchronized List<File> getColumnFiles(String filePath) throws IOException {
+        if (!isColumnStore(filePath)) {
+            return new ArrayList<>();
+        }
+        Manifest manifest = open(filePath, false);
+        return manifest == null ? new ArrayList<>() : manifest.listFiles();
+    }
+    
+    /**
+     * 把所有列存表的末尾块、字符串堆和清单写回文件
+     */
+    public static synchronized void flushAll() throws IOException {
+        for (Manifest manifest : manifests.values()) {
+            manifest.flush();
+        }
+    }
+    
+    /**
+     * 清单被删除或替换前后调用：丢弃内存状态（不写回）并关闭清单和列文件的通道
+     * （清单的通道不关闭时，替换后仍会写入已被替换掉的旧文件）
+     */
+    public static synchronized void invalidate(String filePath) {
+        Manifest manifest = manifests.remove(new File(filePath).getAbsolutePath());
+        if (manifest != null) {
+            manifest.closeChannels();
+        }
+        FileChannelCache.close(filePath);
+    }
+    
+    /**
+     * 打开列存表；清单不存在（或为空文件）时 create 为 true 则新建，否则返回null
+     */
+    private static Manifest open(String filePath, boolean create) throws IOException {
+        String key = new File(filePath).getAbsolutePath();
+        Manifest manifest = manifests.get(key);
+        if (manifest != null) {
+            return manifest;
+        }
+        File file = new File(filePath);
+        if (file.exists() && file.length() > 0) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buf.remaining() < MANIFEST_HEADER_SIZE || buf.getInt(0) != FileFormat.COLUMN_STORE_MAGIC_NUMBER) {
+                throw new IOException("Not a column store: " + filePath);
+            }
+            if (buf.getInt(4) > FileFormat.FILE_VERSION) {
+                throw new IOException("Unsupported data file version: " + buf.getInt(4));
+            }
+            manifest = new Manifest(filePath, buf.getInt(8));
+            manifest.rowCount = buf.getLong(16);
+            buf.position(MANIFEST_HEADER_SIZE);
+            manifest.deleted = BitSet.valueOf(buf);
+        } else if (create) {
+            manifest = new Manifest(filePath, 1);
+            FileChannelCache.writeFully(filePath, ByteBuffer.wrap(manifest.toBytes(0)), 0);
+        } else {
+            return null;
+        }
+        manifests.put(key, manifest);
+        return manifest;
+    }
+    
+    /**
+     * 列存表清单：代号、行数、删除位图，以及已打开的列文件
+     */
+    private static class Manifest {
+        final String path;
+        final int generation;
+        long rowCount;
+        BitSet deleted = new BitSet();
+        final Map<Integer, ColumnFile> columns = new HashMap<>();
+        // 删除位图中需要写回的最小字节位置（Integer.MAX_VALUE 表示只有列文件需要写回）
+        int dirtyFrom = Integer.MAX_VALUE;
+        boolean dirty;
+        
+        Manifest(String path, int generation) {
+            this.path = path;
+            this.generation = generation;
+        }
+        
+        ColumnFile column(int index, Field field) throws IOException {
+            ColumnFile column = columns.get(index);
+            if (column == null) {
+                String base = path.endsWith(".dat") ? path.substring(0, path.length() - 4) : path;
+                String prefix = base + ".g" + generation + ".c" + index;
+                column = new ColumnFile(prefix + ".col", prefix + ".str", field.getType());
+                columns.put(index, column);
+            }
+            return column;
+        }
+        
+        void markDirty(long row) {
+            dirtyFrom = Math.min(dirtyFrom, (int) (row / 8));
+            dirty = true;
+        }
+        
+        /**
+         * 清单内容：文件头 + 删除位图中从 fromByte 开始的部分
+         */
+        byte[] toBytes(int fromByte) {
+            byte[] bitmap = deleted.toByteArray();
+            int bitmapBytes = (int) ((rowCount + 7) / 8);
+            fromByte = Math.min(fromByte, bitmapBytes);
+            ByteBuffer buf = ByteBuffer.allocate(MANIFEST_HEADER_SIZE + bitmapBytes - fromByte);
+            buf.putInt(FileFormat.COLUMN_STORE_MAGIC_NUMBER);
+            buf.putInt(FileFormat.FILE_VERSION);
+            buf.putInt(generation);
+            buf.putInt(0);
+            buf.putLong(rowCount);
+            buf.putLong(0);
+            for (int i = fromByte; i < bitmapBytes; i++) {
+                buf.put(i < bitmap.length ? bitmap[i] : 0);
+            }
+            return buf.array();
+        }
+        
+        void flush() throws IOException {
+            for (ColumnFile column : columns.values()) {
+                column.flush();
+            }
+            if (!dirty) {
+                return;
+            }
+            // 列文件先于清单写回，清单中的行数不会超过列文件中已写回的行
+            byte[] data = toBytes(dirtyFrom);
+            ByteBuffer header = ByteBuffer.wrap(data, 0, MANIFEST_HEADER_SIZE);
+            FileChannelCache.writeFully(path, header, 0);
+            ByteBuffer bitmap = ByteBuffer.wrap(data, MANIFEST_HEADER_SIZE, data.length - MANIFEST_HEADER_SIZE);
+            FileChannelCache.writeFully(path, bitmap, MANIFEST_HEADER_SIZE + Math.min(dirtyFrom, (rowCount + 7) / 8));
+            dirtyFrom = Integer.MAX_VALUE;
+            dirty = false;
+        }
+        
+        List<File> listFiles() {
+            List<File> files = new ArrayList<>();
+            String base = path.endsWith(".dat") ? path.substring(0, path.length() - 4) : path;
+            File dir = new File(base).getAbsoluteFile().getParentFile();
+            String prefix = new File(base).getName() + ".g" + generation + ".c";
+            File[] candidates = dir == null ? null : dir.listFiles();
+            if (candidates != null) {
+                for (File file : candidates) {
+                    String name = file.getName();
+                    if (name.startsWith(prefix) && (name.endsWith(".col") || name.endsWith(".str"))) {
+                        files.add(file);
+                    }
+                }
+            }
+            return files;
+        }
+        
+        void closeChannels() {
+            for (ColumnFile column : columns.values()) {
+                FileChannelCache.close(column.path);
+                FileChannelCache.close(column.heapPath);
+            }
+        }
+        
+        void deleteFiles() {
+            closeChannels();
+            for (File file : listFiles()) {
+                file.delete();
+            }
+        }
+    }
+    
+    /**
+     * 单个列文件：末尾块（未满的块）缓存在内存中，字符串先写入堆的写缓冲
+     */
+    private static class ColumnFile {
+        final String path;
+        final String heapPath;
+        final FieldType type;
+        final int width;
+        final int blockSize;
+        long rowCount;
+        
+        ByteBuffer tail;
+        int tailBlock;
+        boolean tailDirty;
+        // 末尾块字符串列的最小/最大值（避免每次比较都读堆文件）
+        String tailMin;
+        String tailMax;
+        
+        long heapFlushed;
+        final ByteArrayOutputStream heapBuffer = new ByteArrayOutputStream();
+        
+        ColumnFile(String path, String heapPath, FieldType type) throws IOException {
+            this.path = path;
+            this.heapPath = heapPath;
+            this.type = type;
+            this.width = type == FieldType.INT ? 4 : 8;
+            this.blockSize = VALUES_OFFSET + BLOCK_ROWS * width;
+            
+            File heap = new File(heapPath);
+            heapFlushed = heap.exists() ? heap.length() : 0;
+            File file = new File(path);
+            int blocks = file.exists() ? (int) (file.length() / blockSize) : 0;
+            if (blocks == 0) {
+                tail = ByteBuffer.allocate(blockSize);
+                tailBlock = 0;
+                return;
+            }
+            tail = readFromFile(blocks - 1);
+            tailBlock = blocks - 1;
+            rowCount = (long) tailBlock * BLOCK_ROWS + tail.getInt(0);
+            if (tail.getInt(0) == BLOCK_ROWS) {
+                tail = ByteBuffer.allocate(blockSize);
+                tailBlock = blocks;
+            } else if (isString() && tail.getInt(0) > tail.getInt(4)) {
+                tailMin = readString(tail.getLong(8));
+                tailMax = readString(tail.getLong(16));
+            }
+        }
+        
+        boolean isString() {
+            return width == 8 && type != FieldType.FLOAT && type != FieldType.DOUBLE;
+        }
+        
+        int blockCount() {
+            return (int) ((rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS);
+        }
+        
+        /**
+         * 补NULL到指定行数（新增列之前的行）
+         */
+        void fillNulls(long rows) throws IOException {
+            while (rowCount < rows) {
+                append(null);
+            }
+        }
+        
+        void append(Object value) throws IOException {
+            int rows = tail.getInt(0);
+            if (rows == BLOCK_ROWS) {
+                flushTail();
+                tail = ByteBuffer.allocate(blockSize);
+                tailBlock++;
+                rows = 0;
+            }
+            int nonNull = rows - tail.getInt(4);
+            if (value == null) {
+                int b = BLOCK_HEADER_SIZE + (rows >> 3);
+                tail.put(b, (byte) (tail.get(b) | (1 << (rows & 7))));
+                tail.putInt(4, tail.getInt(4) + 1);
+            } else if (type == FieldType.INT) {
+                int v = ((Number) value).intValue();
+                tail.putInt(VALUES_OFFSET + rows * 4, v);
+                if (nonNull == 0 || v < tail.getLong(8)) {
+                    tail.putLong(8, v);
+                }
+                if (nonNull == 0 || v > tail.getLong(16)) {
+                    tail.putLong(16, v);
+                }
+            } else if (!isString()) {
+                double v = ((Number) value).doubleValue();
+                tail.putDouble(VALUES_OFFSET + rows * 8, v);
+                if (nonNull == 0 || v < tail.getDouble(8)) {
+                    tail.putDouble(8, v);
+                }
+                if (nonNull == 0 || v > tail.getDouble(16)) {
+                    tail.putDouble(16, v);
+                }
+            } else {
+                String s = value.toString();
+                long offset = appendString(s);
+                tail.putLong(VALUES_OFFSET + rows * 8, offset);
+                if (nonNull == 0 || s.compareTo(tailMin) < 0) {
+                    tail.putLong(8, offset);
+                    tailMin = s;
+                }
+                if (nonNull == 0 || s.compareTo(tailMax) > 0) {
+                    tail.putLong(16, offset);
+                    tailMax = s;
+                }
+            }
+            tail.putInt(0, rows + 1);
+            rowCount++;
+            tailDirty = true;
+        }
+        
+        ByteBuffer readBlock(int blockNo) throws IOException {
+            return blockNo == tailBlock ? tail : readFromFile(blockNo);
+        }
+        
+        /**
+         * 只读块头（行数、NULL数、最小值、最大值）
+         */
+        ByteBuffer readHeader(int blockNo) throws IOException {
+            if (blockNo == tailBlock) {
+                return tail;
+            }
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            FileChannelCache.readFully(path, header, (long) blockNo * blockSize);
+            return header;
+        }
+        
+        /**
+         * 块内第 i 行的值
+         */
+        Object getValue(ByteBuffer block, int i) throws IOException {
+            if ((block.get(BLOCK_HEADER_SIZE + (i >> 3)) & (1 << (i & 7))) != 0) {
+                return null;
+            }
+            if (type == FieldType.INT) {
+                return block.getInt(VALUES_OFFSET + i * 4);
+            } else if (!isString()) {
+                return block.getDouble(VALUES_OFFSET + i * 8);
+            }
+            return readString(block.getLong(VALUES_OFFSET + i * 8));
+        }
+        
+        /**
+         * 整块解码；字符串列一次读出块内所有字符串（同一块的字符串在堆中连续）
+         */
+        Object[] getValues(ByteBuffer block) throws IOException {
+            int rows = block.getInt(0);
+            Object[] values = new Object[rows];
+            if (!isString()) {
+                for (int i = 0; i < rows; i++) {
+                    values[i] = getValue(block, i);
+                }
+                return values;
+            }
+            long first = -1;
+            long last = -1;
+            for (int i = 0; i < rows; i++) {
+                if ((block.get(BLOCK_HEADER_SIZE + (i >> 3)) & (1 << (i & 7))) == 0) {
+                    long offset = block.getLong(VALUES_OFFSET + i * 8);
+                    if (first < 0) {
+                        first = offset;
+                    }
+                    last = offset;
+                }
+            }
+            if (first < 0) {
+                return values;
+            }
+            flushHeap();
+            ByteBuffer lastLength = ByteBuffer.allocate(4);
+            FileChannelCache.readFully(heapPath, lastLength, last);
+            ByteBuffer heap = ByteBuffer.allocate((int) (last - first) + 4 + lastLength.getInt(0));
+            FileChannelCache.readFully(heapPath, heap, first);
+            for (int i = 0; i < rows; i++) {
+                if ((block.get(BLOCK_HEADER_SIZE + (i >> 3)) & (1 << (i & 7))) == 0) {
+                    int at = (int) (block.getLong(VALUES_OFFSET + i * 8) - first);
+                    values[i] = new String(heap.array(), at + 4, heap.getInt(at), StandardCharsets.UTF_8);
+                }
+            }
+            return values;
+        }
+        
+        void flush() throws IOException {
+            flushHeap();
+            flushTail();
+        }
+        
+        private void flushTail() throws IOException {
+            flushHeap();
+            if (tailDirty) {
+                ByteBuffer data = tail.duplicate();
+                data.clear();
+                FileChannelCache.writeFully(path, data, (long) tailBlock * blockSize);
+                tailDirty = false;
+            }
+        }
+        
+        private ByteBuffer readFromFile(int blockNo) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            FileChannelCache.readFully(path, block, (long) blockNo * blockSize);
+            return block;
+        }
+        
+        private long appendString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            long offset = heapFlushed + heapBuffer.size();
+            heapBuffer.write(bytes.length >>> 24);
+            heapBuffer.write(bytes.length >>> 16);
+            heapBuffer.write(bytes.length >>> 8);
+            heapBuffer.write(bytes.length);
+            heapBuffer.write(bytes);
+            if (heapBuffer.size() >= HEAP_BUFFER_SIZE) {
+                flushHeap();
+            }
+            return offset;
+        }
+        
+        private String readString(long offset) throws IOException {
+            flushHeap();
+            ByteBuffer length = ByteBuffer.allocate(4);
+            FileChannelCache.readFully(heapPath, length, offset);
+            ByteBuffer bytes = ByteBuffer.allocate(length.getInt(0));
+            FileChannelCache.readFully(heapPath, bytes, offset + 4);
+            return new String(bytes.array(), StandardCharsets.UTF_8);
+        }
+        
+        private void flushHeap() throws IOException {
+            if (heapBuffer.size() == 0) {
+                return;
+            }
+            FileChannelCache.writeFully(heapPath, ByteBuffer.wrap(heapBuffer.toByteArray()), heapFlushed);
+            heapFlushed += heapBuffer.size();
+            heapBuffer.reset();
+        }
+    }
+}
+
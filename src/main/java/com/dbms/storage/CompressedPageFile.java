@@ -0,0 +1,290 @@
+package com.dbms.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 页压缩的数据文件（表选项 compression = deflate）- 第0页文件头照常按原样存放，数据页压缩后存为变长的帧
+ * 帧：页号(4) + 存储长度(4) + 帧大小(4) + 标志(4) + 序号(8) + 数据，帧大小按 FRAME_ALIGN 对齐，压缩后变大的页按原样存放
+ * 页改写后仍放得下时原地覆盖，否则换到放得下的空闲帧或在文件末尾追加新帧，旧帧的页号置为-1 作为空闲帧；
+ * 追加的帧多留一个对齐单位，给页内记录增长留余量
+ * 每次写入的帧带递增的序号：新帧写完、旧帧还没置为空闲时崩溃，同一页会有两个帧，扫描时取序号大的一个
+ * 页目录（页号 -> 帧位置）在第一次访问时扫描帧头建立；读写都经缓冲池，扫描和按位置读取时透明解压
+ */
+public class CompressedPageFile {
+    
+    // 帧头大小
+    public static final int FRAME_HEADER_SIZE = 24;
+    
+    // 帧大小对齐（字节）
+    private static final int FRAME_ALIGN = 512;
+    
+    // 帧标志：数据已压缩
+    private static final int FLAG_COMPRESSED = 1;
+    
+    // 已打开的文件（按绝对路径；值为null表示已确认不是压缩文件）
+    private static final Map<String, CompressedPageFile> files = new HashMap<>();
+    
+    private static final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private static final Inflater inflater = new Inflater();
+    
+    // 统计信息
+    private static long compressedPages = 0;
+    private static long uncompressedBytes = 0;
+    private static long storedBytes = 0;
+    private static long decompressedPages = 0;
+    private static long decompressNanos = 0;
+    
+    private final String filePath;
+    // 页号 -> 帧位置 / 帧大小（0 表示该页还没有帧）
+    private long[] offsets = new long[64];
+    private int[] capacities = new int[64];
+    // 页号 -> 当前帧的序号
+    private long[] sequences = new long[64];
+    // 最近写入的帧序号
+    private long sequence = 0;
+    private int pageCount = 1;
+    private long fileEnd = FileFormat.PAGE_SIZE;
+    // 空闲帧：帧大小 -> 帧位置
+    private final TreeMap<Integer, ArrayDeque<Long>> freeFrames = new TreeMap<>();
+    
+    private CompressedPageFile(String filePath) {
+        this.filePath = filePath;
+    }
+    
+    /**
+     * 获取压缩文件的页目录；文件不是页压缩格式时返回null
+     */
+    public static synchronized CompressedPageFile get(String filePath) throws IOException {
+        String key = new File(filePath).getAbsolutePath();
+        if (files.containsKey(key)) {
+            return files.get(key);
+        }
+        CompressedPageFile file = null;
+        if (new File(filePath).length() >= FileFormat.PAGE_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            FileChannelCache.readFully(filePath, header, 0);
+            if (header.getInt(0) == FileFormat.DAT_MAGIC_NUMBER &&
+                header.getInt(FileFormat.DAT_COMPRESSION_OFFSET) == FileFormat.PAGE_COMPRESSION_DEFLATE) {
+                file = new CompressedPageFile(filePath);
+                file.loadDirectory();
+            }
+        }
+        files.put(key, file);
+        return file;
+    }
+    
+    /**
+     * 文件被删除、替换或新写入文件头后调用，下次访问时重新检查
+     */
+    public static synchronized void invalidate(String filePath) {
+        files.remove(new File(filePath).getAbsolutePath());
+    }
+    
+    /**
+     * 总页数（含第0页文件头页）
+     */
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+    
+    /**
+     * 读取并解压一页
+     */
+    public synchronized byte[] readPage(int pageNo) throws IOException {
+        if (pageNo <= 0 || pageNo >= pageCount || capacities[pageNo] == 0) {
+            throw new IOException("Page " + pageNo + " does not exist in " + filePath);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(capacities[pageNo]);
+        FileChannelCache.readFully(filePath, frame, offsets[pageNo]);
+        return decodeFrame(frame.array(), 0);
+    }
+    
+    /**
+     * 压缩并写入一页：原帧放得下时原地覆盖，否则换到放得下的空闲帧或追加新帧
+     */
+    public synchronized void writePage(int pageNo, byte[] page) throws IOException {
+        ensureCapacity(pageNo + 1);
+        byte[] frame = encodeFrame(pageNo, page);
+        ByteBuffer.wrap(frame).putLong(16, ++sequence);
+        if (frame.length <= capacities[pageNo]) {
+            // 原地覆盖时沿用原来的帧大小，帧链保持连续
+            ByteBuffer.wrap(frame).putInt(8, capacities[pageNo]);
+            FileChannelCache.writeFully(filePath, ByteBuffer.wrap(frame), offsets[pageNo]);
+            sequences[pageNo] = sequence;
+            return;
+        }
+        long offset;
+        int capacity;
+        Map.Entry<Integer, ArrayDeque<Long>> free = freeFrames.ceilingEntry(frame.length);
+        if (free != null) {
+            capacity = free.getKey();
+            offset = free.getValue().poll();
+            if (free.getValue().isEmpty()) {
+                freeFrames.remove(capacity);
+            }
+        } else {
+            capacity = Math.min(frame.length + FRAME_ALIGN, FRAME_HEADER_SIZE + FileFormat.PAGE_SIZE + FRAME_ALIGN);
+            offset = fileEnd;
+            fileEnd += capacity;
+            // 末尾的新帧写满整个帧大小，按帧头扫描时帧链完整
+            frame = Arrays.copyOf(frame, capacity);
+        }
+        ByteBuffer.wrap(frame).putInt(8, capacity);
+        FileChannelCache.writeFully(filePath, ByteBuffer.wrap(frame), offset);
+        if (capacities[pageNo] > 0) {
+            ByteBuffer dead = ByteBuffer.allocate(4).putInt(0, -1);
+            FileChannelCache.writeFully(filePath, dead, offsets[pageNo]);
+            addFreeFrame(offsets[pageNo], capacities[pageNo]);
+        }
+        offsets[pageNo] = offset;
+        capacities[pageNo] = capacity;
+        sequences[pageNo] = sequence;
+        pageCount = Math.max(pageCount, pageNo + 1);
+    }
+    
+    /**
+     * 把一页编码为帧（压缩后不小于原页时按原样存放），序号为0
+     */
+    public static byte[] encodeFrame(int pageNo, byte[] page) {
+        byte[] compressed = new byte[page.length];
+        int length;
+        synchronized (deflater) {
+            deflater.reset();
+            deflater.setInput(page);
+            deflater.finish();
+            length = deflater.deflate(compressed);
+            if (!deflater.finished()) {
+                length = page.length; // 压缩后更大，不压缩
+            }
+        }
+        boolean isCompressed = length < page.length;
+        int frameSize = (FRAME_HEADER_SIZE + length + FRAME_ALIGN - 1) / FRAME_ALIGN * FRAME_ALIGN;
+        ByteBuffer frame = ByteBuffer.allocate(frameSize);
+        frame.putInt(pageNo);
+        frame.putInt(length);
+        frame.putInt(frameSize);
+        frame.putInt(isCompressed ? FLAG_COMPRESSED : 0);
+        frame.putLong(0);
+        frame.put(isCompressed ? compressed : page, 0, length);
+        synchronized (CompressedPageFile.class) {
+            compressedPages++;
+            uncompressedBytes += page.length;
+            storedBytes += frameSize;
+        }
+        return frame.array();
+    }
+    
+    /**
+     * 解码 offset 处的帧，返回页内容
+     */
+    private static byte[] decodeFrame(byte[] data, int offset) throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(data, offset, data.length - offset);
+        int length = frame.getInt(offset + 4);
+        int flags = frame.getInt(offset + 12);
+        if ((flags & FLAG_COMPRESSED) == 0) {
+            return Arrays.copyOfRange(data, offset + FRAME_HEADER_SIZE, offset + FRAME_HEADER_SIZE + length);
+        }
+        long start = System.nanoTime();
+        byte[] page = new byte[FileFormat.PAGE_SIZE];
+        synchronized (inflater) {
+            inflater.reset();
+            inflater.setInput(data, offset + FRAME_HEADER_SIZE, length);
+            try {
+                if (inflater.inflate(page) != FileFormat.PAGE_SIZE) {
+                    throw new IOException("Corrupted compressed page");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted compressed page: " + e.getMessage(), e);
+            }
+        }
+        synchronized (CompressedPageFile.class) {
+            decompressedPages++;
+            decompressNanos += System.nanoTime() - start;
+        }
+        return page;
+    }
+    
+    /**
+     * 压缩率（存储字节数 / 原始字节数，越小越好），尚无数据时为1
+     */
+    public static synchronized double getCompressionRatio() {
+        return uncompressedBytes == 0 ? 1.0 : (double) storedBytes / uncompressedBytes;
+    }
+    
+    /**
+     * 平均每页解压耗时（微秒）
+     */
+    public static synchronized double getAverageDecompressMicros() {
+        return decompressedPages == 0 ? 0.0 : decompressNanos / 1000.0 / decompressedPages;
+    }
+    
+    /**
+     * 压缩统计信息
+     */
+    public static synchronized String getStatistics() {
+        return String.format("PageCompression: compressed pages=%d, ratio=%.2f, decompressed pages=%d, avg decompress=%.1fus",
+            compressedPages, getCompressionRatio(), decompressedPages, getAverageDecompressMicros());
+    }
+    
+    /**
+     * 扫描帧头建立页目录；同一页有多个帧时取序号最大的，其余作为空闲帧
+     */
+    private void loadDirectory() throws IOException {
+        long length = new File(filePath).length();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        long position = FileFormat.PAGE_SIZE;
+        while (position + FRAME_HEADER_SIZE <= length) {
+            header.clear();
+            FileChannelCache.readFully(filePath, header, position);
+            int pageNo = header.getInt(0);
+            int frameSize = header.getInt(8);
+            long frameSequence = header.getLong(16);
+            if (frameSize < FRAME_HEADER_SIZE || position + frameSize > length) {
+                break; // 未写完的帧
+            }
+            sequence = Math.max(sequence, frameSequence);
+            if (pageNo > 0) {
+                ensureCapacity(pageNo + 1);
+                if (capacities[pageNo] > 0 && sequences[pageNo] > frameSequence) {
+                    addFreeFrame(position, frameSize); // 旧的副本
+                } else {
+                    if (capacities[pageNo] > 0) {
+                        addFreeFrame(offsets[pageNo], capacities[pageNo]);
+                    }
+                    offsets[pageNo] = position;
+                    capacities[pageNo] = frameSize;
+                    sequences[pageNo] = frameSequence;
+                }
+                pageCount = Math.max(pageCount, pageNo + 1);
+            } else {
+                addFreeFrame(position, frameSize);
+            }
+            position += frameSize;
+        }
+        fileEnd = position;
+    }
+    
+    private void addFreeFrame(long offset, int frameSize) {
+        freeFrames.computeIfAbsent(frameSize, k -> new ArrayDeque<>()).add(offset);
+    }
+    
+    private void ensureCapacity(int count) {
+        if (count > offsets.length) {
+            int newLength = Math.max(count, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, newLength);
+            capacities = Arrays.copyOf(capacities, newLength);
+            sequences = Arrays.copyOf(sequences, newLength);
+        }
+    }
+}
+
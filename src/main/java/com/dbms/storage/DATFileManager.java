@@ -5,16 +5,48 @@ import com.dbms.model.Record;
 import com.dbms.model.Table;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * .dat文件管理器 - 负责记录的存储和读取
  * 每个表使用独立的数据文件：table_name.dat
+ * 文件按固定大小的页组织（见 SlottedPage），第0页为文件头，记录位置为 (页号, 槽号) 编码
+ * 数据页的读写都经过共享的 BufferPool，文件句柄由 FileChannelCache 跨语句复用
+ * 插入时通过空闲空间映射（FreeSpaceMap）找到放得下记录的页，复用删除记录释放的空间
+ * 写入记录时同时维护区域映射（ZoneMap，每页各列的取值范围），扫描时据此跳过不可能满足条件的页
  */
 public class DATFileManager {
     
+    // 数据页数达到该值的文件，全表扫描使用内存映射（可通过系统属性 dbms.mmapScanMinPages 调整）
+    private static final int MMAP_SCAN_MIN_PAGES = Integer.getInteger("dbms.mmapScanMinPages", 16);
+    
+    // 内存映射窗口大小（页大小的整数倍）
+    private static final int MMAP_WINDOW_SIZE = 64 * 1024 * 1024;
+    
+    // 已确认为分页格式的数据文件（避免每次调用都检查文件头）
+    private static final Set<String> pagedFiles = ConcurrentHashMap.newKeySet();
+    
+    // 填充因子（百分比）：插入新记录后页的使用率不超过该值，剩余空间留给页内更新（系统属性 dbms.fillFactor，默认100）
+    private static final int FILL_FACTOR = Math.max(10, Math.min(100, Integer.getInteger("dbms.fillFactor", 100)));
+    private static final int FILL_RESERVE = FileFormat.PAGE_SIZE * (100 - FILL_FACTOR) / 100;
+    
+    // 各数据文件的空闲空间映射（按绝对路径）
+    private static final Map<String, FreeSpaceMap> freeSpaceMaps = new ConcurrentHashMap<>();
+    
+    // 各数据文件的区域映射（按绝对路径，仅行存表）
+    private static final Map<String, ZoneMap> zoneMaps = new ConcurrentHashMap<>();
+    
     /**
      * 获取表的数据文件路径
      */
@@ -51,148 +83,52 @@ public class DATFileManager {
     }
     
     /**
-     * 写入记录到数据文件
+     * 从流中读取记录（4字节状态字 + 各字段值），用于读取旧格式的数据文件
      */
-    public static void writeRecord(RandomAccessFile raf, Record record, Table table) throws IOException {
-        // 写入记录状态（4字节）
-        int status = record.isDeleted() ? FileFormat.RECORD_DELETED : FileFormat.RECORD_ACTIVE;
-        System.out.println("writeRecord: isDeleted=" + record.isDeleted() + ", status=" + status + 
-            " (RECORD_ACTIVE=" + FileFormat.RECORD_ACTIVE + ", RECORD_DELETED=" + FileFormat.RECORD_DELETED + ")");
-        raf.writeInt(status);
-        
-        // 写入每个字段的值
-        for (int i = 0; i < table.getFieldCount(); i++) {
-            Field field = table.getFieldByIndex(i);
-            Object value = record.getValue(i);
-            writeFieldValue(raf, value, field);
-        }
-    }
-    
-    /**
-     * 从数据文件读取记录
-     */
-    public static Record readRecord(RandomAccessFile raf, Table table) throws IOException {
+    public static Record readRecord(DataInput in, Table table) throws IOException {
         Record record = new Record(table.getFieldCount());
         
         // 读取记录状态
-        int status = raf.readInt();
-        boolean isDeleted = (status == FileFormat.RECORD_DELETED);
-        record.setDeleted(isDeleted);
-        System.out.println("readRecord: status=" + status + ", isDeleted=" + isDeleted + 
-            " (RECORD_ACTIVE=" + FileFormat.RECORD_ACTIVE + ", RECORD_DELETED=" + FileFormat.RECORD_DELETED + ")");
+        int status = in.readInt();
+        record.setDeleted(status == FileFormat.RECORD_DELETED);
         
         // 读取每个字段的值
         for (int i = 0; i < table.getFieldCount(); i++) {
             Field field = table.getFieldByIndex(i);
-            Object value = readFieldValue(raf, field);
+            Object value = readFieldValue(in, field);
             record.setValue(i, value);
         }
         
         return record;
     }
     
-    /**
-     * 写入字段值
-     */
-    private static void writeFieldValue(RandomAccessFile raf, Object value, Field field) throws IOException {
-        if (value == null) {
-            // NULL值处理：根据字段类型写入默认值
-            writeNullValue(raf, field);
-            return;
-        }
-        
-        switch (field.getType()) {
-            case INT:
-                raf.writeInt((Integer) value);
-                break;
-            case FLOAT:
-            case DOUBLE:
-                raf.writeDouble((Double) value);
-                break;
-            case CHAR:
-                BinarySerializer.writeFixedString(
-                    new DataOutputStream(new RAFOutputStream(raf)), 
-                    value.toString(), 
-                    field.getLength());
-                break;
-            case VARCHAR:
-                // 变长字段：先写长度，再写内容
-                String str = value.toString();
-                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
-                raf.writeInt(bytes.length);
-                raf.write(bytes);
-                break;
-            case DATE:
-                // 日期作为字符串存储
-                String dateStr = value.toString();
-                byte[] dateBytes = dateStr.getBytes(StandardCharsets.UTF_8);
-                raf.writeInt(dateBytes.length);
-                raf.write(dateBytes);
-                break;
-        }
-    }
-    
     /**
      * 读取字段值
      */
-    private static Object readFieldValue(RandomAccessFile raf, Field field) throws IOException {
+    private static Object readFieldValue(DataInput in, Field field) throws IOException {
         switch (field.getType()) {
             case INT:
-                return raf.readInt();
+                return in.readInt();
             case FLOAT:
             case DOUBLE:
-                return raf.readDouble();
+                return in.readDouble();
             case CHAR:
-                return BinarySerializer.readFixedString(
-                    new DataInputStream(new RAFInputStream(raf)), 
-                    field.getLength());
+                return BinarySerializer.readFixedString(in, field.getLength());
             case VARCHAR:
+            case DATE:
                 // 变长字段：先读长度，再读内容
-                int length = raf.readInt();
+                int length = in.readInt();
                 if (length == 0) {
                     return null;
                 }
                 byte[] bytes = new byte[length];
-                raf.readFully(bytes);
+                in.readFully(bytes);
                 return new String(bytes, StandardCharsets.UTF_8);
-            case DATE:
-                int dateLength = raf.readInt();
-                if (dateLength == 0) {
-                    return null;
-                }
-                byte[] dateBytes = new byte[dateLength];
-                raf.readFully(dateBytes);
-                return new String(dateBytes, StandardCharsets.UTF_8);
             default:
                 return null;
         }
     }
     
-    /**
-     * 写入NULL值
-     */
-    private static void writeNullValue(RandomAccessFile raf, Field field) throws IOException {
-        switch (field.getType()) {
-            case INT:
-                raf.writeInt(0);
-                break;
-            case FLOAT:
-            case DOUBLE:
-                raf.writeDouble(0.0);
-                break;
-            case CHAR:
-                BinarySerializer.writeFixedString(
-                    new DataOutputStream(new RAFOutputStream(raf)), 
-                    null, 
-                    field.getLength());
-                break;
-            case VARCHAR:
-            case DATE:
-                raf.writeInt(0); // 长度为0表示NULL
-                break;
-        }
-    }
-    
     /**
      * 获取记录在文件中的大小（字节）
      */
@@ -201,41 +137,211 @@ public class DATFileManager {
     }
     
     /**
-     * 追加记录到文件末尾
+     * 插入记录：按空闲空间映射找到放得下的页（考虑填充因子），都放不下时在文件末尾新开一页
+     * @return 记录位置（页号+槽号）
      */
     public static long appendRecord(String filePath, Record record, Table table) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
-            long position = raf.length();
-            raf.seek(position);
-            writeRecord(raf, record, table);
-            return position;
+        markModified(filePath);
+        if (table.isColumnar()) {
+            return ColumnStore.appendRecord(filePath, record, table);
+        }
+        RecordCodec codec = RecordCodec.forTable(table);
+        ByteBuffer data = codec.encode(record);
+        prepareDataFile(filePath, table, true);
+        ZoneMap zones = getZoneMap(filePath, table);
+        if (table.getAverageRecordSize() > 0) {
+            // 记录数由调用方维护（更新时移动记录不改变记录数），这里只把新记录计入平均长度
+            int count = table.getRecordCount();
+            long totalSize = (long) table.getAverageRecordSize() * count + data.remaining();
+            table.setAverageRecordSize((int) ((totalSize + count) / (count + 1)));
+        }
+        BufferPool pool = BufferPool.getInstance();
+        FreeSpaceMap fsm = getFreeSpaceMap(filePath);
+        int required = data.remaining() + FileFormat.SLOT_SIZE + FILL_RESERVE;
+        int pageNo;
+        while ((pageNo = fsm.findPage(required)) > 0) {
+            SlottedPage page = pool.pinPage(filePath, pageNo);
+            int slot = -1;
+            try {
+                if (page.getFreeSpace() >= required) {
+                    slot = page.insert(data);
+                }
+                if (slot >= 0) {
+                    zones.add(pageNo, codec.bind(data));
+                }
+                // 映射过期或槽已用尽时按实际情况修正，避免再次选中该页
+                fsm.update(pageNo, slot >= 0 ? page.getFreeSpace() : Math.min(page.getFreeSpace(), required - 1));
+            } finally {
+                pool.unpinPage(filePath, pageNo, slot >= 0);
+            }
+            if (slot >= 0) {
+                return SlottedPage.toPosition(pageNo, slot);
+            }
+        }
+        SlottedPage page = pool.newPage(filePath);
+        try {
+            int slot = page.insert(data);
+            zones.add(page.getPageNo(), codec.bind(data));
+            fsm.update(page.getPageNo(), page.getFreeSpace());
+            return SlottedPage.toPosition(page.getPageNo(), slot);
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), true);
         }
     }
     
     /**
-     * 在指定位置写入记录
+     * 在指定位置写入记录（原地更新，页内放不下时抛出异常）
+     * 列存表不原地修改（更新总是删除 + 追加），这里只用于回滚删除，清除删除位即可
      */
     public static void writeRecordAt(String filePath, long position, Record record, Table table) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
-            raf.seek(position);
-            writeRecord(raf, record, table);
+        markModified(filePath);
+        if (table.isColumnar()) {
+            ColumnStore.setDeleted(filePath, position, false);
+            return;
+        }
+        RecordCodec codec = RecordCodec.forTable(table);
+        ByteBuffer data = codec.encode(record);
+        prepareDataFile(filePath, table, false);
+        BufferPool pool = BufferPool.getInstance();
+        FreeSpaceMap fsm = getFreeSpaceMap(filePath);
+        ZoneMap zones = getZoneMap(filePath, table);
+        SlottedPage page = pinPageFor(filePath, position);
+        boolean updated = false;
+        try {
+            updated = page.update(SlottedPage.slotOf(position), data);
+            if (updated) {
+                zones.add(page.getPageNo(), codec.bind(data));
+            }
+            fsm.update(page.getPageNo(), page.getFreeSpace());
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), updated);
+        }
+        if (!updated) {
+            throw new IOException("Record at position " + position + " no longer fits in its page");
         }
     }
     
     /**
-     * 从指定位置读取记录
+     * 更新记录：优先在原页内更新；原页放不下时把旧记录标记为删除并插入到其他页
+     * （旧记录的空间由调用方在确定不会回滚后用 reclaimRecord 回收）
+     * @return 更新后的记录位置（可能与原位置不同）
+     */
+    public static long updateRecord(String filePath, long position, Record record, Table table) throws IOException {
+        markModified(filePath);
+        if (table.isColumnar()) {
+            return ColumnStore.updateRecord(filePath, position, record, table);
+        }
+        RecordCodec codec = RecordCodec.forTable(table);
+        ByteBuffer data = codec.encode(record);
+        prepareDataFile(filePath, table, false);
+        BufferPool pool = BufferPool.getInstance();
+        FreeSpaceMap fsm = getFreeSpaceMap(filePath);
+        ZoneMap zones = getZoneMap(filePath, table);
+        SlottedPage page = pinPageFor(filePath, position);
+        int slot = SlottedPage.slotOf(position);
+        try {
+            if (page.update(slot, data)) {
+                zones.add(page.getPageNo(), codec.bind(data));
+                fsm.update(page.getPageNo(), page.getFreeSpace());
+                return position;
+            }
+            page.setStatus(slot, FileFormat.RECORD_DELETED);
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), true);
+        }
+        return appendRecord(filePath, record, table);
+    }
+    
+    /**
+     * 从指定位置读取记录（槽已被回收时返回null）
      */
     public static Record readRecordAt(String filePath, long position, Table table) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            raf.seek(position);
-            return readRecord(raf, table);
+        if (table.isColumnar()) {
+            return ColumnStore.readRecordAt(filePath, position, table);
+        }
+        prepareDataFile(filePath, table, false);
+        BufferPool pool = BufferPool.getInstance();
+        SlottedPage page = pinPageFor(filePath, position);
+        try {
+            int slot = SlottedPage.slotOf(position);
+            if (!page.isSlotUsed(slot)) {
+                return null;
+            }
+            Record record = RecordCodec.forTable(table).decode(page.getRecordBuffer(slot));
+            record.setRecordId(position);
+            return record;
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), false);
         }
     }
     
     /**
-     * 读取所有记录
+     * 读取所有记录（大文件走内存映射扫描，小文件经缓冲池逐页读取）
+     * 返回记录的 recordId 为其在文件中的位置
      */
     public static List<Record> readAllRecords(String filePath, Table table) throws IOException {
+        return readAllRecords(filePath, table, null);
+    }
+    
+    /**
+     * 读取所有记录，columns 指定查询用到的列（下标同字段顺序，null表示全部列）
+     * 列存表只读取这些列，其余列的值为NULL；行存表总是读取整条记录
+     */
+    public static List<Record> readAllRecords(String filePath, Table table, boolean[] columns) throws IOException {
+        if (table.isColumnar()) {
+            return ColumnStore.readRecords(filePath, table, columns);
+        }
+        return readRecords(filePath, table, null, null);
+    }
+    
+    /**
+     * 读取 pages 可能匹配的页上的所有记录（列存表按块号判断），pages 为null时同上
+     */
+    public static List<Record> readAllRecords(String filePath, Table table, boolean[] columns, PageFilter pages)
+            throws IOException {
+        if (table.isColumnar()) {
+            return ColumnStore.readRecords(filePath, table, columns, pages);
+        }
+        return readRecords(filePath, table, pages, null);
+    }
+    
+    /**
+     * 页过滤条件：按页号判断整页是否可能有需要的记录（如布隆过滤器、区域映射），不满足的页不读取
+     */
+    public interface PageFilter {
+        boolean mightMatch(int pageNo);
+    }
+    
+    /**
+     * 记录过滤条件：codec 已绑定到当前记录，只能按列读取（如比较字典编号），不要解码整条记录
+     */
+    public interface RecordFilter {
+        boolean accept(RecordCodec codec);
+    }
+    
+    /**
+     * 读取满足 filter 的记录：先在编解码器上按列判断，只有满足条件的记录才解码为 Record（仅行存表）
+     */
+    public static List<Record> readMatchingRecords(String filePath, Table table, RecordFilter filter) throws IOException {
+        if (table.isColumnar()) {
+            throw new IOException("Record filters are only supported for row storage");
+        }
+        return readRecords(filePath, table, null, filter);
+    }
+    
+    /**
+     * 读取 pages 可能匹配的页上满足 filter 的记录（filter 为null时读取这些页上的全部记录，仅行存表）
+     */
+    public static List<Record> readMatchingRecords(String filePath, Table table, PageFilter pages, RecordFilter filter)
+            throws IOException {
+        if (table.isColumnar()) {
+            throw new IOException("Page filters are only supported for row storage");
+        }
+        return readRecords(filePath, table, pages, filter);
+    }
+    
+    private static List<Record> readRecords(String filePath, Table table, PageFilter pages, RecordFilter filter)
+            throws IOException {
         List<Record> records = new ArrayList<>();
         
         // 如果文件不存在，返回空列表（新表还没有数据文件）
@@ -245,93 +351,604 @@ public class DATFileManager {
             return records;
         }
         
-        System.out.println("readAllRecords: 文件大小: " + file.length() + " 字节, 表字段数: " + table.getFieldCount());
-        
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            long fileLength = raf.length();
-            int recordCount = 0;
-            int deletedCount = 0;
-            int errorCount = 0;
-            
-            while (raf.getFilePointer() < fileLength) {
-                try {
-                    Record record = readRecord(raf, table);
-                    recordCount++;
-                    if (!record.isDeleted()) {
-                        records.add(record);
-                    } else {
-                        deletedCount++;
-                    }
-                } catch (EOFException e) {
-                    System.out.println("readAllRecords: 遇到文件结束，当前位置: " + raf.getFilePointer() + ", 文件长度: " + fileLength);
-                    break;
-                } catch (Exception e) {
-                    errorCount++;
-                    System.err.println("readAllRecords: 读取记录失败，位置: " + raf.getFilePointer() + ", 错误: " + e.getMessage());
-                    e.printStackTrace();
-                    // 如果读取失败，尝试跳过当前记录（但这可能导致后续记录也读错）
-                    // 为了安全，我们停止读取
-                    break;
+        prepareDataFile(filePath, table, false);
+        RecordCodec codec = RecordCodec.forTable(table);
+        int[] deletedCount = {0};
+        long[] totalSize = {0};
+        int pageCount = scanPages(filePath, pages, page -> {
+            for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                if (!page.isSlotUsed(slot)) {
+                    continue;
+                }
+                if (page.getStatus(slot) == FileFormat.RECORD_DELETED) {
+                    deletedCount[0]++;
+                    continue;
                 }
+                ByteBuffer buffer = page.getRecordBuffer(slot);
+                if (filter != null && !filter.accept(codec.bind(buffer))) {
+                    continue;
+                }
+                Record record = codec.decode(buffer);
+                record.setRecordId(SlottedPage.toPosition(page.getPageNo(), slot));
+                records.add(record);
+                totalSize[0] += page.getRecordLength(slot);
             }
-            
-            System.out.println("readAllRecords: 总共读取 " + recordCount + " 条记录, 有效记录: " + records.size() + 
-                ", 已删除: " + deletedCount + ", 错误: " + errorCount);
+        });
+        if (filter == null && pages == null) {
+            updateRecordStatistics(table, records.size(), totalSize[0]);
         }
         
+        System.out.println("readAllRecords: 读取 " + pageCount + " 页, 有效记录: " + records.size() +
+            ", 已删除: " + deletedCount[0]);
         return records;
     }
     
     /**
-     * 逻辑删除记录（标记为已删除）
+     * 按一次完整扫描的结果更新表的记录数和平均记录长度
      */
-    public static void deleteRecord(String filePath, long position) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
-            raf.seek(position);
-            raf.writeInt(FileFormat.RECORD_DELETED);
+    private static void updateRecordStatistics(Table table, int recordCount, long totalSize) {
+        table.setRecordCount(recordCount);
+        table.setAverageRecordSize(recordCount == 0 ? 0 : (int) ((totalSize + recordCount - 1) / recordCount));
+    }
+    
+    /**
+     * 获取所有未删除记录的位置（只读槽目录和状态字，不解码字段），顺序与 readAllRecords 一致
+     */
+    public static List<Long> readRecordPositions(String filePath, Table table) throws IOException {
+        if (table.isColumnar()) {
+            return ColumnStore.readRecordPositions(filePath);
         }
+        List<Long> positions = new ArrayList<>();
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return positions;
+        }
+        
+        prepareDataFile(filePath, table, false);
+        scanPages(filePath, page -> {
+            for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                if (page.isSlotUsed(slot) && page.getStatus(slot) != FileFormat.RECORD_DELETED) {
+                    positions.add(SlottedPage.toPosition(page.getPageNo(), slot));
+                }
+            }
+        });
+        return positions;
     }
     
     /**
-     * RandomAccessFile的InputStream适配器
+     * 数据页中可由整理回收的空间比例：页内空闲空间 + 已删除但尚未回收的记录（只读页头、槽目录和状态字）
      */
-    private static class RAFInputStream extends InputStream {
-        private final RandomAccessFile raf;
+    public static double getReclaimableRatio(String filePath, Table table) throws IOException {
+        if (table.isColumnar()) {
+            return ColumnStore.getReclaimableRatio(filePath);
+        }
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return 0.0;
+        }
         
-        public RAFInputStream(RandomAccessFile raf) {
-            this.raf = raf;
+        prepareDataFile(filePath, table, false);
+        long[] reclaimable = {0};
+        int pageCount = scanPages(filePath, page -> {
+            reclaimable[0] += page.getFreeSpace();
+            for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                if (page.isSlotUsed(slot) && page.getStatus(slot) == FileFormat.RECORD_DELETED) {
+                    reclaimable[0] += page.getRecordLength(slot) + FileFormat.SLOT_SIZE;
+                }
+            }
+        });
+        return pageCount == 0 ? 0.0 : (double) reclaimable[0] / ((long) pageCount * FileFormat.PAGE_SIZE);
+    }
+    
+    /**
+     * 整理数据文件（VACUUM）：把未删除的记录按原顺序紧凑写入临时文件，写完并落盘后原子替换原文件，
+     * 读者看到的要么是整理前的文件，要么是整理后的文件
+     * 记录内容按原字节复制，不重新编码
+     * @return 旧位置 -> 新位置（只包含未删除的记录），用于重映射索引
+     */
+    public static Map<Long, Long> vacuum(String filePath, Table table) throws IOException {
+        markModified(filePath);
+        if (table.isColumnar()) {
+            return ColumnStore.vacuum(filePath, table);
+        }
+        Map<Long, Long> remap = new HashMap<>();
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return remap;
         }
         
-        @Override
-        public int read() throws IOException {
-            return raf.read();
+        prepareDataFile(filePath, table, false);
+        int compression = getCompression(table);
+        File tmpFile = new File(filePath + ".vacuum");
+        long[] totalSize = {0};
+        RecordCodec codec = RecordCodec.forTable(table);
+        ZoneMap zones = ZoneMap.create(filePath, table);
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            raf.setLength(0);
+            raf.write(createFileHeader(compression));
+            SlottedPage[] target = {SlottedPage.create(1)};
+            scanPages(filePath, page -> {
+                for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                    if (!page.isSlotUsed(slot) || page.getStatus(slot) == FileFormat.RECORD_DELETED) {
+                        continue;
+                    }
+                    ByteBuffer data = page.getRecordBuffer(slot);
+                    int newSlot = target[0].insert(data);
+                    if (newSlot < 0) {
+                        writePage(raf, target[0], compression);
+                        target[0] = SlottedPage.create(target[0].getPageNo() + 1);
+                        newSlot = target[0].insert(data);
+                    }
+                    zones.add(target[0].getPageNo(), codec.bind(data));
+                    remap.put(SlottedPage.toPosition(page.getPageNo(), slot),
+                        SlottedPage.toPosition(target[0].getPageNo(), newSlot));
+                    totalSize[0] += page.getRecordLength(slot);
+                }
+            });
+            if (target[0].getSlotCount() > 0) {
+                writePage(raf, target[0], compression);
+            }
+            raf.getFD().sync();
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
         }
         
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            return raf.read(b, off, len);
+        // 丢弃旧文件的缓存页和通道后替换；旧文件的脏页已在扫描时读入新文件，不需要写回
+        invalidate(filePath);
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
         }
+        // 区域映射按整理后的页重新生成
+        zoneMaps.put(file.getAbsolutePath(), zones);
+        zones.flush();
+        updateRecordStatistics(table, remap.size(), totalSize[0]);
+        return remap;
+    }
+    
+    /**
+     * 记录访问回调：codec 已绑定到当前记录，只在回调内有效
+     */
+    public interface RecordVisitor {
+        void visit(long position, RecordCodec codec) throws IOException;
+    }
+    
+    /**
+     * 顺序扫描所有未删除的记录，不创建 Record 对象；回调中用 codec.getInt/getDouble 等按列读取
+     * 回调中不要再调用本类的其他方法（编解码器按线程复用）
+     */
+    public static void scanRecords(String filePath, Table table, RecordVisitor visitor) throws IOException {
+        scanRecords(filePath, table, null, visitor);
     }
     
     /**
-     * RandomAccessFile的OutputStream适配器
+     * 顺序扫描，columns 指定回调中会读取的列（null表示全部列）；列存表只读取这些列，行存表忽略该参数
      */
-    private static class RAFOutputStream extends OutputStream {
-        private final RandomAccessFile raf;
+    public static void scanRecords(String filePath, Table table, boolean[] columns, RecordVisitor visitor) throws IOException {
+        scanRecords(filePath, table, columns, null, visitor);
+    }
+    
+    /**
+     * 顺序扫描，行存表跳过 pages 判为不匹配的页（pages 为null表示全部页；列存表忽略该参数）
+     */
+    public static void scanRecords(String filePath, Table table, boolean[] columns, PageFilter pages,
+                                   RecordVisitor visitor) throws IOException {
+        if (table.isColumnar()) {
+            ColumnStore.scanRecords(filePath, table, columns, visitor);
+            return;
+        }
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
         
-        public RAFOutputStream(RandomAccessFile raf) {
-            this.raf = raf;
+        prepareDataFile(filePath, table, false);
+        RecordCodec codec = RecordCodec.forTable(table);
+        scanPages(filePath, pages, page -> {
+            for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                if (page.isSlotUsed(slot) && page.getStatus(slot) != FileFormat.RECORD_DELETED) {
+                    visitor.visit(SlottedPage.toPosition(page.getPageNo(), slot), codec.bind(page.getRecordBuffer(slot)));
+                }
+            }
+        });
+    }
+    
+    /**
+     * 页访问回调（顺序扫描用）
+     */
+    private interface PageVisitor {
+        void visit(SlottedPage page) throws IOException;
+    }
+    
+    /**
+     * 顺序扫描所有数据页：数据页数达到阈值时使用内存映射，否则（以及页压缩的文件）经缓冲池读取
+     * @return 扫描的数据页数
+     */
+    private static int scanPages(String filePath, PageVisitor visitor) throws IOException {
+        return scanPages(filePath, null, visitor);
+    }
+    
+    /**
+     * 顺序扫描，跳过 pages 判为不匹配的页（不读取；pages 为null表示全部页）
+     * @return 扫描的数据页数（不含跳过的页）
+     */
+    private static int scanPages(String filePath, PageFilter pages, PageVisitor visitor) throws IOException {
+        BufferPool pool = BufferPool.getInstance();
+        int pageCount = pool.getPageCount(filePath);
+        int skipped = 0;
+        if (pageCount - 1 >= MMAP_SCAN_MIN_PAGES && CompressedPageFile.get(filePath) == null) {
+            skipped = scanMapped(filePath, pageCount, pages, visitor);
+        } else {
+            for (int pageNo = 1; pageNo < pageCount; pageNo++) {
+                if (pages != null && !pages.mightMatch(pageNo)) {
+                    skipped++;
+                    continue;
+                }
+                SlottedPage page = pool.pinPage(filePath, pageNo);
+                try {
+                    visitor.visit(page);
+                } finally {
+                    pool.unpinPage(filePath, pageNo, false);
+                }
+            }
+        }
+        return pageCount - 1 - skipped;
+    }
+    
+    /**
+     * 内存映射扫描：先把缓冲池中该文件的脏页写回，再按窗口（页大小的整数倍）映射文件，
+     * 直接在映射缓冲区上解析页和记录，超过2GB的文件分多个窗口映射
+     * @return 跳过的页数
+     */
+    private static int scanMapped(String filePath, int pageCount, PageFilter pages, PageVisitor visitor)
+            throws IOException {
+        int skipped = 0;
+        BufferPool.getInstance().flushFile(filePath);
+        int pagesPerWindow = MMAP_WINDOW_SIZE / FileFormat.PAGE_SIZE;
+        for (int firstPage = 1; firstPage < pageCount; firstPage += pagesPerWindow) {
+            int windowPages = Math.min(pagesPerWindow, pageCount - firstPage);
+            MappedByteBuffer window = FileChannelCache.map(filePath,
+                (long) firstPage * FileFormat.PAGE_SIZE, (long) windowPages * FileFormat.PAGE_SIZE);
+            for (int i = 0; i < windowPages; i++) {
+                if (pages != null && !pages.mightMatch(firstPage + i)) {
+                    skipped++;
+                    continue; // 映射的页在访问时才读入，跳过的页不产生 I/O
+                }
+                ByteBuffer pageBuffer = window.slice(i * FileFormat.PAGE_SIZE, FileFormat.PAGE_SIZE);
+                visitor.visit(SlottedPage.view(firstPage + i, pageBuffer));
+            }
+        }
+        return skipped;
+    }
+    
+    /**
+     * 修改数据文件之前调用：先把其上的索引文件标记为不一致，数据页在索引之前写回时崩溃不会留下过期的索引
+     */
+    private static void markModified(String filePath) throws IOException {
+        IndexFile.markModified(filePath);
+    }
+    
+    /**
+     * 逻辑删除记录（标记为已删除）
+     */
+    public static void deleteRecord(String filePath, long position) throws IOException {
+        markModified(filePath);
+        if (isColumnStore(filePath)) {
+            ColumnStore.setDeleted(filePath, position, true);
+            return;
+        }
+        setRecordStatus(filePath, position, FileFormat.RECORD_DELETED);
+    }
+    
+    /**
+     * 取消逻辑删除（事务回滚时使用）
+     */
+    public static void restoreRecord(String filePath, long position) throws IOException {
+        markModified(filePath);
+        if (isColumnStore(filePath)) {
+            ColumnStore.setDeleted(filePath, position, false);
+            return;
+        }
+        setRecordStatus(filePath, position, FileFormat.RECORD_ACTIVE);
+    }
+    
+    /**
+     * 回收已删除记录占用的页内空间并更新空闲空间映射，之后该位置可被新记录复用
+     * 只能在删除不会再被回滚时调用（非事务删除之后，或事务提交时）；记录未删除时不做任何事
+     */
+    public static void reclaimRecord(String filePath, long position) throws IOException {
+        if (!new File(filePath).exists()) {
+            return; // 表已被删除
+        }
+        if (isColumnStore(filePath)) {
+            return; // 列存表的已删除行由 VACUUM 回收
+        }
+        markModified(filePath);
+        prepareDataFile(filePath, null, false);
+        BufferPool pool = BufferPool.getInstance();
+        FreeSpaceMap fsm = getFreeSpaceMap(filePath);
+        SlottedPage page = pinPageFor(filePath, position);
+        int slot = SlottedPage.slotOf(position);
+        boolean freed = false;
+        try {
+            if (page.isSlotUsed(slot) && page.getStatus(slot) == FileFormat.RECORD_DELETED) {
+                page.free(slot);
+                fsm.update(page.getPageNo(), page.getFreeSpace());
+                freed = true;
+            }
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), freed);
+        }
+    }
+    
+    /**
+     * 把所有空闲空间映射的修改写回 .fsm 文件
+     */
+    public static void flushFreeSpaceMaps() throws IOException {
+        for (FreeSpaceMap fsm : freeSpaceMaps.values()) {
+            fsm.flush();
+        }
+    }
+    
+    /**
+     * 把所有区域映射的修改写回 .zm 文件（在缓冲池写回数据页之后调用）
+     */
+    public static void flushZoneMaps() throws IOException {
+        for (ZoneMap zones : zoneMaps.values()) {
+            zones.flush();
+        }
+    }
+    
+    /**
+     * 获取行存表数据文件的区域映射：先尝试加载 .zm 文件，不存在或与数据文件、表结构不一致时扫描数据页重建
+     * （重建时包括已删除但可能被回滚恢复的记录）；列存表或数据文件不存在时返回null
+     */
+    public static ZoneMap getZoneMap(String filePath, Table table) throws IOException {
+        if (table.isColumnar()) {
+            return null;
+        }
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+        prepareDataFile(filePath, table, false);
+        String key = file.getAbsolutePath();
+        ZoneMap zones = zoneMaps.get(key);
+        if (zones != null && zones.getSchemaVersion() == table.getSchemaVersion()) {
+            return zones;
+        }
+        zones = ZoneMap.load(filePath, table, BufferPool.getInstance().getPageCount(filePath));
+        if (zones == null) {
+            ZoneMap rebuilt = ZoneMap.create(filePath, table);
+            RecordCodec codec = RecordCodec.forTable(table);
+            scanPages(filePath, page -> {
+                for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                    if (page.isSlotUsed(slot)) {
+                        rebuilt.add(page.getPageNo(), codec.bind(page.getRecordBuffer(slot)));
+                    }
+                }
+            });
+            zones = rebuilt;
+        }
+        zoneMaps.put(key, zones);
+        return zones;
+    }
+    
+    /**
+     * 查询用的区域映射：行存表为每页的统计信息（同上），列存表为 columns 指定的列在每块的统计信息
+     */
+    public static ZoneMap getZoneMap(String filePath, Table table, boolean[] columns) throws IOException {
+        if (table.isColumnar()) {
+            return ColumnStore.readZones(filePath, table, columns);
+        }
+        return getZoneMap(filePath, table);
+    }
+    
+    /**
+     * 获取数据文件的空闲空间映射：先尝试加载 .fsm 文件，不存在或与数据文件不一致时扫描页头重建
+     */
+    private static FreeSpaceMap getFreeSpaceMap(String filePath) throws IOException {
+        String key = new File(filePath).getAbsolutePath();
+        FreeSpaceMap fsm = freeSpaceMaps.get(key);
+        if (fsm != null) {
+            return fsm;
+        }
+        String fsmPath = FreeSpaceMap.pathFor(filePath);
+        fsm = FreeSpaceMap.load(fsmPath, BufferPool.getInstance().getPageCount(filePath));
+        if (fsm == null) {
+            FreeSpaceMap rebuilt = FreeSpaceMap.create(fsmPath);
+            scanPages(filePath, page -> rebuilt.update(page.getPageNo(), page.getFreeSpace()));
+            fsm = rebuilt;
+        }
+        freeSpaceMaps.put(key, fsm);
+        return fsm;
+    }
+    
+    /**
+     * 不带表结构的调用（删除、恢复、回收）据此区分列存表：已确认为分页格式的文件不再检查
+     */
+    private static boolean isColumnStore(String filePath) throws IOException {
+        return !pagedFiles.contains(new File(filePath).getAbsolutePath()) && ColumnStore.isColumnStore(filePath);
+    }
+    
+    private static void setRecordStatus(String filePath, long position, int status) throws IOException {
+        prepareDataFile(filePath, null, false);
+        BufferPool pool = BufferPool.getInstance();
+        SlottedPage page = pinPageFor(filePath, position);
+        int slot = SlottedPage.slotOf(position);
+        boolean changed = false;
+        try {
+            if (page.isSlotUsed(slot)) {
+                page.setStatus(slot, status);
+                changed = true;
+            }
+        } finally {
+            pool.unpinPage(filePath, page.getPageNo(), changed);
+        }
+        if (!changed) {
+            throw new IOException("No record at position " + position);
+        }
+    }
+    
+    /**
+     * 检查数据文件格式：旧格式（无页结构）文件先升级为分页格式；create 为 true 时为空文件写入文件头
+     */
+    private static void prepareDataFile(String filePath, Table table, boolean create) throws IOException {
+        File file = new File(filePath);
+        String key = file.getAbsolutePath();
+        if (pagedFiles.contains(key)) {
+            return;
+        }
+        if (file.exists() && file.length() > 0) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            FileChannelCache.readFully(filePath, header, 0);
+            boolean paged = header.getInt(0) == FileFormat.DAT_MAGIC_NUMBER;
+            int version = header.getInt(4);
+            if (!paged || version < FileFormat.MIN_DATA_FILE_VERSION) {
+                if (table == null) {
+                    throw new IOException("Data file needs upgrade: " + filePath);
+                }
+                upgradeDataFile(filePath, table, paged);
+            } else if (version > FileFormat.FILE_VERSION) {
+                throw new IOException("Unsupported data file version: " + version);
+            }
+            pagedFiles.add(key);
+        } else if (create) {
+            FileChannelCache.writeFully(filePath, ByteBuffer.wrap(createFileHeader(getCompression(table))), 0);
+            BufferPool.getInstance().discardFile(filePath);
+            pagedFiles.add(key);
+        }
+    }
+    
+    /**
+     * 数据文件被删除或替换前后调用：丢弃缓存页、关闭文件通道，清除格式检查结果、空闲空间映射、区域映射和列存表状态
+     */
+    public static void invalidate(String filePath) {
+        ColumnStore.invalidate(filePath);
+        pagedFiles.remove(new File(filePath).getAbsolutePath());
+        freeSpaceMaps.remove(new File(filePath).getAbsolutePath());
+        new File(FreeSpaceMap.pathFor(filePath)).delete();
+        zoneMaps.remove(new File(filePath).getAbsolutePath());
+        new File(ZoneMap.pathFor(filePath)).delete();
+        BufferPool.getInstance().discardFile(filePath);
+        FileChannelCache.close(filePath);
+    }
+    
+    /**
+     * 生成文件头页
+     */
+    private static byte[] createFileHeader(int compression) {
+        byte[] header = new byte[FileFormat.PAGE_SIZE];
+        ByteBuffer buf = ByteBuffer.wrap(header);
+        buf.putInt(FileFormat.DAT_MAGIC_NUMBER);
+        buf.putInt(FileFormat.FILE_VERSION);
+        buf.putInt(FileFormat.PAGE_SIZE);
+        buf.putInt(compression);
+        return header;
+    }
+    
+    /**
+     * 表的页压缩方式（表选项 compression）
+     */
+    private static int getCompression(Table table) {
+        return table != null && table.isCompressed() ? FileFormat.PAGE_COMPRESSION_DEFLATE : FileFormat.PAGE_COMPRESSION_NONE;
+    }
+    
+    /**
+     * 把旧格式数据文件转换为当前格式，已删除的记录不再保留：
+     * 无页结构的文件（记录首尾相连），或版本1的分页文件（记录以4字节状态字开头，没有记录头）
+     */
+    private static void upgradeDataFile(String filePath, Table table, boolean paged) throws IOException {
+        System.out.println("DATFileManager: 升级旧格式数据文件: " + filePath);
+        File file = new File(filePath);
+        File tmpFile = new File(filePath + ".upgrade");
+        List<Record> records = new ArrayList<>();
+        if (paged) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long pageCount = raf.length() / FileFormat.PAGE_SIZE;
+                for (int pageNo = 1; pageNo < pageCount; pageNo++) {
+                    byte[] data = new byte[FileFormat.PAGE_SIZE];
+                    raf.seek((long) pageNo * FileFormat.PAGE_SIZE);
+                    raf.readFully(data);
+                    SlottedPage page = SlottedPage.wrap(pageNo, data);
+                    for (int slot = 0; slot < page.getSlotCount(); slot++) {
+                        if (!page.isSlotUsed(slot)) {
+                            continue;
+                        }
+                        Record record = readRecord(new DataInputStream(
+                            new ByteArrayInputStream(page.getRecord(slot))), table);
+                        if (!record.isDeleted()) {
+                            records.add(record);
+                        }
+                    }
+                }
+            }
+        } else {
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    Record record;
+                    try {
+                        record = readRecord(dis, table);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (!record.isDeleted()) {
+                        records.add(record);
+                    }
+                }
+            }
         }
         
-        @Override
-        public void write(int b) throws IOException {
-            raf.write(b);
+        try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+            raf.setLength(0);
+            raf.write(createFileHeader(FileFormat.PAGE_COMPRESSION_NONE));
+            RecordCodec codec = RecordCodec.forTable(table);
+            SlottedPage page = SlottedPage.create(1);
+            for (Record record : records) {
+                ByteBuffer data = codec.encode(record);
+                if (page.insert(data) < 0) {
+                    writePage(raf, page, FileFormat.PAGE_COMPRESSION_NONE);
+                    page = SlottedPage.create(page.getPageNo() + 1);
+                    page.insert(data);
+                }
+            }
+            if (page.getSlotCount() > 0) {
+                writePage(raf, page, FileFormat.PAGE_COMPRESSION_NONE);
+            }
         }
         
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            raf.write(b, off, len);
+        FileChannelCache.close(filePath);
+        Files.move(tmpFile.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        BufferPool.getInstance().discardFile(filePath);
+    }
+    
+    /**
+     * 固定记录位置所在的数据页
+     */
+    private static SlottedPage pinPageFor(String filePath, long position) throws IOException {
+        int pageNo = SlottedPage.pageOf(position);
+        if (pageNo < 1 || pageNo >= BufferPool.getInstance().getPageCount(filePath)) {
+            throw new IOException("Invalid record position: " + position);
+        }
+        return BufferPool.getInstance().pinPage(filePath, pageNo);
+    }
+    
+    /**
+     * 顺序写出新文件的一页（页压缩的文件写为帧，追加在末尾）
+     */
+    private static void writePage(RandomAccessFile raf, SlottedPage page, int compression) throws IOException {
+        if (compression == FileFormat.PAGE_COMPRESSION_DEFLATE) {
+            raf.seek(raf.length());
+            raf.write(CompressedPageFile.encodeFrame(page.getPageNo(), page.getData()));
+            return;
         }
+        raf.seek((long) page.getPageNo() * FileFormat.PAGE_SIZE);
+        raf.write(page.getData());
     }
 }
 
@@ -4,61 +4,114 @@ import com.dbms.model.Database;
 import com.dbms.model.Table;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
 /**
  * .dbf文件管理器 - 负责表结构的存储和读取
+ * 文件格式：文件头 + 快照（每个表一个槽：长度(4) + 表结构）+ 目录变更日志
+ *   文件头：魔数(4) + 版本号(4) + 快照中的表数量(4) + 日志起始偏移(8)，其余预留到 DBF_HEADER_SIZE
+ *   日志记录：长度(4) + CRC32(4) + 操作(1) + 内容，建表/修改表结构追加整个表结构，删表追加表名
+ * DDL 只追加被修改的表，代价与表的数量无关；日志超过快照大小（且不少于 CATALOG_COMPACT_MIN_LOG_SIZE）时重写为新快照
+ * 旧版本文件（表索引在文件头中）可以读取，第一次修改时按当前格式重写
  */
 public class DBFFileManager {
     
+    // 日志记录操作：写入表结构（新建或替换同名表）
+    private static final int LOG_PUT_TABLE = 1;
+    // 日志记录操作：删除表
+    private static final int LOG_DROP_TABLE = 2;
+    // 日志记录操作：改名（旧表名 + 新的表结构）
+    private static final int LOG_RENAME_TABLE = 3;
+    
+    // 文件头中日志起始偏移的位置：魔数(4) + 版本号(4) + 表数量(4)
+    private static final int LOG_START_OFFSET = 12;
+    
     /**
-     * 创建新的数据库文件
+     * 创建新的数据库文件（写入全部表的快照，日志为空）；先写临时文件再替换，写到一半失败不影响原文件
      */
     public static void createDatabaseFile(String filePath, Database database) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
-            // 写入文件头
-            writeHeader(raf, database);
-            
-            // 写入表结构
-            long currentOffset = FileFormat.DBF_HEADER_SIZE;
-            List<TableIndexEntry> indexEntries = new ArrayList<>();
-            
-            for (Table table : database.getTables().values()) {
-                long tableOffset = currentOffset;
-                writeTable(raf, table, tableOffset);
-                
-                // 记录索引
-                indexEntries.add(new TableIndexEntry(table.getName(), tableOffset));
-                
-                // 计算下一个表的偏移量
-                currentOffset = raf.getFilePointer();
-            }
-            
-            // 更新文件头中的表索引
-            updateTableIndex(raf, indexEntries);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        
+        // 写入文件头（日志起始偏移在写完快照后回填）
+        dos.writeInt(FileFormat.DBF_MAGIC_NUMBER);  // 魔数
+        dos.writeInt(FileFormat.FILE_VERSION);       // 版本号
+        dos.writeInt(database.getTableCount());      // 表数量
+        dos.writeLong(0);                            // 日志起始偏移
+        dos.write(new byte[FileFormat.DBF_HEADER_SIZE - baos.size()]); // 预留空间
+        
+        // 写入表结构，每个表一个槽
+        for (Table table : database.getTables().values()) {
+            byte[] data = serializeTable(table);
+            dos.writeInt(data.length);
+            dos.write(data);
+        }
+        dos.flush();
+        
+        byte[] content = baos.toByteArray();
+        ByteBuffer.wrap(content).putLong(LOG_START_OFFSET, content.length);
+        
+        File file = new File(filePath);
+        File tmpFile = new File(filePath + ".tmp");
+        Files.write(tmpFile.toPath(), content);
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
     
     /**
-     * 读取数据库文件
+     * 读取数据库文件：读取快照后按顺序重放目录变更日志
+     * 日志末尾不完整的记录（写到一半时程序退出）被忽略并从文件中截掉
      */
     public static Database readDatabaseFile(String filePath) throws IOException {
         Database database = new Database();
         database.setDbFilePath(filePath);
         
+        int version;
         try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            // 读取文件头
-            readHeader(raf);
-            
-            // 读取表索引
-            List<TableIndexEntry> indexEntries = readTableIndex(raf);
-            
-            // 读取每个表的结构
-            for (TableIndexEntry entry : indexEntries) {
-                raf.seek(entry.offset);
-                Table table = readTable(raf);
-                database.addTable(table);
+            version = readHeader(raf);
+            if (version < FileFormat.CATALOG_LOG_VERSION) {
+                readLegacyTables(raf, version, database);
+                return database;
+            }
+        }
+        
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(new File(filePath).toPath()));
+        int tableCount = buf.getInt(8);
+        long logStart = buf.getLong(LOG_START_OFFSET);
+        
+        // 读取快照
+        buf.position(FileFormat.DBF_HEADER_SIZE);
+        for (int i = 0; i < tableCount; i++) {
+            int length = buf.getInt();
+            database.addTable(deserializeTable(buf.array(), buf.position(), length, version));
+            buf.position(buf.position() + length);
+        }
+        
+        // 重放日志
+        int position = (int) logStart;
+        while (position + 8 <= buf.limit()) {
+            int length = buf.getInt(position);
+            if (length <= 0 || length > buf.limit() - position - 8 ||
+                checksum(buf.array(), position + 8, length) != buf.getInt(position + 4)) {
+                break;
+            }
+            applyLogRecord(database, buf.array(), position + 8, length, version);
+            position += 8 + length;
+        }
+        if (position < buf.limit()) {
+            System.err.println("目录变更日志末尾有不完整的记录，已截掉: " + filePath);
+            try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+                raf.setLength(position);
             }
         }
         
@@ -66,50 +119,35 @@ public class DBFFileManager {
     }
     
     /**
-     * 写入文件头
+     * 读取文件头，返回文件版本号（旧版本文件可以读取，下次保存时按当前版本写回）
      */
-    private static void writeHeader(RandomAccessFile raf, Database database) throws IOException {
-        raf.seek(0);
-        raf.writeInt(FileFormat.DBF_MAGIC_NUMBER);  // 魔数
-        raf.writeInt(FileFormat.FILE_VERSION);       // 版本号
-        raf.writeInt(database.getTableCount());      // 表数量
-        // 预留空间
-        raf.seek(FileFormat.DBF_HEADER_SIZE);
-    }
-    
-    /**
-     * 读取文件头
-     */
-    private static void readHeader(RandomAccessFile raf) throws IOException {
+    private static int readHeader(RandomAccessFile raf) throws IOException {
         raf.seek(0);
         int magic = raf.readInt();
         if (magic != FileFormat.DBF_MAGIC_NUMBER) {
             throw new IOException("Invalid database file format");
         }
         int version = raf.readInt();
-        if (version != FileFormat.FILE_VERSION) {
+        if (version < 1 || version > FileFormat.FILE_VERSION) {
             throw new IOException("Unsupported file version: " + version);
         }
+        return version;
     }
     
     /**
-     * 更新表索引（写入文件头后的索引区）
+     * 读取旧版本文件：文件头后是表索引（表名 + 偏移量），表结构在各自的偏移处
      */
-    private static void updateTableIndex(RandomAccessFile raf, List<TableIndexEntry> entries) throws IOException {
-        raf.seek(12); // 跳过魔数(4) + 版本号(4) + 表数量(4)
-        
-        for (TableIndexEntry entry : entries) {
-            // 写入表名长度和表名
-            byte[] nameBytes = entry.tableName.getBytes("UTF-8");
-            raf.writeInt(nameBytes.length);
-            raf.write(nameBytes);
-            // 写入偏移量
-            raf.writeLong(entry.offset);
+    private static void readLegacyTables(RandomAccessFile raf, int version, Database database) throws IOException {
+        List<TableIndexEntry> indexEntries = readTableIndex(raf);
+        for (TableIndexEntry entry : indexEntries) {
+            raf.seek(entry.offset);
+            Table table = readTable(raf, version);
+            database.addTable(table);
         }
     }
     
     /**
-     * 读取表索引
+     * 读取表索引（旧版本文件）
      */
     private static List<TableIndexEntry> readTableIndex(RandomAccessFile raf) throws IOException {
         raf.seek(0);
@@ -131,28 +169,12 @@ public class DBFFileManager {
     }
     
     /**
-     * 写入表结构
-     */
-    private static void writeTable(RandomAccessFile raf, Table table, long offset) throws IOException {
-        raf.seek(offset);
-        
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             DataOutputStream dos = new DataOutputStream(baos)) {
-            
-            BinarySerializer.writeTable(dos, table);
-            dos.flush();
-            byte[] data = baos.toByteArray();
-            raf.write(data);
-        }
-    }
-    
-    /**
-     * 读取表结构
+     * 读取表结构（旧版本文件）
      */
-    private static Table readTable(RandomAccessFile raf) throws IOException {
+    private static Table readTable(RandomAccessFile raf, int version) throws IOException {
         try (DataInputStream dis = new DataInputStream(
                 new BufferedInputStream(new RAFInputStream(raf)))) {
-            return BinarySerializer.readTable(dis);
+            return BinarySerializer.readTable(dis, version);
         }
     }
     
@@ -160,32 +182,131 @@ public class DBFFileManager {
      * 添加新表到数据库文件
      */
     public static void addTableToFile(String filePath, Table table) throws IOException {
-        Database database = readDatabaseFile(filePath);
-        database.addTable(table);
-        createDatabaseFile(filePath, database); // 重新写入整个文件
+        appendLogRecord(filePath, LOG_PUT_TABLE, null, table);
     }
     
     /**
      * 从数据库文件删除表
      */
     public static void removeTableFromFile(String filePath, String tableName) throws IOException {
-        Database database = readDatabaseFile(filePath);
-        database.removeTable(tableName);
-        createDatabaseFile(filePath, database);
+        appendLogRecord(filePath, LOG_DROP_TABLE, tableName, null);
     }
     
     /**
      * 更新数据库文件中的表结构
      */
     public static void updateTableInFile(String filePath, Table table) throws IOException {
-        Database database = readDatabaseFile(filePath);
-        database.removeTable(table.getName());
-        database.addTable(table);
-        createDatabaseFile(filePath, database);
+        appendLogRecord(filePath, LOG_PUT_TABLE, null, table);
+    }
+    
+    /**
+     * 表改名：删除旧表名并写入改名后的表结构（一条日志记录）
+     */
+    public static void renameTableInFile(String filePath, String oldName, Table table) throws IOException {
+        appendLogRecord(filePath, LOG_RENAME_TABLE, oldName, table);
+    }
+    
+    /**
+     * 追加一条目录变更日志；文件不存在时先创建空的数据库文件，旧版本文件先按当前版本重写
+     * 追加后日志超过快照大小（且不少于 CATALOG_COMPACT_MIN_LOG_SIZE）时整理为新快照
+     */
+    private static void appendLogRecord(String filePath, int op, String tableName, Table table) throws IOException {
+        File file = new File(filePath);
+        if (!file.exists() || file.length() == 0) {
+            createDatabaseFile(filePath, new Database());
+        } else if (readVersion(filePath) < FileFormat.FILE_VERSION) {
+            // 日志记录按文件头中的版本解析，版本不同时先按当前版本重写
+            createDatabaseFile(filePath, readDatabaseFile(filePath));
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(0); // 长度，写完后回填
+        dos.writeInt(0); // CRC32
+        dos.writeByte(op);
+        if (tableName != null) {
+            BinarySerializer.writeString(dos, tableName);
+        }
+        if (table != null) {
+            dos.write(serializeTable(table));
+        }
+        dos.flush();
+        byte[] record = baos.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 8).putInt(4, checksum(record, 8, record.length - 8));
+        
+        long logSize;
+        long snapshotSize;
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+            raf.seek(LOG_START_OFFSET);
+            long logStart = raf.readLong();
+            long end = raf.length();
+            raf.seek(end);
+            raf.write(record);
+            logSize = end + record.length - logStart;
+            snapshotSize = logStart - FileFormat.DBF_HEADER_SIZE;
+        }
+        
+        if (logSize > Math.max(snapshotSize, FileFormat.CATALOG_COMPACT_MIN_LOG_SIZE)) {
+            createDatabaseFile(filePath, readDatabaseFile(filePath));
+        }
+    }
+    
+    /**
+     * 重放一条日志记录（data[offset, offset + length)：操作(1) + 内容）
+     */
+    private static void applyLogRecord(Database database, byte[] data, int offset, int length, int version) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, offset + 1, length - 1));
+        switch (data[offset]) {
+            case LOG_PUT_TABLE: {
+                Table table = BinarySerializer.readTable(dis, version);
+                database.removeTable(table.getName());
+                database.addTable(table);
+                break;
+            }
+            case LOG_DROP_TABLE:
+                database.removeTable(BinarySerializer.readString(dis));
+                break;
+            case LOG_RENAME_TABLE: {
+                String oldName = BinarySerializer.readString(dis);
+                Table table = BinarySerializer.readTable(dis, version);
+                database.removeTable(oldName);
+                database.removeTable(table.getName());
+                database.addTable(table);
+                break;
+            }
+            default:
+                throw new IOException("Unknown catalog log record: " + data[offset]);
+        }
+    }
+    
+    private static int readVersion(String filePath) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
+            return readHeader(raf);
+        }
+    }
+    
+    private static byte[] serializeTable(Table table) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            BinarySerializer.writeTable(dos, table);
+        }
+        return baos.toByteArray();
+    }
+    
+    private static Table deserializeTable(byte[] data, int offset, int length, int version) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return BinarySerializer.readTable(dis, version);
+        }
+    }
+    
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
     }
     
     /**
-     * 表索引项内部类
+     * 表索引项内部类（旧版本文件）
      */
     private static class TableIndexEntry {
         String tableName;
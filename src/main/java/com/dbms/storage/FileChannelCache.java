@@ -0,0 +1,140 @@
+package com.dbms.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据文件通道缓存 - 跨语句保持 FileChannel 打开，避免每次读写都打开/关闭文件
+ * 按最近使用顺序（LRU）维护，超过上限时关闭最久未用的通道
+ * 上限通过系统属性 dbms.maxOpenFiles 配置，默认 64
+ * 读写都在类锁内完成，淘汰或关闭通道不会打断其他线程（如后台自动整理）正在进行的读写
+ */
+public class FileChannelCache {
+    
+    public static final String MAX_OPEN_FILES_PROPERTY = "dbms.maxOpenFiles";
+    private static final int DEFAULT_MAX_OPEN_FILES = 64;
+    
+    private static final int maxOpenFiles = Math.max(1,
+        Integer.getInteger(MAX_OPEN_FILES_PROPERTY, DEFAULT_MAX_OPEN_FILES));
+    
+    private static final LinkedHashMap<String, FileChannel> channels =
+        new LinkedHashMap<String, FileChannel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileChannel> eldest) {
+                if (size() > maxOpenFiles) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    
+    private static long openCount = 0;
+    
+    /**
+     * 获取文件的通道（不存在时打开并缓存），调用方必须持有类锁
+     */
+    private static FileChannel getChannel(String filePath) throws IOException {
+        String key = new File(filePath).getAbsolutePath();
+        FileChannel channel = channels.get(key);
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(new File(key).toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            channels.put(key, channel);
+            openCount++;
+        }
+        return channel;
+    }
+    
+    /**
+     * 在指定位置读满 buffer（不改变通道位置）
+     */
+    public static synchronized void readFully(String filePath, ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = getChannel(filePath);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file: " + filePath);
+            }
+            position += n;
+        }
+    }
+    
+    /**
+     * 在指定位置写出 buffer 的全部内容（不改变通道位置）
+     */
+    public static synchronized void writeFully(String filePath, ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = getChannel(filePath);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    /**
+     * 只读映射文件的一段；映射建立后不依赖通道，通道被关闭后仍可访问
+     */
+    public static synchronized MappedByteBuffer map(String filePath, long position, long size) throws IOException {
+        return getChannel(filePath).map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+    
+    /**
+     * 把文件已写入的内容强制刷到磁盘
+     */
+    public static synchronized void force(String filePath) throws IOException {
+        getChannel(filePath).force(true);
+    }
+    
+    /**
+     * 关闭文件的通道（删除、替换文件前调用）
+     */
+    public static synchronized void close(String filePath) {
+        FileChannel channel = channels.remove(new File(filePath).getAbsolutePath());
+        closeQuietly(channel);
+    }
+    
+    /**
+     * 关闭所有通道（程序退出时调用）
+     */
+    public static synchronized void closeAll() {
+        List<FileChannel> open = new ArrayList<>(channels.values());
+        channels.clear();
+        for (FileChannel channel : open) {
+            closeQuietly(channel);
+        }
+    }
+    
+    /**
+     * 当前打开的通道数
+     */
+    public static synchronized int getOpenChannelCount() {
+        return channels.size();
+    }
+    
+    /**
+     * 累计打开文件次数
+     */
+    public static synchronized long getOpenCount() {
+        return openCount;
+    }
+    
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("FileChannelCache: 关闭文件失败: " + e.getMessage());
+        }
+    }
+}
+
@@ -7,20 +7,68 @@ public class FileFormat {
     // .dbf文件魔数（标识文件类型）
     public static final int DBF_MAGIC_NUMBER = 0x44424D53; // "DBMS"
     
-    // 文件版本号
-    public static final int FILE_VERSION = 1;
+    // 文件版本号（2：记录带记录头，表结构带结构版本号；3：表结构带表选项；4：表结构带列字典；
+    // 5：.dbf 改为表结构快照 + 目录变更日志；6：索引带索引类型；7：索引带包含列；
+    // 8：索引可有多个索引列）
+    public static final int FILE_VERSION = 8;
     
-    // 文件头大小（字节）
-    public static final int DBF_HEADER_SIZE = 512;
+    // .dbf 从该版本起为快照 + 目录变更日志格式（之前的版本表索引在文件头中）
+    public static final int CATALOG_LOG_VERSION = 5;
+    
+    // 目录变更日志超过快照大小且不少于该大小（字节）时重写快照
+    public static final int CATALOG_COMPACT_MIN_LOG_SIZE = 64 * 1024;
     
-    // 表索引项大小（表名长度4字节 + 偏移量8字节）
-    public static final int TABLE_INDEX_ENTRY_SIZE = 12;
+    // .dat文件的最低格式版本，低于该版本（或非分页格式）的数据文件需要升级改写
+    public static final int MIN_DATA_FILE_VERSION = 2;
     
-    // 最大表数量（预留）
-    public static final int MAX_TABLE_COUNT = 100;
+    // 文件头大小（字节）
+    public static final int DBF_HEADER_SIZE = 512;
     
     // 记录状态标志
     public static final int RECORD_ACTIVE = 0;
     public static final int RECORD_DELETED = 1;
+    
+    // .dat文件魔数（分页堆文件）
+    public static final int DAT_MAGIC_NUMBER = 0x44415450; // "DATP"
+    
+    // 页大小（字节），.dat文件按页读写；第0页为文件头页，数据页从1开始
+    public static final int PAGE_SIZE = 8192;
+    
+    // .dat文件头中页压缩方式的位置：魔数(4) + 版本(4) + 页大小(4) + 压缩方式(4)
+    public static final int DAT_COMPRESSION_OFFSET = 12;
+    
+    // 页压缩方式
+    public static final int PAGE_COMPRESSION_NONE = 0;
+    public static final int PAGE_COMPRESSION_DEFLATE = 1;
+    
+    // 页头大小：槽数量(4) + 数据区起始偏移(4) + 空闲空间(4) + 预留(4)
+    public static final int PAGE_HEADER_SIZE = 16;
+    
+    // 槽目录项大小：记录偏移(4) + 记录长度(4)
+    public static final int SLOT_SIZE = 8;
+    
+    // 记录头大小：状态(1) + 编码格式(1) + 表结构版本(2) + 记录总长度(4)
+    public static final int RECORD_HEADER_SIZE = 8;
+    
+    // 单条记录的最大长度（一页只放一条记录时）
+    public static final int MAX_RECORD_SIZE = PAGE_SIZE - PAGE_HEADER_SIZE - SLOT_SIZE;
+    
+    // .fsm文件魔数（空闲空间映射）
+    public static final int FSM_MAGIC_NUMBER = 0x46534D50; // "FSMP"
+    
+    // .zm文件魔数（区域映射：每页各列的最小值、最大值和NULL个数）
+    public static final int ZONE_MAGIC_NUMBER = 0x5A4F4E45; // "ZONE"
+    
+    // 列存表清单文件魔数（列存表的 .dat 文件）
+    public static final int COLUMN_STORE_MAGIC_NUMBER = 0x434F4C53; // "COLS"
+    
+    // 索引文件魔数（.idx）
+    public static final int IDX_MAGIC_NUMBER = 0x49445846; // "IDXF"
+    
+    // B+树索引文件魔数（USING BTREE 的 .idx）
+    public static final int BTREE_MAGIC_NUMBER = 0x42545245; // "BTRE"
+    
+    // 布隆过滤器索引文件魔数（USING BLOOM 的 .idx）
+    public static final int BLOOM_MAGIC_NUMBER = 0x424C4F4D; // "BLOM"
 }
 
@@ -0,0 +1,148 @@
+package com.dbms.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * 空闲空间映射（FSM）- 记录数据文件每一页的空闲空间等级，插入时据此找到放得下记录的页
+ * 每页1字节的等级（空闲字节数 / 32，向下取整），叶子之上维护一棵最大值树，查找和更新都是 O(log n)
+ * 持久化在数据文件旁的 .fsm 文件中：魔数(4) + 页数(4) + 每页等级(1)；只是提示信息，与实际不符时按页头修正
+ */
+public class FreeSpaceMap {
+    
+    // 每个等级代表的字节数
+    private static final int CATEGORY_SIZE = FileFormat.PAGE_SIZE / 256;
+    
+    private final String fsmPath;
+    // 最大值树：tree[1] 为根，叶子从 tree[capacity] 开始，第 i 页对应 tree[capacity + i]
+    private byte[] tree;
+    private int capacity;
+    private int pageCount;
+    private boolean dirty;
+    
+    private FreeSpaceMap(String fsmPath, int capacity) {
+        this.fsmPath = fsmPath;
+        this.capacity = capacity;
+        this.tree = new byte[capacity * 2];
+    }
+    
+    /**
+     * 数据文件对应的 .fsm 文件路径
+     */
+    public static String pathFor(String dataFilePath) {
+        if (dataFilePath.endsWith(".dat")) {
+            return dataFilePath.substring(0, dataFilePath.length() - 4) + ".fsm";
+        }
+        return dataFilePath + ".fsm";
+    }
+    
+    /**
+     * 创建空的映射（所有页视为没有空闲空间）
+     */
+    public static FreeSpaceMap create(String fsmPath) {
+        FreeSpaceMap fsm = new FreeSpaceMap(fsmPath, 64);
+        fsm.dirty = true;
+        return fsm;
+    }
+    
+    /**
+     * 从 .fsm 文件加载；文件不存在、格式不对或页数与数据文件不一致时返回null（需要重建）
+     */
+    public static FreeSpaceMap load(String fsmPath, int expectedPageCount) throws IOException {
+        File file = new File(fsmPath);
+        if (!file.exists()) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buf.remaining() < 8 || buf.getInt() != FileFormat.FSM_MAGIC_NUMBER) {
+            return null;
+        }
+        int pageCount = buf.getInt();
+        if (pageCount != expectedPageCount || buf.remaining() != pageCount) {
+            return null;
+        }
+        FreeSpaceMap fsm = new FreeSpaceMap(fsmPath, capacityFor(pageCount));
+        buf.get(fsm.tree, fsm.capacity, pageCount);
+        fsm.pageCount = pageCount;
+        for (int i = fsm.capacity - 1; i >= 1; i--) {
+            fsm.tree[i] = max(fsm.tree[2 * i], fsm.tree[2 * i + 1]);
+        }
+        return fsm;
+    }
+    
+    /**
+     * 更新某页的空闲字节数
+     */
+    public synchronized void update(int pageNo, int freeSpace) {
+        if (pageNo >= capacity) {
+            grow(capacityFor(pageNo + 1));
+        }
+        pageCount = Math.max(pageCount, pageNo + 1);
+        int index = capacity + pageNo;
+        byte category = (byte) Math.min(255, Math.max(0, freeSpace) / CATEGORY_SIZE);
+        if (tree[index] == category) {
+            return;
+        }
+        tree[index] = category;
+        for (index >>= 1; index >= 1; index >>= 1) {
+            tree[index] = max(tree[2 * index], tree[2 * index + 1]);
+        }
+        dirty = true;
+    }
+    
+    /**
+     * 查找空闲空间不少于 needed 字节的页（页号最小的一个），没有时返回-1
+     */
+    public synchronized int findPage(int needed) {
+        int category = (needed + CATEGORY_SIZE - 1) / CATEGORY_SIZE;
+        if (category > 255 || (tree[1] & 0xFF) < category) {
+            return -1;
+        }
+        int index = 1;
+        while (index < capacity) {
+            index = (tree[2 * index] & 0xFF) >= category ? 2 * index : 2 * index + 1;
+        }
+        return index - capacity;
+    }
+    
+    /**
+     * 有修改时写回 .fsm 文件
+     */
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(8 + pageCount);
+        buf.putInt(FileFormat.FSM_MAGIC_NUMBER);
+        buf.putInt(pageCount);
+        buf.put(tree, capacity, pageCount);
+        Files.write(new File(fsmPath).toPath(), buf.array());
+        dirty = false;
+    }
+    
+    private void grow(int newCapacity) {
+        byte[] old = tree;
+        int oldCapacity = capacity;
+        tree = new byte[newCapacity * 2];
+        capacity = newCapacity;
+        System.arraycopy(old, oldCapacity, tree, capacity, oldCapacity);
+        for (int i = capacity - 1; i >= 1; i--) {
+            tree[i] = max(tree[2 * i], tree[2 * i + 1]);
+        }
+    }
+    
+    private static int capacityFor(int pageCount) {
+        int capacity = 64;
+        while (capacity < pageCount) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    private static byte max(byte a, byte b) {
+        return (a & 0xFF) >= (b & 0xFF) ? a : b;
+    }
+}
+
@@ -0,0 +1,537 @@
+package com.dbms.storage;
+
+import com.dbms.model.Index;
+import com.dbms.model.PositionSet;
+import com.dbms.util.DBMSException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 索引文件（.idx）- 每个索引一个文件，保存索引项，重新打开数据库时不需要扫描数据文件重建索引
+ * 哈希索引、位图索引和堆外哈希索引使用这种文件（加载时各键的位置放入位图或堆外哈希表），B+树索引见 BTreeFile
+ * 文件头(32)：魔数(4) + 版本(4) + 键数(4) + 索引项数(4) + 日志起始位置(8) + 包含列数(4) + 一致标记(4)
+ * 有序段：按键排序，每个键为 键 + 位置数(4) + (位置 + 包含列的值)*n，位置升序，存与前一个位置的差（变长整数，每字节7位）；
+ * 其后是增量日志，每条为 操作(1) + 键 + 位置(8)，插入操作之后还有包含列的值
+ * 键和值：类型(1) + 值（NULL 无值，INT 4字节，DOUBLE 8字节，字符串为长度(4) + UTF-8，多列键为列数(2) + 各列的值）
+ * DML 的增删先记在内存中，每条语句结束时追加到日志；日志比有序段大时（或 VACUUM 重映射位置后）整体重写
+ * 打开数据库时只检查文件头，第一次访问索引项时才读取整个文件；末尾未写完的日志项被截掉
+ * 数据文件被修改之前先把其上的索引文件标记为不一致，数据页和索引的修改都写回后（flushAll）再标记为一致；
+ * 打开时不一致的文件（两次写回之间崩溃，索引与数据文件可能不符）按需要重建处理
+ */
+public class IndexFile implements Index.Storage {
+    
+    // 文件头大小
+    private static final int HEADER_SIZE = 32;
+    
+    // 文件格式版本，版本不符的文件不读取，由数据文件重建
+    private static final int VERSION = 1;
+    
+    // 日志项数超过 max(有序段索引项数, 该值) 时重写有序段
+    private static final int MIN_COMPACT_ENTRIES = 1024;
+    
+    // 日志操作
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_DELETE = 2;
+    
+    // 键类型
+    private static final byte KEY_NULL = 0;
+    private static final byte KEY_INT = 1;
+    private static final byte KEY_LONG = 2;
+    private static final byte KEY_DOUBLE = 3;
+    private static final byte KEY_STRING = 4;
+    private static final byte KEY_TUPLE = 5;
+    
+    // 已绑定的索引文件（按绝对路径）和有未写入修改的索引文件
+    private static final Map<String, IndexFile> files = new HashMap<>();
+    private static final Set<IndexFile> dirtyFiles = new LinkedHashSet<>();
+    
+    // 上次 flushAll 之后修改过的数据文件（其上的索引文件已标记为不一致）
+    private static final Set<String> modifiedDataFiles = new HashSet<>();
+    
+    private final String filePath;
+    private final Index index;
+    private int runEntries;        // 有序段中的索引项数
+    private long logEntries;       // 日志中的项数（含尚未写入的）
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private boolean needsRewrite;
+    private boolean consistentOnDisk = true;
+    
+    private IndexFile(String filePath, Index index) {
+        this.filePath = filePath;
+        this.index = index;
+    }
+    
+    /**
+     * 数据文件上某个索引的 .idx 文件路径
+     */
+    public static String pathFor(String dataFilePath, String indexName) {
+        String base = dataFilePath.endsWith(".dat") ? dataFilePath.substring(0, dataFilePath.length() - 4) : dataFilePath;
+        return base + "." + indexName.toLowerCase() + ".idx";
+    }
+    
+    /**
+     * 为已有的索引文件绑定索引（索引项延迟加载）；文件不存在或文件头不对时返回false，需要重建后调用 create
+     */
+    public static synchronized boolean open(Index index, String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(header.array());
+        }
+        if (header.getInt(0) != FileFormat.IDX_MAGIC_NUMBER || header.getInt(4) != VERSION ||
+            header.getLong(16) < HEADER_SIZE || header.getLong(16) > file.length() ||
+            header.getInt(24) != index.getIncludeColumns().size() || header.getInt(28) != 1) {
+            return false;
+        }
+        attach(index, new IndexFile(filePath, index), false);
+        return true;
+    }
+    
+    /**
+     * 把内存中已建好的索引整体写入新的索引文件并绑定
+     */
+    public static synchronized void create(Index index, String filePath) throws IOException {
+        IndexFile indexFile = new IndexFile(filePath, index);
+        indexFile.writeRun();
+        attach(index, indexFile, true);
+    }
+    
+    private static void attach(Index index, IndexFile indexFile, boolean loaded) {
+        IndexFile old = files.put(new File(indexFile.filePath).getAbsolutePath(), indexFile);
+        if (old != null) {
+            dirtyFiles.remove(old);
+        }
+        modifiedDataFiles.clear(); // 新绑定的文件在数据文件下一次修改时也要标记
+        index.setStorage(indexFile, loaded);
+    }
+    
+    /**
+     * 删除数据文件上的所有索引文件（删除表或恢复备份时调用）
+     */
+    public static synchronized void deleteFiles(String dataFilePath) {
+        File base = new File(pathFor(dataFilePath, "")).getAbsoluteFile();
+        String prefix = base.getName().substring(0, base.getName().length() - ".idx".length());
+        File[] indexFiles = base.getParentFile().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".idx"));
+        if (indexFiles == null) {
+            return;
+        }
+        for (File file : indexFiles) {
+            BTreeFile.close(file.getPath());
+            BloomFile.close(file.getPath());
+            IndexFile old = files.remove(file.getAbsolutePath());
+            if (old != null) {
+                dirtyFiles.remove(old);
+                old.index.setStorage(null, true);
+            }
+            file.delete();
+        }
+    }
+    
+    /**
+     * 数据文件即将被修改（写入数据页之前调用）：把其上已绑定的索引文件标记为不一致，直到下一次 flushAll
+     */
+    public static synchronized void markModified(String dataFilePath) throws IOException {
+        if (!modifiedDataFiles.add(dataFilePath)) {
+            return;
+        }
+        String base = new File(pathFor(dataFilePath, "")).getAbsolutePath();
+        String prefix = base.substring(0, base.length() - ".idx".length());
+        for (Map.Entry<String, IndexFile> entry : files.entrySet()) {
+            IndexFile indexFile = entry.getValue();
+            if (entry.getKey().startsWith(prefix) && indexFile.consistentOnDisk) {
+                indexFile.writeConsistent(false);
+                dirtyFiles.add(indexFile);
+            }
+        }
+    }
+    
+    /**
+     * 把所有索引文件的未写入修改追加到日志（或重写有序段）并标记为一致；须在数据文件的脏页写回之后调用
+     */
+    public static synchronized void flushAll() throws IOException {
+        for (IndexFile indexFile : dirtyFiles) {
+            indexFile.flush();
+        }
+        dirtyFiles.clear();
+        modifiedDataFiles.clear();
+    }
+    
+    @Override
+    public void load(Index index) {
+        synchronized (IndexFile.class) {
+            try {
+                loadEntries();
+            } catch (IOException | BufferUnderflowException e) {
+                throw new DBMSException("Failed to load index " + index.getIndexName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    @Override
+    public void logInsert(Object value, long position, Object[] included) {
+        log(OP_INSERT, value, position, included);
+    }
+    
+    @Override
+    public void logDelete(Object value, long position) {
+        log(OP_DELETE, value, position, Index.NO_VALUES);
+    }
+    
+    @Override
+    public void rewrite(Index index) {
+        synchronized (IndexFile.class) {
+            pending.reset();
+            needsRewrite = true;
+            dirtyFiles.add(this);
+        }
+    }
+    
+    private void log(byte op, Object value, long position, Object[] included) {
+        synchronized (IndexFile.class) {
+            if (needsRewrite) {
+                return; // 重写时整体写入
+            }
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeByte(op);
+                writeKey(out, value);
+                out.writeLong(position);
+                for (Object includedValue : included) {
+                    writeKey(out, includedValue);
+                }
+            } catch (IOException e) {
+                throw new DBMSException("Failed to log index entry: " + e.getMessage(), e);
+            }
+            logEntries++;
+            dirtyFiles.add(this);
+        }
+    }
+    
+    private void flush() throws IOException {
+        if (needsRewrite || logEntries > Math.max(runEntries, MIN_COMPACT_ENTRIES)) {
+            writeRun();
+            return;
+        }
+        if (pending.size() > 0) {
+            Files.write(new File(filePath).toPath(), pending.toByteArray(), StandardOpenOption.APPEND);
+            pending.reset();
+        }
+        if (!consistentOnDisk) {
+            writeConsistent(true);
+        }
+    }
+    
+    /**
+     * 同步目录，使替换文件的改名落盘；不支持打开目录的平台上忽略
+     */
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 如 Windows 不能以通道方式打开目录
+        }
+    }
+    
+    /**
+     * 改写文件头中的一致标记
+     */
+    private void writeConsistent(boolean consistent) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+            raf.seek(28);
+            raf.writeInt(consistent ? 1 : 0);
+        }
+        consistentOnDisk = consistent;
+    }
+    
+    /**
+     * 把内存中的全部索引项按键排序写成新文件（先写临时文件再替换）
+     */
+    private void writeRun() throws IOException {
+        List<Map.Entry<Object, PositionSet>> entries = new ArrayList<>(index.getIndexMap().entrySet());
+        entries.sort(IndexFile::compareEntries);
+        Map<Long, Object[]> includedValues = index.getIncludedValueMap();
+        int includeCount = index.getIncludeColumns().size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[HEADER_SIZE]);
+        int count = 0;
+        for (Map.Entry<Object, PositionSet> entry : entries) {
+            writeKey(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            long previous = 0;
+            for (long position : entry.getValue().toArray()) {
+                writeVarLong(out, position - previous);
+                previous = position;
+                Object[] included = includeCount == 0 ? null : includedValues.get(position);
+                for (int i = 0; i < includeCount; i++) {
+                    writeKey(out, included == null ? null : included[i]);
+                }
+            }
+            count += entry.getValue().size();
+        }
+        byte[] data = bytes.toByteArray();
+        ByteBuffer.wrap(data)
+            .putInt(FileFormat.IDX_MAGIC_NUMBER)
+            .putInt(VERSION)
+            .putInt(entries.size())
+            .putInt(count)
+            .putLong(data.length)
+            .putInt(includeCount)
+            .putInt(1);
+        
+        // 临时文件落盘后再替换，替换后同步目录，崩溃后看到的要么是旧文件，要么是完整的新文件
+        File file = new File(filePath);
+        File tmp = new File(filePath + ".tmp");
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp)) {
+            tmpOut.write(data);
+            tmpOut.getFD().sync();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+        runEntries = count;
+        logEntries = 0;
+        pending.reset();
+        needsRewrite = false;
+        consistentOnDisk = true;
+    }
+    
+    /**
+     * 读取有序段并重放日志
+     */
+    private void loadEntries() throws IOException {
+        File file = new File(filePath);
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buf.remaining() < HEADER_SIZE || buf.getInt(0) != FileFormat.IDX_MAGIC_NUMBER) {
+            throw new IOException("Corrupted index file " + filePath);
+        }
+        int keyCount = buf.getInt(8);
+        long logStart = buf.getLong(16);
+        int includeCount = buf.getInt(24);
+        
+        Map<Object, PositionSet> map = index.newIndexMap(keyCount);
+        Map<Long, Object[]> includedValues = new HashMap<>();
+        buf.position(HEADER_SIZE);
+        runEntries = 0;
+        for (int i = 0; i < keyCount; i++) {
+            Object key = readKey(buf);
+            int n = buf.getInt();
+            PositionSet positions = index.newPositionSet();
+            long position = 0;
+            for (int j = 0; j < n; j++) {
+                position += readVarLong(buf);
+                positions.append(position);
+                if (includeCount > 0) {
+                    includedValues.put(position, readValues(buf, includeCount));
+                }
+            }
+            map.put(key, positions);
+            runEntries += n;
+        }
+        
+        buf.position((int) logStart);
+        logEntries = 0;
+        int end = buf.position();
+        try {
+            while (buf.hasRemaining()) {
+                byte op = buf.get();
+                Object key = readKey(buf);
+                long position = buf.getLong();
+                if (op == OP_INSERT) {
+                    Object[] included = readValues(buf, includeCount);
+                    map.computeIfAbsent(key, k -> index.newPositionSet()).add(position);
+                    if (includeCount > 0) {
+                        includedValues.put(position, included);
+                    }
+                } else if (op == OP_DELETE) {
+                    PositionSet positions = map.get(key);
+                    if (positions != null && positions.remove(position) && positions.isEmpty()) {
+                        map.remove(key);
+                    }
+                    includedValues.remove(position);
+                } else {
+                    break;
+                }
+                logEntries++;
+                end = buf.position();
+            }
+        } catch (BufferUnderflowException | IOException e) {
+            // 末尾未写完的日志项
+        }
+        if (end < buf.limit()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(end);
+            }
+        }
+        index.setIndexMap(map);
+        index.setIncludedValueMap(includedValues);
+    }
+    
+    /**
+     * 写入键或包含列的值（类型 + 值），B+树索引文件也使用同样的编码
+     */
+    static void writeKey(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(KEY_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(KEY_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(KEY_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(KEY_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            out.writeByte(KEY_TUPLE);
+            out.writeShort(values.size());
+            for (Object element : values) {
+                writeKey(out, element);
+            }
+        } else {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(KEY_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+    
+    /**
+     * 编码后的键长度
+     */
+    static int keySize(Object value) {
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof Integer) {
+            return 5;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 9;
+        }
+        if (value instanceof List) {
+            int size = 3;
+            for (Object element : (List<?>) value) {
+                size += keySize(element);
+            }
+            return size;
+        }
+        return 5 + value.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+    
+    static Object readKey(ByteBuffer buf) throws IOException {
+        byte type = buf.get();
+        switch (type) {
+            case KEY_NULL:
+                return null;
+            case KEY_INT:
+                return buf.getInt();
+            case KEY_LONG:
+                return buf.getLong();
+            case KEY_DOUBLE:
+                return buf.getDouble();
+            case KEY_STRING: {
+                int length = buf.getInt();
+                if (length < 0 || length > buf.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                String value = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+                buf.position(buf.position() + length);
+                return value;
+            }
+            case KEY_TUPLE: {
+                Object[] values = new Object[buf.getShort() & 0xFFFF];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readKey(buf);
+                }
+                return Arrays.asList(values);
+            }
+            default:
+                throw new IOException("Unknown index key type: " + type);
+        }
+    }
+    
+    /**
+     * 写入非负的变长整数：每字节低7位为数据，最高位表示后面还有字节
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static long readVarLong(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+    
+    /**
+     * 读取 count 个包含列的值
+     */
+    static Object[] readValues(ByteBuffer buf, int count) throws IOException {
+        if (count == 0) {
+            return Index.NO_VALUES;
+        }
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readKey(buf);
+        }
+        return values;
+    }
+    
+    /**
+     * 有序段中键的顺序：先按键类型，同类型按值（多列键逐列比较）
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareEntries(Map.Entry<Object, PositionSet> a, Map.Entry<Object, PositionSet> b) {
+        Object x = a.getKey();
+        Object y = b.getKey();
+        if (x instanceof List && y instanceof List) {
+            return Index.compareKeys(x, y);
+        }
+        if (x.getClass() != y.getClass()) {
+            return x.getClass().getName().compareTo(y.getClass().getName());
+        }
+        if (x instanceof Comparable) {
+            return ((Comparable) x).compareTo(y);
+        }
+        return x.toString().compareTo(y.toString());
+    }
+}
+
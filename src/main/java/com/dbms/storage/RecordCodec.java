@@ -0,0 +1,543 @@
+package com.dbms.storage;
+
+import com.dbms.model.ColumnDictionary;
+import com.dbms.model.Field;
+import com.dbms.model.FieldType;
+import com.dbms.model.Record;
+import com.dbms.model.Table;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 记录编解码器 - 在可复用的 ByteBuffer 上编码/解码记录
+ * 记录头：状态(1) + 编码格式(1) + 表结构版本(2) + 记录总长度(4)
+ * 紧凑格式（新写入的记录）：记录头 + 字段数(varint) + NULL位图(每字段1位) + 非NULL字段值
+ *   INT=zigzag varint，FLOAT/DOUBLE=8字节，CHAR/VARCHAR/DATE=长度(varint)+UTF-8（CHAR 不补齐）
+ *   字典编码列：编号<<1|1 (varint)；字典已满时按原样存放为 长度<<1 (varint)+UTF-8
+ * 定长格式（旧记录，只读）：记录头 + 各字段值（INT=4字节，FLOAT/DOUBLE=8字节，CHAR=定长补0，VARCHAR/DATE=长度(4)+UTF-8，长度0表示NULL）
+ * 记录中的字段比当前表结构少时（如 ADD COLUMN 之前写入），缺少的字段读作NULL
+ * 除完整解码为 Record 外，还可以绑定到一条记录上，用 getInt/getDouble 等按列读取，不装箱、不创建 Record
+ * 每个线程复用一个实例（见 forTable），编码缓冲区和字符串解码用的临时数组都会复用
+ */
+public class RecordCodec {
+    
+    // 编码格式：字段按定长/长度前缀顺序存放（旧格式，只读）
+    public static final int FORMAT_FIXED = 0;
+    // 编码格式：NULL位图 + varint 变长编码
+    public static final int FORMAT_COMPACT = 1;
+    
+    private static final int STATUS_OFFSET = 0;
+    private static final int FORMAT_OFFSET = 1;
+    private static final int SCHEMA_VERSION_OFFSET = 2;
+    private static final int LENGTH_OFFSET = 4;
+    
+    private static final ThreadLocal<RecordCodec> CODECS = ThreadLocal.withInitial(RecordCodec::new);
+    
+    private Table table;
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(256);
+    private byte[] scratch = new byte[256];
+    
+    // 当前绑定的记录及各字段的起始偏移（按需计算）
+    private ByteBuffer current;
+    private int[] fieldOffsets = new int[16];
+    private boolean offsetsValid;
+    private boolean compact;
+    // 最近一次 readVarint 结束的位置
+    private int varintEnd;
+    
+    private RecordCodec() {
+    }
+    
+    /**
+     * 获取当前线程的编解码器并设置表结构
+     */
+    public static RecordCodec forTable(Table table) {
+        RecordCodec codec = CODECS.get();
+        codec.table = table;
+        codec.current = null;
+        codec.offsetsValid = false;
+        return codec;
+    }
+    
+    /**
+     * 编码记录，返回的缓冲区（position=0, limit=记录长度）在下一次 encode 之前有效
+     */
+    public ByteBuffer encode(Record record) throws IOException {
+        encodeBuffer.clear();
+        ensureCapacity(FileFormat.RECORD_HEADER_SIZE);
+        encodeBuffer.put((byte) (record.isDeleted() ? FileFormat.RECORD_DELETED : FileFormat.RECORD_ACTIVE));
+        encodeBuffer.put((byte) FORMAT_COMPACT);
+        encodeBuffer.putShort((short) table.getSchemaVersion());
+        encodeBuffer.putInt(0); // 记录长度，写完字段后回填
+        
+        int count = table.getFieldCount();
+        int bitmapBytes = (count + 7) / 8;
+        ensureCapacity(5 + bitmapBytes);
+        putVarint(count);
+        int bitmapPos = encodeBuffer.position();
+        for (int i = 0; i < bitmapBytes; i++) {
+            encodeBuffer.put((byte) 0);
+        }
+        for (int i = 0; i < count; i++) {
+            Object value = record.getValue(i);
+            if (value == null) {
+                int b = bitmapPos + (i >> 3);
+                encodeBuffer.put(b, (byte) (encodeBuffer.get(b) | (1 << (i & 7))));
+            } else {
+                writeValue(table.getFieldByIndex(i), value);
+            }
+        }
+        encodeBuffer.putInt(LENGTH_OFFSET, encodeBuffer.position());
+        encodeBuffer.flip();
+        if (encodeBuffer.limit() > FileFormat.MAX_RECORD_SIZE) {
+            throw new IOException("Record too large: " + encodeBuffer.limit() + " bytes (max " +
+                FileFormat.MAX_RECORD_SIZE + ")");
+        }
+        return encodeBuffer;
+    }
+    
+    /**
+     * 完整解码为 Record（从 buffer 的当前位置开始）
+     */
+    public Record decode(ByteBuffer buf) throws IOException {
+        Record record = new Record(table.getFieldCount());
+        try {
+            bind(buf);
+            record.setDeleted(isDeleted());
+            for (int i = 0; i < table.getFieldCount(); i++) {
+                record.setValue(i, getValue(i));
+            }
+            if (compact && table.hasDictionaries()) {
+                for (int i = 0; i < table.getFieldCount(); i++) {
+                    if (table.getFieldByIndex(i).getDictionary() != null) {
+                        record.setCode(i, getCode(i));
+                    }
+                }
+            }
+            buf.position(buf.position() + getLength());
+        } catch (IndexOutOfBoundsException e) {
+            throw new EOFException("Record is truncated");
+        } finally {
+            current = null;
+            offsetsValid = false;
+        }
+        return record;
+    }
+    
+    /**
+     * 绑定到一条记录（position 为记录起始），之后可按列读取
+     */
+    public RecordCodec bind(ByteBuffer recordBuffer) {
+        this.current = recordBuffer;
+        this.offsetsValid = false;
+        return this;
+    }
+    
+    public boolean isDeleted() {
+        return current.get(current.position() + STATUS_OFFSET) == FileFormat.RECORD_DELETED;
+    }
+    
+    /**
+     * 记录头中的编码格式
+     */
+    public int getFormat() {
+        return current.get(current.position() + FORMAT_OFFSET);
+    }
+    
+    /**
+     * 记录头中的表结构版本
+     */
+    public int getSchemaVersion() {
+        return current.getShort(current.position() + SCHEMA_VERSION_OFFSET) & 0xFFFF;
+    }
+    
+    /**
+     * 记录头中的记录总长度
+     */
+    public int getLength() {
+        return current.getInt(current.position() + LENGTH_OFFSET);
+    }
+    
+    /**
+     * 读取 INT 列（NULL 读作0）
+     */
+    public int getInt(int col) {
+        int offset = fieldOffset(col);
+        if (offset < 0) {
+            return 0;
+        }
+        if (compact) {
+            int n = readVarint(offset);
+            return (n >>> 1) ^ -(n & 1);
+        }
+        return current.getInt(offset);
+    }
+    
+    /**
+     * 读取 FLOAT/DOUBLE 列（NULL 读作0.0）；INT 列也可以按 double 读取
+     */
+    public double getDouble(int col) {
+        if (table.getFieldByIndex(col).getType() == FieldType.INT) {
+            return getInt(col);
+        }
+        int offset = fieldOffset(col);
+        return offset < 0 ? 0.0 : current.getDouble(offset);
+    }
+    
+    /**
+     * 列是否为NULL（紧凑格式查NULL位图；旧定长格式中数值列没有NULL标记，总是返回false）
+     */
+    public boolean isNull(int col) {
+        Field field = table.getFieldByIndex(col);
+        int offset = fieldOffset(col);
+        if (offset < 0) {
+            return true;
+        }
+        if (compact) {
+            return false;
+        }
+        switch (field.getType()) {
+            case CHAR:
+                return field.getLength() == 0 || current.get(offset) == 0;
+            case VARCHAR:
+            case DATE:
+                return current.getInt(offset) == 0;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * 读取字符串列（CHAR/VARCHAR/DATE）
+     */
+    public String getString(int col) {
+        Object value = getValue(col);
+        return value == null ? null : value.toString();
+    }
+    
+    /**
+     * 读取任意列（会装箱）
+     */
+    public Object getValue(int col) {
+        int offset = fieldOffset(col);
+        if (offset < 0) {
+            return null;
+        }
+        return readValue(offset, table.getFieldByIndex(col));
+    }
+    
+    /**
+     * 读取字典编码列的取值编号，不装箱、不解码字符串；NULL、非字典编码列或按原样存放的取值返回-1
+     */
+    public int getCode(int col) {
+        int offset = fieldOffset(col);
+        if (offset < 0 || !compact || table.getFieldByIndex(col).getDictionary() == null) {
+            return -1;
+        }
+        int n = readVarint(offset);
+        return (n & 1) != 0 ? n >>> 1 : -1;
+    }
+    
+    /**
+     * 比较列值与给定值是否相等；数值列直接比较原始值，不装箱
+     */
+    public boolean valueEquals(int col, Object value) {
+        Field field = table.getFieldByIndex(col);
+        switch (field.getType()) {
+            case INT:
+                return value instanceof Number && !isNull(col) && getInt(col) == ((Number) value).doubleValue();
+            case FLOAT:
+            case DOUBLE:
+                return value instanceof Number && !isNull(col) && getDouble(col) == ((Number) value).doubleValue();
+            default:
+                String s = getString(col);
+                return value == null ? s == null : value.toString().equals(s);
+        }
+    }
+    
+    private int fieldOffset(int col) {
+        if (!offsetsValid) {
+            computeOffsets();
+        }
+        return fieldOffsets[col];
+    }
+    
+    private void computeOffsets() {
+        int count = table.getFieldCount();
+        if (fieldOffsets.length < count) {
+            fieldOffsets = new int[Math.max(count, fieldOffsets.length * 2)];
+        }
+        compact = getFormat() == FORMAT_COMPACT;
+        if (compact) {
+            computeCompactOffsets(count);
+            offsetsValid = true;
+            return;
+        }
+        int end = current.position() + getLength();
+        int offset = current.position() + FileFormat.RECORD_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (offset >= end) {
+                fieldOffsets[i] = -1; // 记录中没有该字段（表结构变更前写入）
+                continue;
+            }
+            fieldOffsets[i] = offset;
+            Field field = table.getFieldByIndex(i);
+            switch (field.getType()) {
+                case INT:
+                    offset += 4;
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    offset += 8;
+                    break;
+                case CHAR:
+                    offset += field.getLength();
+                    break;
+                case VARCHAR:
+                case DATE:
+                    offset += 4 + current.getInt(offset);
+                    break;
+            }
+        }
+        offsetsValid = true;
+    }
+    
+    /**
+     * 紧凑格式：NULL字段和记录中不存在的字段偏移为-1
+     */
+    private void computeCompactOffsets(int count) {
+        int storedCount = readVarint(current.position() + FileFormat.RECORD_HEADER_SIZE);
+        int bitmapPos = varintEnd;
+        int offset = bitmapPos + (storedCount + 7) / 8;
+        for (int i = 0; i < count; i++) {
+            if (i >= storedCount || (current.get(bitmapPos + (i >> 3)) & (1 << (i & 7))) != 0) {
+                fieldOffsets[i] = -1;
+                continue;
+            }
+            fieldOffsets[i] = offset;
+            Field field = table.getFieldByIndex(i);
+            switch (field.getType()) {
+                case INT:
+                    readVarint(offset);
+                    offset = varintEnd;
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    offset += 8;
+                    break;
+                default:
+                    int length = readVarint(offset);
+                    if (field.getDictionary() != null) {
+                        // 编号没有后续内容，原样存放的取值长度在高位
+                        length = (length & 1) != 0 ? 0 : length >>> 1;
+                    }
+                    offset = varintEnd + length;
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * 写入非NULL字段值（紧凑格式）
+     */
+    private void writeValue(Field field, Object value) {
+        switch (field.getType()) {
+            case INT: {
+                int n = ((Number) value).intValue();
+                ensureCapacity(5);
+                putVarint((n << 1) ^ (n >> 31));
+                break;
+            }
+            case FLOAT:
+            case DOUBLE:
+                ensureCapacity(8);
+                encodeBuffer.putDouble(((Number) value).doubleValue());
+                break;
+            case CHAR:
+            case VARCHAR: {
+                int maxBytes = field.getType() == FieldType.CHAR ? field.getLength() : Integer.MAX_VALUE;
+                ColumnDictionary dictionary = field.getDictionary();
+                if (dictionary != null) {
+                    int code = dictionary.encode(value.toString());
+                    if (code >= 0) {
+                        ensureCapacity(5);
+                        putVarint(code << 1 | 1);
+                    } else {
+                        putString(value.toString(), maxBytes, 1);
+                    }
+                } else {
+                    putString(value.toString(), maxBytes, 0);
+                }
+                break;
+            }
+            case DATE:
+                putString(value.toString(), Integer.MAX_VALUE, 0);
+                break;
+        }
+    }
+    
+    /**
+     * 写入 长度<<shift (varint) + UTF-8：先预留5字节长度，写完内容后把内容前移到实际长度之后
+     */
+    private void putString(String s, int maxBytes, int shift) {
+        ensureCapacity(5 + s.length() * 3);
+        int lengthPos = encodeBuffer.position();
+        encodeBuffer.position(lengthPos + 5);
+        int written = putUtf8(s, maxBytes);
+        int lengthBytes = varintSize(written << shift);
+        if (lengthBytes < 5) {
+            byte[] array = encodeBuffer.array();
+            System.arraycopy(array, lengthPos + 5, array, lengthPos + lengthBytes, written);
+        }
+        encodeBuffer.position(lengthPos);
+        putVarint(written << shift);
+        encodeBuffer.position(lengthPos + lengthBytes + written);
+    }
+    
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            encodeBuffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        encodeBuffer.put((byte) value);
+    }
+    
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    /**
+     * 从当前记录的绝对位置读取 varint，结束位置记在 varintEnd
+     */
+    private int readVarint(int offset) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = current.get(offset++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                varintEnd = offset;
+                return value;
+            }
+        }
+        throw new IndexOutOfBoundsException("Malformed varint at " + offset);
+    }
+    
+    /**
+     * 把字符串的 UTF-8 编码写入编码缓冲区（最多 maxBytes 字节），返回写入的字节数
+     */
+    private int putUtf8(String s, int maxBytes) {
+        int start = encodeBuffer.position();
+        int written = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (written + 1 > maxBytes) {
+                    break;
+                }
+                encodeBuffer.put((byte) c);
+                written++;
+            } else {
+                // 非ASCII字符交给JDK编码（处理代理对），按字节数截断
+                byte[] bytes = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                int copy = Math.min(bytes.length, maxBytes - written);
+                encodeBuffer.put(bytes, 0, copy);
+                written += copy;
+                break;
+            }
+        }
+        encodeBuffer.position(start + written);
+        return written;
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (encodeBuffer.remaining() >= extra) {
+            return;
+        }
+        int newCapacity = Math.max(encodeBuffer.capacity() * 2, encodeBuffer.position() + extra);
+        ByteBuffer bigger = ByteBuffer.allocate(newCapacity);
+        encodeBuffer.flip();
+        bigger.put(encodeBuffer);
+        encodeBuffer = bigger;
+    }
+    
+    /**
+     * 按当前记录的编码格式读取 offset 处的字段值
+     */
+    private Object readValue(int offset, Field field) {
+        switch (field.getType()) {
+            case INT:
+                if (compact) {
+                    int n = readVarint(offset);
+                    return (n >>> 1) ^ -(n & 1);
+                }
+                return current.getInt(offset);
+            case FLOAT:
+            case DOUBLE:
+                return current.getDouble(offset);
+            case CHAR:
+                if (!compact) {
+                    int length = field.getLength();
+                    int end = offset;
+                    while (end < offset + length && current.get(end) != 0) {
+                        end++;
+                    }
+                    return end == offset ? null : decodeUtf8(current, offset, end - offset);
+                }
+                return readString(offset, field); // 紧凑格式的 CHAR 与 VARCHAR 相同
+            case VARCHAR:
+            case DATE:
+                return readString(offset, field);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 读取 offset 处带长度的字符串（VARCHAR、DATE 和紧凑格式的 CHAR），字典编码的取值直接返回字典中的字符串
+     */
+    private String readString(int offset, Field field) {
+        int length;
+        int start;
+        if (compact) {
+            length = readVarint(offset);
+            start = varintEnd;
+            ColumnDictionary dictionary = field.getDictionary();
+            if (dictionary != null) {
+                if ((length & 1) != 0) {
+                    return dictionary.getValue(length >>> 1); // 字典中的取值，不解码
+                }
+                length >>>= 1;
+            }
+        } else {
+            length = current.getInt(offset);
+            if (length == 0) {
+                return null; // 定长格式中长度0表示NULL
+            }
+            start = offset + 4;
+        }
+        return decodeUtf8(current, start, length);
+    }
+    
+    /**
+     * UTF-8 解码：堆缓冲区直接用底层数组，映射/直接缓冲区复制到复用的临时数组
+     */
+    private String decodeUtf8(ByteBuffer buf, int offset, int length) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buf.get(offset, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
+
@@ -0,0 +1,293 @@
+package com.dbms.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 分槽页（Slotted Page）
+ * 页布局：[页头][槽目录 →      空闲空间      ← 记录数据]
+ * 页头：槽数量、数据区起始偏移、空闲空间计数；槽目录项：记录偏移 + 记录长度
+ * 记录位置使用 (页号, 槽号) 编码成一个long，页内整理时槽号保持不变；释放的槽号由之后的插入复用
+ */
+public class SlottedPage {
+    
+    private static final int SLOT_COUNT_OFFSET = 0;
+    private static final int DATA_START_OFFSET = 4;
+    private static final int FREE_SPACE_OFFSET = 8;
+    
+    // 槽号占用位置编码的低16位
+    private static final int SLOT_BITS = 16;
+    
+    private final int pageNo;
+    private final ByteBuffer buffer;
+    
+    private SlottedPage(int pageNo, ByteBuffer buffer) {
+        this.pageNo = pageNo;
+        this.buffer = buffer;
+    }
+    
+    /**
+     * 创建一个空页
+     */
+    public static SlottedPage create(int pageNo) {
+        SlottedPage page = new SlottedPage(pageNo, ByteBuffer.allocate(FileFormat.PAGE_SIZE));
+        page.setSlotCount(0);
+        page.setDataStart(FileFormat.PAGE_SIZE);
+        page.setFreeSpace(FileFormat.PAGE_SIZE - FileFormat.PAGE_HEADER_SIZE);
+        return page;
+    }
+    
+    /**
+     * 包装从文件读出的页数据
+     */
+    public static SlottedPage wrap(int pageNo, byte[] data) {
+        if (data.length != FileFormat.PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page size: " + data.length);
+        }
+        return new SlottedPage(pageNo, ByteBuffer.wrap(data));
+    }
+    
+    /**
+     * 包装一段页大小的缓冲区（如内存映射文件的切片），用于只读扫描
+     */
+    public static SlottedPage view(int pageNo, ByteBuffer buffer) {
+        if (buffer.capacity() != FileFormat.PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page size: " + buffer.capacity());
+        }
+        return new SlottedPage(pageNo, buffer);
+    }
+    
+    /**
+     * 将 (页号, 槽号) 编码为记录位置
+     */
+    public static long toPosition(int pageNo, int slot) {
+        return ((long) pageNo << SLOT_BITS) | slot;
+    }
+    
+    /**
+     * 从记录位置解析页号
+     */
+    public static int pageOf(long position) {
+        return (int) (position >>> SLOT_BITS);
+    }
+    
+    /**
+     * 从记录位置解析槽号
+     */
+    public static int slotOf(long position) {
+        return (int) (position & ((1 << SLOT_BITS) - 1));
+    }
+    
+    public int getPageNo() {
+        return pageNo;
+    }
+    
+    /**
+     * 页的原始字节（用于写回文件）
+     */
+    public byte[] getData() {
+        return buffer.array();
+    }
+    
+    public int getSlotCount() {
+        return buffer.getInt(SLOT_COUNT_OFFSET);
+    }
+    
+    /**
+     * 空闲空间计数（整理页内碎片后可用的字节数）
+     */
+    public int getFreeSpace() {
+        return buffer.getInt(FREE_SPACE_OFFSET);
+    }
+    
+    /**
+     * 槽是否指向一条记录（整理后被回收的槽偏移为0）
+     */
+    public boolean isSlotUsed(int slot) {
+        return slot >= 0 && slot < getSlotCount() && getRecordOffset(slot) != 0;
+    }
+    
+    public int getRecordOffset(int slot) {
+        return buffer.getInt(slotEntryOffset(slot));
+    }
+    
+    public int getRecordLength(int slot) {
+        return buffer.getInt(slotEntryOffset(slot) + 4);
+    }
+    
+    /**
+     * 读取记录头中的状态（记录的第1个字节），不解码字段
+     */
+    public int getStatus(int slot) {
+        return buffer.get(getRecordOffset(slot));
+    }
+    
+    /**
+     * 原地修改记录头中的状态
+     */
+    public void setStatus(int slot, int status) {
+        buffer.put(getRecordOffset(slot), (byte) status);
+    }
+    
+    /**
+     * 复制出槽中记录的字节
+     */
+    public byte[] getRecord(int slot) {
+        byte[] bytes = new byte[getRecordLength(slot)];
+        buffer.get(getRecordOffset(slot), bytes);
+        return bytes;
+    }
+    
+    /**
+     * 槽中记录的视图（与页共享数据，不复制），position 为0，limit 为记录长度
+     */
+    public ByteBuffer getRecordBuffer(int slot) {
+        return buffer.slice(getRecordOffset(slot), getRecordLength(slot));
+    }
+    
+    /**
+     * 插入记录（record 的 position 到 limit 之间的字节），返回槽号；空间不足返回-1
+     * 优先复用已释放的槽，没有时在槽目录末尾新增一个槽
+     */
+    public int insert(ByteBuffer record) {
+        int length = record.remaining();
+        int slot = findFreeSlot();
+        int needed = slot < 0 ? length + FileFormat.SLOT_SIZE : length;
+        if (getFreeSpace() < needed || (slot < 0 && getSlotCount() >= (1 << SLOT_BITS))) {
+            return -1;
+        }
+        if (contiguousFreeSpace() < needed) {
+            compact();
+        }
+        if (slot < 0) {
+            slot = getSlotCount();
+            setSlotCount(slot + 1);
+        }
+        int offset = allocate(length);
+        buffer.put(offset, record, record.position(), length);
+        setSlot(slot, offset, length);
+        setFreeSpace(getFreeSpace() - needed);
+        return slot;
+    }
+    
+    /**
+     * 更新槽中的记录：能放下时原地覆盖，否则在页内重新分配；页内放不下返回false
+     */
+    public boolean update(int slot, ByteBuffer record) {
+        int length = record.remaining();
+        int oldOffset = getRecordOffset(slot);
+        int oldLength = getRecordLength(slot);
+        if (length <= oldLength) {
+            buffer.put(oldOffset, record, record.position(), length);
+            setSlot(slot, oldOffset, length);
+            setFreeSpace(getFreeSpace() + oldLength - length);
+            return true;
+        }
+        if (getFreeSpace() + oldLength < length) {
+            return false;
+        }
+        // 先释放旧空间，必要时整理页内碎片，再重新分配
+        setSlot(slot, 0, 0);
+        setFreeSpace(getFreeSpace() + oldLength);
+        if (contiguousFreeSpace() < length) {
+            compact();
+        }
+        int offset = allocate(length);
+        buffer.put(offset, record, record.position(), length);
+        setSlot(slot, offset, length);
+        setFreeSpace(getFreeSpace() - length);
+        return true;
+    }
+    
+    /**
+     * 释放槽中记录占用的空间（记录已删除且不会再被恢复时调用），槽号留给之后的插入复用；
+     * 槽目录末尾的空槽直接去掉
+     */
+    public void free(int slot) {
+        int freed = getRecordLength(slot);
+        setSlot(slot, 0, 0);
+        int slotCount = getSlotCount();
+        while (slotCount > 0 && getRecordOffset(slotCount - 1) == 0) {
+            slotCount--;
+            freed += FileFormat.SLOT_SIZE;
+        }
+        setSlotCount(slotCount);
+        setFreeSpace(getFreeSpace() + freed);
+    }
+    
+    /**
+     * 页内整理：把所有记录紧凑地移动到页尾，槽号不变
+     */
+    public void compact() {
+        int slotCount = getSlotCount();
+        byte[] data = buffer.array();
+        byte[] copy = data.clone();
+        int dataStart = FileFormat.PAGE_SIZE;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = getRecordOffset(slot);
+            if (offset == 0) {
+                continue;
+            }
+            int length = getRecordLength(slot);
+            dataStart -= length;
+            System.arraycopy(copy, offset, data, dataStart, length);
+            setSlot(slot, dataStart, length);
+        }
+        setDataStart(dataStart);
+    }
+    
+    /**
+     * 第一个已释放（偏移为0）的槽，没有时返回-1
+     */
+    private int findFreeSlot() {
+        int slotCount = getSlotCount();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (getRecordOffset(slot) == 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 槽目录末尾到数据区起始之间的连续空闲字节数
+     */
+    private int contiguousFreeSpace() {
+        int directoryEnd = FileFormat.PAGE_HEADER_SIZE + getSlotCount() * FileFormat.SLOT_SIZE;
+        return getDataStart() - directoryEnd;
+    }
+    
+    /**
+     * 从数据区起始处向前分配空间
+     */
+    private int allocate(int length) {
+        int offset = getDataStart() - length;
+        setDataStart(offset);
+        return offset;
+    }
+    
+    private int slotEntryOffset(int slot) {
+        return FileFormat.PAGE_HEADER_SIZE + slot * FileFormat.SLOT_SIZE;
+    }
+    
+    private void setSlot(int slot, int offset, int length) {
+        buffer.putInt(slotEntryOffset(slot), offset);
+        buffer.putInt(slotEntryOffset(slot) + 4, length);
+    }
+    
+    private void setSlotCount(int count) {
+        buffer.putInt(SLOT_COUNT_OFFSET, count);
+    }
+    
+    private int getDataStart() {
+        return buffer.getInt(DATA_START_OFFSET);
+    }
+    
+    private void setDataStart(int offset) {
+        buffer.putInt(DATA_START_OFFSET, offset);
+    }
+    
+    private void setFreeSpace(int freeSpace) {
+        buffer.putInt(FREE_SPACE_OFFSET, freeSpace);
+    }
+}
+
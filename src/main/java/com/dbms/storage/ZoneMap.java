@@ -0,0 +1,333 @@
+package com.dbms.storage;
+
+import com.dbms.model.FieldType;
+import com.dbms.model.Table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 区域映射（zone map）- 数据文件每一页各列的最小值、最大值和NULL个数，扫描时跳过取值范围不可能满足条件的页
+ * 行存表持久化在数据文件旁的 .zm 文件中，写入记录时扩大所在页的范围；删除和更新不缩小范围（仍然正确，只是不够紧），
+ * VACUUM 时按整理后的文件重新生成；没有区域的页没有记录
+ * 有修改后、写回之前先删除磁盘上的 .zm 文件，中途崩溃后文件不存在，下次使用时扫描数据文件重建
+ * 列存表的块头中已有这些信息，读出后用同样的结构表示（块号代替页号，不单独持久化）
+ * 字符串只保存前 MAX_STRING_CHARS 个字符：最小值取前缀，最大值取前缀末字符加一，仍是有效的边界
+ * 文件格式：魔数(4) + 版本(4) + 表结构版本(4) + 字段数(4) + 页数(4)，
+ * 之后每页：页号(4) + 各列的 NULL数(4) + 标志(1，有最小值/有最大值) + 最小值 + 最大值（INT 4字节，FLOAT/DOUBLE 8字节，字符串为 UTF）
+ */
+public class ZoneMap {
+    
+    // 当前版本
+    private static final int VERSION = 1;
+    
+    // 字符串最多保存的字符数
+    private static final int MAX_STRING_CHARS = 32;
+    
+    private static final int HAS_MIN = 1;
+    private static final int HAS_MAX = 2;
+    
+    private final String dataFilePath;
+    private final String zonePath;  // null 表示不持久化（列存表）
+    private final int schemaVersion;
+    private final FieldType[] types;
+    private final Map<Integer, Zone> zones = new TreeMap<>();
+    private boolean dirty;
+    
+    /**
+     * 一页（或一块）的统计信息
+     */
+    public static class Zone {
+        private final Object[] min;
+        private final Object[] max;
+        private final int[] nullCounts;
+        
+        Zone(int fieldCount) {
+            min = new Object[fieldCount];
+            max = new Object[fieldCount];
+            nullCounts = new int[fieldCount];
+        }
+        
+        /**
+         * 该列的最小值（INT 为 Integer，FLOAT/DOUBLE 为 Double，其余为 String）；没有非NULL值时为null
+         */
+        public Object getMin(int col) {
+            return min[col];
+        }
+        
+        /**
+         * 该列的最大值；有非NULL值但为null表示没有上界（字符串截断后无法加一）
+         */
+        public Object getMax(int col) {
+            return max[col];
+        }
+        
+        /**
+         * 该列的NULL个数，-1 表示该列没有统计信息
+         */
+        public int getNullCount(int col) {
+            return nullCounts[col];
+        }
+        
+        void add(int col, FieldType type, Object value) {
+            if (value == null) {
+                nullCounts[col]++;
+                return;
+            }
+            if (type == FieldType.INT || type == FieldType.FLOAT || type == FieldType.DOUBLE) {
+                double v = ((Number) value).doubleValue();
+                if (min[col] == null || Double.compare(v, ((Number) min[col]).doubleValue()) < 0) {
+                    min[col] = value;
+                }
+                if (max[col] == null || Double.compare(v, ((Number) max[col]).doubleValue()) > 0) {
+                    max[col] = value;
+                }
+                return;
+            }
+            String s = value.toString();
+            boolean first = min[col] == null;
+            if (first || s.compareTo((String) min[col]) < 0) {
+                min[col] = lowerBound(s);
+            }
+            if (first || (max[col] != null && s.compareTo((String) max[col]) > 0)) {
+                max[col] = upperBound(s);
+            }
+        }
+    }
+    
+    private ZoneMap(String dataFilePath, String zonePath, int schemaVersion, FieldType[] types) {
+        this.dataFilePath = dataFilePath;
+        this.zonePath = zonePath;
+        this.schemaVersion = schemaVersion;
+        this.types = types;
+    }
+    
+    /**
+     * 数据文件对应的 .zm 文件路径
+     */
+    public static String pathFor(String dataFilePath) {
+        if (dataFilePath.endsWith(".dat")) {
+            return dataFilePath.substring(0, dataFilePath.length() - 4) + ".zm";
+        }
+        return dataFilePath + ".zm";
+    }
+    
+    /**
+     * 为数据文件创建空的映射（重建或整理时使用）；已有的 .zm 文件随即删除，写回前不会被误用
+     */
+    public static ZoneMap create(String dataFilePath, Table table) {
+        ZoneMap map = new ZoneMap(dataFilePath, pathFor(dataFilePath), table.getSchemaVersion(), typesOf(table));
+        map.dirty = true;
+        new File(map.zonePath).delete();
+        return map;
+    }
+    
+    /**
+     * 加载数据文件的 .zm 文件；文件不存在、格式不对，或页数、表结构与数据文件不一致时返回null（需要重建）
+     */
+    public static ZoneMap load(String dataFilePath, Table table, int expectedPageCount) throws IOException {
+        String zonePath = pathFor(dataFilePath);
+        File file = new File(zonePath);
+        if (!file.exists() || file.length() < 20) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+        if (in.readInt() != FileFormat.ZONE_MAGIC_NUMBER || in.readInt() != VERSION ||
+            in.readInt() != table.getSchemaVersion() || in.readInt() != table.getFieldCount() ||
+            in.readInt() != expectedPageCount) {
+            return null;
+        }
+        ZoneMap map = new ZoneMap(dataFilePath, zonePath, table.getSchemaVersion(), typesOf(table));
+        try {
+            while (in.available() > 0) {
+                Zone zone = map.zone(in.readInt());
+                for (int col = 0; col < map.types.length; col++) {
+                    zone.nullCounts[col] = in.readInt();
+                    int flags = in.readByte();
+                    if ((flags & HAS_MIN) != 0) {
+                        zone.min[col] = readValue(in, map.types[col]);
+                    }
+                    if ((flags & HAS_MAX) != 0) {
+                        zone.max[col] = readValue(in, map.types[col]);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+        return map;
+    }
+    
+    /**
+     * 列存表的块统计信息（不持久化），由 ColumnStore 填充
+     */
+    static ZoneMap forBlocks(Table table) {
+        return new ZoneMap(null, null, table.getSchemaVersion(), typesOf(table));
+    }
+    
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+    
+    /**
+     * 页（块）的统计信息，该页没有记录时返回null
+     */
+    public synchronized Zone getZone(int pageNo) {
+        return zones.get(pageNo);
+    }
+    
+    /**
+     * 有统计信息的页（块）数
+     */
+    public synchronized int size() {
+        return zones.size();
+    }
+    
+    /**
+     * 把写入 pageNo 页的记录（codec 已绑定）计入该页的范围
+     */
+    public synchronized void add(int pageNo, RecordCodec codec) {
+        Zone zone = zone(pageNo);
+        for (int col = 0; col < types.length; col++) {
+            zone.add(col, types[col], codec.getValue(col));
+        }
+        markDirty();
+    }
+    
+    /**
+     * 有修改时写回 .zm 文件（先写临时文件再替换）
+     */
+    public synchronized void flush() throws IOException {
+        if (!dirty || zonePath == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FileFormat.ZONE_MAGIC_NUMBER);
+        out.writeInt(VERSION);
+        out.writeInt(schemaVersion);
+        out.writeInt(types.length);
+        out.writeInt(BufferPool.getInstance().getPageCount(dataFilePath));
+        for (Map.Entry<Integer, Zone> entry : zones.entrySet()) {
+            Zone zone = entry.getValue();
+            out.writeInt(entry.getKey());
+            for (int col = 0; col < types.length; col++) {
+                out.writeInt(zone.nullCounts[col]);
+                out.writeByte((zone.min[col] != null ? HAS_MIN : 0) | (zone.max[col] != null ? HAS_MAX : 0));
+                if (zone.min[col] != null) {
+                    writeValue(out, types[col], zone.min[col]);
+                }
+                if (zone.max[col] != null) {
+                    writeValue(out, types[col], zone.max[col]);
+                }
+            }
+        }
+        File tmp = new File(zonePath + ".tmp");
+        Files.write(tmp.toPath(), bytes.toByteArray());
+        Files.move(tmp.toPath(), new File(zonePath).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        dirty = false;
+    }
+    
+    /**
+     * 第一次修改时删除磁盘上的旧文件（此时它已不能覆盖数据文件中的所有记录）
+     */
+    private void markDirty() {
+        if (!dirty && zonePath != null) {
+            new File(zonePath).delete();
+        }
+        dirty = true;
+    }
+    
+    Zone zone(int pageNo) {
+        return zones.computeIfAbsent(pageNo, k -> new Zone(types.length));
+    }
+    
+    /**
+     * 列存表的块：直接设置一列的统计信息
+     */
+    void setColumn(int blockNo, int col, int nullCount, Object min, Object max) {
+        Zone zone = zone(blockNo);
+        zone.nullCounts[col] = nullCount;
+        if (min instanceof String) {
+            min = lowerBound((String) min);
+            max = upperBound((String) max);
+        } else if (min instanceof Double) {
+            // 块头按 < 和 > 维护（-0.0 与 0.0 视为相等），按 Double.compare 的顺序放宽；边界为 NaN 时不使用
+            double low = (Double) min;
+            double high = (Double) max;
+            if (Double.isNaN(low) || Double.isNaN(high)) {
+                zone.nullCounts[col] = -1;
+                return;
+            }
+            min = low == 0.0 ? -0.0 : low;
+            max = high == 0.0 ? 0.0 : high;
+        }
+        zone.min[col] = min;
+        zone.max[col] = max;
+    }
+    
+    private static String lowerBound(String s) {
+        return s.length() <= MAX_STRING_CHARS ? s : s.substring(0, MAX_STRING_CHARS);
+    }
+    
+    /**
+     * 不小于所有以 s 的截断前缀开头的字符串的上界；s 不需要截断时就是 s 本身，无法构造时返回null（没有上界）
+     */
+    private static String upperBound(String s) {
+        if (s.length() <= MAX_STRING_CHARS) {
+            return s;
+        }
+        for (int i = MAX_STRING_CHARS - 1; i >= 0; i--) {
+            char c = s.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return s.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+    
+    private static FieldType[] typesOf(Table table) {
+        FieldType[] types = new FieldType[table.getFieldCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = table.getFieldByIndex(i).getType();
+        }
+        return types;
+    }
+    
+    private static Object readValue(DataInputStream in, FieldType type) throws IOException {
+        switch (type) {
+            case INT:
+                return in.readInt();
+            case FLOAT:
+            case DOUBLE:
+                return in.readDouble();
+            default:
+                return in.readUTF();
+        }
+    }
+    
+    private static void writeValue(DataOutputStream out, FieldType type, Object value) throws IOException {
+        switch (type) {
+            case INT:
+                out.writeInt(((Number) value).intValue());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                out.writeDouble(((Number) value).doubleValue());
+                break;
+            default:
+                out.writeUTF(value.toString());
+                break;
+        }
+    }
+}
+
@@ -4,6 +4,8 @@ import com.dbms.engine.*;
 import com.dbms.model.Database;
 import com.dbms.model.Table;
 import com.dbms.model.User;
+import com.dbms.storage.BufferPool;
+import com.dbms.storage.CompressedPageFile;
 import com.dbms.storage.DBFFileManager;
 import com.dbms.util.BackupManager;
 import com.dbms.util.SQLException;
@@ -447,7 +449,7 @@ public class MainFrame extends JFrame {
         indexTitlePanel.add(indexLabel);
         
         indexTableModel = new DefaultTableModel(
-            new Object[]{"索引名", "字段名", "唯一索引"}, 0);
+            new Object[]{"索引名", "字段名", "唯一索引", "内存"}, 0);
         indexTable = new JTable(indexTableModel);
         indexTable.setFont(getDefaultFont().deriveFont(Font.PLAIN, 12f));
         indexTable.setRowHeight(28);
@@ -613,6 +615,13 @@ public class MainFrame extends JFrame {
         restoreItem.addActionListener(e -> restoreDatabase());
         fileMenu.add(restoreItem);
         
+        fileMenu.addSeparator();
+        
+        JMenuItem statisticsItem = new JMenuItem("存储统计");
+        statisticsItem.setFont(new Font("Microsoft YaHei", Font.PLAIN, 12));
+        statisticsItem.addActionListener(e -> showStorageStatistics());
+        fileMenu.add(statisticsItem);
+        
         menuBar.add(fileMenu);
         
         // 用户管理菜单
@@ -880,6 +889,9 @@ public class MainFrame extends JFrame {
                 database.setDbFilePath(dbFilePath);
                 database.setDatFilePath(datFilePath);
                 
+                if (sqlExecutor != null) {
+                    sqlExecutor.close(); // 停止旧执行器的后台自动整理
+                }
                 ddlExecutor = new DDLExecutor(database, dbFilePath, datFilePath);
                 dmlExecutor = new DMLExecutor(ddlExecutor, datFilePath);
                 queryExecutor = new QueryExecutor(ddlExecutor, datFilePath);
@@ -947,8 +959,10 @@ public class MainFrame extends JFrame {
             for (com.dbms.model.Index index : table.getIndexes().values()) {
                 indexTableModel.addRow(new Object[]{
                     index.getIndexName(),
-                    index.getColumnName(),
-                    index.isUnique() ? "是" : "否"
+                    String.join(", ", index.getColumnNames()),
+                    index.isUnique() ? "是" : "否",
+                    index.isOrdered() ? "磁盘" : index.isBloom() || index.isLoaded()
+                        ? String.format(index.isOffHeap() ? "%.1f KB（堆外）" : "%.1f KB", index.memoryUsage() / 1024.0) : "未加载"
                 });
             }
         }
@@ -964,8 +978,11 @@ public class MainFrame extends JFrame {
                 return;
             }
             
-            // 执行SELECT查询
-            QueryExecutor.QueryResult result = queryExecutor.select(tableName, null, null, null, null, null, null);
+            // 执行SELECT查询（与SQL语句、后台自动整理互斥）
+            QueryExecutor.QueryResult result;
+            synchronized (sqlExecutor) {
+                result = queryExecutor.select(tableName, null, null, null, null, null, null);
+            }
             
             System.out.println("查询表 [" + tableName + "] 返回 " + result.getRowCount() + " 行数据");
             
@@ -1286,6 +1303,15 @@ public class MainFrame extends JFrame {
         }
     }
     
+    /**
+     * 显示缓冲池的命中率统计和页压缩统计
+     */
+    private void showStorageStatistics() {
+        JOptionPane.showMessageDialog(this,
+            BufferPool.getInstance().getStatistics() + "\n" + CompressedPageFile.getStatistics(),
+            "存储统计", JOptionPane.INFORMATION_MESSAGE);
+    }
+    
     private void backupDatabase() {
         JFileChooser dirChooser = new JFileChooser();
         dirChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -1,7 +1,11 @@
 package com.dbms.util;
 
 import com.dbms.model.Database;
+import com.dbms.storage.BufferPool;
+import com.dbms.storage.ColumnStore;
+import com.dbms.storage.DATFileManager;
 import com.dbms.storage.DBFFileManager;
+import com.dbms.storage.IndexFile;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -66,9 +70,20 @@ public class BackupManager {
             File datFile = new File(datFilePath);
             
             if (datFile.exists()) {
+                // 先把缓冲池中的脏页写回，保证备份的是最新数据
+                BufferPool.getInstance().flushFile(datFilePath);
                 String datBackupFileName = datFile.getName().replace(".dat", "_backup_" + timestamp + ".dat");
                 String datBackupFilePath = new File(backupDir, datBackupFileName).getAbsolutePath();
                 Files.copy(datFile.toPath(), Paths.get(datBackupFilePath), StandardCopyOption.REPLACE_EXISTING);
+                
+                // 列存表：同时备份列文件（文件名中的数据文件名部分替换为备份名）
+                ColumnStore.flushAll();
+                String datBase = datFile.getName().replace(".dat", "");
+                String backupBase = datBackupFileName.replace(".dat", "");
+                for (File columnFile : ColumnStore.getColumnFiles(datFilePath)) {
+                    String columnBackupName = backupBase + columnFile.getName().substring(datBase.length());
+                    Files.copy(columnFile.toPath(), Paths.get(backupDir, columnBackupName), StandardCopyOption.REPLACE_EXISTING);
+                }
             }
         }
         
@@ -113,7 +128,27 @@ public class BackupManager {
             if (datBackupFile.exists()) {
                 String targetDatFilePath = com.dbms.storage.DATFileManager.getTableDataFilePath(
                     new File(targetDatDir, baseDatFileName + ".dat").getAbsolutePath(), tableName);
+                // 先删除当前的列文件（列存表），再替换数据文件
+                for (File columnFile : ColumnStore.getColumnFiles(targetDatFilePath)) {
+                    columnFile.delete();
+                }
+                DATFileManager.invalidate(targetDatFilePath);
+                // 索引文件不在备份中，打开数据库时按恢复后的数据重建
+                IndexFile.deleteFiles(targetDatFilePath);
                 Files.copy(datBackupFile.toPath(), Paths.get(targetDatFilePath), StandardCopyOption.REPLACE_EXISTING);
+                
+                // 恢复备份中的列文件
+                String backupBase = datBackupFileName.replace(".dat", "");
+                String targetBase = new File(targetDatFilePath).getName().replace(".dat", "");
+                File[] columnBackups = new File(backupDir).listFiles((dir, name) -> name.startsWith(backupBase + ".g") &&
+                    (name.endsWith(".col") || name.endsWith(".str")));
+                if (columnBackups != null) {
+                    for (File columnBackup : columnBackups) {
+                        String columnFileName = targetBase + columnBackup.getName().substring(backupBase.length());
+                        File columnFile = new File(new File(targetDatFilePath).getAbsoluteFile().getParentFile(), columnFileName);
+                        Files.copy(columnBackup.toPath(), columnFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
             }
         }
     }
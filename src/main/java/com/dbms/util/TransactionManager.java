@@ -1,5 +1,6 @@
 package com.dbms.util;
 
+import com.dbms.model.Index;
 import com.dbms.model.Record;
 import com.dbms.model.Table;
 import com.dbms.storage.DATFileManager;
@@ -57,7 +58,12 @@ public class TransactionManager {
             throw new DBMSException("Transaction is not active");
         }
         
-        // 操作已经在执行时完成，这里只需要标记为已提交
+        // 操作已经在执行时完成，这里只需要回收已删除记录的空间并标记为已提交
+        for (Transaction.TransactionOperation op : transaction.getOperations()) {
+            if (op.type == Transaction.TransactionOperation.OperationType.DELETE && op.dataFilePath != null) {
+                DATFileManager.reclaimRecord(op.dataFilePath, op.recordPosition);
+            }
+        }
         
         transaction.setStatus(Transaction.TransactionStatus.COMMITTED);
         activeTransactions.remove(transaction.getTransactionId());
@@ -114,16 +120,31 @@ public class TransactionManager {
             throw new DBMSException("Cannot rollback " + op.type + ": dataFilePath is missing for table " + op.tableName);
         }
         
+        // 回滚时同步维护索引（索引项中可能存有包含列的值，必须与数据文件一致）
+        Record current = table != null ? readActiveRecord(dataFilePath, op.recordPosition, table) : null;
         switch (op.type) {
             case INSERT:
-                // 删除插入的记录（逻辑删除）
+                // 删除插入的记录并回收空间（该位置不会再被引用）
+                if (current != null) {
+                    for (Index index : table.getIndexes().values()) {
+                        index.removeRecord(table, current, op.recordPosition);
+                    }
+                }
                 DATFileManager.deleteRecord(dataFilePath, op.recordPosition);
+                DATFileManager.reclaimRecord(dataFilePath, op.recordPosition);
                 break;
             case UPDATE:
                 // 恢复旧值
                 if (op.oldValue instanceof Record) {
-                    DATFileManager.writeRecordAt(dataFilePath, op.recordPosition,
-                        (Record) op.oldValue, table);
+                    Record oldRecord = (Record) op.oldValue;
+                    DATFileManager.writeRecordAt(dataFilePath, op.recordPosition, oldRecord, table);
+                    for (Index index : table.getIndexes().values()) {
+                        if (current != null) {
+                            index.updateRecord(table, current, oldRecord, op.recordPosition);
+                        } else {
+                            index.addRecord(table, oldRecord, op.recordPosition);
+                        }
+                    }
                 }
                 break;
             case DELETE:
@@ -133,9 +154,12 @@ public class TransactionManager {
                         (Record) op.oldValue, table);
                 } else {
                     // 最低限度：取消逻辑删除标记
-                    try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(dataFilePath, "rw")) {
-                        raf.seek(op.recordPosition);
-                        raf.writeInt(com.dbms.storage.FileFormat.RECORD_ACTIVE);
+                    DATFileManager.restoreRecord(dataFilePath, op.recordPosition);
+                }
+                Record restored = current == null ? readActiveRecord(dataFilePath, op.recordPosition, table) : null;
+                if (restored != null) {
+                    for (Index index : table.getIndexes().values()) {
+                        index.addRecord(table, restored, op.recordPosition);
                     }
                 }
                 break;
@@ -146,6 +170,18 @@ public class TransactionManager {
         }
     }
     
+    /**
+     * 读取位置上的有效记录（已删除或读取失败时返回null）
+     */
+    private Record readActiveRecord(String dataFilePath, long position, Table table) {
+        try {
+            Record record = DATFileManager.readRecordAt(dataFilePath, position, table);
+            return record != null && !record.isDeleted() ? record : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+    
     /**
      * 获取当前事务
      */
@@ -0,0 +1,91 @@
+package com.dbms;
+
+import com.dbms.engine.DDLExecutor;
+import com.dbms.engine.DMLExecutor;
+import com.dbms.engine.QueryExecutor;
+import com.dbms.engine.SQLExecutor;
+import com.dbms.model.Database;
+import com.dbms.model.Table;
+import com.dbms.storage.DATFileManager;
+import com.dbms.storage.DBFFileManager;
+import com.dbms.storage.FileChannelCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 测试用数据库 - 在临时目录中新建数据库，以管理员身份执行SQL，并可模拟进程重启
+ */
+public class TestDatabase {
+    
+    private final String dbFilePath;
+    private final String datFilePath;
+    private Database database;
+    private DDLExecutor ddlExecutor;
+    private SQLExecutor executor;
+    
+    public TestDatabase(Path dir) throws IOException {
+        this.dbFilePath = dir.resolve("test.dbf").toString();
+        this.datFilePath = dir.resolve("test.dat").toString();
+        DBFFileManager.createDatabaseFile(dbFilePath, new Database("test"));
+        open();
+    }
+    
+    private void open() throws IOException {
+        database = DBFFileManager.readDatabaseFile(dbFilePath);
+        ddlExecutor = new DDLExecutor(database, dbFilePath, datFilePath);
+        DMLExecutor dmlExecutor = new DMLExecutor(ddlExecutor, datFilePath);
+        QueryExecutor queryExecutor = new QueryExecutor(ddlExecutor, datFilePath);
+        executor = new SQLExecutor(ddlExecutor, dmlExecutor, queryExecutor);
+        executor.getUserManager().login("admin", "admin");
+    }
+    
+    /**
+     * 执行一条SQL语句
+     */
+    public Object execute(String sql) {
+        return executor.execute(sql);
+    }
+    
+    /**
+     * 执行查询，返回结果的各行
+     */
+    public List<List<Object>> query(String sql) {
+        return ((QueryExecutor.QueryResult) executor.execute(sql)).getData();
+    }
+    
+    /**
+     * 丢弃内存中的所有状态（缓存页、文件通道、列存表和索引，不写回）后按磁盘上的文件重新打开，相当于进程退出后重启
+     * 每条语句结束时修改已经写回；语句之外的修改（如后台整理）没有写回时在这里丢失
+     */
+    public void reopen() throws IOException {
+        executor.close();
+        for (String tableName : database.getTableNames()) {
+            DATFileManager.invalidate(getDataFilePath(tableName));
+        }
+        FileChannelCache.closeAll();
+        open();
+    }
+    
+    public String getDataFilePath(String tableName) {
+        return DATFileManager.getTableDataFilePath(datFilePath, tableName);
+    }
+    
+    public Table getTable(String tableName) {
+        return database.getTable(tableName);
+    }
+    
+    public DDLExecutor getDDLExecutor() {
+        return ddlExecutor;
+    }
+    
+    public SQLExecutor getExecutor() {
+        return executor;
+    }
+    
+    public void close() {
+        executor.close();
+    }
+}
+
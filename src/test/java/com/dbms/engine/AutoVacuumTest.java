@@ -0,0 +1,65 @@
+package com.dbms.engine;
+
+import com.dbms.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 后台自动整理：整理后索引文件中的位置已写回，之后不执行任何语句就退出，重新打开时索引查找仍然正确
+ */
+public class AutoVacuumTest {
+    
+    private static final int ROWS = 2000;
+    
+    @TempDir
+    Path dir;
+    
+    private TestDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        db = new TestDatabase(dir);
+        db.execute("CREATE TABLE t (id INT PRIMARY KEY, k INT, pad VARCHAR(80))");
+        db.execute("CREATE INDEX hk ON t (k)");
+        db.execute("CREATE INDEX bk ON t USING BTREE (k)");
+        for (int i = 0; i < ROWS; i++) {
+            db.execute("INSERT INTO t VALUES (" + i + ", " + (i % 100) + ", 'padding padding padding padding " + i + "')");
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+    
+    @Test
+    void indexesAreFlushedAfterBackgroundVacuum() throws Exception {
+        db.execute("DELETE FROM t WHERE id < 1500");
+        AutoVacuum autoVacuum = new AutoVacuum(db.getDDLExecutor(), db.getExecutor().getTransactionManager(),
+            db.getExecutor());
+        assertTrue(autoVacuum.runOnce() > 0, "table should have been vacuumed");
+        
+        db.reopen();
+        for (int k : new int[]{0, 37, 99}) {
+            List<List<Object>> expected = new ArrayList<>();
+            for (int id = 1500 + k; id < ROWS; id += 100) {
+                expected.add(Arrays.asList(id, k));
+            }
+            assertEquals(expected, db.query("SELECT id, k FROM t WHERE k = " + k + " ORDER BY id"));
+            assertEquals(expected, db.query("SELECT id, k FROM t WHERE k >= " + k + " AND k <= " + k + " ORDER BY id"));
+        }
+        assertEquals(Arrays.asList(Arrays.asList(1999)), db.query("SELECT id FROM t WHERE id = 1999"));
+        assertEquals(ROWS - 1500, db.query("SELECT id FROM t").size());
+    }
+}
+
@@ -0,0 +1,75 @@
+package com.dbms.engine;
+
+import com.dbms.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在编解码器上求值的 WHERE 条件和不分组的聚合：行存表 a 走编码记录上的扫描，列存表 b 是相同的数据，按解码后的记录计算
+ */
+public class EncodedScanTest {
+    
+    private static final int ROWS = 500;
+    
+    @TempDir
+    Path dir;
+    
+    private TestDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        db = new TestDatabase(dir);
+        db.execute("CREATE TABLE a (id INT PRIMARY KEY, k INT, f DOUBLE, s VARCHAR(20))");
+        db.execute("CREATE TABLE b (id INT PRIMARY KEY, k INT, f DOUBLE, s VARCHAR(20)) WITH (storage = columnar)");
+        for (String table : new String[]{"a", "b"}) {
+            for (int i = 0; i < ROWS; i++) {
+                String k = i % 30 == 0 ? "NULL" : String.valueOf(i % 17);
+                String f = i % 25 == 0 ? "NULL" : String.valueOf((i % 40) / 4.0);
+                db.execute("INSERT INTO " + table + " VALUES (" + i + ", " + k + ", " + f + ", 's" + (i % 3) + "')");
+            }
+            db.execute("DELETE FROM " + table + " WHERE k = 4");
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+    
+    @Test
+    void filterOnEncodedRecords() {
+        assertPlan("SELECT id FROM a WHERE k = 3", "filtering encoded records");
+        for (String condition : new String[]{"k = 3", "k != 3", "k < 2", "k >= 15", "f > 8.5", "f <= 0.25",
+            "k BETWEEN 5 AND 7", "k = 3 AND f > 2", "k = 3 OR f = 9.75", "k = 4", "f = 2"}) {
+            assertEquals(db.query("SELECT id, k, f, s FROM b WHERE " + condition + " ORDER BY id"),
+                db.query("SELECT id, k, f, s FROM a WHERE " + condition + " ORDER BY id"), condition);
+        }
+    }
+    
+    @Test
+    void aggregatesOnEncodedRecords() {
+        String aggregates = "COUNT(*), SUM(k), AVG(k), MAX(k), MIN(k), SUM(f), AVG(f), MAX(f), MIN(f)";
+        assertPlan("SELECT " + aggregates + " FROM a", "computing aggregates");
+        for (String where : new String[]{"", " WHERE k = 3", " WHERE f > 5 OR k < 2", " WHERE k = 99"}) {
+            List<List<Object>> expected = db.query("SELECT " + aggregates + " FROM b" + where);
+            assertEquals(expected, db.query("SELECT " + aggregates + " FROM a" + where), where);
+        }
+        // 字符串条件不能在编解码器上求值，按原来的方式计算
+        assertEquals(db.query("SELECT COUNT(*), SUM(k) FROM b WHERE s = 's1'"),
+            db.query("SELECT COUNT(*), SUM(k) FROM a WHERE s = 's1'"));
+    }
+    
+    private void assertPlan(String sql, String expected) {
+        String plan = db.query("EXPLAIN " + sql).toString();
+        assertTrue(plan.contains(expected), plan);
+    }
+}
+
@@ -0,0 +1,252 @@
+package com.dbms.engine;
+
+import com.dbms.TestDatabase;
+import com.dbms.model.Record;
+import com.dbms.storage.BufferPool;
+import com.dbms.storage.DATFileManager;
+import com.dbms.storage.IndexFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 各类索引的查找结果与全表扫描一致：表 a 建索引，表 b 是不建索引的相同数据
+ * 数据中有重复值、NULL，建索引后还有删除、改变键值的更新和新的插入
+ */
+public class IndexLookupTest {
+    
+    private static final int ROWS = 600;
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "timeout", "retry", "query", "net"};
+    
+    @TempDir
+    Path dir;
+    
+    private TestDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        db = new TestDatabase(dir);
+        for (String table : new String[]{"a", "b"}) {
+            db.execute("CREATE TABLE " + table + " (id INT PRIMARY KEY, u INT, k INT, f DOUBLE, s VARCHAR(60))");
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+    
+    @Test
+    void indexesSurviveReopen() throws Exception {
+        load("CREATE INDEX ik ON a (k)");
+        assertTrue(new File(IndexFile.pathFor(db.getDataFilePath("a"), "ik")).exists());
+        db.reopen();
+        assertUsesIndex("k = 3", "ik");
+        assertSameRows("k = 3", "k = 0", "k = 100", "k = 999");
+        db.execute("INSERT INTO a VALUES (9000, 90000, 3, 1.0, 'after reopen')");
+        db.execute("INSERT INTO b VALUES (9000, 90000, 3, 1.0, 'after reopen')");
+        db.reopen();
+        assertSameRows("k = 3");
+    }
+    
+    @Test
+    void staleIndexIsRebuiltAfterCrash() throws Exception {
+        load("CREATE INDEX ik ON a (k)");
+        // 数据页已写回、索引的修改还没有写回时进程退出
+        for (String table : new String[]{"a", "b"}) {
+            Record record = new Record(5);
+            record.setValue(0, 9000);
+            record.setValue(1, 90000);
+            record.setValue(2, 3);
+            record.setValue(3, 1.0);
+            record.setValue(4, "crash");
+            DATFileManager.appendRecord(db.getDataFilePath(table), record, db.getTable(table));
+        }
+        BufferPool.getInstance().flushAll();
+        db.reopen();
+        assertUsesIndex("k = 3", "ik");
+        assertSameRows("k = 3", "k = 0");
+    }
+    
+    @Test
+    void unknownIndexFileVersionIsRebuilt() throws Exception {
+        checkVersionRebuild("CREATE INDEX ik ON a (k)");
+    }
+    
+    @Test
+    void unknownBtreeFileVersionIsRebuilt() throws Exception {
+        checkVersionRebuild("CREATE INDEX ik ON a USING BTREE (k)");
+    }
+    
+    @Test
+    void hashIndex() {
+        load("CREATE INDEX ik ON a (k)");
+        assertUsesIndex("k = 3", "ik");
+        assertSameRows("k = 3", "k = 0", "k = 5", "k = 7", "k = 100", "k = 36", "k = 999");
+    }
+    
+    @Test
+    void btreeIndex() {
+        load("CREATE INDEX ik ON a USING BTREE (k)");
+        assertUsesIndex("k >= 30", "ik");
+        assertSameRows("k = 3", "k = 5", "k = 100", "k > 30", "k >= 30", "k < 4", "k <= 4", "k BETWEEN 10 AND 12",
+            "k > 1000", "k >= 3 AND k < 6");
+    }
+    
+    @Test
+    void btreeIndexOnDouble() {
+        load("CREATE INDEX iff ON a USING BTREE (f)");
+        assertUsesIndex("f < 1.5", "iff");
+        assertSameRows("f = 2.5", "f < 1.5", "f >= 17.5", "f BETWEEN 3.0 AND 4.0");
+    }
+    
+    @Test
+    void bitmapIndex() {
+        load("CREATE BITMAP INDEX ik ON a (k)");
+        assertUsesIndex("k = 3", "Bitmap");
+        assertSameRows("k = 3", "k = 5", "k = 100", "k = 3 OR k = 4", "k = 3 AND s = 'alpha beta'", "k = 999");
+    }
+    
+    @Test
+    void offHeapIndex() {
+        load("CREATE INDEX ik ON a USING OFFHEAP (k)");
+        assertUsesIndex("k = 3", "ik");
+        assertSameRows("k = 3", "k = 0", "k = 5", "k = 7", "k = 100", "k = 999");
+    }
+    
+    @Test
+    void bloomFilter() {
+        load("CREATE INDEX ik ON a USING BLOOM (k)");
+        assertUsesIndex("k = 3", "bloom filter");
+        assertUsesIndex("k = 999", "Bloom filter ik");
+        assertSameRows("k = 3", "k = 5", "k = 100", "k = 999", "k = 37");
+    }
+    
+    @Test
+    void ngramIndex() {
+        load("CREATE INDEX ns ON a USING NGRAM (s)");
+        assertUsesIndex("s LIKE '%mma%'", "N-gram");
+        assertSameRows("s LIKE '%mma%'", "s LIKE '%timeout re%'", "s LIKE '%eta%'", "s LIKE '%zzz%'",
+            "s LIKE '%et%'", "s LIKE 'alpha%'", "s LIKE '%updated%'");
+    }
+    
+    @Test
+    void compositeIndex() {
+        load("CREATE INDEX iks ON a (k, s)");
+        assertUsesIndex("k = 3 AND s = 'delta timeout'", "iks");
+        assertSameRows("k = 3 AND s = 'delta timeout'", "s = 'alpha beta' AND k = 0", "k = 3 AND s = 'nope'",
+            "k = 3", "k = 100 AND s = 'updated'");
+    }
+    
+    @Test
+    void compositeBtreeIndexWithInclude() {
+        load("CREATE INDEX iks ON a USING BTREE (k, s) INCLUDE (f)");
+        assertUsesIndex("k = 3 AND s = 'delta timeout'", "iks");
+        assertSameRows("k = 3 AND s = 'delta timeout'", "k = 3", "k >= 30", "k = 100 AND s = 'updated'");
+        assertEquals(db.query("SELECT k, s, f FROM b WHERE k = 3 ORDER BY f"),
+            db.query("SELECT k, s, f FROM a WHERE k = 3 ORDER BY f"));
+    }
+    
+    @Test
+    void coveringIndex() {
+        load("CREATE INDEX ik ON a (k) INCLUDE (s)");
+        String plan = plan("SELECT k, s FROM a WHERE k = 3");
+        assertTrue(plan.contains("Index only scan using ik"), plan);
+        for (int k : new int[]{0, 3, 5, 7, 100}) {
+            assertEquals(db.query("SELECT k, s FROM b WHERE k = " + k + " ORDER BY s"),
+                db.query("SELECT k, s FROM a WHERE k = " + k + " ORDER BY s"));
+        }
+    }
+    
+    @Test
+    void uniqueIndex() {
+        load("CREATE UNIQUE INDEX iu ON a (u)");
+        assertUsesIndex("u = 10", "iu");
+        assertSameRows("u = 10", "u = 20", "u = 10000", "u = 15");
+        assertThrows(RuntimeException.class, () -> db.execute("INSERT INTO a VALUES (5000, 10, 1, 1.0, 'dup')"));
+        assertSameRows("u = 10");
+    }
+    
+    @Test
+    void primaryKey() {
+        load(null);
+        assertUsesIndex("id = 10", "PRIMARY");
+        assertSameRows("id = 10", "id = 20", "id = 10000", "id = 599");
+        assertThrows(RuntimeException.class, () -> db.execute("INSERT INTO a VALUES (10, 99999, 1, 1.0, 'dup')"));
+        assertSameRows("id = 10");
+    }
+    
+    /**
+     * 在 a 上建索引（ddl 为 null 时只有主键）后向两个表写入相同的数据，之后删除、更新并再插入一些行
+     */
+    private void load(String ddl) {
+        if (ddl != null) {
+            db.execute(ddl);
+        }
+        for (String table : new String[]{"a", "b"}) {
+            for (int i = 0; i < ROWS; i++) {
+                insert(table, i);
+            }
+            db.execute("DELETE FROM " + table + " WHERE k = 5");
+            db.execute("UPDATE " + table + " SET k = 100 WHERE k = 7");
+            db.execute("UPDATE " + table + " SET s = 'updated' WHERE k = 100");
+            for (int i = ROWS; i < ROWS + 50; i++) {
+                insert(table, i);
+            }
+        }
+    }
+    
+    /**
+     * 把索引文件头中的版本号改成其他值，重新打开后索引按数据文件重建并以当前版本写回
+     */
+    private void checkVersionRebuild(String ddl) throws Exception {
+        load(ddl);
+        String path = IndexFile.pathFor(db.getDataFilePath("a"), "ik");
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.seek(4);
+            raf.writeInt(2);
+        }
+        db.reopen();
+        assertUsesIndex("k = 3", "ik");
+        assertSameRows("k = 3", "k = 0", "k = 100");
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            raf.seek(4);
+            assertEquals(1, raf.readInt());
+        }
+    }
+    
+    private void insert(String table, int i) {
+        String k = i % 50 == 0 ? "NULL" : String.valueOf(i % 37);
+        String s = i % 45 == 0 ? "NULL" : "'" + WORDS[i % WORDS.length] + " " + WORDS[i / 3 % WORDS.length] + "'";
+        db.execute("INSERT INTO " + table + " VALUES (" + i + ", " + (i * 10) + ", " + k + ", " + (i % 40) / 2.0 +
+            ", " + s + ")");
+    }
+    
+    private void assertSameRows(String... conditions) {
+        for (String condition : conditions) {
+            List<List<Object>> expected = db.query("SELECT id, u, k, f, s FROM b WHERE " + condition + " ORDER BY id");
+            List<List<Object>> actual = db.query("SELECT id, u, k, f, s FROM a WHERE " + condition + " ORDER BY id");
+            assertEquals(expected, actual, condition);
+        }
+    }
+    
+    private void assertUsesIndex(String condition, String expected) {
+        String plan = plan("SELECT id FROM a WHERE " + condition);
+        assertTrue(plan.contains(expected), condition + ": " + plan);
+    }
+    
+    private String plan(String sql) {
+        return db.query("EXPLAIN " + sql).toString();
+    }
+}
+
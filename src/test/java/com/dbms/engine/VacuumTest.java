@@ -0,0 +1,99 @@
+package com.dbms.engine;
+
+import com.dbms.TestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * VACUUM 移动记录后各类索引中的位置随之重映射：表 a 建索引，表 b 是不建索引的相同数据，
+ * 整理后和重新打开后两表的查询结果一致
+ */
+public class VacuumTest {
+    
+    private static final int ROWS = 1500;
+    
+    private static final String[] CONDITIONS = {
+        "id = 1400", "id = 10", "k = 3", "k = 40", "k >= 95", "k BETWEEN 10 AND 11", "c = 2", "u = 14990",
+        "s LIKE '%row 14%'", "s LIKE '%zzz%'"
+    };
+    
+    @TempDir
+    Path dir;
+    
+    private TestDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        db = new TestDatabase(dir);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+    
+    @Test
+    void rowTableIndexesAreRemapped() throws Exception {
+        checkVacuum("");
+    }
+    
+    @Test
+    void columnarTableIndexesAreRemapped() throws Exception {
+        checkVacuum(" WITH (storage = columnar)");
+    }
+    
+    private void checkVacuum(String options) throws Exception {
+        for (String table : new String[]{"a", "b"}) {
+            db.execute("CREATE TABLE " + table + " (id INT PRIMARY KEY, u INT, k INT, c INT, s VARCHAR(40))" + options);
+        }
+        db.execute("CREATE INDEX hk ON a (k)");
+        db.execute("CREATE INDEX bk ON a USING BTREE (k)");
+        db.execute("CREATE BITMAP INDEX mc ON a (c)");
+        db.execute("CREATE UNIQUE INDEX iu ON a (u) INCLUDE (k)");
+        db.execute("CREATE INDEX ns ON a USING NGRAM (s)");
+        db.execute("CREATE INDEX fk ON a USING BLOOM (k)");
+        for (String table : new String[]{"a", "b"}) {
+            for (int i = 0; i < ROWS; i++) {
+                db.execute("INSERT INTO " + table + " VALUES (" + i + ", " + (i * 10) + ", " + (i % 100) + ", " +
+                    (i % 4) + ", 'row " + i + "')");
+            }
+            // 删除前面的大部分记录，后面的记录在整理时前移
+            db.execute("DELETE FROM " + table + " WHERE id < 1000");
+            db.execute("DELETE FROM " + table + " WHERE k = 40");
+        }
+        long sizeBefore = db.getDDLExecutor().getTableDataSize("a");
+        db.execute("VACUUM a");
+        db.execute("VACUUM b");
+        assertTrue(db.getDDLExecutor().getTableDataSize("a") < sizeBefore, "vacuum should shrink the table");
+        assertSameRows();
+        
+        // 整理后继续写入
+        for (String table : new String[]{"a", "b"}) {
+            db.execute("INSERT INTO " + table + " VALUES (5000, 50000, 3, 1, 'row new')");
+            db.execute("UPDATE " + table + " SET k = 40 WHERE id = 1200");
+        }
+        assertSameRows();
+        
+        db.reopen();
+        assertSameRows();
+        assertEquals(ROWS - 1000 - 5 + 1, db.query("SELECT id FROM a").size());
+    }
+    
+    private void assertSameRows() {
+        for (String condition : CONDITIONS) {
+            List<List<Object>> expected = db.query("SELECT id, u, k, c, s FROM b WHERE " + condition + " ORDER BY id");
+            List<List<Object>> actual = db.query("SELECT id, u, k, c, s FROM a WHERE " + condition + " ORDER BY id");
+            assertEquals(expected, actual, condition);
+        }
+        assertEquals(db.query("SELECT u, k FROM b WHERE u = 12000"), db.query("SELECT u, k FROM a WHERE u = 12000"));
+    }
+}
+
@@ -0,0 +1,127 @@
+package com.dbms.storage;
+
+import com.dbms.TestDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 页压缩文件：帧的原地覆盖、换帧和重新打开
+ */
+public class CompressedPageFileTest {
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void newestFrameWinsAfterCrashDuringRelocation() throws Exception {
+        String filePath = createFile();
+        CompressedPageFile file = CompressedPageFile.get(filePath);
+        file.writePage(1, page(1400, 1));
+        file.writePage(2, page(0, 2));
+        // 第1页变大后换到文件末尾，原来较大的帧空出
+        file.writePage(1, page(FileFormat.PAGE_SIZE, 3));
+        // 第2页变大后换到前面空出的帧
+        byte[] newest = page(1400, 4);
+        file.writePage(2, newest);
+        
+        // 模拟崩溃：第2页的旧帧还没有置为空闲
+        long staleFrame = findDeadFrame(filePath);
+        FileChannelCache.writeFully(filePath, ByteBuffer.allocate(4).putInt(0, 2), staleFrame);
+        
+        reopen(filePath);
+        file = CompressedPageFile.get(filePath);
+        assertArrayEquals(newest, file.readPage(2));
+        assertArrayEquals(page(FileFormat.PAGE_SIZE, 3), file.readPage(1));
+        
+        // 旧的副本作为空闲帧复用，再次打开后仍是最新的内容
+        byte[] next = page(1400, 5);
+        file.writePage(3, next);
+        reopen(filePath);
+        file = CompressedPageFile.get(filePath);
+        assertArrayEquals(newest, file.readPage(2));
+        assertArrayEquals(next, file.readPage(3));
+    }
+    
+    @Test
+    void compressedTableSurvivesReopen() throws Exception {
+        TestDatabase db = new TestDatabase(dir);
+        try {
+            db.execute("CREATE TABLE t (id INT, v VARCHAR(200)) WITH (compression = deflate)");
+            for (int i = 0; i < 500; i++) {
+                db.execute("INSERT INTO t VALUES (" + i + ", 'v" + i + "')");
+            }
+            // 记录变长后页内容难以压缩，帧需要换位置
+            Random random = new Random(7);
+            List<List<Object>> expected = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String value = "v" + i;
+                if (i % 3 == 0) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int j = 0; j < 150; j++) {
+                        sb.append((char) ('a' + random.nextInt(26)));
+                    }
+                    value = sb.toString();
+                    db.execute("UPDATE t SET v = '" + value + "' WHERE id = " + i);
+                }
+                expected.add(Arrays.asList(i, value));
+            }
+            db.reopen();
+            assertEquals(expected, db.query("SELECT id, v FROM t ORDER BY id"));
+        } finally {
+            db.close();
+        }
+    }
+    
+    private String createFile() throws IOException {
+        String filePath = dir.resolve("t.dat").toString();
+        ByteBuffer header = ByteBuffer.allocate(FileFormat.PAGE_SIZE);
+        header.putInt(0, FileFormat.DAT_MAGIC_NUMBER);
+        header.putInt(FileFormat.DAT_COMPRESSION_OFFSET, FileFormat.PAGE_COMPRESSION_DEFLATE);
+        FileChannelCache.writeFully(filePath, header, 0);
+        return filePath;
+    }
+    
+    /**
+     * 页内容：前 randomBytes 个字节随机（难以压缩），其余为0
+     */
+    private static byte[] page(int randomBytes, long seed) {
+        byte[] page = new byte[FileFormat.PAGE_SIZE];
+        byte[] random = new byte[randomBytes];
+        new Random(seed).nextBytes(random);
+        System.arraycopy(random, 0, page, 0, randomBytes);
+        return page;
+    }
+    
+    /**
+     * 按帧头查找第一个已置为空闲的帧
+     */
+    private static long findDeadFrame(String filePath) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CompressedPageFile.FRAME_HEADER_SIZE);
+        long position = FileFormat.PAGE_SIZE;
+        while (true) {
+            header.clear();
+            FileChannelCache.readFully(filePath, header, position);
+            if (header.getInt(0) == -1) {
+                return position;
+            }
+            position += header.getInt(8);
+        }
+    }
+    
+    private static void reopen(String filePath) {
+        CompressedPageFile.invalidate(filePath);
+        FileChannelCache.close(filePath);
+    }
+}
+
@@ -0,0 +1,140 @@
+package com.dbms.storage;
+
+import com.dbms.model.Database;
+import com.dbms.model.Field;
+import com.dbms.model.FieldType;
+import com.dbms.model.Table;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 数据库文件：目录变更日志的重放、不完整日志尾的截断和日志整理
+ */
+public class DBFFileManagerTest {
+    
+    @TempDir
+    Path dir;
+    
+    private String filePath;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        filePath = dir.resolve("test.dbf").toString();
+        DBFFileManager.createDatabaseFile(filePath, new Database("test"));
+    }
+    
+    @Test
+    void logIsReplayedInOrder() throws Exception {
+        DBFFileManager.addTableToFile(filePath, table("a", "id", "x"));
+        DBFFileManager.addTableToFile(filePath, table("b", "id"));
+        DBFFileManager.addTableToFile(filePath, table("c", "id"));
+        // 修改表结构
+        DBFFileManager.updateTableInFile(filePath, table("a", "id", "x", "y"));
+        // 改名
+        DBFFileManager.renameTableInFile(filePath, "b", table("b2", "id", "z"));
+        // 删除后同名重建
+        DBFFileManager.removeTableFromFile(filePath, "c");
+        DBFFileManager.addTableToFile(filePath, table("c", "k"));
+        
+        Database database = DBFFileManager.readDatabaseFile(filePath);
+        assertEquals(3, database.getTableCount());
+        assertEquals(Arrays.asList("id", "x", "y"), fieldNames(database.getTable("a")));
+        assertFalse(database.hasTable("b"));
+        assertEquals(Arrays.asList("id", "z"), fieldNames(database.getTable("b2")));
+        assertEquals(Arrays.asList("k"), fieldNames(database.getTable("c")));
+    }
+    
+    @Test
+    void incompleteLogTailIsTruncated() throws Exception {
+        DBFFileManager.addTableToFile(filePath, table("a", "id"));
+        DBFFileManager.addTableToFile(filePath, table("b", "id"));
+        long length = new File(filePath).length();
+        
+        // 写到一半的日志记录：长度字段声明的内容没有写完
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+            raf.seek(length);
+            raf.writeInt(200);
+            raf.writeInt(0);
+            raf.write(new byte[]{1, 2, 3});
+        }
+        Database database = DBFFileManager.readDatabaseFile(filePath);
+        assertEquals(2, database.getTableCount());
+        assertEquals(length, new File(filePath).length());
+        
+        // 截断后可以继续追加
+        DBFFileManager.addTableToFile(filePath, table("c", "id"));
+        assertEquals(3, DBFFileManager.readDatabaseFile(filePath).getTableCount());
+    }
+    
+    @Test
+    void corruptedLogRecordIsDropped() throws Exception {
+        DBFFileManager.addTableToFile(filePath, table("a", "id"));
+        long length = new File(filePath).length();
+        DBFFileManager.addTableToFile(filePath, table("b", "id"));
+        
+        // 最后一条记录的内容与校验和不一致
+        try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+        Database database = DBFFileManager.readDatabaseFile(filePath);
+        assertTrue(database.hasTable("a"));
+        assertFalse(database.hasTable("b"));
+        assertEquals(length, new File(filePath).length());
+    }
+    
+    @Test
+    void logIsCompactedIntoSnapshot() throws Exception {
+        DBFFileManager.addTableToFile(filePath, table("other", "id"));
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            columns.add("column_" + i);
+        }
+        Table wide = table("wide", columns.toArray(new String[0]));
+        for (int i = 0; i < 1000; i++) {
+            wide.setSchemaVersion(i);
+            DBFFileManager.updateTableInFile(filePath, wide);
+        }
+        
+        // 不整理时日志有1000条完整的表结构
+        assertTrue(new File(filePath).length() < 2 * FileFormat.CATALOG_COMPACT_MIN_LOG_SIZE + 4096,
+            "log should have been compacted, file length " + new File(filePath).length());
+        Database database = DBFFileManager.readDatabaseFile(filePath);
+        assertEquals(2, database.getTableCount());
+        assertNotNull(database.getTable("other"));
+        assertEquals(999, database.getTable("wide").getSchemaVersion());
+        assertEquals(columns, fieldNames(database.getTable("wide")));
+    }
+    
+    private static Table table(String name, String... columns) {
+        Table table = new Table(name);
+        for (String column : columns) {
+            table.addField(new Field(column, FieldType.VARCHAR, 20, false, true));
+        }
+        return table;
+    }
+    
+    private static List<String> fieldNames(Table table) {
+        List<String> names = new ArrayList<>();
+        for (Field field : table.getFields()) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+}
+
@@ -0,0 +1,53 @@
+package com.dbms.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 通道缓存：另一个线程关闭通道时，正在进行的读写不受影响（关闭后下一次读写重新打开文件）
+ */
+public class FileChannelCacheTest {
+    
+    private static final int ROUNDS = 20000;
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void closeDoesNotInterruptConcurrentIo() throws Exception {
+        String filePath = dir.resolve("t.dat").toString();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread io = new Thread(() -> {
+            try {
+                for (int i = 0; i < ROUNDS; i++) {
+                    ByteBuffer out = ByteBuffer.allocate(8).putLong(0, i);
+                    FileChannelCache.writeFully(filePath, out, (i % 16) * 8L);
+                    ByteBuffer in = ByteBuffer.allocate(8);
+                    FileChannelCache.readFully(filePath, in, (i % 16) * 8L);
+                    assertEquals(i, in.getLong(0));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                done.set(true);
+            }
+        });
+        io.start();
+        while (!done.get()) {
+            FileChannelCache.close(filePath);
+        }
+        io.join();
+        FileChannelCache.close(filePath);
+        assertNull(failure.get());
+    }
+}
+
@@ -0,0 +1,112 @@
+package com.dbms.storage;
+
+import com.dbms.model.Field;
+import com.dbms.model.FieldType;
+import com.dbms.model.Record;
+import com.dbms.model.Table;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 记录编解码：各类型字段、NULL、varint 边界值和删除标记的往返
+ */
+public class RecordCodecTest {
+    
+    private Table table;
+    
+    @BeforeEach
+    void setUp() {
+        table = new Table("t");
+        table.addField(new Field("id", FieldType.INT, 4, true, false));
+        table.addField(new Field("score", FieldType.DOUBLE, 8, false, true));
+        table.addField(new Field("name", FieldType.VARCHAR, 50, false, true));
+        table.addField(new Field("code", FieldType.CHAR, 4, false, true));
+        table.addField(new Field("day", FieldType.DATE, 10, false, true));
+    }
+    
+    @Test
+    void roundTrip() throws Exception {
+        List<List<Object>> rows = Arrays.asList(
+            Arrays.asList(0, 0.0, "", "ab", "2024-01-31"),
+            Arrays.asList(-1, -2.5, "héllo wörld", "abcd", null),
+            Arrays.asList(63, null, null, null, null),
+            Arrays.asList(64, 1e300, "中文字符串", "中", "1999-12-31"),
+            Arrays.asList(Integer.MAX_VALUE, Double.NaN, "x".repeat(300), "zz", "2000-02-29"),
+            Arrays.asList(Integer.MIN_VALUE, 3.25, "emoji 😀", null, null));
+        RecordCodec codec = RecordCodec.forTable(table);
+        for (List<Object> row : rows) {
+            Record decoded = codec.decode(copy(codec.encode(record(row))));
+            assertEquals(row, decoded.getValues());
+            assertFalse(decoded.isDeleted());
+        }
+    }
+    
+    @Test
+    void columnAccessWithoutDecoding() throws Exception {
+        RecordCodec codec = RecordCodec.forTable(table);
+        ByteBuffer buf = copy(codec.encode(record(Arrays.asList(-300, null, "name", null, "2024-05-06"))));
+        codec.bind(buf);
+        assertEquals(-300, codec.getInt(0));
+        assertTrue(codec.isNull(1));
+        assertEquals("name", codec.getString(2));
+        assertTrue(codec.isNull(3));
+        assertEquals("2024-05-06", codec.getValue(4));
+        assertEquals(buf.limit(), codec.getLength());
+        assertEquals(RecordCodec.FORMAT_COMPACT, codec.getFormat());
+    }
+    
+    @Test
+    void consecutiveRecordsAndDeletedFlag() throws Exception {
+        RecordCodec codec = RecordCodec.forTable(table);
+        Record deleted = record(Arrays.asList(2, 2.0, "b", "bb", null));
+        deleted.setDeleted(true);
+        ByteBuffer first = copy(codec.encode(record(Arrays.asList(1, 1.0, "a", "aa", null))));
+        ByteBuffer second = copy(codec.encode(deleted));
+        ByteBuffer buf = ByteBuffer.allocate(first.limit() + second.limit());
+        buf.put(first).put(second).flip();
+        
+        // decode 之后位置移到下一条记录
+        assertEquals(Arrays.asList(1, 1.0, "a", "aa", null), codec.decode(buf).getValues());
+        assertEquals(first.limit(), buf.position());
+        Record record = codec.decode(buf);
+        assertTrue(record.isDeleted());
+        assertEquals(Arrays.asList(2, 2.0, "b", "bb", null), record.getValues());
+        assertEquals(buf.limit(), buf.position());
+    }
+    
+    @Test
+    void truncatedRecordIsRejected() throws Exception {
+        RecordCodec codec = RecordCodec.forTable(table);
+        ByteBuffer buf = copy(codec.encode(record(Arrays.asList(7, 7.0, "x".repeat(100), "cc", "2024-01-01"))));
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(buf.array(), buf.limit() - 10));
+        assertThrows(EOFException.class, () -> codec.decode(truncated));
+    }
+    
+    private Record record(List<Object> values) {
+        Record record = new Record(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            record.setValue(i, values.get(i));
+        }
+        return record;
+    }
+    
+    /**
+     * encode 返回的缓冲区在下一次 encode 时被复用，复制出来
+     */
+    private static ByteBuffer copy(ByteBuffer encoded) {
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
+
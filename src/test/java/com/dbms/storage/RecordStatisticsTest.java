@@ -0,0 +1,54 @@
+package com.dbms.storage;
+
+import com.dbms.TestDatabase;
+import com.dbms.model.Table;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 表的记录数和平均记录长度：插入和移动记录的更新之后与完整扫描的结果一致
+ */
+public class RecordStatisticsTest {
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void recordCountAfterInserts() throws Exception {
+        TestDatabase db = new TestDatabase(dir);
+        try {
+            db.execute("CREATE TABLE t (id INT PRIMARY KEY, s VARCHAR(200))");
+            for (int i = 0; i < 10; i++) {
+                db.execute("INSERT INTO t VALUES (" + i + ", 'row " + i + "')");
+            }
+            // 完整扫描后才有平均记录长度，之后的插入按增量维护
+            assertEquals(10, db.query("SELECT id FROM t").size());
+            Table table = db.getTable("t");
+            assertEquals(10, table.getRecordCount());
+            assertTrue(table.getAverageRecordSize() > 0);
+            
+            for (int i = 10; i < 35; i++) {
+                db.execute("INSERT INTO t VALUES (" + i + ", 'row " + i + "')");
+            }
+            assertEquals(35, table.getRecordCount());
+            
+            // 变长的更新把记录移到别处，不改变记录数
+            db.execute("UPDATE t SET s = '" + "x".repeat(150) + "' WHERE id = 3");
+            assertEquals(35, table.getRecordCount());
+            int averageRecordSize = table.getAverageRecordSize();
+            
+            assertEquals(35, db.query("SELECT id FROM t").size());
+            assertEquals(35, table.getRecordCount());
+            assertTrue(Math.abs(table.getAverageRecordSize() - averageRecordSize) <= 5,
+                table.getAverageRecordSize() + " vs " + averageRecordSize);
+        } finally {
+            db.close();
+        }
+    }
+}
+
@@ -0,0 +1,166 @@
+package com.dbms.storage;
+
+import com.dbms.TestDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 槽页：插入、更新、释放、页内整理，以及写回文件后重新读取
+ */
+public class SlottedPageTest {
+    
+    private static final int EMPTY_FREE_SPACE = FileFormat.PAGE_SIZE - FileFormat.PAGE_HEADER_SIZE;
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void positionRoundTrip() {
+        long position = SlottedPage.toPosition(123456, 789);
+        assertEquals(123456, SlottedPage.pageOf(position));
+        assertEquals(789, SlottedPage.slotOf(position));
+    }
+    
+    @Test
+    void insertUpdateFreeAndCompact() {
+        SlottedPage page = SlottedPage.create(1);
+        assertEquals(EMPTY_FREE_SPACE, page.getFreeSpace());
+        
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            String value = "record-" + i + "-" + "x".repeat(i * 7);
+            int slot = page.insert(bytes(value));
+            assertEquals(i, slot);
+            expected.put(slot, value);
+        }
+        
+        // 变短原地覆盖，变长在页内重新分配
+        assertTrue(page.update(3, bytes("short")));
+        expected.put(3, "short");
+        assertTrue(page.update(5, bytes("y".repeat(300))));
+        expected.put(5, "y".repeat(300));
+        
+        // 释放的槽留给之后的插入复用
+        page.free(7);
+        page.free(11);
+        expected.remove(7);
+        expected.remove(11);
+        assertFalse(page.isSlotUsed(7));
+        assertEquals(7, page.insert(bytes("reused")));
+        expected.put(7, "reused");
+        assertEquals(11, page.insert(bytes("reused again")));
+        expected.put(11, "reused again");
+        assertContents(expected, page);
+        
+        int freeSpace = page.getFreeSpace();
+        page.compact();
+        assertEquals(freeSpace, page.getFreeSpace());
+        assertContents(expected, page);
+        
+        // 全部释放后空闲空间回到空页的大小，槽目录清空
+        for (int slot : new ArrayList<>(expected.keySet())) {
+            page.free(slot);
+        }
+        assertEquals(0, page.getSlotCount());
+        assertEquals(EMPTY_FREE_SPACE, page.getFreeSpace());
+    }
+    
+    @Test
+    void fragmentedPageIsCompactedOnInsert() {
+        SlottedPage page = SlottedPage.create(1);
+        List<Integer> slots = new ArrayList<>();
+        int slot;
+        while ((slot = page.insert(bytes("z".repeat(200)))) >= 0) {
+            slots.add(slot);
+        }
+        // 隔一条释放一条，空闲空间足够但不连续
+        for (int i = 0; i < slots.size() - 1; i += 2) {
+            page.free(slots.get(i));
+        }
+        String big = "w".repeat(390);
+        int bigSlot = page.insert(bytes(big));
+        assertTrue(bigSlot >= 0);
+        assertEquals(big, string(page.getRecord(bigSlot)));
+        for (int i = 1; i < slots.size(); i += 2) {
+            assertEquals("z".repeat(200), string(page.getRecord(slots.get(i))));
+        }
+    }
+    
+    @Test
+    void fullPageRejectsInsertAndSurvivesRewrap() {
+        SlottedPage page = SlottedPage.create(5);
+        Map<Integer, String> expected = new HashMap<>();
+        int slot;
+        for (int i = 0; (slot = page.insert(bytes("value " + i))) >= 0; i++) {
+            expected.put(slot, "value " + i);
+        }
+        assertTrue(page.getFreeSpace() < "value 0000".length() + FileFormat.SLOT_SIZE);
+        assertFalse(page.update(0, bytes("v".repeat(FileFormat.PAGE_SIZE / 2))));
+        assertEquals("value 0", string(page.getRecord(0)));
+        
+        SlottedPage reread = SlottedPage.wrap(5, page.getData().clone());
+        assertEquals(page.getSlotCount(), reread.getSlotCount());
+        assertEquals(page.getFreeSpace(), reread.getFreeSpace());
+        assertContents(expected, reread);
+    }
+    
+    @Test
+    void rowsSurviveReopen() throws Exception {
+        TestDatabase db = new TestDatabase(dir);
+        try {
+            db.execute("CREATE TABLE t (id INT, grp INT, v VARCHAR(200))");
+            List<List<Object>> expected = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                db.execute("INSERT INTO t VALUES (" + i + ", " + i / 100 + ", 'v" + i + "')");
+            }
+            db.execute("DELETE FROM t WHERE grp = 1");
+            // 变长的记录在页内放不下时换页
+            db.execute("UPDATE t SET v = '" + "u".repeat(150) + "' WHERE grp = 5");
+            for (int i = 0; i < 1000; i++) {
+                if (i >= 100 && i < 200) {
+                    continue;
+                }
+                expected.add(Arrays.asList(i, i >= 500 && i < 600 ? "u".repeat(150) : "v" + i));
+            }
+            db.reopen();
+            assertEquals(expected, db.query("SELECT id, v FROM t ORDER BY id"));
+            
+            // 重新打开后继续写入
+            db.execute("INSERT INTO t VALUES (1000, 10, 'new')");
+            db.reopen();
+            assertEquals(Arrays.asList(Arrays.asList(1000, "new")), db.query("SELECT id, v FROM t WHERE id = 1000"));
+            assertEquals(expected.size() + 1, db.query("SELECT id FROM t").size());
+        } finally {
+            db.close();
+        }
+    }
+    
+    private static void assertContents(Map<Integer, String> expected, SlottedPage page) {
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertTrue(page.isSlotUsed(entry.getKey()));
+            assertEquals(entry.getValue(), string(page.getRecord(entry.getKey())));
+        }
+    }
+    
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+